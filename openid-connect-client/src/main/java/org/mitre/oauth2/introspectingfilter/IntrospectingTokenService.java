@@ -19,25 +19,34 @@ package org.mitre.oauth2.introspectingfilter;
 
 import static org.mitre.oauth2.model.ClientDetailsEntity.AuthMethod.SECRET_BASIC;
 
-import java.io.IOException;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.text.ParseException;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.mitre.jwt.signer.service.JWTSigningAndValidationService;
+import org.mitre.jwt.signer.service.impl.JWKSetCacheService;
 import org.mitre.oauth2.introspectingfilter.service.IntrospectionAuthorityGranter;
 import org.mitre.oauth2.introspectingfilter.service.IntrospectionConfigurationService;
 import org.mitre.oauth2.introspectingfilter.service.impl.SimpleIntrospectionAuthorityGranter;
 import org.mitre.oauth2.model.RegisteredClient;
+import org.mitre.openid.connect.client.service.ServerConfigurationService;
+import org.mitre.openid.connect.config.ServerConfiguration;
+import org.mitre.util.HashUtils;
+import org.mitre.util.HttpClientPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
@@ -52,15 +61,29 @@ import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.nimbusds.jose.util.Base64;
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.JWTParser;
+import com.nimbusds.jwt.SignedJWT;
 
 /**
  * This ResourceServerTokenServices implementation introspects incoming tokens at a
  * server's introspection endpoint URL and passes an Authentication object along
  * based on the response from the introspection endpoint.
+ *
+ * If validateJwtLocally and requiredAudience are set, signed JWT access tokens from the
+ * trusted issuer are checked here instead, against the issuer's JWKS, and all other
+ * tokens are sent to the introspection endpoint. The trusted issuer is trustedIssuer if
+ * it's set, otherwise the server behind the introspection endpoint.
  * @author jricher
  *
  */
@@ -73,26 +96,47 @@ public class IntrospectingTokenService implements ResourceServerTokenServices {
 	private boolean forceCacheExpireTime = false; // force removal of cached tokens based on default expire time
 	private boolean cacheNonExpiringTokens = false;
 	private boolean cacheTokens = true;
+	private int inactiveTokenExpireTime = 10000; // 10 seconds in milliseconds
+	private long cacheMaximumWeight = 10000000L; // roughly ten million characters of token values
+
+	private boolean validateJwtLocally = false;
+	private ServerConfigurationService serverConfigurationService;
+	private JWKSetCacheService validationServices;
+	private String requiredAudience;
+	private String trustedIssuer;
+	private double introspectionSampleRate = 0.0; // share of locally valid tokens still sent to the introspection endpoint
 
-	private HttpComponentsClientHttpRequestFactory factory;
+	private RestTemplate restTemplate;
 
 	public IntrospectingTokenService() {
-		this(HttpClientBuilder.create().useSystemProperties().build());
+		this(HttpClientPool.getShared().getHttpClient());
 	}
 
 	public IntrospectingTokenService(HttpClient httpClient) {
-		this.factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+		this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+		this.authCache = buildCache();
 	}
 
-	// Inner class to store in the hash map
+	// Inner class to store in the cache
 	private class TokenCacheObject {
 		OAuth2AccessToken token;
 		OAuth2Authentication auth;
 		Date cacheExpire;
+		boolean cacheable;
+
+		/**
+		 * Result for a token the server didn't accept, or that we couldn't check at all
+		 */
+		private TokenCacheObject(boolean inactive) {
+			// only remember tokens the server told us are inactive, never failures to ask it
+			this.cacheable = inactive && inactiveTokenExpireTime > 0;
+			this.cacheExpire = new Date(System.currentTimeMillis() + inactiveTokenExpireTime);
+		}
 
 		private TokenCacheObject(OAuth2AccessToken token, OAuth2Authentication auth) {
 			this.token = token;
 			this.auth = auth;
+			this.cacheable = cacheNonExpiringTokens || token.getExpiration() != null;
 
 			// we don't need to check the cacheTokens values, because this won't actually be added to the cache if cacheTokens is false
 			// if the token isn't null we use the token expire time
@@ -105,9 +149,22 @@ public class IntrospectingTokenService implements ResourceServerTokenServices {
 				this.cacheExpire = cal.getTime();
 			}
 		}
+
+		private boolean isActive() {
+			return auth != null;
+		}
+
+		private boolean isFresh() {
+			return cacheExpire != null && cacheExpire.after(new Date());
+		}
+
+		private int getWeight() {
+			return token != null ? 64 + token.getValue().length() : 64;
+		}
 	}
 
-	private Map<String, TokenCacheObject> authCache = new HashMap<>();
+	// map of token hash -> introspection result
+	private Cache<String, TokenCacheObject> authCache;
 	/**
 	 * Logger for this class
 	 */
@@ -206,26 +263,199 @@ public class IntrospectingTokenService implements ResourceServerTokenServices {
 	}
 
 	/**
-	 * Check to see if the introspection end point response for a token has been cached locally
-	 * This call will return the token if it has been cached and is still valid according to
-	 * the cache expire time on the TokenCacheObject. If a cached value has been found but is
-	 * expired, either by default expire times or the token's own expire time, then the token is
-	 * removed from the cache and null is returned.
-	 * @param key is the token to check
-	 * @return the cached TokenCacheObject or null
+	 * get the time in milliseconds that tokens the server reported as inactive are remembered
+	 * @return
+	 */
+	public int getInactiveTokenExpireTime() {
+		return inactiveTokenExpireTime;
+	}
+
+	/**
+	 * set the time in milliseconds that tokens the server reported as inactive are remembered,
+	 * 0 asks the server again every time
+	 * @param inactiveTokenExpireTime
 	 */
-	private TokenCacheObject checkCache(String key) {
-		if (cacheTokens && authCache.containsKey(key)) {
-			TokenCacheObject tco = authCache.get(key);
+	public void setInactiveTokenExpireTime(int inactiveTokenExpireTime) {
+		this.inactiveTokenExpireTime = inactiveTokenExpireTime;
+	}
 
-			if (tco != null && tco.cacheExpire != null && tco.cacheExpire.after(new Date())) {
-				return tco;
-			} else {
-				// if the token is expired, don't keep things around.
-				authCache.remove(key);
-			}
+	/**
+	 * get the maximum total weight of the cache, roughly the number of characters of cached token values
+	 * @return
+	 */
+	public long getCacheMaximumWeight() {
+		return cacheMaximumWeight;
+	}
+
+	/**
+	 * set the maximum total weight of the cache, roughly the number of characters of cached token values.
+	 * Setting this drops everything that's cached.
+	 * @param cacheMaximumWeight
+	 */
+	public void setCacheMaximumWeight(long cacheMaximumWeight) {
+		this.cacheMaximumWeight = cacheMaximumWeight;
+		this.authCache = buildCache();
+	}
+
+	/**
+	 * Are signed JWT access tokens validated locally before falling back to the introspection endpoint
+	 * @return
+	 */
+	public boolean isValidateJwtLocally() {
+		return validateJwtLocally;
+	}
+
+	/**
+	 * Validate signed JWT access tokens from the trusted issuer locally, against its JWKS, instead
+	 * of at the introspection endpoint. Needs the serverConfigurationService and the
+	 * requiredAudience to be set, tokens are always introspected otherwise.
+	 * @param validateJwtLocally
+	 */
+	public void setValidateJwtLocally(boolean validateJwtLocally) {
+		this.validateJwtLocally = validateJwtLocally;
+	}
+
+	/**
+	 * @return the serverConfigurationService used to find the trusted issuer's configuration
+	 */
+	public ServerConfigurationService getServerConfigurationService() {
+		return serverConfigurationService;
+	}
+
+	/**
+	 * @param serverConfigurationService the serverConfigurationService to set
+	 */
+	public void setServerConfigurationService(ServerConfigurationService serverConfigurationService) {
+		this.serverConfigurationService = serverConfigurationService;
+	}
+
+	/**
+	 * @return the validationServices
+	 */
+	public JWKSetCacheService getValidationServices() {
+		return validationServices;
+	}
+
+	/**
+	 * @param validationServices the validationServices to set
+	 */
+	public void setValidationServices(JWKSetCacheService validationServices) {
+		this.validationServices = validationServices;
+	}
+
+	/**
+	 * @return the audience that locally validated tokens have to be issued to
+	 */
+	public String getRequiredAudience() {
+		return requiredAudience;
+	}
+
+	/**
+	 * @param requiredAudience the audience that locally validated tokens have to be issued to,
+	 * required for local validation
+	 */
+	public void setRequiredAudience(String requiredAudience) {
+		this.requiredAudience = requiredAudience;
+	}
+
+	/**
+	 * @return the only issuer whose tokens are validated locally, or null for the server behind
+	 * the introspection endpoint
+	 */
+	public String getTrustedIssuer() {
+		return trustedIssuer;
+	}
+
+	/**
+	 * @param trustedIssuer the only issuer whose tokens are validated locally. When it's not set, that's
+	 * the issuer served from the same origin as the introspection endpoint whose discovery document
+	 * names that same introspection endpoint.
+	 */
+	public void setTrustedIssuer(String trustedIssuer) {
+		this.trustedIssuer = trustedIssuer;
+	}
+
+	/**
+	 * get the share of locally valid tokens, between 0 and 1, that are still sent to the
+	 * introspection endpoint so that revoked tokens are caught
+	 * @return
+	 */
+	public double getIntrospectionSampleRate() {
+		return introspectionSampleRate;
+	}
+
+	/**
+	 * set the share of locally valid tokens, between 0 and 1, that are still sent to the
+	 * introspection endpoint so that revoked tokens are caught
+	 * @param introspectionSampleRate
+	 */
+	public void setIntrospectionSampleRate(double introspectionSampleRate) {
+		this.introspectionSampleRate = introspectionSampleRate;
+	}
+
+	private Cache<String, TokenCacheObject> buildCache() {
+		return CacheBuilder.newBuilder()
+				.maximumWeight(cacheMaximumWeight)
+				.weigher(new Weigher<String, TokenCacheObject>() {
+					@Override
+					public int weigh(String key, TokenCacheObject value) {
+						return value.getWeight();
+					}
+				})
+				.build();
+	}
+
+	/**
+	 * Key the cache by a hash of the token so the token values themselves aren't kept around as keys
+	 */
+	private String getCacheKey(String accessToken) {
+		return HashUtils.sha256(accessToken);
+	}
+
+	/**
+	 * Get the introspection result for a token, from the cache if it's been seen recently enough,
+	 * otherwise from the introspection endpoint. Concurrent requests for a token that isn't cached
+	 * wait on a single call to the endpoint. Cached results are dropped once they reach the cache
+	 * expire time on the TokenCacheObject.
+	 * @param accessToken is the token to check
+	 * @return the TokenCacheObject of an active token or null
+	 */
+	private TokenCacheObject getTokenCacheObject(final String accessToken) {
+		if (!cacheTokens) {
+			TokenCacheObject tco = parseToken(accessToken);
+			return tco.isActive() ? tco : null;
 		}
-		return null;
+
+		String key = getCacheKey(accessToken);
+
+		TokenCacheObject tco = authCache.getIfPresent(key);
+		if (tco != null && !tco.isFresh()) {
+			// if the token is expired, don't keep things around.
+			authCache.asMap().remove(key, tco);
+		}
+
+		try {
+			tco = authCache.get(key, new Callable<TokenCacheObject>() {
+				@Override
+				public TokenCacheObject call() throws Exception {
+					return parseToken(accessToken);
+				}
+			});
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			logger.error("Unable to introspect token", e.getCause());
+			return null;
+		}
+
+		if (!tco.cacheable) {
+			// everyone who was waiting on this call shares the result, but it isn't kept
+			authCache.asMap().remove(key, tco);
+		} else if (!tco.isFresh()) {
+			// it went stale between the two lookups above, ask again
+			authCache.asMap().remove(key, tco);
+			tco = parseToken(accessToken);
+		}
+
+		return tco.isActive() ? tco : null;
 	}
 
 	private OAuth2Request createStoredRequest(final JsonObject token) {
@@ -259,14 +489,146 @@ public class IntrospectingTokenService implements ResourceServerTokenServices {
 	}
 
 	/**
-	 * Validate a token string against the introspection endpoint,
-	 * then parse it and store it in the local cache if caching is enabled.
+	 * Is this the issuer we trust to validate tokens for locally? Only the configured trustedIssuer,
+	 * or without one an issuer on the origin of the introspection endpoint, so no other server's
+	 * configuration is ever fetched for a token.
+	 */
+	private boolean isTrustedIssuer(String issuer, String introspectionUrl) {
+		if (!Strings.isNullOrEmpty(trustedIssuer)) {
+			return trustedIssuer.equals(issuer);
+		}
+		if (Strings.isNullOrEmpty(introspectionUrl)) {
+			return false;
+		}
+		try {
+			URI issuerUri = new URI(issuer);
+			URI introspectionUri = new URI(introspectionUrl);
+			return "https".equalsIgnoreCase(issuerUri.getScheme())
+					&& issuerUri.getScheme().equalsIgnoreCase(introspectionUri.getScheme())
+					&& issuerUri.getHost() != null && issuerUri.getHost().equalsIgnoreCase(introspectionUri.getHost())
+					&& issuerUri.getPort() == introspectionUri.getPort();
+		} catch (URISyntaxException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Validate a signed JWT access token from the trusted issuer against the issuer's keys and
+	 * check its expiration, not-before time and audience. Tokens without an expiration or a
+	 * scope claim are left to the introspection endpoint.
+	 *
+	 * @param accessToken Token to validate
+	 * @return TokenCacheObject for a valid or rejected token, or null if the token couldn't be
+	 * checked here and has to go to the introspection endpoint
+	 */
+	private TokenCacheObject validateLocally(String accessToken) {
+		JWT jwt;
+		JWTClaimsSet claims;
+		try {
+			jwt = JWTParser.parse(accessToken);
+			claims = jwt.getJWTClaimsSet();
+		} catch (ParseException e) {
+			return null; // not a JWT
+		}
+
+		if (!(jwt instanceof SignedJWT) || Strings.isNullOrEmpty(claims.getIssuer())) {
+			return null;
+		}
+
+		String introspectionUrl = null;
+		if (Strings.isNullOrEmpty(trustedIssuer)) {
+			try {
+				introspectionUrl = introspectionConfigurationService.getIntrospectionUrl(accessToken);
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+
+		if (!isTrustedIssuer(claims.getIssuer(), introspectionUrl)) {
+			return null;
+		}
+
+		ServerConfiguration server = serverConfigurationService.getServerConfiguration(claims.getIssuer());
+		if (server == null || !claims.getIssuer().equals(server.getIssuer()) || Strings.isNullOrEmpty(server.getJwksUri())) {
+			return null;
+		}
+
+		if (introspectionUrl != null && !introspectionUrl.equals(server.getIntrospectionEndpointUri())) {
+			return null; // not the server behind our introspection endpoint
+		}
+
+		synchronized (this) {
+			if (validationServices == null) {
+				validationServices = new JWKSetCacheService();
+			}
+		}
+
+		SignedJWT signedJwt = (SignedJWT) jwt;
+		JWTSigningAndValidationService validator = validationServices.getValidator(server.getJwksUri(), signedJwt.getHeader().getKeyID());
+		if (validator == null || !validator.validateSignature(signedJwt)) {
+			logger.debug("Couldn't verify the signature of a token from " + claims.getIssuer() + " locally");
+			return null;
+		}
+
+		if (claims.getExpirationTime() == null) {
+			return null; // only tokens that run out are trusted without asking the server
+		}
+
+		Date now = new Date();
+		if (!claims.getExpirationTime().after(now)) {
+			logger.info("Token from " + claims.getIssuer() + " is expired");
+			return new TokenCacheObject(true);
+		}
+
+		if (claims.getNotBeforeTime() != null && claims.getNotBeforeTime().after(now)) {
+			logger.info("Token from " + claims.getIssuer() + " is not valid yet");
+			return new TokenCacheObject(true);
+		}
+
+		if (claims.getAudience() == null || !claims.getAudience().contains(requiredAudience)) {
+			logger.info("Token from " + claims.getIssuer() + " wasn't issued to audience " + requiredAudience);
+			return new TokenCacheObject(true);
+		}
+
+		// read the claims the way we'd read an introspection response for the token
+		JsonObject tokenResponse = new JsonParser().parse(claims.toJSONObject().toJSONString()).getAsJsonObject();
+		if (!tokenResponse.has("client_id")) {
+			if (!tokenResponse.has("azp")) {
+				return null; // can't tell which client it belongs to
+			}
+			tokenResponse.add("client_id", tokenResponse.get("azp"));
+		}
+		tokenResponse.addProperty("active", true);
+
+		if (!tokenResponse.has("scope")) {
+			return null; // the server only puts scopes in stateless tokens, ask it for the rest
+		}
+
+		if (introspectionSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < introspectionSampleRate) {
+			return null; // check this one with the server in case it was revoked
+		}
+
+		OAuth2Authentication auth = new OAuth2Authentication(createStoredRequest(tokenResponse), createUserAuthentication(tokenResponse));
+		return new TokenCacheObject(createAccessToken(tokenResponse, accessToken), auth);
+	}
+
+	/**
+	 * Validate a token string, locally if it's a JWT that can be checked here and
+	 * otherwise against the introspection endpoint, and parse it.
 	 *
 	 * @param accessToken Token to pass to the introspection endpoint
-	 * @return TokenCacheObject containing authentication and token if the token was valid, otherwise null
+	 * @return TokenCacheObject containing authentication and token if the token was valid, otherwise
+	 * an inactive TokenCacheObject
 	 */
 	private TokenCacheObject parseToken(String accessToken) {
 
+		if (validateJwtLocally && serverConfigurationService != null && !Strings.isNullOrEmpty(requiredAudience)) {
+			TokenCacheObject tco = validateLocally(accessToken);
+			if (tco != null) {
+				return tco;
+			}
+		}
+
 		// find out which URL to ask
 		String introspectionUrl;
 		RegisteredClient client;
@@ -275,33 +637,23 @@ public class IntrospectingTokenService implements ResourceServerTokenServices {
 			client = introspectionConfigurationService.getClientConfiguration(accessToken);
 		} catch (IllegalArgumentException e) {
 			logger.error("Unable to load introspection URL or client configuration", e);
-			return null;
+			return new TokenCacheObject(false);
 		}
 		// Use the SpringFramework RestTemplate to send the request to the
 		// endpoint
 		String validatedToken = null;
 
-		RestTemplate restTemplate;
 		MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+		HttpHeaders headers = new HttpHeaders();
 
-		final String clientId = client.getClientId();
-		final String clientSecret = client.getClientSecret();
+		String clientId = client.getClientId();
+		String clientSecret = client.getClientSecret();
 
 		if (SECRET_BASIC.equals(client.getTokenEndpointAuthMethod())){
 			// use BASIC auth if configured to do so
-			restTemplate = new RestTemplate(factory) {
-
-				@Override
-				protected ClientHttpRequest createRequest(URI url, HttpMethod method) throws IOException {
-					ClientHttpRequest httpRequest = super.createRequest(url, method);
-					httpRequest.getHeaders().add("Authorization",
-							String.format("Basic %s", Base64.encode(String.format("%s:%s", clientId, clientSecret)) ));
-					return httpRequest;
-				}
-			};
+			headers.add("Authorization",
+					String.format("Basic %s", Base64.encode(String.format("%s:%s", clientId, clientSecret)) ));
 		} else {  //Alternatively use form based auth
-			restTemplate = new RestTemplate(factory);
-
 			form.add("client_id", clientId);
 			form.add("client_secret", clientSecret);
 		}
@@ -309,16 +661,16 @@ public class IntrospectingTokenService implements ResourceServerTokenServices {
 		form.add("token", accessToken);
 
 		try {
-			validatedToken = restTemplate.postForObject(introspectionUrl, form, String.class);
+			validatedToken = restTemplate.postForObject(introspectionUrl, new HttpEntity<>(form, headers), String.class);
 		} catch (RestClientException rce) {
 			logger.error("validateToken", rce);
-			return null;
+			return new TokenCacheObject(false);
 		}
 		if (validatedToken != null) {
 			// parse the json
 			JsonElement jsonRoot = new JsonParser().parse(validatedToken);
 			if (!jsonRoot.isJsonObject()) {
-				return null; // didn't get a proper JSON object
+				return new TokenCacheObject(false); // didn't get a proper JSON object
 			}
 
 			JsonObject tokenResponse = jsonRoot.getAsJsonObject();
@@ -326,13 +678,13 @@ public class IntrospectingTokenService implements ResourceServerTokenServices {
 			if (tokenResponse.get("error") != null) {
 				// report an error?
 				logger.error("Got an error back: " + tokenResponse.get("error") + ", " + tokenResponse.get("error_description"));
-				return null;
+				return new TokenCacheObject(false);
 			}
 
 			if (!tokenResponse.get("active").getAsBoolean()) {
 				// non-valid token
 				logger.info("Server returned non-active token");
-				return null;
+				return new TokenCacheObject(true);
 			}
 			// create an OAuth2Authentication
 			OAuth2Authentication auth = new OAuth2Authentication(createStoredRequest(tokenResponse), createUserAuthentication(tokenResponse));
@@ -340,52 +692,34 @@ public class IntrospectingTokenService implements ResourceServerTokenServices {
 			OAuth2AccessToken token = createAccessToken(tokenResponse, accessToken);
 
 			if (token.getExpiration() == null || token.getExpiration().after(new Date())) {
-				// Store them in the cache
-				TokenCacheObject tco = new TokenCacheObject(token, auth);
-				if (cacheTokens && (cacheNonExpiringTokens || token.getExpiration() != null)) {
-					authCache.put(accessToken, tco);
-				}
-				return tco;
+				return new TokenCacheObject(token, auth);
 			}
+
+			// the server called it active, but it's expired
+			return new TokenCacheObject(true);
 		}
 
 		// when the token is invalid for whatever reason
-		return null;
+		return new TokenCacheObject(false);
 	}
 
 	@Override
 	public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException {
-		// First check if the in memory cache has an Authentication object, and
-		// that it is still valid
-		// If Valid, return it
-		TokenCacheObject cacheAuth = checkCache(accessToken);
+		TokenCacheObject cacheAuth = getTokenCacheObject(accessToken);
 		if (cacheAuth != null) {
 			return cacheAuth.auth;
 		} else {
-			cacheAuth = parseToken(accessToken);
-			if (cacheAuth != null) {
-				return cacheAuth.auth;
-			} else {
-				return null;
-			}
+			return null;
 		}
 	}
 
 	@Override
 	public OAuth2AccessToken readAccessToken(String accessToken) {
-		// First check if the in memory cache has a Token object, and that it is
-		// still valid
-		// If Valid, return it
-		TokenCacheObject cacheAuth = checkCache(accessToken);
+		TokenCacheObject cacheAuth = getTokenCacheObject(accessToken);
 		if (cacheAuth != null) {
 			return cacheAuth.token;
 		} else {
-			cacheAuth = parseToken(accessToken);
-			if (cacheAuth != null) {
-				return cacheAuth.token;
-			} else {
-				return null;
-			}
+			return null;
 		}
 	}
 
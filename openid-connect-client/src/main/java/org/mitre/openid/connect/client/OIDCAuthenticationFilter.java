@@ -39,8 +39,6 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.mitre.jwt.signer.service.JWTSigningAndValidationService;
 import org.mitre.jwt.signer.service.impl.JWKSetCacheService;
 import org.mitre.jwt.signer.service.impl.SymmetricKeyJWTValidatorCacheService;
@@ -55,6 +53,7 @@ import org.mitre.openid.connect.client.service.ServerConfigurationService;
 import org.mitre.openid.connect.client.service.impl.StaticAuthRequestOptionsService;
 import org.mitre.openid.connect.config.ServerConfiguration;
 import org.mitre.openid.connect.model.PendingOIDCAuthenticationToken;
+import org.mitre.util.HttpClientPool;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.client.ClientHttpRequest;
@@ -345,15 +344,11 @@ public class OIDCAuthenticationFilter extends AbstractAuthenticationProcessingFi
 		// Handle Token Endpoint interaction
 
 		if(httpClient == null) {
-			httpClient = HttpClientBuilder.create()
-					.useSystemProperties()
-					.setDefaultRequestConfig(RequestConfig.custom()
-							.setSocketTimeout(httpSocketTimeout)
-							.build())
-					.build();
+			httpClient = HttpClientPool.getShared().getHttpClient();
 		}
 
 		HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+		factory.setReadTimeout(httpSocketTimeout);
 
 		RestTemplate restTemplate;
 
@@ -539,7 +534,7 @@ public class OIDCAuthenticationFilter extends AbstractAuthenticationProcessingFi
 						jwtValidator = symmetricCacheService.getSymmetricValidtor(clientConfig.getClient());
 					} else {
 						// otherwise load from the server's public key
-						jwtValidator = validationServices.getValidator(serverConfig.getJwksUri());
+						jwtValidator = validationServices.getValidator(serverConfig.getJwksUri(), signedIdToken.getHeader().getKeyID());
 					}
 
 					if (jwtValidator != null) {
@@ -25,12 +25,12 @@ import java.util.concurrent.TimeUnit;
 
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.mitre.openid.connect.config.ServerConfiguration;
 import org.mitre.openid.connect.config.ServerConfiguration.UserInfoTokenMethod;
 import org.mitre.openid.connect.model.DefaultUserInfo;
 import org.mitre.openid.connect.model.PendingOIDCAuthenticationToken;
 import org.mitre.openid.connect.model.UserInfo;
+import org.mitre.util.HttpClientPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpMethod;
@@ -63,7 +63,7 @@ public class UserInfoFetcher {
 	private LoadingCache<PendingOIDCAuthenticationToken, UserInfo> cache;
 
 	public UserInfoFetcher() {
-		this(HttpClientBuilder.create().useSystemProperties().build());
+		this(HttpClientPool.getShared().getHttpClient());
 	}
 
 	public UserInfoFetcher(HttpClient httpClient) {
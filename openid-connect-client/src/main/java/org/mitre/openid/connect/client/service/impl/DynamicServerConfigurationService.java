@@ -32,9 +32,9 @@ import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
 import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.mitre.openid.connect.client.service.ServerConfigurationService;
 import org.mitre.openid.connect.config.ServerConfiguration;
+import org.mitre.util.HttpClientPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
@@ -70,7 +70,7 @@ public class DynamicServerConfigurationService implements ServerConfigurationSer
 	private Set<String> blacklist = new HashSet<>();
 
 	public DynamicServerConfigurationService() {
-		this(HttpClientBuilder.create().useSystemProperties().build());
+		this(HttpClientPool.getShared().getHttpClient());
 	}
 
 	public DynamicServerConfigurationService(HttpClient httpClient) {
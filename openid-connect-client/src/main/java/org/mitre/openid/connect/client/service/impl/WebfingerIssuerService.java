@@ -28,10 +28,10 @@ import javax.servlet.http.HttpServletRequest;
 
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.mitre.discovery.util.WebfingerURLNormalizer;
 import org.mitre.openid.connect.client.model.IssuerServiceResponse;
 import org.mitre.openid.connect.client.service.IssuerService;
+import org.mitre.util.HttpClientPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
@@ -95,7 +95,7 @@ public class WebfingerIssuerService implements IssuerService {
 	private boolean forceHttps = true;
 
 	public WebfingerIssuerService() {
-		this(HttpClientBuilder.create().useSystemProperties().build());
+		this(HttpClientPool.getShared().getHttpClient());
 	}
 
 	public WebfingerIssuerService(HttpClient httpClient) {
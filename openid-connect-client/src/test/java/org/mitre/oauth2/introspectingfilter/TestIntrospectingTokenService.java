@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.oauth2.introspectingfilter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.client.HttpClient;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.jwt.signer.service.JWTSigningAndValidationService;
+import org.mitre.jwt.signer.service.impl.JWKSetCacheService;
+import org.mitre.oauth2.introspectingfilter.service.IntrospectionConfigurationService;
+import org.mitre.openid.connect.client.service.ServerConfigurationService;
+import org.mitre.openid.connect.config.ServerConfiguration;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import com.google.common.collect.Sets;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestIntrospectingTokenService {
+
+	private static final String ISSUER = "https://auth.example.com/";
+
+	private static final String INTROSPECTION_URL = "https://auth.example.com/introspect";
+
+	private static final String JWKS_URI = "https://auth.example.com/jwk";
+
+	private static final String AUDIENCE = "https://api.example.com/";
+
+	@Mock
+	private IntrospectionConfigurationService introspectionConfigurationService;
+
+	@Mock
+	private ServerConfigurationService serverConfigurationService;
+
+	@Mock
+	private JWKSetCacheService validationServices;
+
+	@Mock
+	private JWTSigningAndValidationService validator;
+
+	private IntrospectingTokenService service;
+
+	@Before
+	public void prepare() {
+		ServerConfiguration server = new ServerConfiguration();
+		server.setIssuer(ISSUER);
+		server.setJwksUri(JWKS_URI);
+		server.setIntrospectionEndpointUri(INTROSPECTION_URL);
+
+		Mockito.when(serverConfigurationService.getServerConfiguration(ISSUER)).thenReturn(server);
+		Mockito.when(introspectionConfigurationService.getIntrospectionUrl(Matchers.anyString())).thenReturn(INTROSPECTION_URL);
+		// stops the call to the introspection endpoint before anything is sent
+		Mockito.when(introspectionConfigurationService.getClientConfiguration(Matchers.anyString())).thenThrow(new IllegalArgumentException());
+		Mockito.when(validationServices.getValidator(Matchers.eq(JWKS_URI), Matchers.anyString())).thenReturn(validator);
+		Mockito.when(validator.validateSignature(Matchers.any(SignedJWT.class))).thenReturn(true);
+
+		service = new IntrospectingTokenService(Mockito.mock(HttpClient.class));
+		service.setIntrospectionConfigurationService(introspectionConfigurationService);
+		service.setServerConfigurationService(serverConfigurationService);
+		service.setValidationServices(validationServices);
+		service.setValidateJwtLocally(true);
+		service.setRequiredAudience(AUDIENCE);
+		service.setCacheTokens(false);
+	}
+
+	@Test
+	public void loadAuthentication_local() throws Exception {
+		OAuth2Authentication auth = service.loadAuthentication(token(ISSUER, AUDIENCE));
+
+		assertThat(auth, is(notNullValue()));
+		assertEquals("client", auth.getOAuth2Request().getClientId());
+		assertEquals("user", auth.getName());
+		assertEquals(Sets.newHashSet("read", "write"), auth.getOAuth2Request().getScope());
+		Mockito.verify(introspectionConfigurationService, Mockito.never()).getClientConfiguration(Matchers.anyString());
+	}
+
+	/**
+	 * Tokens issued without their scopes are introspected, so the scopes match the server's.
+	 */
+	@Test
+	public void loadAuthentication_noScope() throws Exception {
+		String accessToken = sign(new JWTClaimsSet.Builder()
+				.issuer(ISSUER)
+				.audience(AUDIENCE)
+				.subject("user")
+				.claim("azp", "client")
+				.expirationTime(new Date(System.currentTimeMillis() + 60000L)));
+
+		assertThat(service.loadAuthentication(accessToken), is(nullValue()));
+
+		Mockito.verify(introspectionConfigurationService).getClientConfiguration(accessToken);
+	}
+
+	@Test
+	public void loadAuthentication_noExpiration() throws Exception {
+		String accessToken = sign(claims(ISSUER, AUDIENCE).expirationTime(null));
+
+		assertThat(service.loadAuthentication(accessToken), is(nullValue()));
+
+		Mockito.verify(introspectionConfigurationService).getClientConfiguration(accessToken);
+	}
+
+	@Test
+	public void loadAuthentication_notYetValid() throws Exception {
+		String accessToken = sign(claims(ISSUER, AUDIENCE).notBeforeTime(new Date(System.currentTimeMillis() + 60000L)));
+
+		assertThat(service.loadAuthentication(accessToken), is(nullValue()));
+
+		Mockito.verify(introspectionConfigurationService, Mockito.never()).getClientConfiguration(Matchers.anyString());
+	}
+
+	/**
+	 * A token claiming some other issuer is introspected, without looking that issuer up.
+	 */
+	@Test
+	public void loadAuthentication_foreignIssuer() throws Exception {
+		String accessToken = token("https://attacker.example.net/", AUDIENCE);
+
+		assertThat(service.loadAuthentication(accessToken), is(nullValue()));
+
+		Mockito.verify(serverConfigurationService, Mockito.never()).getServerConfiguration("https://attacker.example.net/");
+		Mockito.verify(validator, Mockito.never()).validateSignature(Matchers.any(SignedJWT.class));
+		Mockito.verify(introspectionConfigurationService).getClientConfiguration(accessToken);
+	}
+
+	/**
+	 * Only the configured issuer is trusted, even one on the introspection endpoint's origin.
+	 */
+	@Test
+	public void loadAuthentication_otherThanTrustedIssuer() throws Exception {
+		service.setTrustedIssuer("https://sso.example.com/");
+		String accessToken = token(ISSUER, AUDIENCE);
+
+		assertThat(service.loadAuthentication(accessToken), is(nullValue()));
+
+		Mockito.verify(serverConfigurationService, Mockito.never()).getServerConfiguration(Matchers.anyString());
+		Mockito.verify(introspectionConfigurationService).getClientConfiguration(accessToken);
+	}
+
+	@Test
+	public void loadAuthentication_wrongAudience() throws Exception {
+		assertThat(service.loadAuthentication(token(ISSUER, "https://other.example.com/")), is(nullValue()));
+
+		Mockito.verify(introspectionConfigurationService, Mockito.never()).getClientConfiguration(Matchers.anyString());
+	}
+
+	/**
+	 * Without a required audience nothing is validated locally.
+	 */
+	@Test
+	public void loadAuthentication_noRequiredAudience() throws Exception {
+		service.setRequiredAudience(null);
+		String accessToken = token(ISSUER, AUDIENCE);
+
+		assertThat(service.loadAuthentication(accessToken), is(nullValue()));
+
+		Mockito.verify(validator, Mockito.never()).validateSignature(Matchers.any(SignedJWT.class));
+		Mockito.verify(introspectionConfigurationService).getClientConfiguration(accessToken);
+	}
+
+	/**
+	 * Concurrent lookups of a token that isn't cached yet share a single validation.
+	 */
+	@Test
+	public void loadAuthentication_cacheSingleFlight() throws Exception {
+		service.setCacheTokens(true);
+		final String accessToken = token(ISSUER, AUDIENCE);
+
+		final CountDownLatch validating = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Mockito.when(validator.validateSignature(Matchers.any(SignedJWT.class))).thenAnswer(new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				validating.countDown();
+				release.await(10, TimeUnit.SECONDS);
+				return true;
+			}
+		});
+
+		final AtomicReference<OAuth2Authentication> first = new AtomicReference<>();
+		final AtomicReference<OAuth2Authentication> second = new AtomicReference<>();
+		Thread firstThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				first.set(service.loadAuthentication(accessToken));
+			}
+		});
+		Thread secondThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				second.set(service.loadAuthentication(accessToken));
+			}
+		});
+
+		firstThread.start();
+		assertTrue(validating.await(10, TimeUnit.SECONDS));
+		secondThread.start();
+		// wait until the second lookup is parked on the first one's load
+		long deadline = System.currentTimeMillis() + 10000L;
+		while (secondThread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+		firstThread.join(10000L);
+		secondThread.join(10000L);
+
+		assertThat(first.get(), is(notNullValue()));
+		assertThat(second.get(), is(sameInstance(first.get())));
+		Mockito.verify(validator, Mockito.times(1)).validateSignature(Matchers.any(SignedJWT.class));
+	}
+
+	/**
+	 * Tokens found inactive are remembered for the inactive expire time, failures to check
+	 * a token are not remembered at all.
+	 */
+	@Test
+	public void loadAuthentication_cacheInactive() throws Exception {
+		service.setCacheTokens(true);
+		String inactive = token(ISSUER, "https://other.example.com/");
+
+		assertThat(service.loadAuthentication(inactive), is(nullValue()));
+		assertThat(service.loadAuthentication(inactive), is(nullValue()));
+		Mockito.verify(validator, Mockito.times(1)).validateSignature(Matchers.any(SignedJWT.class));
+
+		String unchecked = token("https://attacker.example.net/", AUDIENCE);
+		assertThat(service.loadAuthentication(unchecked), is(nullValue()));
+		assertThat(service.loadAuthentication(unchecked), is(nullValue()));
+		Mockito.verify(introspectionConfigurationService, Mockito.times(2)).getClientConfiguration(unchecked);
+	}
+
+	@Test
+	public void loadAuthentication_cacheInactiveDisabled() throws Exception {
+		service.setCacheTokens(true);
+		service.setInactiveTokenExpireTime(0);
+		String inactive = token(ISSUER, "https://other.example.com/");
+
+		assertThat(service.loadAuthentication(inactive), is(nullValue()));
+		assertThat(service.loadAuthentication(inactive), is(nullValue()));
+		Mockito.verify(validator, Mockito.times(2)).validateSignature(Matchers.any(SignedJWT.class));
+	}
+
+	/**
+	 * Results are kept within the cache's weight bound, and one that's heavier than the
+	 * whole bound is never kept.
+	 */
+	@Test
+	public void loadAuthentication_cacheWeight() throws Exception {
+		service.setCacheTokens(true);
+		String accessToken = token(ISSUER, AUDIENCE);
+
+		OAuth2Authentication auth = service.loadAuthentication(accessToken);
+		assertThat(service.loadAuthentication(accessToken), is(sameInstance(auth)));
+		Mockito.verify(validator, Mockito.times(1)).validateSignature(Matchers.any(SignedJWT.class));
+
+		service.setCacheMaximumWeight(accessToken.length());
+
+		OAuth2Authentication uncached = service.loadAuthentication(accessToken);
+		assertThat(uncached, is(notNullValue()));
+		assertThat(service.loadAuthentication(accessToken), is(not(sameInstance(uncached))));
+		Mockito.verify(validator, Mockito.times(3)).validateSignature(Matchers.any(SignedJWT.class));
+	}
+
+	private String token(String issuer, String audience) throws Exception {
+		return sign(claims(issuer, audience));
+	}
+
+	private JWTClaimsSet.Builder claims(String issuer, String audience) {
+		return new JWTClaimsSet.Builder()
+				.issuer(issuer)
+				.audience(audience)
+				.subject("user")
+				.claim("azp", "client")
+				.claim("scope", "read write")
+				.expirationTime(new Date(System.currentTimeMillis() + 60000L));
+	}
+
+	private String sign(JWTClaimsSet.Builder claims) throws Exception {
+		SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), claims.build());
+		jwt.sign(new MACSigner("a-shared-secret-of-at-least-32-bytes"));
+		return jwt.serialize();
+	}
+}
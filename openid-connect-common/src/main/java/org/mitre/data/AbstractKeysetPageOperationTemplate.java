@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.data;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Abstract class for performing an operation on a potentially large
+ * number of items by walking through them in key order. Each page is
+ * fetched after the last key of the previous one ({@code where id > :lastId
+ * order by id}) instead of by offset, so pages stay cheap however deep the
+ * walk goes and items removed by earlier pages can not shift later ones.
+ *
+ * Pages run one after the other on the calling thread; the maintenance jobs
+ * that use this already run host by host on a shared pool, which bounds how
+ * many run against the database at once. Each page can be wrapped in its own
+ * transaction by overriding {@link #executePage(Runnable)}.
+ *
+ * @param <T>  the type parameter
+ */
+public abstract class AbstractKeysetPageOperationTemplate<T> {
+
+	private static final Logger logger = LoggerFactory.getLogger(AbstractKeysetPageOperationTemplate.class);
+
+	private static int DEFAULT_PAGE_SIZE = 500;
+	private static long DEFAULT_MAX_TIME_MILLIS = 240000L; // 4 Minutes, inside the 5 minute schedule
+
+	/**
+	 * the key passed in to fetch the first page, which has no key before it.
+	 * It's null rather than an empty string, because some databases (Oracle)
+	 * store an empty string as null and would match nothing after it.
+	 */
+	public static final String FIRST_KEY = null;
+
+	/**
+	 * int specifying the number of items
+	 * fetched per page
+	 */
+	private int pageSize;
+
+	/**
+	 * long specifying the maximum execution time
+	 * in milliseconds
+	 */
+	private long maxTime;
+
+	/**
+	 * boolean specifying whether or not Exceptions
+	 * incurred performing the operation should be
+	 * swallowed during execution default true.
+	 */
+	private boolean swallowExceptions = true;
+
+	/**
+	 * String that is used for logging in final tallies.
+	 */
+	private String operationName = "";
+
+	/**
+	 * default constructor which sets the value of pageSize
+	 * and maxTime to DEFAULT_PAGE_SIZE and DEFAULT_MAX_TIME_MILLIS
+	 */
+	public AbstractKeysetPageOperationTemplate(String operationName) {
+		this(DEFAULT_PAGE_SIZE, DEFAULT_MAX_TIME_MILLIS, operationName);
+	}
+
+	/**
+	 * Instantiates a new AbstractKeysetPageOperationTemplate with the
+	 * given pageSize and maxTime
+	 *
+	 * @param pageSize the number of items per page.
+	 * @param maxTime the maximum execution time.
+	 */
+	public AbstractKeysetPageOperationTemplate(int pageSize, long maxTime, String operationName) {
+		this.pageSize = pageSize;
+		this.maxTime = maxTime;
+		this.operationName = operationName;
+	}
+
+	/**
+	 * Execute the operation on each member of every page retrieved
+	 * through the fetch method, until the fetch method returns a short
+	 * page or the maxTime limit is reached. Exceptions thrown performing
+	 * the operation on an item will be swallowed if the swallowException
+	 * (default true) field is set true, otherwise they are rethrown.
+	 *
+	 * @return the number of items the operation completed on
+	 */
+	public int execute() {
+		logger.debug("[" + getOperationName() + "] Starting execution of keyset paged operation. page size: " + pageSize + ", maximum time: " + maxTime);
+
+		long startTime = System.currentTimeMillis();
+		final Tally tally = new Tally();
+
+		String lastKey = FIRST_KEY;
+		int pages = 0;
+		while (System.currentTimeMillis() - startTime < maxTime) {
+			List<T> page = fetchPage(lastKey, pageSize);
+			if (page == null || page.isEmpty()) {
+				break;
+			}
+			lastKey = getKey(page.get(page.size() - 1));
+			pages++;
+
+			runPage(page, tally);
+
+			if (page.size() < pageSize) {
+				break;
+			}
+		}
+
+		finalReport(pages, tally.completed, tally.swallowed, tally.swallowedClasses, System.currentTimeMillis() - startTime);
+
+		return tally.completed;
+	}
+
+	private void runPage(final List<T> page, final Tally tally) {
+		executePage(new Runnable() {
+			@Override
+			public void run() {
+				for (T item : page) {
+					try {
+						doOperation(item);
+						tally.completed++;
+					} catch (RuntimeException e) {
+						if (swallowExceptions) {
+							tally.swallowed++;
+							tally.swallowedClasses.add(e.getClass().getName());
+							logger.debug("Swallowing exception " + e.getMessage(), e);
+						} else {
+							logger.debug("Rethrowing exception " + e.getMessage());
+							throw e;
+						}
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * method responsible for fetching the page of items
+	 * that follows the given key, ordered by key. The first
+	 * page is fetched with FIRST_KEY (null) and must not
+	 * filter on the key at all.
+	 *
+	 * @param lastKey the key of the last item of the previous page, or FIRST_KEY
+	 * @param pageSize the maximum number of items to return
+	 * @return the page of items
+	 */
+	public abstract List<T> fetchPage(String lastKey, int pageSize);
+
+	/**
+	 * method responsible for returning the key
+	 * a fetched item is ordered by.
+	 *
+	 * @param item the item
+	 * @return the key
+	 */
+	protected abstract String getKey(T item);
+
+	/**
+	 * method responsible for performing desired
+	 * operation on a fetched page item.
+	 *
+	 * @param item the item
+	 */
+	protected abstract void doOperation(T item);
+
+	/**
+	 * Run the operations for one page. Override to
+	 * run each page in its own transaction.
+	 *
+	 * @param page the work for one page
+	 */
+	protected void executePage(Runnable page) {
+		page.run();
+	}
+
+	/**
+	 * Method responsible for final report of progress.
+	 */
+	protected void finalReport(int pages, int operationsCompleted, int exceptionsSwallowedCount, Set<String> exceptionsSwallowedClasses, long elapsedMillis) {
+		if (operationsCompleted > 0 || exceptionsSwallowedCount > 0) {
+			long itemsPerSecond = elapsedMillis > 0 ? operationsCompleted * 1000L / elapsedMillis : operationsCompleted;
+			logger.info("[" + getOperationName() + "] Keyset paged operation run: completed " + operationsCompleted + " in " + pages + " pages, "
+					+ elapsedMillis + "ms (" + itemsPerSecond + " items/s); swallowed " + exceptionsSwallowedCount + " exceptions");
+		}
+		for (String className : exceptionsSwallowedClasses) {
+			logger.warn("[" + getOperationName() + "] Keyset paged operation swallowed at least one exception of type " + className);
+		}
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	public long getMaxTime() {
+		return maxTime;
+	}
+
+	public void setMaxTime(long maxTime) {
+		this.maxTime = maxTime;
+	}
+
+	public boolean isSwallowExceptions() {
+		return swallowExceptions;
+	}
+
+	public void setSwallowExceptions(boolean swallowExceptions) {
+		this.swallowExceptions = swallowExceptions;
+	}
+
+	/**
+	 * @return the operationName
+	 */
+	public String getOperationName() {
+		return operationName;
+	}
+
+	/**
+	 * @param operationName the operationName to set
+	 */
+	public void setOperationName(String operationName) {
+		this.operationName = operationName;
+	}
+
+	/**
+	 * Counters of one execution.
+	 */
+	private static class Tally {
+		private int completed;
+		private int swallowed;
+		private final Set<String> swallowedClasses = new HashSet<>();
+	}
+}
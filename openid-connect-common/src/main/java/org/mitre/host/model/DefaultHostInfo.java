@@ -11,12 +11,14 @@ import javax.persistence.Table;
 
 @Entity(name = "HostInfo")
 @Table(name = "host_info")
-@NamedQueries({ @NamedQuery(name = DefaultHostInfo.QUERY_BY_HOST, query = "select h from HostInfo h where h.host = :"
+@NamedQueries({ @NamedQuery(name = DefaultHostInfo.QUERY_ALL, query = "select h from HostInfo h"),
+	@NamedQuery(name = DefaultHostInfo.QUERY_BY_HOST, query = "select h from HostInfo h where h.host = :"
 		+ DefaultHostInfo.PARAM_HOST),
 	@NamedQuery(name = DefaultHostInfo.QUERY_BY_UUID, query = "select h from HostInfo h where h.id = :"
 			+ DefaultHostInfo.PARAM_UUID)})
 public class DefaultHostInfo implements HostInfo {
 
+	public static final String QUERY_ALL = "HostInfo.queryAll";
 	public static final String QUERY_BY_HOST = "HostInfo.queryByHost";
 	public static final String QUERY_BY_UUID = "HostInfo.queryByUuid";
 
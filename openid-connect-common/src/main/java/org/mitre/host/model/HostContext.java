@@ -0,0 +1,88 @@
+package org.mitre.host.model;
+
+import java.net.URL;
+
+/**
+ * Immutable description of the host a unit of work is running for: the
+ * request URL, the servlet context path, the issuer derived from both and,
+ * once resolved, the matching {@link HostInfo}.
+ *
+ * An instance is bound to the current thread by {@link org.mitre.host.util.HostUtils}
+ * and is handed explicitly to any work that runs on another thread.
+ */
+public final class HostContext {
+
+	private final URL hostUrl;
+
+	private final String contextPath;
+
+	private final String issuer;
+
+	private final HostInfo hostInfo;
+
+	public HostContext(URL hostUrl, String contextPath) {
+		this(hostUrl, contextPath, null);
+	}
+
+	public HostContext(URL hostUrl, String contextPath, HostInfo hostInfo) {
+		this.hostUrl = hostUrl;
+		this.contextPath = contextPath;
+		this.hostInfo = hostInfo;
+		this.issuer = buildIssuer(hostUrl, contextPath);
+	}
+
+	/**
+	 * @return a copy of this context carrying the given resolved host
+	 */
+	public HostContext withHostInfo(HostInfo hostInfo) {
+		return new HostContext(hostUrl, contextPath, hostInfo);
+	}
+
+	public URL getHostUrl() {
+		return hostUrl;
+	}
+
+	public String getContextPath() {
+		return contextPath;
+	}
+
+	/**
+	 * @return the issuer URL for this host, or null if either the host URL or the context path is unknown
+	 */
+	public String getIssuer() {
+		return issuer;
+	}
+
+	/**
+	 * @return the resolved host, or null if it has not been resolved yet
+	 */
+	public HostInfo getHostInfo() {
+		return hostInfo;
+	}
+
+	public String getHostUuid() {
+		return hostInfo == null ? null : hostInfo.getId();
+	}
+
+	public String getConfig() {
+		return hostInfo == null ? null : hostInfo.getConfig();
+	}
+
+	private static String buildIssuer(URL url, String contextPath) {
+		if (url == null || contextPath == null) {
+			return null;
+		}
+		StringBuilder fullPath = new StringBuilder();
+		fullPath.append(url.getProtocol());
+		fullPath.append("://");
+		fullPath.append(url.getHost());
+		if (url.getPort() > 0 && url.getPort() != 80) {
+			fullPath.append(":");
+			fullPath.append(url.getPort());
+		}
+		fullPath.append(contextPath);
+		fullPath.append("/");
+		return fullPath.toString();
+	}
+
+}
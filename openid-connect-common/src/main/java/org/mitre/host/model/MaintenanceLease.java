@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.host.model;
+
+import java.util.Date;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+
+/**
+ * Lease on a scheduled maintenance job, shared by every node of a cluster so
+ * that only the node holding it runs the job. Also records when the job last
+ * finished and how many rows it purged.
+ *
+ */
+@Entity
+@Table(name = "maintenance_lease")
+@NamedQueries({
+	@NamedQuery(name = MaintenanceLease.QUERY_ALL, query = "select l from MaintenanceLease l order by l.name"),
+	@NamedQuery(name = MaintenanceLease.UPDATE_ACQUIRE, query = "update MaintenanceLease l set l.owner = :" + MaintenanceLease.PARAM_OWNER
+			+ ", l.leaseUntil = :" + MaintenanceLease.PARAM_LEASE_UNTIL + " where l.name = :" + MaintenanceLease.PARAM_NAME
+			+ " and (l.owner = :" + MaintenanceLease.PARAM_OWNER + " or l.leaseUntil is null or l.leaseUntil < :" + MaintenanceLease.PARAM_DATE + ")"),
+	@NamedQuery(name = MaintenanceLease.UPDATE_RECORD_RUN, query = "update MaintenanceLease l set l.lastRun = :" + MaintenanceLease.PARAM_DATE
+			+ ", l.rowsPurged = :" + MaintenanceLease.PARAM_ROWS_PURGED + " where l.name = :" + MaintenanceLease.PARAM_NAME
+			+ " and l.owner = :" + MaintenanceLease.PARAM_OWNER)
+})
+public class MaintenanceLease {
+
+	public static final String QUERY_ALL = "MaintenanceLease.getAll";
+	public static final String UPDATE_ACQUIRE = "MaintenanceLease.acquire";
+	public static final String UPDATE_RECORD_RUN = "MaintenanceLease.recordRun";
+
+	public static final String PARAM_NAME = "name";
+	public static final String PARAM_OWNER = "owner";
+	public static final String PARAM_LEASE_UNTIL = "leaseUntil";
+	public static final String PARAM_DATE = "date";
+	public static final String PARAM_ROWS_PURGED = "rowsPurged";
+
+	private String name;
+
+	private String owner;
+
+	private Date leaseUntil;
+
+	private Date lastRun;
+
+	private Long rowsPurged;
+
+	public MaintenanceLease() {
+
+	}
+
+	public MaintenanceLease(String name, String owner, Date leaseUntil) {
+		this.name = name;
+		this.owner = owner;
+		this.leaseUntil = leaseUntil;
+	}
+
+	/**
+	 * @return the name of the job
+	 */
+	@Id
+	@Column(name = "name")
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the node that holds, or last held, the lease
+	 */
+	@Basic
+	@Column(name = "owner")
+	public String getOwner() {
+		return owner;
+	}
+
+	public void setOwner(String owner) {
+		this.owner = owner;
+	}
+
+	/**
+	 * @return when the lease runs out and another node may take the job over
+	 */
+	@Basic
+	@Temporal(javax.persistence.TemporalType.TIMESTAMP)
+	@Column(name = "lease_until")
+	public Date getLeaseUntil() {
+		return leaseUntil;
+	}
+
+	public void setLeaseUntil(Date leaseUntil) {
+		this.leaseUntil = leaseUntil;
+	}
+
+	/**
+	 * @return when the job last finished, or null if it never has
+	 */
+	@Basic
+	@Temporal(javax.persistence.TemporalType.TIMESTAMP)
+	@Column(name = "last_run")
+	public Date getLastRun() {
+		return lastRun;
+	}
+
+	public void setLastRun(Date lastRun) {
+		this.lastRun = lastRun;
+	}
+
+	/**
+	 * @return the number of rows the last run purged, over all hosts
+	 */
+	@Basic
+	@Column(name = "rows_purged")
+	public Long getRowsPurged() {
+		return rowsPurged;
+	}
+
+	public void setRowsPurged(Long rowsPurged) {
+		this.rowsPurged = rowsPurged;
+	}
+
+}
@@ -18,6 +18,8 @@
 
 package org.mitre.host.repository;
 
+import java.util.Collection;
+
 import org.mitre.host.model.HostInfo;
 
 public interface HostInfoRepository {
@@ -26,4 +28,6 @@ public interface HostInfoRepository {
 	
 	HostInfo getByHost(String host);
 
+	Collection<HostInfo> getAll();
+
 }
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.host.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import org.mitre.host.model.MaintenanceLease;
+
+/**
+ * Leases on the scheduled maintenance jobs, shared by all hosts and nodes.
+ */
+public interface MaintenanceLeaseRepository {
+
+	/**
+	 * Take the lease on the given job until the given date, if it is free, has
+	 * run out by now or is already held by the given owner.
+	 *
+	 * @return true if the owner holds the lease now
+	 */
+	public boolean acquire(String name, String owner, Date now, Date leaseUntil);
+
+	/**
+	 * Record a finished run of the given job, if the owner still holds its lease.
+	 */
+	public void recordRun(String name, String owner, Date lastRun, long rowsPurged);
+
+	/**
+	 * @return the leases of all jobs that have run, with their last run
+	 */
+	public List<MaintenanceLease> getAll();
+
+}
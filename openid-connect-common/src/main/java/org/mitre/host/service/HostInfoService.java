@@ -1,5 +1,7 @@
 package org.mitre.host.service;
 
+import java.util.Collection;
+
 import org.mitre.host.model.HostInfo;
 
 public interface HostInfoService {
@@ -10,4 +12,16 @@ public interface HostInfoService {
 	String getCurrentHostUuid();
 	
 	void validateHost(String hostUuid);
+
+	/**
+	 * Discard the in-memory host registry and load it again from the
+	 * repository. Call this whenever a host is added, removed or changed.
+	 */
+	void reloadHosts();
+
+	/**
+	 * All known hosts, from the in-memory registry. Use this for work that runs
+	 * outside of a request and has to visit every host.
+	 */
+	Collection<HostInfo> getAllHosts();
 }
@@ -1,24 +1,55 @@
 package org.mitre.host.service.impl;
 
-import java.net.URL;
+import java.util.Collection;
+import java.util.Map;
 
+import org.mitre.exception.SystemException;
+import org.mitre.host.model.HostContext;
 import org.mitre.host.model.HostInfo;
 import org.mitre.host.repository.HostInfoRepository;
 import org.mitre.host.service.HostInfoService;
 import org.mitre.host.util.HostUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Resolves the current host against an immutable host name to
+ * {@link HostInfo} snapshot of the {@code host_info} table, so that the
+ * per-repository host lookups never hit the database.
+ *
+ * The snapshot is loaded on first use and replaced by {@link #reloadHosts()},
+ * which is scheduled periodically in task-config.xml and may also be called
+ * directly whenever hosts change.
+ */
 @Service
 public class DefaultHostInfoService implements HostInfoService {
 
+	private static final Logger logger = LoggerFactory.getLogger(DefaultHostInfoService.class);
+
 	@Autowired
 	HostInfoRepository hostInfoRepository;
 
+	// host name -> host info, replaced as a whole on every reload
+	private volatile Map<String, HostInfo> hosts;
+
 	@Override
 	public HostInfo getCurrentHostInfo() {
-		URL hostUrl = HostUtils.getCurrentHost();
-		return hostInfoRepository.getByHost(hostUrl.getHost());
+		HostContext hostContext = HostUtils.getCurrentHostContext();
+		if (hostContext == null || hostContext.getHostUrl() == null) {
+			throw new SystemException("Current Host is not set");
+		}
+		if (hostContext.getHostInfo() != null) {
+			return hostContext.getHostInfo();
+		}
+
+		// resolve once and keep it on the bound context for the rest of the unit of work
+		HostInfo hostInfo = getHostInfo(hostContext.getHostUrl().getHost());
+		HostUtils.setCurrentHostContext(hostContext.withHostInfo(hostInfo));
+		return hostInfo;
 	}
 
 	@Override
@@ -33,4 +64,44 @@ public class DefaultHostInfoService implements HostInfoService {
 		}
 	}
 
+	@Override
+	public void reloadHosts() {
+		ImmutableMap.Builder<String, HostInfo> builder = ImmutableMap.builder();
+		for (HostInfo hostInfo : hostInfoRepository.getAll()) {
+			if (hostInfo.getHost() != null) {
+				builder.put(hostInfo.getHost(), hostInfo);
+			}
+		}
+		Map<String, HostInfo> loaded = builder.build();
+		hosts = loaded;
+		logger.debug("Loaded {} hosts", loaded.size());
+	}
+
+	@Override
+	public Collection<HostInfo> getAllHosts() {
+		return getHosts().values();
+	}
+
+	private Map<String, HostInfo> getHosts() {
+		Map<String, HostInfo> snapshot = hosts;
+		if (snapshot == null) {
+			reloadHosts();
+			snapshot = hosts;
+		}
+		return snapshot;
+	}
+
+	private HostInfo getHostInfo(String host) {
+		Map<String, HostInfo> snapshot = getHosts();
+
+		HostInfo hostInfo = snapshot.get(host);
+		if (hostInfo == null) {
+			// not in the snapshot yet, so it may have been registered since the last reload;
+			// this throws for a host that really is unknown, which keeps us from reloading for it
+			hostInfo = hostInfoRepository.getByHost(host);
+			reloadHosts();
+		}
+		return hostInfo;
+	}
+
 }
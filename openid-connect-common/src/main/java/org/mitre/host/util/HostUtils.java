@@ -1,56 +1,113 @@
 package org.mitre.host.util;
 
 import java.net.URL;
+import java.util.concurrent.Callable;
 
 import org.mitre.exception.SystemException;
-import org.mitre.util.ThreadUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.mitre.host.model.HostContext;
 
 public class HostUtils {
 
-	private static final Logger logger = LoggerFactory.getLogger(HostUtils.class);
-	
-	public static final String CURRENT_HOST_URL_ATTR = "currentHostUrl";
-	
-	public static final String CURRENT_CONTEXT_PATH = "currentContextPath";
+	private static final ThreadLocal<HostContext> currentHostContext = new ThreadLocal<>();
+
+	public static void setCurrentHostContext(HostContext hostContext) {
+		if (hostContext == null) {
+			currentHostContext.remove();
+		} else {
+			currentHostContext.set(hostContext);
+		}
+	}
+
+	public static HostContext getCurrentHostContext() {
+		return currentHostContext.get();
+	}
+
+	public static void clearCurrentHostContext() {
+		currentHostContext.remove();
+	}
 
 	public static void setCurrentHost(URL hostUrl) {
-		ThreadUtils.set(CURRENT_HOST_URL_ATTR, hostUrl);
+		HostContext current = getCurrentHostContext();
+		setCurrentHostContext(new HostContext(hostUrl, current == null ? null : current.getContextPath()));
 	}
 
 	public static URL getCurrentHost() {
-		return (URL) ThreadUtils.get(CURRENT_HOST_URL_ATTR);
+		HostContext current = getCurrentHostContext();
+		return current == null ? null : current.getHostUrl();
 	}
 	
 	public static void setCurrentContextPath(String contextPath) {
-		ThreadUtils.set(CURRENT_CONTEXT_PATH, contextPath);
+		HostContext current = getCurrentHostContext();
+		setCurrentHostContext(new HostContext(current == null ? null : current.getHostUrl(), contextPath));
 	}
 
 	public static String getCurrentContextPath() {
-		return (String) ThreadUtils.get(CURRENT_CONTEXT_PATH);
+		HostContext current = getCurrentHostContext();
+		return current == null ? null : current.getContextPath();
 	}
 	
 	public static String getCurrentRunningFullPath() {
-		URL url = getCurrentHost();
-		if(url == null) {
+		if (getCurrentHost() == null) {
 			throw new SystemException("Current Host is not set");
 		}
-		String contextPath = getCurrentContextPath();
-		if(contextPath == null) {
+		if (getCurrentContextPath() == null) {
 			throw new SystemException("Current Servlet Path is not set");
 		}
-		StringBuffer fullPath = new StringBuffer();
-		fullPath.append(url.getProtocol());
-		fullPath.append("://");
-		fullPath.append(url.getHost());
-		if(url.getPort() > 0 && url.getPort() != 80) {
-			fullPath.append(":");
-			fullPath.append(url.getPort());
+		return getCurrentHostContext().getIssuer();
+	}
+
+	/**
+	 * Run the given task with the given host context bound, restoring whatever
+	 * was bound to the calling thread afterwards.
+	 */
+	public static void runWithHostContext(HostContext hostContext, Runnable task) {
+		HostContext previous = getCurrentHostContext();
+		setCurrentHostContext(hostContext);
+		try {
+			task.run();
+		} finally {
+			setCurrentHostContext(previous);
 		}
-		fullPath.append(contextPath);
-		fullPath.append("/");
-		logger.debug("Host: " + fullPath.toString());
-		return fullPath.toString();
+	}
+
+	/**
+	 * Wrap a task so that it runs with the host context of the calling thread,
+	 * for handing off to an executor.
+	 */
+	public static Runnable withCurrentHostContext(final Runnable task) {
+		final HostContext hostContext = getCurrentHostContext();
+		return new Runnable() {
+			@Override
+			public void run() {
+				runWithHostContext(hostContext, task);
+			}
+		};
+	}
+
+	/**
+	 * Wrap a task so that it runs with the host context of the calling thread,
+	 * for handing off to an executor.
+	 */
+	public static <T> Callable<T> withCurrentHostContext(final Callable<T> task) {
+		return withHostContext(getCurrentHostContext(), task);
+	}
+
+	/**
+	 * Wrap a task so that it runs with the given host context, for handing
+	 * work for a host other than the calling thread's to an executor.
+	 */
+	public static <T> Callable<T> withHostContext(final HostContext hostContext, final Callable<T> task) {
+		return new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				HostContext previous = getCurrentHostContext();
+				setCurrentHostContext(hostContext);
+				try {
+					return task.call();
+				} finally {
+					setCurrentHostContext(previous);
+				}
+			}
+		};
 	}
 }
@@ -91,9 +91,11 @@ public class WhitelistedIssuerAssertionValidator implements AssertionValidator {
 
 		String jwksUri = whitelist.get(claims.getIssuer());
 
-		JWTSigningAndValidationService validator = jwkCache.getValidator(jwksUri);
+		SignedJWT signedAssertion = (SignedJWT) assertion;
 
-		if (validator.validateSignature((SignedJWT) assertion)) {
+		JWTSigningAndValidationService validator = jwkCache.getValidator(jwksUri, signedAssertion.getHeader().getKeyID());
+
+		if (validator != null && validator.validateSignature(signedAssertion)) {
 			return true;
 		} else {
 			return false;
@@ -75,6 +75,15 @@ public class ClientKeyCacheService {
 
 
 	public JWTSigningAndValidationService getValidator(ClientDetailsEntity client, JWSAlgorithm alg) {
+		return getValidator(client, alg, null);
+	}
+
+	/**
+	 * Get the validator for the client's keys and the given algorithm. The key id
+	 * the token names lets a client's JWK Set URI be fetched again when it names
+	 * a key that isn't in the cached set.
+	 */
+	public JWTSigningAndValidationService getValidator(ClientDetailsEntity client, JWSAlgorithm alg, String kid) {
 
 		try {
 			if (alg.equals(JWSAlgorithm.RS256)
@@ -91,7 +100,7 @@ public class ClientKeyCacheService {
 				if (client.getJwks() != null) {
 					return jwksValidators.get(client.getJwks());
 				} else if (!Strings.isNullOrEmpty(client.getJwksUri())) {
-					return jwksUriCache.getValidator(client.getJwksUri());
+					return jwksUriCache.getValidator(client.getJwksUri(), kid);
 				} else {
 					return null;
 				}
@@ -19,9 +19,12 @@ package org.mitre.jwt.signer.service.impl;
 
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -34,6 +37,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Strings;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.JWSSigner;
 import com.nimbusds.jose.JWSVerifier;
 import com.nimbusds.jose.crypto.ECDSASigner;
@@ -56,6 +60,13 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
 	// map of identifier to verifier
 	private Map<String, JWSVerifier> verifiers = new HashMap<>();
 
+	// map of key id to algorithm to the verifiers usable for it
+	private Map<String, Map<JWSAlgorithm, List<JWSVerifier>>> verifiersByKeyId = new HashMap<>();
+
+	// map of algorithm to all verifiers usable for it, tried when a token names no key
+	// or a key we don't know by that id
+	private Map<JWSAlgorithm, List<JWSVerifier>> verifiersByAlgorithm = new HashMap<>();
+
 	/**
 	 * Logger for this class
 	 */
@@ -201,6 +212,11 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
 			} catch (JOSEException e) {
 				logger.warn("Exception loading signer/verifier", e);
 			}
+
+			JWSVerifier verifier = verifiers.get(id);
+			if (verifier != null) {
+				indexVerifier(id, jwk, verifier);
+			}
 		}
 
 		if (defaultSignerKeyId == null && keys.size() == 1) {
@@ -209,6 +225,46 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
 		}
 	}
 
+	/**
+	 * Index a verifier by key id and by the algorithms it may be used for: those
+	 * the verifier supports, narrowed to the key's own {@code alg} if it has one.
+	 * A key is found under its own {@code kid} as well as the identifier it was
+	 * loaded under.
+	 */
+	private void indexVerifier(String id, JWK jwk, JWSVerifier verifier) {
+		Set<JWSAlgorithm> algs = new HashSet<>(verifier.supportedJWSAlgorithms());
+		if (jwk.getAlgorithm() != null) {
+			algs.retainAll(Collections.singleton(JWSAlgorithm.parse(jwk.getAlgorithm().getName())));
+		}
+
+		Set<String> keyIds = new HashSet<>();
+		keyIds.add(id);
+		if (!Strings.isNullOrEmpty(jwk.getKeyID())) {
+			keyIds.add(jwk.getKeyID());
+		}
+
+		for (JWSAlgorithm alg : algs) {
+			addVerifier(verifiersByAlgorithm, alg, verifier);
+			for (String keyId : keyIds) {
+				Map<JWSAlgorithm, List<JWSVerifier>> byAlgorithm = verifiersByKeyId.get(keyId);
+				if (byAlgorithm == null) {
+					byAlgorithm = new HashMap<>();
+					verifiersByKeyId.put(keyId, byAlgorithm);
+				}
+				addVerifier(byAlgorithm, alg, verifier);
+			}
+		}
+	}
+
+	private static void addVerifier(Map<JWSAlgorithm, List<JWSVerifier>> index, JWSAlgorithm alg, JWSVerifier verifier) {
+		List<JWSVerifier> list = index.get(alg);
+		if (list == null) {
+			list = new ArrayList<>();
+			index.put(alg, list);
+		}
+		list.add(verifier);
+	}
+
 	/**
 	 * Sign a jwt in place using the configured default signer.
 	 */
@@ -256,22 +312,52 @@ public class DefaultJWTSigningAndValidationService implements JWTSigningAndValid
 
 	}
 
+	/**
+	 * Validate the signature with the verifier for the key named by the token's
+	 * {@code kid} header, so a token naming a known key costs exactly one
+	 * verification. Tokens without a {@code kid}, or naming a key we don't know by
+	 * that id (such as a client's own id for its shared secret), are tried against
+	 * every verifier for their {@code alg}.
+	 */
 	@Override
 	public boolean validateSignature(SignedJWT jwt) {
 
-		for (JWSVerifier verifier : verifiers.values()) {
-			try {
-				if (jwt.verify(verifier)) {
+		JWSHeader header = jwt.getHeader();
+		JWSAlgorithm alg = header.getAlgorithm();
+		String kid = header.getKeyID();
+
+		List<JWSVerifier> candidates;
+		if (!Strings.isNullOrEmpty(kid)) {
+			Map<JWSAlgorithm, List<JWSVerifier>> byAlgorithm = verifiersByKeyId.get(kid);
+			if (byAlgorithm != null) {
+				candidates = byAlgorithm.get(alg);
+			} else {
+				candidates = verifiersByAlgorithm.get(alg);
+			}
+		} else {
+			candidates = verifiersByAlgorithm.get(alg);
+		}
+
+		if (candidates != null) {
+			for (JWSVerifier verifier : candidates) {
+				if (verify(jwt, verifier)) {
 					return true;
 				}
-			} catch (JOSEException e) {
-
-				logger.error("Failed to validate signature with " + verifier + " error message: " + e.getMessage());
 			}
 		}
 		return false;
 	}
 
+	private boolean verify(SignedJWT jwt, JWSVerifier verifier) {
+		try {
+			return jwt.verify(verifier);
+		} catch (JOSEException e) {
+
+			logger.error("Failed to validate signature with " + verifier + " error message: " + e.getMessage());
+			return false;
+		}
+	}
+
 	@Override
 	public Map<String, JWK> getAllPublicKeys() {
 		Map<String, JWK> pubKeys = new HashMap<>();
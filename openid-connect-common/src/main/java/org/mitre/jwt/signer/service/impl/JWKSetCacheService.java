@@ -20,27 +20,39 @@
  */
 package org.mitre.jwt.signer.service.impl;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.mitre.jose.keystore.JWKSetKeyStore;
 import org.mitre.jwt.encryption.service.JWTEncryptionAndDecryptionService;
 import org.mitre.jwt.encryption.service.impl.DefaultJWTEncryptionAndDecryptionService;
 import org.mitre.jwt.signer.service.JWTSigningAndValidationService;
+import org.mitre.util.HttpClientPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import com.google.common.base.Strings;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.UncheckedExecutionException;
-import com.google.gson.JsonParseException;
+import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.JWKSet;
 
 /**
@@ -48,6 +60,13 @@ import com.nimbusds.jose.jwk.JWKSet;
  * Creates a caching map of JOSE signers/validators and encrypters/decryptors
  * keyed on the JWK Set URI. Dynamically loads JWK Sets to create the services.
  *
+ * Each JWK Set is kept for as long as the {@code Cache-Control: max-age} of its
+ * response says (within bounds, one hour if there is none). After that it is
+ * refreshed in the background while the cached set keeps being served, and kept
+ * for up to a day past its TTL while the refresh fails. A token naming a {@code kid} that is not
+ * in the cached set triggers an immediate refetch, at most once a minute per URI,
+ * to pick up key rotations.
+ *
  * @author jricher
  *
  */
@@ -59,21 +78,34 @@ public class JWKSetCacheService {
 	 */
 	private static final Logger logger = LoggerFactory.getLogger(JWKSetCacheService.class);
 
-	// map of jwk set uri -> signing/validation service built on the keys found in that jwk set
-	private LoadingCache<String, JWTSigningAndValidationService> validators;
+	private static final long DEFAULT_TTL_SECONDS = 3600L;
+	private static final long MIN_TTL_SECONDS = 60L;
+	private static final long MAX_TTL_SECONDS = 86400L;
+	private static final long MAX_STALE_HOURS = 24L;
+	private static final long UNKNOWN_KEY_REFETCH_MILLIS = 60000L;
+
+	private static final Pattern MAX_AGE = Pattern.compile("max-age\\s*=\\s*(\\d+)");
+
+	// background refreshes run here instead of on the request thread that noticed them
+	private final Executor refreshExecutor = Executors.newFixedThreadPool(2,
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("jwks-refresh-%d").build());
+
+	private final RestTemplate restTemplate;
 
-	// map of jwk set uri -> encryption/decryption service built on the keys found in that jwk set
-	private LoadingCache<String, JWTEncryptionAndDecryptionService> encrypters;
+	// map of jwk set uri -> the last fetched jwk set and the services built on its keys
+	private final LoadingCache<String, CachedJWKSet> jwkSets;
 
 	public JWKSetCacheService() {
-		this.validators = CacheBuilder.newBuilder()
-				.expireAfterWrite(1, TimeUnit.HOURS) // expires 1 hour after fetch
-				.maximumSize(100)
-				.build(new JWKSetVerifierFetcher(HttpClientBuilder.create().useSystemProperties().build()));
-		this.encrypters = CacheBuilder.newBuilder()
-				.expireAfterWrite(1, TimeUnit.HOURS) // expires 1 hour after fetch
+		this(HttpClientPool.getShared().getHttpClient());
+	}
+
+	public JWKSetCacheService(HttpClient httpClient) {
+		this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+		this.jwkSets = CacheBuilder.newBuilder()
+				.refreshAfterWrite(MIN_TTL_SECONDS, TimeUnit.SECONDS) // checked against each set's own TTL on reload
+				.expireAfterAccess(MAX_STALE_HOURS, TimeUnit.HOURS)
 				.maximumSize(100)
-				.build(new JWKSetEncryptorFetcher(HttpClientBuilder.create().useSystemProperties().build()));
+				.build(new JWKSetFetcher());
 	}
 
 	/**
@@ -83,83 +115,187 @@ public class JWKSetCacheService {
 	 * @see com.google.common.cache.Cache#get(java.lang.Object)
 	 */
 	public JWTSigningAndValidationService getValidator(String jwksUri) {
-		try {
-			return validators.get(jwksUri);
-		} catch (UncheckedExecutionException | ExecutionException e) {
-			logger.warn("Couldn't load JWK Set from " + jwksUri + ": " + e.getMessage());
-			return null;
+		return getValidator(jwksUri, null);
+	}
+
+	/**
+	 * Get the validator for the given JWK Set URI, refetching the set first if
+	 * it does not contain the given key id.
+	 *
+	 * @param jwksUri
+	 * @param kid the key id the token to validate names, may be null
+	 * @return
+	 */
+	public JWTSigningAndValidationService getValidator(String jwksUri, String kid) {
+		CachedJWKSet jwkSet = getJWKSet(jwksUri);
+		if (jwkSet != null && !Strings.isNullOrEmpty(kid) && !jwkSet.keyIds.contains(kid)) {
+			jwkSet = refetchForUnknownKey(jwksUri, jwkSet, kid);
 		}
+		return jwkSet != null ? jwkSet.validator : null;
 	}
 
 	public JWTEncryptionAndDecryptionService getEncrypter(String jwksUri) {
+		CachedJWKSet jwkSet = getJWKSet(jwksUri);
+		return jwkSet != null ? jwkSet.encrypter : null;
+	}
+
+	private CachedJWKSet getJWKSet(String jwksUri) {
 		try {
-			return encrypters.get(jwksUri);
+			CachedJWKSet jwkSet = jwkSets.get(jwksUri);
+			if (jwkSet.isTooStale()) {
+				// refreshes have been failing for too long, try once more on this thread
+				jwkSets.invalidate(jwksUri);
+				jwkSet = jwkSets.get(jwksUri);
+			}
+			return jwkSet;
 		} catch (UncheckedExecutionException | ExecutionException e) {
 			logger.warn("Couldn't load JWK Set from " + jwksUri + ": " + e.getMessage());
 			return null;
 		}
 	}
 
+	private CachedJWKSet refetchForUnknownKey(String jwksUri, CachedJWKSet jwkSet, String kid) {
+		synchronized (jwkSet) {
+			CachedJWKSet current = jwkSets.getIfPresent(jwksUri);
+			if (current != null && current != jwkSet) {
+				// somebody else refetched while we waited
+				return current;
+			}
+			if (jwkSet.keyIds.isEmpty()
+					|| System.currentTimeMillis() - Math.max(jwkSet.fetched, jwkSet.lastRefetch) < UNKNOWN_KEY_REFETCH_MILLIS) {
+				return jwkSet;
+			}
+			jwkSet.lastRefetch = System.currentTimeMillis();
+
+			logger.info("Key " + kid + " not found in JWK Set from " + jwksUri + ", fetching it again");
+			try {
+				CachedJWKSet fresh = fetch(jwksUri);
+				jwkSets.put(jwksUri, fresh);
+				return fresh;
+			} catch (Exception e) {
+				logger.warn("Couldn't reload JWK Set from " + jwksUri + ": " + e.getMessage());
+				return jwkSet;
+			}
+		}
+	}
+
 	/**
-	 * @author jricher
-	 *
+	 * Fetch the JWK Set and build the signing and encryption services on it.
 	 */
-	private class JWKSetVerifierFetcher extends CacheLoader<String, JWTSigningAndValidationService> {
-		private HttpComponentsClientHttpRequestFactory httpFactory;
-		private RestTemplate restTemplate;
+	private CachedJWKSet fetch(String jwksUri) throws Exception {
+		ResponseEntity<String> response = restTemplate.getForEntity(jwksUri, String.class);
+		JWKSet jwkSet = JWKSet.parse(response.getBody());
+		return new CachedJWKSet(jwksUri, jwkSet, getTimeToLive(response.getHeaders().getCacheControl()));
+	}
 
-		JWKSetVerifierFetcher(HttpClient httpClient) {
-			this.httpFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
-			this.restTemplate = new RestTemplate(httpFactory);
+	/**
+	 * Read the max-age of a Cache-Control header, bounded to
+	 * [MIN_TTL_SECONDS, MAX_TTL_SECONDS].
+	 */
+	static long getTimeToLive(String cacheControl) {
+		long ttl = DEFAULT_TTL_SECONDS;
+		if (!Strings.isNullOrEmpty(cacheControl)) {
+			Matcher m = MAX_AGE.matcher(cacheControl);
+			if (m.find()) {
+				try {
+					ttl = Long.parseLong(m.group(1));
+				} catch (NumberFormatException e) {
+					// out of range, keep the default
+				}
+			} else if (cacheControl.contains("no-cache") || cacheControl.contains("no-store")) {
+				ttl = MIN_TTL_SECONDS;
+			}
 		}
+		return Math.min(Math.max(ttl, MIN_TTL_SECONDS), MAX_TTL_SECONDS);
+	}
 
-		/**
-		 * Load the JWK Set and build the appropriate signing service.
-		 */
-		@Override
-		public JWTSigningAndValidationService load(String key) throws Exception {
-			String jsonString = restTemplate.getForObject(key, String.class);
-			JWKSet jwkSet = JWKSet.parse(jsonString);
+	/**
+	 * A fetched JWK Set with the services built on it.
+	 */
+	private static class CachedJWKSet {
+		private final Set<String> keyIds = new HashSet<>();
+		private final JWTSigningAndValidationService validator;
+		private final JWTEncryptionAndDecryptionService encrypter;
+		private final long fetched;
+		private final long expires;
+		private volatile long lastRefetch;
+
+		private CachedJWKSet(String jwksUri, JWKSet jwkSet, long ttlSeconds) {
+			for (JWK key : jwkSet.getKeys()) {
+				if (key.getKeyID() != null) {
+					keyIds.add(key.getKeyID());
+				}
+			}
 
 			JWKSetKeyStore keyStore = new JWKSetKeyStore(jwkSet);
 
-			JWTSigningAndValidationService service = new DefaultJWTSigningAndValidationService(keyStore);
+			JWTSigningAndValidationService validator = null;
+			try {
+				validator = new DefaultJWTSigningAndValidationService(keyStore);
+			} catch (Exception e) {
+				logger.warn("Couldn't build validator for JWK Set from " + jwksUri + ": " + e.getMessage());
+			}
+			this.validator = validator;
+
+			JWTEncryptionAndDecryptionService encrypter = null;
+			try {
+				encrypter = new DefaultJWTEncryptionAndDecryptionService(keyStore);
+			} catch (Exception e) {
+				logger.warn("Couldn't build encrypter for JWK Set from " + jwksUri + ": " + e.getMessage());
+			}
+			this.encrypter = encrypter;
+
+			this.fetched = System.currentTimeMillis();
+			this.expires = fetched + ttlSeconds * 1000L;
+		}
 
-			return service;
+		private boolean isExpired() {
+			return System.currentTimeMillis() >= expires;
 		}
 
+		private boolean isTooStale() {
+			return System.currentTimeMillis() - expires > TimeUnit.HOURS.toMillis(MAX_STALE_HOURS);
+		}
 	}
 
 	/**
 	 * @author jricher
 	 *
 	 */
-	private class JWKSetEncryptorFetcher extends CacheLoader<String, JWTEncryptionAndDecryptionService> {
-		private HttpComponentsClientHttpRequestFactory httpFactory;
-		private RestTemplate restTemplate;
+	private class JWKSetFetcher extends CacheLoader<String, CachedJWKSet> {
 
-		public JWKSetEncryptorFetcher(HttpClient httpClient) {
-			this.httpFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
-			this.restTemplate = new RestTemplate(httpFactory);
+		/**
+		 * Load the JWK Set and build the appropriate services.
+		 */
+		@Override
+		public CachedJWKSet load(String key) throws Exception {
+			return fetch(key);
 		}
 
-		/* (non-Javadoc)
-		 * @see com.google.common.cache.CacheLoader#load(java.lang.Object)
+		/**
+		 * Keep the cached set until its own TTL has passed, then fetch it again
+		 * in the background. If the fetch fails the cached set is kept, and tried
+		 * again no sooner than MIN_TTL_SECONDS later.
 		 */
 		@Override
-		public JWTEncryptionAndDecryptionService load(String key) throws Exception {
-			try {
-				String jsonString = restTemplate.getForObject(key, String.class);
-				JWKSet jwkSet = JWKSet.parse(jsonString);
-
-				JWKSetKeyStore keyStore = new JWKSetKeyStore(jwkSet);
-
-				JWTEncryptionAndDecryptionService service = new DefaultJWTEncryptionAndDecryptionService(keyStore);
-
-				return service;
-			} catch (JsonParseException | RestClientException e) {
-				throw new IllegalArgumentException("Unable to load JWK Set");
+		public ListenableFuture<CachedJWKSet> reload(final String key, final CachedJWKSet oldValue) throws Exception {
+			if (!oldValue.isExpired()) {
+				return Futures.immediateFuture(oldValue);
 			}
+
+			ListenableFutureTask<CachedJWKSet> task = ListenableFutureTask.create(new Callable<CachedJWKSet>() {
+				@Override
+				public CachedJWKSet call() throws Exception {
+					try {
+						return fetch(key);
+					} catch (Exception e) {
+						logger.warn("Couldn't refresh JWK Set from " + key + ", still using the cached one: " + e.getMessage());
+						return oldValue;
+					}
+				}
+			});
+			refreshExecutor.execute(task);
+			return task;
 		}
 	}
 
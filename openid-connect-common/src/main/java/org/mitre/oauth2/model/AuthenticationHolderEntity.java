@@ -52,7 +52,14 @@ import org.springframework.security.oauth2.provider.OAuth2Request;
 @Table(name = "authentication_holder")
 @NamedQueries ({
 	@NamedQuery(name = AuthenticationHolderEntity.QUERY_ALL, query = "select a from AuthenticationHolderEntity a where a.hostUuid = :" + AuthenticationHolderEntity.PARAM_HOST_UUID),
+	@NamedQuery(name = AuthenticationHolderEntity.QUERY_ALL_FIRST_PAGE, query = "select a from AuthenticationHolderEntity a where a.hostUuid = :" + AuthenticationHolderEntity.PARAM_HOST_UUID + " order by a.id"),
+	@NamedQuery(name = AuthenticationHolderEntity.QUERY_ALL_AFTER_ID, query = "select a from AuthenticationHolderEntity a where a.hostUuid = :" + AuthenticationHolderEntity.PARAM_HOST_UUID + " and a.id > :" + AuthenticationHolderEntity.PARAM_LAST_ID + " order by a.id"),
 	@NamedQuery(name = AuthenticationHolderEntity.QUERY_GET_UNUSED, query = "select a from AuthenticationHolderEntity a where " +
+			"a.id not in (select t.authenticationHolder.id from OAuth2AccessTokenEntity t) and " +
+			"a.id not in (select r.authenticationHolder.id from OAuth2RefreshTokenEntity r) and " +
+			"a.id not in (select c.authenticationHolder.id from AuthorizationCodeEntity c) "),
+	@NamedQuery(name = AuthenticationHolderEntity.QUERY_UNUSED_IDS_BY_HOST, query = "select a.id from AuthenticationHolderEntity a where " +
+			"a.hostUuid = :" + AuthenticationHolderEntity.PARAM_HOST_UUID + " and " +
 			"a.id not in (select t.authenticationHolder.id from OAuth2AccessTokenEntity t) and " +
 			"a.id not in (select r.authenticationHolder.id from OAuth2RefreshTokenEntity r) and " +
 			"a.id not in (select c.authenticationHolder.id from AuthorizationCodeEntity c) ")
@@ -61,8 +68,12 @@ public class AuthenticationHolderEntity {
 
 	public static final String QUERY_GET_UNUSED = "AuthenticationHolderEntity.getUnusedAuthenticationHolders";
 	public static final String QUERY_ALL = "AuthenticationHolderEntity.getAll";
+	public static final String QUERY_ALL_FIRST_PAGE = "AuthenticationHolderEntity.getAllFirstPage";
+	public static final String QUERY_ALL_AFTER_ID = "AuthenticationHolderEntity.getAllAfterId";
+	public static final String QUERY_UNUSED_IDS_BY_HOST = "AuthenticationHolderEntity.getUnusedIdsByHost";
 	
 	public static final String PARAM_HOST_UUID = "hostUuid";
+	public static final String PARAM_LAST_ID = "lastId";
 
 	private String id;
 	
@@ -42,15 +42,26 @@ import javax.persistence.Temporal;
 @NamedQueries({
 		@NamedQuery(name = AuthorizationCodeEntity.QUERY_BY_VALUE, query = "select a from AuthorizationCodeEntity a where a.hostUuid = :hostUuid and a.code = :" + AuthorizationCodeEntity.PARAM_CODE),
 		@NamedQuery(name = AuthorizationCodeEntity.QUERY_EXPIRATION_BY_DATE, query = "select a from AuthorizationCodeEntity a where a.expiration <= :"
-				+ AuthorizationCodeEntity.PARAM_DATE) })
+				+ AuthorizationCodeEntity.PARAM_DATE),
+		@NamedQuery(name = AuthorizationCodeEntity.QUERY_EXPIRED_FIRST_PAGE, query = "select a from AuthorizationCodeEntity a where a.hostUuid = :hostUuid and a.expiration <= :"
+				+ AuthorizationCodeEntity.PARAM_DATE + " order by a.id"),
+		@NamedQuery(name = AuthorizationCodeEntity.QUERY_EXPIRED_AFTER_ID, query = "select a from AuthorizationCodeEntity a where a.hostUuid = :hostUuid and a.expiration <= :"
+				+ AuthorizationCodeEntity.PARAM_DATE + " and a.id > :" + AuthorizationCodeEntity.PARAM_LAST_ID + " order by a.id"),
+		@NamedQuery(name = AuthorizationCodeEntity.DELETE_BY_ID, query = "delete from AuthorizationCodeEntity a where a.hostUuid = :hostUuid and a.id = :"
+				+ AuthorizationCodeEntity.PARAM_ID) })
 public class AuthorizationCodeEntity {
 
 	public static final String QUERY_BY_VALUE = "AuthorizationCodeEntity.getByValue";
 	public static final String QUERY_EXPIRATION_BY_DATE = "AuthorizationCodeEntity.expirationByDate";
+	public static final String QUERY_EXPIRED_FIRST_PAGE = "AuthorizationCodeEntity.expiredFirstPage";
+	public static final String QUERY_EXPIRED_AFTER_ID = "AuthorizationCodeEntity.expiredAfterId";
+	public static final String DELETE_BY_ID = "AuthorizationCodeEntity.deleteById";
 
 	public static final String PARAM_HOST_UUID = "hostUuid";
+	public static final String PARAM_ID = "id";
 	public static final String PARAM_CODE = "code";
 	public static final String PARAM_DATE = "date";
+	public static final String PARAM_LAST_ID = "lastId";
 
 	private String id;
 
@@ -71,15 +71,22 @@ import com.nimbusds.jwt.JWT;
 @Table(name = "client_details")
 @NamedQueries({
 	@NamedQuery(name = ClientDetailsEntity.QUERY_ALL, query = "select c from ClientDetailsEntity c where c.hostUuid = :" + ClientDetailsEntity.PARAM_HOST_UUID),
-	@NamedQuery(name = ClientDetailsEntity.QUERY_BY_CLIENT_ID, query = "select c from ClientDetailsEntity c where c.hostUuid = :" + ClientDetailsEntity.PARAM_HOST_UUID + " and c.clientId = :" + ClientDetailsEntity.PARAM_CLIENT_ID)
+	@NamedQuery(name = ClientDetailsEntity.QUERY_ALL_FIRST_PAGE, query = "select c from ClientDetailsEntity c where c.hostUuid = :" + ClientDetailsEntity.PARAM_HOST_UUID + " order by c.id"),
+	@NamedQuery(name = ClientDetailsEntity.QUERY_ALL_AFTER_ID, query = "select c from ClientDetailsEntity c where c.hostUuid = :" + ClientDetailsEntity.PARAM_HOST_UUID + " and c.id > :" + ClientDetailsEntity.PARAM_LAST_ID + " order by c.id"),
+	@NamedQuery(name = ClientDetailsEntity.QUERY_BY_CLIENT_ID, query = "select c from ClientDetailsEntity c where c.hostUuid = :" + ClientDetailsEntity.PARAM_HOST_UUID + " and c.clientId = :" + ClientDetailsEntity.PARAM_CLIENT_ID),
+	@NamedQuery(name = ClientDetailsEntity.QUERY_VERSION_BY_CLIENT_ID, query = "select c.version from ClientDetailsEntity c where c.hostUuid = :" + ClientDetailsEntity.PARAM_HOST_UUID + " and c.clientId = :" + ClientDetailsEntity.PARAM_CLIENT_ID)
 })
 public class ClientDetailsEntity implements ClientDetails {
 
 	public static final String QUERY_BY_CLIENT_ID = "ClientDetailsEntity.getByClientId";
+	public static final String QUERY_VERSION_BY_CLIENT_ID = "ClientDetailsEntity.getVersionByClientId";
 	public static final String QUERY_ALL = "ClientDetailsEntity.findAll";
+	public static final String QUERY_ALL_FIRST_PAGE = "ClientDetailsEntity.findAllFirstPage";
+	public static final String QUERY_ALL_AFTER_ID = "ClientDetailsEntity.findAllAfterId";
 
 	public static final String PARAM_CLIENT_ID = "clientId";
 	public static final String PARAM_HOST_UUID = "hostUuid";
+	public static final String PARAM_LAST_ID = "lastId";
 
 	private static final int DEFAULT_ID_TOKEN_VALIDITY_SECONDS = 600;
 
@@ -148,6 +155,7 @@ public class ClientDetailsEntity implements ClientDetails {
 	private boolean allowIntrospection = false; // do we let this client call the introspection endpoint?
 	private Integer idTokenValiditySeconds; //timeout for id tokens
 	private Date createdAt; // time the client was created
+	private transient long version; // bumped on every save, kept out of the JSON views
 	private boolean clearAccessTokensOnRefresh = true; // do we clear access tokens on refresh?
 	private Integer deviceCodeValiditySeconds; // timeout for device codes
 
@@ -963,6 +971,22 @@ public class ClientDetailsEntity implements ClientDetails {
 		this.createdAt = createdAt;
 	}
 
+	/**
+	 * @return the version, bumped by the repository every time the client is saved
+	 */
+	@Basic
+	@Column(name="version")
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @param version the version to set
+	 */
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 	/**
 	 * Our framework doesn't use this construct, we use WhitelistedSites and ApprovedSites instead.
 	 */
@@ -45,17 +45,22 @@ import javax.persistence.Temporal;
 @NamedQueries({
 	@NamedQuery(name = DeviceCode.QUERY_BY_USER_CODE, query = "select d from DeviceCode d where d.hostUuid = :" + ClientDetailsEntity.PARAM_HOST_UUID + " and d.userCode = :" + DeviceCode.PARAM_USER_CODE),
 	@NamedQuery(name = DeviceCode.QUERY_BY_DEVICE_CODE, query = "select d from DeviceCode d where d.hostUuid = :" + ClientDetailsEntity.PARAM_HOST_UUID + " and d.deviceCode = :" + DeviceCode.PARAM_DEVICE_CODE),
-	@NamedQuery(name = DeviceCode.QUERY_EXPIRED_BY_DATE, query = "select d from DeviceCode d where d.expiration <= :" + DeviceCode.PARAM_DATE)
+	@NamedQuery(name = DeviceCode.QUERY_EXPIRED_BY_DATE, query = "select d from DeviceCode d where d.expiration <= :" + DeviceCode.PARAM_DATE),
+	@NamedQuery(name = DeviceCode.QUERY_EXPIRED_FIRST_PAGE, query = "select d from DeviceCode d where d.hostUuid = :" + ClientDetailsEntity.PARAM_HOST_UUID + " and d.expiration <= :" + DeviceCode.PARAM_DATE + " order by d.id"),
+	@NamedQuery(name = DeviceCode.QUERY_EXPIRED_AFTER_ID, query = "select d from DeviceCode d where d.hostUuid = :" + ClientDetailsEntity.PARAM_HOST_UUID + " and d.expiration <= :" + DeviceCode.PARAM_DATE + " and d.id > :" + DeviceCode.PARAM_LAST_ID + " order by d.id")
 })
 public class DeviceCode {
 
 	public static final String QUERY_BY_USER_CODE = "DeviceCode.queryByUserCode";
 	public static final String QUERY_BY_DEVICE_CODE = "DeviceCode.queryByDeviceCode";
 	public static final String QUERY_EXPIRED_BY_DATE = "DeviceCode.queryExpiredByDate";
+	public static final String QUERY_EXPIRED_FIRST_PAGE = "DeviceCode.queryExpiredFirstPage";
+	public static final String QUERY_EXPIRED_AFTER_ID = "DeviceCode.queryExpiredAfterId";
 
 	public static final String PARAM_USER_CODE = "userCode";
 	public static final String PARAM_DEVICE_CODE = "deviceCode";
 	public static final String PARAM_DATE = "date";
+	public static final String PARAM_LAST_ID = "lastId";
 
 	private String id;
 	private String hostUuid;
@@ -33,6 +33,8 @@ import javax.persistence.Column;
 import javax.persistence.Convert;
 import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
@@ -41,13 +43,17 @@ import javax.persistence.ManyToOne;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.OneToMany;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.Transient;
 
 import org.mitre.oauth2.model.convert.JWTStringConverter;
+import org.mitre.oauth2.service.SystemScopeService;
 import org.mitre.openid.connect.model.ApprovedSite;
 import org.mitre.uma.model.Permission;
+import org.mitre.util.HashUtils;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2AccessTokenJackson1Deserializer;
 import org.springframework.security.oauth2.common.OAuth2AccessTokenJackson1Serializer;
@@ -65,13 +71,29 @@ import com.nimbusds.jwt.JWT;
 @Table(name = "access_token")
 @NamedQueries({
 	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_ALL, query = "select a from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_ALL_FIRST_PAGE, query = "select a from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " order by a.id"),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_ALL_AFTER_ID, query = "select a from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.id > :" + OAuth2AccessTokenEntity.PARAM_LAST_ID + " order by a.id"),
 	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_EXPIRED_BY_DATE, query = "select a from OAuth2AccessTokenEntity a where a.expiration <= :" + OAuth2AccessTokenEntity.PARAM_DATE),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_EXPIRED_IDS_BY_HOST, query = "select a.id from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.expiration <= :" + OAuth2AccessTokenEntity.PARAM_DATE),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_BY_REFRESH_TOKEN_IDS, query = "select a from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.refreshToken.id in :" + OAuth2AccessTokenEntity.PARAM_REFRESH_TOKEN_IDS),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_IDS_BY_REFRESH_TOKEN_IDS, query = "select a.id from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.refreshToken.id in :" + OAuth2AccessTokenEntity.PARAM_REFRESH_TOKEN_IDS),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_IDS_BY_REFRESH_TOKEN, query = "select a.id from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.refreshToken = :" + OAuth2AccessTokenEntity.PARAM_REFERSH_TOKEN),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_IDS_BY_CLIENT, query = "select a.id from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.client = :" + OAuth2AccessTokenEntity.PARAM_CLIENT),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_IDS_BY_APPROVED_SITE, query = "select a.id from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.approvedSite = :" + OAuth2AccessTokenEntity.PARAM_APPROVED_SITE),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_REFRESH_TOKEN_IDS_BY_APPROVED_SITE, query = "select distinct a.refreshToken.id from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.approvedSite = :" + OAuth2AccessTokenEntity.PARAM_APPROVED_SITE),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_LIVE_HASHES_BY_IDS, query = "select a.tokenHash from OAuth2AccessTokenEntity a where a.id in :" + OAuth2AccessTokenEntity.PARAM_IDS + " and a.tokenHash is not null and (a.expiration is null or a.expiration > :" + OAuth2AccessTokenEntity.PARAM_DATE + ")"),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_IDS_BY_RESOURCE_SET, query = "select distinct a.id from OAuth2AccessTokenEntity a join a.permissions p where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and p.resourceSet.id = :" + OAuth2AccessTokenEntity.PARAM_RESOURCE_SET_ID),
 	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_BY_REFRESH_TOKEN, query = "select a from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.refreshToken = :" + OAuth2AccessTokenEntity.PARAM_REFERSH_TOKEN),
 	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_BY_CLIENT, query = "select a from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.client = :" + OAuth2AccessTokenEntity.PARAM_CLIENT),
-	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_BY_TOKEN_VALUE, query = "select a from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.jwt = :" + OAuth2AccessTokenEntity.PARAM_TOKEN_VALUE),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_BY_CLIENT_AND_KIND, query = "select a from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.client = :" + OAuth2AccessTokenEntity.PARAM_CLIENT + " and a.kind in :" + OAuth2AccessTokenEntity.PARAM_KINDS),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_BY_TOKEN_HASH, query = "select a from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.tokenHash = :" + OAuth2AccessTokenEntity.PARAM_TOKEN_HASH),
 	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_BY_APPROVED_SITE, query = "select a from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.approvedSite = :" + OAuth2AccessTokenEntity.PARAM_APPROVED_SITE),
 	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_BY_RESOURCE_SET, query = "select a from OAuth2AccessTokenEntity a join a.permissions p where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and p.resourceSet.id = :" + OAuth2AccessTokenEntity.PARAM_RESOURCE_SET_ID),
-	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_BY_NAME, query = "select a from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.authenticationHolder.userAuth.name = :" + OAuth2AccessTokenEntity.PARAM_NAME)
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_BY_NAME, query = "select a from OAuth2AccessTokenEntity a where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.authenticationHolder.userAuth.name = :" + OAuth2AccessTokenEntity.PARAM_NAME),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_SET_CLIENT, query = "update OAuth2AccessTokenEntity a set a.client = :" + OAuth2AccessTokenEntity.PARAM_CLIENT + " where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.id in :" + OAuth2AccessTokenEntity.PARAM_IDS),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_SET_AUTH_HOLDER, query = "update OAuth2AccessTokenEntity a set a.authenticationHolder = :" + OAuth2AccessTokenEntity.PARAM_AUTH_HOLDER + " where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.id in :" + OAuth2AccessTokenEntity.PARAM_IDS),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_SET_REFRESH_TOKEN, query = "update OAuth2AccessTokenEntity a set a.refreshToken = :" + OAuth2AccessTokenEntity.PARAM_REFERSH_TOKEN + " where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.id in :" + OAuth2AccessTokenEntity.PARAM_IDS),
+	@NamedQuery(name = OAuth2AccessTokenEntity.QUERY_SET_APPROVED_SITE, query = "update OAuth2AccessTokenEntity a set a.approvedSite = :" + OAuth2AccessTokenEntity.PARAM_APPROVED_SITE + " where a.hostUuid = :" + OAuth2AccessTokenEntity.PARAM_HOST_UUID + " and a.id in :" + OAuth2AccessTokenEntity.PARAM_IDS)
 })
 @org.codehaus.jackson.map.annotate.JsonSerialize(using = OAuth2AccessTokenJackson1Serializer.class)
 @org.codehaus.jackson.map.annotate.JsonDeserialize(using = OAuth2AccessTokenJackson1Deserializer.class)
@@ -80,25 +102,75 @@ import com.nimbusds.jwt.JWT;
 public class OAuth2AccessTokenEntity implements OAuth2AccessToken {
 
 	public static final String QUERY_BY_APPROVED_SITE = "OAuth2AccessTokenEntity.getByApprovedSite";
-	public static final String QUERY_BY_TOKEN_VALUE = "OAuth2AccessTokenEntity.getByTokenValue";
+	public static final String QUERY_BY_TOKEN_HASH = "OAuth2AccessTokenEntity.getByTokenHash";
 	public static final String QUERY_BY_CLIENT = "OAuth2AccessTokenEntity.getByClient";
+	public static final String QUERY_BY_CLIENT_AND_KIND = "OAuth2AccessTokenEntity.getByClientAndKind";
 	public static final String QUERY_BY_REFRESH_TOKEN = "OAuth2AccessTokenEntity.getByRefreshToken";
 	public static final String QUERY_EXPIRED_BY_DATE = "OAuth2AccessTokenEntity.getAllExpiredByDate";
+	public static final String QUERY_EXPIRED_IDS_BY_HOST = "OAuth2AccessTokenEntity.getExpiredIdsByHost";
+	public static final String QUERY_BY_REFRESH_TOKEN_IDS = "OAuth2AccessTokenEntity.getByRefreshTokenIds";
+	public static final String QUERY_IDS_BY_REFRESH_TOKEN_IDS = "OAuth2AccessTokenEntity.getIdsByRefreshTokenIds";
+	public static final String QUERY_IDS_BY_REFRESH_TOKEN = "OAuth2AccessTokenEntity.getIdsByRefreshToken";
+	public static final String QUERY_IDS_BY_CLIENT = "OAuth2AccessTokenEntity.getIdsByClient";
+	public static final String QUERY_IDS_BY_APPROVED_SITE = "OAuth2AccessTokenEntity.getIdsByApprovedSite";
+	public static final String QUERY_REFRESH_TOKEN_IDS_BY_APPROVED_SITE = "OAuth2AccessTokenEntity.getRefreshTokenIdsByApprovedSite";
+	public static final String QUERY_IDS_BY_RESOURCE_SET = "OAuth2AccessTokenEntity.getIdsByResourceSet";
+	public static final String QUERY_LIVE_HASHES_BY_IDS = "OAuth2AccessTokenEntity.getLiveHashesByIds";
 	public static final String QUERY_ALL = "OAuth2AccessTokenEntity.getAll";
+	public static final String QUERY_ALL_FIRST_PAGE = "OAuth2AccessTokenEntity.getAllFirstPage";
+	public static final String QUERY_ALL_AFTER_ID = "OAuth2AccessTokenEntity.getAllAfterId";
 	public static final String QUERY_BY_RESOURCE_SET = "OAuth2AccessTokenEntity.getByResourceSet";
 	public static final String QUERY_BY_NAME = "OAuth2AccessTokenEntity.getByName";
+	public static final String QUERY_SET_CLIENT = "OAuth2AccessTokenEntity.setClient";
+	public static final String QUERY_SET_AUTH_HOLDER = "OAuth2AccessTokenEntity.setAuthenticationHolder";
+	public static final String QUERY_SET_REFRESH_TOKEN = "OAuth2AccessTokenEntity.setRefreshToken";
+	public static final String QUERY_SET_APPROVED_SITE = "OAuth2AccessTokenEntity.setApprovedSite";
 
 	public static final String PARAM_HOST_UUID = "hostUuid";
-	public static final String PARAM_TOKEN_VALUE = "tokenValue";
+	public static final String PARAM_TOKEN_HASH = "tokenHash";
 	public static final String PARAM_CLIENT = "client";
 	public static final String PARAM_REFERSH_TOKEN = "refreshToken";
 	public static final String PARAM_DATE = "date";
+	public static final String PARAM_REFRESH_TOKEN_IDS = "refreshTokenIds";
 	public static final String PARAM_RESOURCE_SET_ID = "rsid";
 	public static final String PARAM_APPROVED_SITE = "approvedSite";
 	public static final String PARAM_NAME = "name";
+	public static final String PARAM_LAST_ID = "lastId";
+	public static final String PARAM_AUTH_HOLDER = "authHolder";
+	public static final String PARAM_IDS = "ids";
+	public static final String PARAM_KINDS = "kinds";
 
 	public static final String ID_TOKEN_FIELD_NAME = "id_token";
 
+	// claims carried by access tokens that can be validated without a database lookup
+	public static final String SCOPE_CLAIM = "scope";
+	public static final String CLIENT_AUTHORITIES_CLAIM = "client_authorities";
+	public static final String USER_AUTHORITIES_CLAIM = "user_authorities";
+	public static final String RESOURCE_IDS_CLAIM = "resource_ids";
+	public static final String CLIENT_ONLY_CLAIM = "client_only";
+
+	/**
+	 * What a token is for. Registration and resource tokens only carry the
+	 * registration-token or resource-token scope, and are looked up by client.
+	 */
+	public enum TokenKind {
+		ACCESS, REGISTRATION, RESOURCE;
+
+		/**
+		 * @return the kind of a token with the given scope
+		 */
+		public static TokenKind forScope(Set<String> scope) {
+			if (scope != null && scope.size() == 1) {
+				if (scope.contains(SystemScopeService.REGISTRATION_TOKEN_SCOPE)) {
+					return REGISTRATION;
+				} else if (scope.contains(SystemScopeService.RESOURCE_TOKEN_SCOPE)) {
+					return RESOURCE;
+				}
+			}
+			return ACCESS;
+		}
+	}
+
 	private String id;
 	
 	private String hostUuid;
@@ -109,10 +181,14 @@ public class OAuth2AccessTokenEntity implements OAuth2AccessToken {
 
 	private JWT jwtValue; // JWT-encoded access token value
 
+	private String tokenHash; // SHA-256 of the encoded value, used for lookups
+
 	private Date expiration;
 
 	private String tokenType = OAuth2AccessToken.BEARER_TYPE;
 
+	private TokenKind kind = TokenKind.ACCESS;
+
 	private OAuth2RefreshTokenEntity refreshToken;
 
 	private Set<String> scope;
@@ -227,6 +303,19 @@ public class OAuth2AccessTokenEntity implements OAuth2AccessToken {
 		this.tokenType = tokenType;
 	}
 
+	/**
+	 * @return what this token is for, rows written before this column existed may have none
+	 */
+	@Enumerated(EnumType.STRING)
+	@Column(name="token_kind")
+	public TokenKind getKind() {
+		return kind;
+	}
+
+	public void setKind(TokenKind kind) {
+		this.kind = kind;
+	}
+
 	@Override
 	@ManyToOne
 	@JoinColumn(name="refresh_token_uuid")
@@ -277,10 +366,37 @@ public class OAuth2AccessTokenEntity implements OAuth2AccessToken {
 	}
 
 	/**
-	 * @param jwtValue the jwtValue to set
+	 * @param jwtValue the jwtValue to set, also updates the token hash
 	 */
 	public void setJwt(JWT jwt) {
 		this.jwtValue = jwt;
+		this.tokenHash = HashUtils.sha256(jwt);
+	}
+
+	/**
+	 * Recompute the token hash from the JWT as it is written, since the JWT may
+	 * have been signed in place after it was set on this token.
+	 */
+	@PrePersist
+	@PreUpdate
+	private void updateTokenHash() {
+		this.tokenHash = HashUtils.sha256(jwtValue);
+	}
+
+	/**
+	 * @return the SHA-256 hash of the encoded token value
+	 */
+	@Basic
+	@Column(name="token_hash")
+	public String getTokenHash() {
+		return tokenHash;
+	}
+
+	/**
+	 * @param tokenHash the tokenHash to set
+	 */
+	public void setTokenHash(String tokenHash) {
+		this.tokenHash = tokenHash;
 	}
 
 	@Override
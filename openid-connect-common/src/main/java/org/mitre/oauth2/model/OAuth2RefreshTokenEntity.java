@@ -33,11 +33,14 @@ import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.Transient;
 
 import org.mitre.oauth2.model.convert.JWTStringConverter;
+import org.mitre.util.HashUtils;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 
 import com.nimbusds.jwt.JWT;
@@ -50,24 +53,39 @@ import com.nimbusds.jwt.JWT;
 @Table(name = "refresh_token")
 @NamedQueries({
 	@NamedQuery(name = OAuth2RefreshTokenEntity.QUERY_ALL, query = "select r from OAuth2RefreshTokenEntity r where r.hostUuid = :hostUuid"),
+	@NamedQuery(name = OAuth2RefreshTokenEntity.QUERY_ALL_FIRST_PAGE, query = "select r from OAuth2RefreshTokenEntity r where r.hostUuid = :hostUuid order by r.id"),
+	@NamedQuery(name = OAuth2RefreshTokenEntity.QUERY_ALL_AFTER_ID, query = "select r from OAuth2RefreshTokenEntity r where r.hostUuid = :hostUuid and r.id > :" + OAuth2RefreshTokenEntity.PARAM_LAST_ID + " order by r.id"),
 	@NamedQuery(name = OAuth2RefreshTokenEntity.QUERY_EXPIRED_BY_DATE, query = "select r from OAuth2RefreshTokenEntity r where r.expiration <= :" + OAuth2RefreshTokenEntity.PARAM_DATE),
+	@NamedQuery(name = OAuth2RefreshTokenEntity.QUERY_EXPIRED_IDS_BY_HOST, query = "select r.id from OAuth2RefreshTokenEntity r where r.hostUuid = :hostUuid and r.expiration <= :" + OAuth2RefreshTokenEntity.PARAM_DATE),
+	@NamedQuery(name = OAuth2RefreshTokenEntity.QUERY_IDS_BY_CLIENT, query = "select r.id from OAuth2RefreshTokenEntity r where r.hostUuid = :hostUuid and r.client = :" + OAuth2RefreshTokenEntity.PARAM_CLIENT),
 	@NamedQuery(name = OAuth2RefreshTokenEntity.QUERY_BY_CLIENT, query = "select r from OAuth2RefreshTokenEntity r where r.hostUuid = :hostUuid and r.client = :" + OAuth2RefreshTokenEntity.PARAM_CLIENT),
-	@NamedQuery(name = OAuth2RefreshTokenEntity.QUERY_BY_TOKEN_VALUE, query = "select r from OAuth2RefreshTokenEntity r where r.hostUuid = :hostUuid and r.jwt = :" + OAuth2RefreshTokenEntity.PARAM_TOKEN_VALUE),
-	@NamedQuery(name = OAuth2RefreshTokenEntity.QUERY_BY_NAME, query = "select r from OAuth2RefreshTokenEntity r where r.hostUuid = :hostUuid and r.authenticationHolder.userAuth.name = :" + OAuth2RefreshTokenEntity.PARAM_NAME)
+	@NamedQuery(name = OAuth2RefreshTokenEntity.QUERY_BY_TOKEN_HASH, query = "select r from OAuth2RefreshTokenEntity r where r.hostUuid = :hostUuid and r.tokenHash = :" + OAuth2RefreshTokenEntity.PARAM_TOKEN_HASH),
+	@NamedQuery(name = OAuth2RefreshTokenEntity.QUERY_BY_NAME, query = "select r from OAuth2RefreshTokenEntity r where r.hostUuid = :hostUuid and r.authenticationHolder.userAuth.name = :" + OAuth2RefreshTokenEntity.PARAM_NAME),
+	@NamedQuery(name = OAuth2RefreshTokenEntity.QUERY_SET_CLIENT, query = "update OAuth2RefreshTokenEntity r set r.client = :" + OAuth2RefreshTokenEntity.PARAM_CLIENT + " where r.hostUuid = :hostUuid and r.id in :" + OAuth2RefreshTokenEntity.PARAM_IDS),
+	@NamedQuery(name = OAuth2RefreshTokenEntity.QUERY_SET_AUTH_HOLDER, query = "update OAuth2RefreshTokenEntity r set r.authenticationHolder = :" + OAuth2RefreshTokenEntity.PARAM_AUTH_HOLDER + " where r.hostUuid = :hostUuid and r.id in :" + OAuth2RefreshTokenEntity.PARAM_IDS)
 })
 public class OAuth2RefreshTokenEntity implements OAuth2RefreshToken {
 
-	public static final String QUERY_BY_TOKEN_VALUE = "OAuth2RefreshTokenEntity.getByTokenValue";
+	public static final String QUERY_BY_TOKEN_HASH = "OAuth2RefreshTokenEntity.getByTokenHash";
 	public static final String QUERY_BY_CLIENT = "OAuth2RefreshTokenEntity.getByClient";
+	public static final String QUERY_IDS_BY_CLIENT = "OAuth2RefreshTokenEntity.getIdsByClient";
 	public static final String QUERY_EXPIRED_BY_DATE = "OAuth2RefreshTokenEntity.getAllExpiredByDate";
+	public static final String QUERY_EXPIRED_IDS_BY_HOST = "OAuth2RefreshTokenEntity.getExpiredIdsByHost";
 	public static final String QUERY_ALL = "OAuth2RefreshTokenEntity.getAll";
+	public static final String QUERY_ALL_FIRST_PAGE = "OAuth2RefreshTokenEntity.getAllFirstPage";
+	public static final String QUERY_ALL_AFTER_ID = "OAuth2RefreshTokenEntity.getAllAfterId";
 	public static final String QUERY_BY_NAME = "OAuth2RefreshTokenEntity.getByName";
+	public static final String QUERY_SET_CLIENT = "OAuth2RefreshTokenEntity.setClient";
+	public static final String QUERY_SET_AUTH_HOLDER = "OAuth2RefreshTokenEntity.setAuthenticationHolder";
 
 	public static final String PARAM_HOST_UUID = "hostUuid";
-	public static final String PARAM_TOKEN_VALUE = "tokenValue";
+	public static final String PARAM_TOKEN_HASH = "tokenHash";
 	public static final String PARAM_CLIENT = "client";
 	public static final String PARAM_DATE = "date";
 	public static final String PARAM_NAME = "name";
+	public static final String PARAM_LAST_ID = "lastId";
+	public static final String PARAM_AUTH_HOLDER = "authHolder";
+	public static final String PARAM_IDS = "ids";
 
 	private String id;
 	
@@ -80,6 +98,9 @@ public class OAuth2RefreshTokenEntity implements OAuth2RefreshToken {
 	//JWT-encoded representation of this access token entity
 	private JWT jwt;
 
+	// SHA-256 of the encoded value, used for lookups
+	private String tokenHash;
+
 	// our refresh tokens might expire
 	private Date expiration;
 
@@ -194,10 +215,37 @@ public class OAuth2RefreshTokenEntity implements OAuth2RefreshToken {
 	}
 
 	/**
-	 * @param jwt the jwt to set
+	 * @param jwt the jwt to set, also updates the token hash
 	 */
 	public void setJwt(JWT jwt) {
 		this.jwt = jwt;
+		this.tokenHash = HashUtils.sha256(jwt);
+	}
+
+	/**
+	 * Recompute the token hash from the JWT as it is written, since the JWT may
+	 * have been signed in place after it was set on this token.
+	 */
+	@PrePersist
+	@PreUpdate
+	private void updateTokenHash() {
+		this.tokenHash = HashUtils.sha256(jwt);
+	}
+
+	/**
+	 * @return the SHA-256 hash of the encoded token value
+	 */
+	@Basic
+	@Column(name="token_hash")
+	public String getTokenHash() {
+		return tokenHash;
+	}
+
+	/**
+	 * @param tokenHash the tokenHash to set
+	 */
+	public void setTokenHash(String tokenHash) {
+		this.tokenHash = tokenHash;
 	}
 
 }
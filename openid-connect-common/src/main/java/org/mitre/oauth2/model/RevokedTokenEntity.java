@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Portions copyright 2011-2013 The MITRE Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.oauth2.model;
+
+import java.util.Date;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+
+/**
+ * Record of an access token that was revoked before it expired, identified by
+ * its token hash. These are kept until the token would have expired so that
+ * access tokens can be validated without loading them from the database.
+ *
+ */
+@Entity
+@Table(name = "revoked_token")
+@NamedQueries({
+	@NamedQuery(name = RevokedTokenEntity.QUERY_ACTIVE_HASHES, query = "select r.tokenHash from RevokedTokenEntity r where r.expiration is null or r.expiration > :" + RevokedTokenEntity.PARAM_DATE),
+	@NamedQuery(name = RevokedTokenEntity.QUERY_HASHES_REVOKED_SINCE, query = "select r.tokenHash from RevokedTokenEntity r where r.revoked >= :" + RevokedTokenEntity.PARAM_DATE),
+	@NamedQuery(name = RevokedTokenEntity.QUERY_BY_HASH, query = "select r from RevokedTokenEntity r where r.tokenHash = :" + RevokedTokenEntity.PARAM_TOKEN_HASH),
+	@NamedQuery(name = RevokedTokenEntity.DELETE_EXPIRED_BY_DATE, query = "delete from RevokedTokenEntity r where r.expiration <= :" + RevokedTokenEntity.PARAM_DATE)
+})
+public class RevokedTokenEntity {
+
+	public static final String QUERY_ACTIVE_HASHES = "RevokedTokenEntity.getActiveHashes";
+	public static final String QUERY_HASHES_REVOKED_SINCE = "RevokedTokenEntity.getHashesRevokedSince";
+	public static final String QUERY_BY_HASH = "RevokedTokenEntity.getByHash";
+	public static final String DELETE_EXPIRED_BY_DATE = "RevokedTokenEntity.deleteExpiredByDate";
+
+	public static final String PARAM_DATE = "date";
+	public static final String PARAM_TOKEN_HASH = "tokenHash";
+
+	private String tokenHash;
+
+	private String hostUuid;
+
+	private Date expiration;
+
+	private Date revoked;
+
+	public RevokedTokenEntity() {
+
+	}
+
+	public RevokedTokenEntity(OAuth2AccessTokenEntity token) {
+		this.tokenHash = token.getTokenHash();
+		this.hostUuid = token.getHostUuid();
+		this.expiration = token.getExpiration();
+		this.revoked = new Date();
+	}
+
+	@Id
+	@Column(name = "token_hash")
+	public String getTokenHash() {
+		return tokenHash;
+	}
+
+	public void setTokenHash(String tokenHash) {
+		this.tokenHash = tokenHash;
+	}
+
+	@Basic
+	@Column(name = "host_uuid")
+	public String getHostUuid() {
+		return hostUuid;
+	}
+
+	public void setHostUuid(String hostUuid) {
+		this.hostUuid = hostUuid;
+	}
+
+	/**
+	 * @return when the revoked token would have expired, after which this record can go
+	 */
+	@Basic
+	@Temporal(javax.persistence.TemporalType.TIMESTAMP)
+	@Column(name = "expiration")
+	public Date getExpiration() {
+		return expiration;
+	}
+
+	public void setExpiration(Date expiration) {
+		this.expiration = expiration;
+	}
+
+	@Basic
+	@Temporal(javax.persistence.TemporalType.TIMESTAMP)
+	@Column(name = "revoked")
+	public Date getRevoked() {
+		return revoked;
+	}
+
+	public void setRevoked(Date revoked) {
+		this.revoked = revoked;
+	}
+
+}
@@ -25,13 +25,38 @@ import org.mitre.oauth2.model.AuthenticationHolderEntity;
 public interface AuthenticationHolderRepository {
 	public List<AuthenticationHolderEntity> getAll();
 
+	/**
+	 * Get the page of the current host's authentication holders that follows the given id, in id order.
+	 *
+	 * @param lastId the id of the last holder of the previous page, or null for the first page
+	 * @param pageSize the maximum number of holders to return
+	 */
+	public List<AuthenticationHolderEntity> getAllAfterId(String lastId, int pageSize);
+
 	public AuthenticationHolderEntity getById(String uuid);
 
 	public void remove(AuthenticationHolderEntity a);
 
 	public AuthenticationHolderEntity save(AuthenticationHolderEntity a);
 
+	/**
+	 * Add a new authentication holder without flushing it, so that bulk imports
+	 * write their inserts together when the transaction flushes or commits.
+	 *
+	 * @return the holder, now managed
+	 */
+	public AuthenticationHolderEntity persist(AuthenticationHolderEntity a);
+
 	public List<AuthenticationHolderEntity> getOrphanedAuthenticationHolders();
 
 	public List<AuthenticationHolderEntity> getOrphanedAuthenticationHolders(PageCriteria pageCriteria);
+
+	/**
+	 * Delete one batch of the given host's authentication holders that are no longer
+	 * referenced by any token or authorization code, together with their collections
+	 * and saved user authentication.
+	 *
+	 * @return the number of authentication holders removed
+	 */
+	public int purgeOrphanedAuthenticationHolders(String hostUuid, int batchSize);
 }
@@ -18,6 +18,7 @@
 package org.mitre.oauth2.repository;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.mitre.data.PageCriteria;
 import org.mitre.oauth2.model.AuthorizationCodeEntity;
@@ -31,7 +32,8 @@ import org.mitre.oauth2.model.AuthorizationCodeEntity;
 public interface AuthorizationCodeRepository {
 
 	/**
-	 * Save an AuthorizationCodeEntity to the repository
+	 * Save an AuthorizationCodeEntity to the repository, along with its
+	 * authentication holder if the repository needs it stored.
 	 *
 	 * @param authorizationCode the AuthorizationCodeEntity to save
 	 * @return					the saved AuthorizationCodeEntity
@@ -46,6 +48,16 @@ public interface AuthorizationCodeRepository {
 	 */
 	public AuthorizationCodeEntity getByCode(String code);
 
+	/**
+	 * Remove an authorization code of the current host from the repository and
+	 * return it, as one atomic step: of several concurrent calls for the same
+	 * code, only one gets it.
+	 *
+	 * @param code						the authorization code value
+	 * @return							the removed code, or null if there is none
+	 */
+	public AuthorizationCodeEntity consume(String code);
+
 	/**
 	 * Remove an authorization code from the repository
 	 *
@@ -64,4 +76,11 @@ public interface AuthorizationCodeRepository {
 	 */
 	public Collection<AuthorizationCodeEntity> getExpiredCodes(PageCriteria pageCriteria);
 
+	/**
+	 * @return The next page of expired codes of the current host with an
+	 * id greater than the given one, or the first page if it is null,
+	 * ordered by id.
+	 */
+	public List<AuthorizationCodeEntity> getExpiredCodes(String lastId, int pageSize);
+
 }
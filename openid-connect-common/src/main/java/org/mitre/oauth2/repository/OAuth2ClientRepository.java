@@ -18,6 +18,7 @@
 package org.mitre.oauth2.repository;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.mitre.oauth2.model.ClientDetailsEntity;
 
@@ -27,6 +28,20 @@ public interface OAuth2ClientRepository {
 
 	public ClientDetailsEntity getClientByClientId(String clientId);
 
+	/**
+	 * Read the client with the given client ID outside of any transaction, so that it is
+	 * detached from the start and can be cached.
+	 *
+	 * @return the client, or null if the current host has none with that client ID
+	 */
+	public ClientDetailsEntity getDetachedClientByClientId(String clientId);
+
+	/**
+	 * @return the version of the client with the given client ID, which every save bumps,
+	 * or null if the current host has none with that client ID
+	 */
+	public Long getClientVersion(String clientId);
+
 	public ClientDetailsEntity saveClient(ClientDetailsEntity client);
 
 	public void deleteClient(ClientDetailsEntity client);
@@ -35,5 +50,13 @@ public interface OAuth2ClientRepository {
 
 	public Collection<ClientDetailsEntity> getAllClients();
 
+	/**
+	 * Get the page of the current host's clients that follows the given id, in id order.
+	 *
+	 * @param lastId the id of the last client of the previous page, or null for the first page
+	 * @param pageSize the maximum number of clients to return
+	 */
+	public List<ClientDetailsEntity> getClientsAfterId(String lastId, int pageSize);
+
 
 }
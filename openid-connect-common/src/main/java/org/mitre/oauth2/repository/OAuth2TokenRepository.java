@@ -17,10 +17,13 @@
  *******************************************************************************/
 package org.mitre.oauth2.repository;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
 
 import org.mitre.data.PageCriteria;
+import org.mitre.oauth2.model.AuthenticationHolderEntity;
 import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
 import org.mitre.oauth2.model.OAuth2RefreshTokenEntity;
@@ -31,26 +34,62 @@ public interface OAuth2TokenRepository {
 
 	public OAuth2AccessTokenEntity saveAccessToken(OAuth2AccessTokenEntity token);
 
+	/**
+	 * Add a new access token without flushing it, so that bulk imports write their
+	 * inserts together when the transaction flushes or commits.
+	 *
+	 * @return the token, now managed
+	 */
+	public OAuth2AccessTokenEntity persistAccessToken(OAuth2AccessTokenEntity token);
+
 	public OAuth2RefreshTokenEntity getRefreshTokenByValue(String refreshTokenValue);
 
 	public OAuth2RefreshTokenEntity getRefreshTokenById(String uuid);
 
-	public void clearAccessTokensForRefreshToken(OAuth2RefreshTokenEntity refreshToken);
+	/**
+	 * Delete the access tokens issued from the given refresh token with set-based
+	 * statements, recording the live ones as revoked.
+	 *
+	 * @param revokedHashes collects the hashes of the live access tokens that were revoked
+	 * @return the number of access tokens removed
+	 */
+	public int clearAccessTokensForRefreshToken(OAuth2RefreshTokenEntity refreshToken, Collection<String> revokedHashes);
 
 	public void removeRefreshToken(OAuth2RefreshTokenEntity refreshToken);
 
 	public OAuth2RefreshTokenEntity saveRefreshToken(OAuth2RefreshTokenEntity refreshToken);
 
+	/**
+	 * Add a new refresh token without flushing it, so that bulk imports write their
+	 * inserts together when the transaction flushes or commits.
+	 *
+	 * @return the token, now managed
+	 */
+	public OAuth2RefreshTokenEntity persistRefreshToken(OAuth2RefreshTokenEntity refreshToken);
+
 	public OAuth2AccessTokenEntity getAccessTokenByValue(String accessTokenValue);
 
 	public OAuth2AccessTokenEntity getAccessTokenById(String uuid);
 
 	public void removeAccessToken(OAuth2AccessTokenEntity accessToken);
 
-	public void clearTokensForClient(ClientDetailsEntity client);
+	/**
+	 * Delete all access and refresh tokens of the given client with set-based
+	 * statements, recording the live access tokens as revoked.
+	 *
+	 * @param revokedHashes collects the hashes of the live access tokens that were revoked
+	 * @return the number of access and refresh tokens removed
+	 */
+	public int clearTokensForClient(ClientDetailsEntity client, Collection<String> revokedHashes);
 
 	public List<OAuth2AccessTokenEntity> getAccessTokensForClient(ClientDetailsEntity client);
 
+	/**
+	 * @return the registration or resource token of the given client, found by its
+	 * token kind, or null if it has none
+	 */
+	public OAuth2AccessTokenEntity getRegistrationAccessTokenForClient(ClientDetailsEntity client);
+
 	public List<OAuth2RefreshTokenEntity> getRefreshTokensForClient(ClientDetailsEntity client);
 	
 	public Set<OAuth2AccessTokenEntity> getAccessTokensByUserName(String name);
@@ -61,6 +100,22 @@ public interface OAuth2TokenRepository {
 
 	public Set<OAuth2RefreshTokenEntity> getAllRefreshTokens();
 
+	/**
+	 * Get the page of the current host's access tokens that follows the given id, in id order.
+	 *
+	 * @param lastId the id of the last token of the previous page, or null for the first page
+	 * @param pageSize the maximum number of tokens to return
+	 */
+	public List<OAuth2AccessTokenEntity> getAccessTokensAfterId(String lastId, int pageSize);
+
+	/**
+	 * Get the page of the current host's refresh tokens that follows the given id, in id order.
+	 *
+	 * @param lastId the id of the last token of the previous page, or null for the first page
+	 * @param pageSize the maximum number of tokens to return
+	 */
+	public List<OAuth2RefreshTokenEntity> getRefreshTokensAfterId(String lastId, int pageSize);
+
 	public Set<OAuth2AccessTokenEntity> getAllExpiredAccessTokens();
 
 	public Set<OAuth2AccessTokenEntity> getAllExpiredAccessTokens(PageCriteria pageCriteria);
@@ -71,6 +126,33 @@ public interface OAuth2TokenRepository {
 
 	public Set<OAuth2AccessTokenEntity> getAccessTokensForResourceSet(ResourceSet rs);
 
+	/**
+	 * Delete the access tokens that carry a permission for the given resource set
+	 * with set-based statements, recording the live ones as revoked.
+	 *
+	 * @param revokedHashes collects the hashes of the live access tokens that were revoked
+	 * @return the number of access tokens removed
+	 */
+	public int clearAccessTokensForResourceSet(ResourceSet rs, Collection<String> revokedHashes);
+
+	/**
+	 * Delete one batch of the given host's access tokens that expired on or before
+	 * the given date, together with their scopes and permissions, using set-based
+	 * statements instead of loading the entities. Call repeatedly until fewer than
+	 * {@code batchSize} tokens are reported.
+	 *
+	 * @return the number of access tokens removed
+	 */
+	public int purgeExpiredAccessTokens(String hostUuid, Date date, int batchSize);
+
+	/**
+	 * Delete one batch of the given host's refresh tokens that expired on or before
+	 * the given date, together with the access tokens still issued from them.
+	 *
+	 * @return the number of refresh tokens removed
+	 */
+	public int purgeExpiredRefreshTokens(String hostUuid, Date date, int batchSize);
+
 	/**
 	 * removes duplicate access tokens.
 	 *
@@ -97,4 +179,59 @@ public interface OAuth2TokenRepository {
 
 	public List<OAuth2AccessTokenEntity> getAccessTokensForApprovedSite(ApprovedSite approvedSite);
 
+	/**
+	 * Delete the access tokens issued under the given approved site and the refresh
+	 * tokens they were issued from, along with any other access tokens of those
+	 * refresh tokens, with set-based statements. The live access tokens are
+	 * recorded as revoked.
+	 *
+	 * @param revokedHashes collects the hashes of the live access tokens that were revoked
+	 * @return the number of access and refresh tokens removed
+	 */
+	public int clearTokensForApprovedSite(ApprovedSite approvedSite, Collection<String> revokedHashes);
+
+	/**
+	 * Point the given access tokens of the current host at a client with set-based
+	 * updates instead of loading and saving each token. Used by the data import, where
+	 * tokens can be read before the objects they refer to.
+	 *
+	 * @return the number of access tokens updated
+	 */
+	public int setAccessTokensClient(Collection<String> accessTokenIds, ClientDetailsEntity client);
+
+	/**
+	 * Point the given access tokens of the current host at an authentication holder.
+	 *
+	 * @return the number of access tokens updated
+	 */
+	public int setAccessTokensAuthenticationHolder(Collection<String> accessTokenIds, AuthenticationHolderEntity authHolder);
+
+	/**
+	 * Point the given access tokens of the current host at the refresh token they were issued from.
+	 *
+	 * @return the number of access tokens updated
+	 */
+	public int setAccessTokensRefreshToken(Collection<String> accessTokenIds, OAuth2RefreshTokenEntity refreshToken);
+
+	/**
+	 * Point the given access tokens of the current host at the approved site they were issued under.
+	 *
+	 * @return the number of access tokens updated
+	 */
+	public int setAccessTokensApprovedSite(Collection<String> accessTokenIds, ApprovedSite approvedSite);
+
+	/**
+	 * Point the given refresh tokens of the current host at a client.
+	 *
+	 * @return the number of refresh tokens updated
+	 */
+	public int setRefreshTokensClient(Collection<String> refreshTokenIds, ClientDetailsEntity client);
+
+	/**
+	 * Point the given refresh tokens of the current host at an authentication holder.
+	 *
+	 * @return the number of refresh tokens updated
+	 */
+	public int setRefreshTokensAuthenticationHolder(Collection<String> refreshTokenIds, AuthenticationHolderEntity authHolder);
+
 }
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Portions copyright 2011-2013 The MITRE Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.oauth2.repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+
+/**
+ * Revocation records for access tokens, across all hosts.
+ */
+public interface RevokedTokenRepository {
+
+	/**
+	 * Record the given access token as revoked.
+	 */
+	public void save(OAuth2AccessTokenEntity token);
+
+	/**
+	 * Record the access tokens with the given ids as revoked, in bulk and
+	 * without loading them. Tokens that have expired are left out, as in
+	 * {@link #save(OAuth2AccessTokenEntity)}.
+	 * @return the number of records added
+	 */
+	public int saveAll(Collection<String> accessTokenIds);
+
+	public boolean isRevoked(String tokenHash);
+
+	/**
+	 * @return the hashes of all revoked tokens that have not expired yet
+	 */
+	public List<String> getActiveTokenHashes();
+
+	/**
+	 * @return the hashes of all tokens revoked at or after the given date
+	 */
+	public List<String> getTokenHashesRevokedSince(Date date);
+
+	/**
+	 * Remove the records of revoked tokens that have expired by now.
+	 * @return the number of records removed
+	 */
+	public int clearExpired();
+}
@@ -17,6 +17,7 @@
 package org.mitre.oauth2.repository.impl;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.mitre.oauth2.model.DeviceCode;
 
@@ -60,4 +61,11 @@ public interface DeviceCodeRepository {
 	 */
 	public Collection<DeviceCode> getExpiredCodes();
 
+	/**
+	 * @param lastId the id of the last code of the previous page, or null for the first page
+	 * @param pageSize
+	 * @return the next page of expired codes of the current host with an id greater than lastId, ordered by id
+	 */
+	public List<DeviceCode> getExpiredCodes(String lastId, int pageSize);
+
 }
@@ -50,6 +50,24 @@ public interface DeviceCodeService {
 	 */
 	public DeviceCode findDeviceCode(String deviceCode, ClientDetails client);
 
+	/**
+	 * Handle a poll of the token endpoint by the device holding the given code.
+	 * Polls are answered from memory until the code has been approved, so only
+	 * then is the code read again.
+	 *
+	 * @param deviceCode
+	 * @param client
+	 * @return the device code, once it has been approved
+	 * @throws org.springframework.security.oauth2.common.exceptions.OAuth2Exception with the
+	 * error invalid_grant, expired_token, authorization_pending or slow_down otherwise
+	 */
+	public DeviceCode pollDeviceCode(String deviceCode, ClientDetails client);
+
+	/**
+	 * @return the minimum number of seconds a device has to wait between polls
+	 */
+	public int getPollingInterval();
+
 
 	/**
 	 * 
@@ -68,6 +86,10 @@ public interface DeviceCodeService {
 	 */
 	public DeviceCode createNewDeviceCode(Set<String> requestedScopes, ClientDetailsEntity client, Map<String, String> parameters) throws DeviceCodeCreationException;
 
-
-	public void clearExpiredDeviceCodes();
+	/**
+	 * Remove the expired device codes of the current host.
+	 *
+	 * @return the number of codes removed
+	 */
+	public int clearExpiredDeviceCodes();
 }
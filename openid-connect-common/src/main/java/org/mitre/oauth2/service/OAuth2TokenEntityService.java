@@ -42,7 +42,21 @@ public interface OAuth2TokenEntityService extends AuthorizationServerTokenServic
 
 	public List<OAuth2RefreshTokenEntity> getRefreshTokensForClient(ClientDetailsEntity client);
 
-	public void clearExpiredTokens();
+	/**
+	 * Remove the expired tokens of the current host, and any authentication
+	 * holders left without a token.
+	 *
+	 * @return the number of rows removed
+	 */
+	public int clearExpiredTokens();
+
+	/**
+	 * Remove the revocation records of tokens that have expired by now, for
+	 * all hosts.
+	 *
+	 * @return the number of records removed
+	 */
+	public int clearExpiredRevocations();
 
 	public OAuth2AccessTokenEntity saveAccessToken(OAuth2AccessTokenEntity accessToken);
 
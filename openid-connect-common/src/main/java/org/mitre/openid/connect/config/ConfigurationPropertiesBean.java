@@ -68,6 +68,12 @@ public class ConfigurationPropertiesBean {
 
 	private boolean allowCompleteDeviceCodeUri = false;
 
+	private boolean statelessAccessTokens = false;
+
+	private String hostScheme = "https"; // for work done outside of a request, such as the maintenance jobs
+
+	private String contextPath = ""; // the server is deployed at the root by default
+
 	public ConfigurationPropertiesBean() {
 
 	}
@@ -265,4 +271,47 @@ public class ConfigurationPropertiesBean {
 	public void setAllowCompleteDeviceCodeUri(boolean allowCompleteDeviceCodeUri) {
 		this.allowCompleteDeviceCodeUri = allowCompleteDeviceCodeUri;
 	}
+
+	/**
+	 * @return true if access tokens carry their scopes and authorities and are validated from their own claims
+	 */
+	public boolean isStatelessAccessTokens() {
+		return statelessAccessTokens;
+	}
+
+	/**
+	 * @param statelessAccessTokens the statelessAccessTokens to set
+	 */
+	public void setStatelessAccessTokens(boolean statelessAccessTokens) {
+		this.statelessAccessTokens = statelessAccessTokens;
+	}
+
+	/**
+	 * @return the scheme hosts are reached under, used to build a host's issuer outside of a request
+	 */
+	public String getHostScheme() {
+		return hostScheme;
+	}
+
+	/**
+	 * @param hostScheme the hostScheme to set
+	 */
+	public void setHostScheme(String hostScheme) {
+		this.hostScheme = hostScheme;
+	}
+
+	/**
+	 * @return the context path the server is deployed under, "" for the root, used to build a
+	 * host's issuer outside of a request
+	 */
+	public String getContextPath() {
+		return contextPath;
+	}
+
+	/**
+	 * @param contextPath the contextPath to set
+	 */
+	public void setContextPath(String contextPath) {
+		this.contextPath = contextPath;
+	}
 }
@@ -42,7 +42,8 @@ import javax.persistence.Transient;
 	@NamedQuery(name = ApprovedSite.QUERY_BY_HOST_UUID, query = "select a from ApprovedSite a where a.hostUuid = :hostUuid"),
 	@NamedQuery(name = ApprovedSite.QUERY_BY_USER_ID, query = "select a from ApprovedSite a where a.hostUuid = :hostUuid and a.userId = :" + ApprovedSite.PARAM_USER_ID),
 	@NamedQuery(name = ApprovedSite.QUERY_BY_CLIENT_ID, query = "select a from ApprovedSite a where a.hostUuid = :hostUuid and a.clientId = :" + ApprovedSite.PARAM_CLIENT_ID),
-	@NamedQuery(name = ApprovedSite.QUERY_BY_CLIENT_ID_AND_USER_ID, query = "select a from ApprovedSite a where a.hostUuid = :hostUuid and a.clientId = :" + ApprovedSite.PARAM_CLIENT_ID + " and a.userId = :" + ApprovedSite.PARAM_USER_ID)
+	@NamedQuery(name = ApprovedSite.QUERY_BY_CLIENT_ID_AND_USER_ID, query = "select a from ApprovedSite a where a.hostUuid = :hostUuid and a.clientId = :" + ApprovedSite.PARAM_CLIENT_ID + " and a.userId = :" + ApprovedSite.PARAM_USER_ID),
+	@NamedQuery(name = ApprovedSite.QUERY_SET_ACCESS_DATE, query = "update ApprovedSite a set a.accessDate = :" + ApprovedSite.PARAM_ACCESS_DATE + " where a.hostUuid = :hostUuid and a.id in :" + ApprovedSite.PARAM_IDS)
 })
 public class ApprovedSite {
 
@@ -51,10 +52,13 @@ public class ApprovedSite {
 	public static final String QUERY_BY_USER_ID = "ApprovedSite.getByUserId";
 	public static final String QUERY_BY_HOST_UUID = "ApprovedSite.getByHostUuid";
 	public static final String QUERY_ALL = "ApprovedSite.getAll";
+	public static final String QUERY_SET_ACCESS_DATE = "ApprovedSite.setAccessDate";
 
 	public static final String PARAM_HOST_UUID = "hostUuid";
 	public static final String PARAM_CLIENT_ID = "clientId";
 	public static final String PARAM_USER_ID = "userId";
+	public static final String PARAM_ACCESS_DATE = "accessDate";
+	public static final String PARAM_IDS = "ids";
 
 	// unique id
 	private String id;
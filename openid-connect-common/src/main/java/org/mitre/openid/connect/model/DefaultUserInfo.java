@@ -43,11 +43,13 @@ import com.google.gson.JsonParser;
 @Entity
 @Table(name="user_info")
 @NamedQueries({
-	@NamedQuery(name=DefaultUserInfo.QUERY_BY_EMAIL, query = "select u from DefaultUserInfo u WHERE u.hostUuid = :hostUuid and u.email = :" + DefaultUserInfo.PARAM_EMAIL)
+	@NamedQuery(name=DefaultUserInfo.QUERY_BY_EMAIL, query = "select u from DefaultUserInfo u WHERE u.hostUuid = :hostUuid and u.email = :" + DefaultUserInfo.PARAM_EMAIL),
+	@NamedQuery(name=DefaultUserInfo.QUERY_BY_USERNAME, query = "select u from DefaultUserInfo u WHERE u.hostUuid = :hostUuid and u.user.username = :" + DefaultUserInfo.PARAM_USERNAME)
 })
 public class DefaultUserInfo implements UserInfo {
 
 	public static final String QUERY_BY_EMAIL = "DefaultUserInfo.getByEmailAddress";
+	public static final String QUERY_BY_USERNAME = "DefaultUserInfo.getByUsername";
 
 	public static final String PARAM_HOST_UUID = "hostUuid";
 	public static final String PARAM_USERNAME = "username";
@@ -87,6 +89,38 @@ public class DefaultUserInfo implements UserInfo {
 	public DefaultUserInfo(String uuid) {
 		this.id = uuid;
 	}	
+
+	/**
+	 * Copy the claims of another UserInfo, so they can be changed (such as the sub
+	 * for a pairwise client) without changing the original.
+	 */
+	public DefaultUserInfo(UserInfo other) {
+		this.id = other.getId();
+		if (other instanceof DefaultUserInfo) {
+			this.user = ((DefaultUserInfo) other).getUser();
+			this.hostUuid = ((DefaultUserInfo) other).getHostUuid();
+		}
+		this.sub = other.getSub();
+		this.name = other.getName();
+		this.givenName = other.getGivenName();
+		this.familyName = other.getFamilyName();
+		this.middleName = other.getMiddleName();
+		this.nickname = other.getNickname();
+		this.profile = other.getProfile();
+		this.picture = other.getPicture();
+		this.website = other.getWebsite();
+		this.email = other.getEmail();
+		this.emailVerified = other.getEmailVerified();
+		this.gender = other.getGender();
+		this.zoneinfo = other.getZoneinfo();
+		this.locale = other.getLocale();
+		this.phoneNumber = other.getPhoneNumber();
+		this.phoneNumberVerified = other.getPhoneNumberVerified();
+		setAddress(other.getAddress());
+		this.updatedTime = other.getUpdatedTime();
+		this.birthdate = other.getBirthdate();
+		this.src = other.getSource();
+	}
 	
 	@Id
 	@Column(name = "user_uuid")
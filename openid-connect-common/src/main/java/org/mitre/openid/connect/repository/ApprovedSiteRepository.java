@@ -18,6 +18,7 @@
 package org.mitre.openid.connect.repository;
 
 import java.util.Collection;
+import java.util.Date;
 
 import org.mitre.openid.connect.model.ApprovedSite;
 
@@ -93,4 +94,12 @@ public interface ApprovedSiteRepository {
 	 */
 	public Collection<ApprovedSite> getByClientId(String clientId);
 
+	/**
+	 * Set the access date of the given sites of the current host in one update
+	 * @param ids
+	 * @param accessDate
+	 * @return the number of sites updated
+	 */
+	public int setAccessDate(Collection<String> ids, Date accessDate);
+
 }
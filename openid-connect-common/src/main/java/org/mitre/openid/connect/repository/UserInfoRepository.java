@@ -34,6 +34,13 @@ public interface UserInfoRepository {
 	 */
 	public UserInfo getByUuid(String uuid);
 
+	/**
+	 * Get the UserInfo object of the user with the given username
+	 * @param username
+	 * @return the UserInfo, or null if there is none
+	 */
+	public UserInfo getByUsername(String username);
+
 	/**
 	 *
 	 * Get the UserInfo object by its email field
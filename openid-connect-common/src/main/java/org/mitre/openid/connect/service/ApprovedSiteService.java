@@ -62,6 +62,22 @@ public interface ApprovedSiteService {
 	 */
 	public ApprovedSite save(ApprovedSite approvedSite);
 
+	/**
+	 * Record that the ApprovedSite was just used. The access date isn't written
+	 * right away: sites touched by many requests are written together, once, by
+	 * the next {@link #flushAccessDates()}.
+	 *
+	 * @param approvedSite
+	 *            the ApprovedSite that was used
+	 */
+	public void markAccessed(ApprovedSite approvedSite);
+
+	/**
+	 * Write the access date of every ApprovedSite marked as accessed since the
+	 * last flush. Called from a scheduled task.
+	 */
+	public void flushAccessDates();
+
 	/**
 	 * Get ApprovedSite for id
 	 *
@@ -100,10 +116,10 @@ public interface ApprovedSiteService {
 	public void clearApprovedSitesForClient(ClientDetails client);
 
 	/**
-	 * Remove all expired approved sites fromt he data store.
-	 * @return
+	 * Remove all expired approved sites of the current host from the data store.
+	 * @return the number of sites removed
 	 */
-	public void clearExpiredSites();
+	public int clearExpiredSites();
 
 	/**
 	 * Return all approved access tokens for the site.
@@ -5,21 +5,34 @@ import java.net.URL;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.mitre.host.model.HostContext;
 import org.mitre.host.util.HostUtils;
 import org.mitre.util.HttpUtils;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
 
 public class HostInfoInterceptor extends HandlerInterceptorAdapter {
 
+	private static final String BOUND_ATTR = HostInfoInterceptor.class.getName() + ".bound";
 	
 	@Override
 	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
 			throws Exception {
-		URL url = HttpUtils.getHost(request);
-		
-		HostUtils.setCurrentContextPath(request.getContextPath());
-		HostUtils.setCurrentHost(url);
+		// the host filter normally binds the context already, only bind it here if it didn't
+		if (HostUtils.getCurrentHostContext() == null) {
+			URL url = HttpUtils.getHost(request);
+			HostUtils.setCurrentHostContext(new HostContext(url, request.getContextPath()));
+			request.setAttribute(BOUND_ATTR, Boolean.TRUE);
+		}
 		return super.preHandle(request, response, handler);
 	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
+			throws Exception {
+		if (request.getAttribute(BOUND_ATTR) != null) {
+			HostUtils.clearCurrentHostContext();
+		}
+		super.afterCompletion(request, response, handler, ex);
+	}
 	
 }
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.hash.Hashing;
+import com.nimbusds.jwt.JWT;
+
+/**
+ * Fixed-width digests of token values, used as indexed lookup keys in place
+ * of the full serialized token.
+ */
+public class HashUtils {
+
+	/**
+	 * @return the lowercase hex SHA-256 digest of the given value, or null if the value is null
+	 */
+	public static String sha256(String value) {
+		if (value == null) {
+			return null;
+		}
+		return Hashing.sha256().hashString(value, UTF_8).toString();
+	}
+
+	/**
+	 * @return the lowercase hex SHA-256 digest of the serialized token, or null if the token is null
+	 * or cannot be serialized yet (a signed or encrypted JWT that has not been signed or encrypted)
+	 */
+	public static String sha256(JWT jwt) {
+		if (jwt == null) {
+			return null;
+		}
+		try {
+			return sha256(jwt.serialize());
+		} catch (IllegalStateException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.util;
+
+import java.io.IOException;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.Configurable;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of keep-alive HTTP connections used for outgoing requests such as
+ * fetching JWK Sets, discovery documents, sector identifiers and logos, and
+ * calling token and introspection endpoints.
+ *
+ * The fetchers share the pool returned by {@link #getShared()} unless they
+ * are given their own HttpClient. Settings can be changed at any time and
+ * apply to the next request, so the shared pool can be configured as a bean
+ * after the fetchers using it have been created.
+ *
+ */
+public class HttpClientPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(HttpClientPool.class);
+
+	private static HttpClientPool sharedPool;
+
+	private volatile int maxTotal = 200;
+	private volatile int maxPerRoute = 20;
+	private volatile int connectTimeout = 5000; // milliseconds
+	private volatile int connectionRequestTimeout = 5000; // milliseconds to wait for a pooled connection
+	private volatile int socketTimeout = 30000; // milliseconds
+	private volatile long keepAliveTime = 30000L; // milliseconds, unless the server asks for less
+
+	private volatile RequestConfig requestConfig;
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient pooledClient;
+	private final CloseableHttpClient httpClient = new SharedHttpClient();
+
+	/**
+	 * @return the pool shared by everything that isn't given an HttpClient of its own
+	 */
+	public static synchronized HttpClientPool getShared() {
+		if (sharedPool == null) {
+			sharedPool = new HttpClientPool();
+		}
+		return sharedPool;
+	}
+
+	public HttpClientPool() {
+		Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory())
+				.register("https", SSLConnectionSocketFactory.getSystemSocketFactory())
+				.build();
+
+		connectionManager = new PoolingHttpClientConnectionManager(socketFactories);
+		connectionManager.setMaxTotal(maxTotal);
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+		requestConfig = buildRequestConfig();
+
+		pooledClient = HttpClientBuilder.create()
+				.useSystemProperties()
+				.setConnectionManager(connectionManager)
+				.setKeepAliveStrategy(new KeepAliveStrategy())
+				.evictExpiredConnections()
+				.build();
+	}
+
+	/**
+	 * @return a client that sends its requests through this pool. Closing it does nothing,
+	 * the pool is only closed by {@link #close()}.
+	 */
+	public HttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	/**
+	 * @return the number of leased, pending and available connections over all routes
+	 */
+	public PoolStats getTotalStats() {
+		return connectionManager.getTotalStats();
+	}
+
+	/**
+	 * Log the pool statistics, for instance from a scheduled task.
+	 */
+	public void logStatistics() {
+		PoolStats stats = getTotalStats();
+		logger.info("HTTP connection pool: " + stats.getLeased() + " leased, " + stats.getPending() + " pending, "
+				+ stats.getAvailable() + " available, " + connectionManager.getRoutes().size() + " routes, max " + stats.getMax());
+	}
+
+	/**
+	 * Close every connection in the pool.
+	 */
+	public void close() {
+		try {
+			pooledClient.close();
+		} catch (IOException e) {
+			logger.warn("Error closing HTTP connection pool", e);
+		}
+	}
+
+	private RequestConfig buildRequestConfig() {
+		return RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setConnectionRequestTimeout(connectionRequestTimeout)
+				.setSocketTimeout(socketTimeout)
+				.build();
+	}
+
+	/**
+	 * @return the maximum number of connections
+	 */
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	/**
+	 * @param maxTotal the maximum number of connections
+	 */
+	public void setMaxTotal(int maxTotal) {
+		this.maxTotal = maxTotal;
+		connectionManager.setMaxTotal(maxTotal);
+	}
+
+	/**
+	 * @return the maximum number of connections to one host
+	 */
+	public int getMaxPerRoute() {
+		return maxPerRoute;
+	}
+
+	/**
+	 * @param maxPerRoute the maximum number of connections to one host
+	 */
+	public void setMaxPerRoute(int maxPerRoute) {
+		this.maxPerRoute = maxPerRoute;
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+	}
+
+	/**
+	 * @return the connect timeout in milliseconds
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * @param connectTimeout the connect timeout in milliseconds
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+		this.requestConfig = buildRequestConfig();
+	}
+
+	/**
+	 * @return the time in milliseconds to wait for a connection from the pool
+	 */
+	public int getConnectionRequestTimeout() {
+		return connectionRequestTimeout;
+	}
+
+	/**
+	 * @param connectionRequestTimeout the time in milliseconds to wait for a connection from the pool
+	 */
+	public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+		this.connectionRequestTimeout = connectionRequestTimeout;
+		this.requestConfig = buildRequestConfig();
+	}
+
+	/**
+	 * @return the read timeout in milliseconds
+	 */
+	public int getSocketTimeout() {
+		return socketTimeout;
+	}
+
+	/**
+	 * @param socketTimeout the read timeout in milliseconds
+	 */
+	public void setSocketTimeout(int socketTimeout) {
+		this.socketTimeout = socketTimeout;
+		this.requestConfig = buildRequestConfig();
+	}
+
+	/**
+	 * @return the time in milliseconds that idle connections are kept open
+	 */
+	public long getKeepAliveTime() {
+		return keepAliveTime;
+	}
+
+	/**
+	 * @param keepAliveTime the time in milliseconds that idle connections are kept open, unless the server asks for less
+	 */
+	public void setKeepAliveTime(long keepAliveTime) {
+		this.keepAliveTime = keepAliveTime;
+	}
+
+	/**
+	 * Keeps connections open for as long as the server allows, up to keepAliveTime.
+	 */
+	private class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+		private final ConnectionKeepAliveStrategy serverStrategy = DefaultConnectionKeepAliveStrategy.INSTANCE;
+
+		@Override
+		public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+			long duration = serverStrategy.getKeepAliveDuration(response, context);
+			return duration > 0 ? Math.min(duration, keepAliveTime) : keepAliveTime;
+		}
+	}
+
+	/**
+	 * Client handed out to the fetchers: applies the current timeouts to requests
+	 * that don't carry their own and runs them on the pooled client.
+	 */
+	private class SharedHttpClient extends CloseableHttpClient implements Configurable {
+
+		@Override
+		protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) throws IOException {
+			HttpContext requestContext = context != null ? context : new BasicHttpContext();
+			boolean configured = request instanceof Configurable && ((Configurable) request).getConfig() != null;
+			if (!configured && requestContext.getAttribute(HttpClientContext.REQUEST_CONFIG) == null) {
+				requestContext.setAttribute(HttpClientContext.REQUEST_CONFIG, requestConfig);
+			}
+			return pooledClient.execute(target, request, requestContext);
+		}
+
+		@Override
+		public RequestConfig getConfig() {
+			return requestConfig;
+		}
+
+		@Override
+		public void close() {
+			// shared, so it stays open
+		}
+
+		@Override
+		@Deprecated
+		public HttpParams getParams() {
+			return pooledClient.getParams();
+		}
+
+		@Override
+		@Deprecated
+		public ClientConnectionManager getConnectionManager() {
+			return pooledClient.getConnectionManager();
+		}
+	}
+}
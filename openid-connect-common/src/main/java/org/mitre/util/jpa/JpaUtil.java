@@ -17,9 +17,12 @@
  *******************************************************************************/
 package org.mitre.util.jpa;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 
 import org.mitre.data.PageCriteria;
@@ -60,6 +63,58 @@ public class JpaUtil {
 		return query.getResultList();
 	}
 
+	/**
+	 * Execute a native bulk statement whose {@code IN} list is bound to the
+	 * given values. The statement marks the list with {@code %s}, for example
+	 * {@code DELETE FROM token_scope WHERE access_token_uuid IN (%s)}, which is
+	 * replaced by one positional parameter per value. Keep the value count
+	 * below 1000 to stay within the Oracle IN list limit.
+	 *
+	 * @param entityManager the entity manager
+	 * @param sql the native statement
+	 * @param values the values to bind to the IN list
+	 * @return the number of rows affected
+	 */
+	public static int executeUpdateIn(EntityManager entityManager, String sql, Collection<?> values) {
+		return executeUpdateIn(entityManager, sql, Collections.emptyList(), values);
+	}
+
+	/**
+	 * Execute a native bulk statement as above, that also takes other
+	 * parameters. These are bound first, to {@code ?1} up to {@code ?n} in the
+	 * statement, and the {@code IN} list placeholders are numbered after them.
+	 *
+	 * @param entityManager the entity manager
+	 * @param sql the native statement
+	 * @param parameters the values of the positional parameters the statement refers to
+	 * @param values the values to bind to the IN list
+	 * @return the number of rows affected
+	 */
+	public static int executeUpdateIn(EntityManager entityManager, String sql, List<?> parameters, Collection<?> values) {
+		if (values.isEmpty()) {
+			return 0;
+		}
+
+		int first = parameters.size() + 1;
+		StringBuilder placeholders = new StringBuilder();
+		for (int i = first; i < first + values.size(); i++) {
+			if (i > first) {
+				placeholders.append(',');
+			}
+			placeholders.append('?').append(i);
+		}
+
+		Query query = entityManager.createNativeQuery(String.format(sql, placeholders));
+		int position = 1;
+		for (Object parameter : parameters) {
+			query.setParameter(position++, parameter);
+		}
+		for (Object value : values) {
+			query.setParameter(position++, value);
+		}
+		return query.executeUpdate();
+	}
+
 	public static <T, I> T saveOrUpdate(I id, EntityManager entityManager, T entity) {
 		T tmp = entityManager.merge(entity);
 		entityManager.flush();
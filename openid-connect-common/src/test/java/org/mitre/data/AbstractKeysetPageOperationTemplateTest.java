@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class AbstractKeysetPageOperationTemplateTest {
+
+	@Test(timeout = 5000L)
+	public void execute_allItems() {
+		RemovingPageOperation op = new RemovingPageOperation(95, 10);
+		op.execute();
+
+		assertEquals(95, op.counter.get());
+		assertEquals(0, op.items.size());
+	}
+
+	@Test(timeout = 5000L)
+	public void execute_allItemsManyPages() {
+		RemovingPageOperation op = new RemovingPageOperation(1000, 10);
+		op.execute();
+
+		assertEquals(1000, op.counter.get());
+		assertEquals(0, op.items.size());
+	}
+
+	@Test(timeout = 5000L)
+	public void execute_empty() {
+		RemovingPageOperation op = new RemovingPageOperation(0, 10);
+		op.execute();
+
+		assertEquals(0, op.counter.get());
+	}
+
+	@Test(timeout = 5000L)
+	public void execute_zerotime() {
+		RemovingPageOperation op = new RemovingPageOperation(100, 10);
+		op.setMaxTime(0L);
+		op.execute();
+
+		assertEquals(0, op.counter.get());
+	}
+
+	@Test(timeout = 5000L)
+	public void execute_swallowException() {
+		RemovingPageOperation op = new FailingPageOperation(100, 10);
+		op.execute();
+
+		assertEquals(50, op.counter.get());
+	}
+
+	@Test(timeout = 5000L, expected = IllegalStateException.class)
+	public void execute_noSwallowException() {
+		RemovingPageOperation op = new FailingPageOperation(100, 10);
+		op.setSwallowExceptions(false);
+		op.execute();
+	}
+
+	private static class RemovingPageOperation extends AbstractKeysetPageOperationTemplate<String> {
+
+		protected final NavigableSet<String> items = new TreeSet<>();
+		protected final AtomicInteger counter = new AtomicInteger();
+
+		private RemovingPageOperation(int itemCount, int pageSize) {
+			super(pageSize, 60000L, "RemovingPageOperation");
+			for (int i = 0; i < itemCount; i++) {
+				items.add(String.format("item%05d", i));
+			}
+		}
+
+		@Override
+		public List<String> fetchPage(String lastKey, int pageSize) {
+			List<String> page = new ArrayList<>(pageSize);
+			for (String item : lastKey == null ? items : items.tailSet(lastKey, false)) {
+				if (page.size() == pageSize) {
+					break;
+				}
+				page.add(item);
+			}
+			return page;
+		}
+
+		@Override
+		protected String getKey(String item) {
+			return item;
+		}
+
+		@Override
+		protected void doOperation(String item) {
+			items.remove(item);
+			counter.incrementAndGet();
+		}
+	}
+
+	private static class FailingPageOperation extends RemovingPageOperation {
+
+		private FailingPageOperation(int itemCount, int pageSize) {
+			super(itemCount, pageSize);
+		}
+
+		@Override
+		protected void doOperation(String item) {
+			if (Integer.parseInt(item.substring(4)) % 2 == 0) {
+				throw new IllegalStateException("even item " + item);
+			}
+			super.doOperation(item);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.jwt.signer.service.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.OctetSequenceKey;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+public class TestDefaultJWTSigningAndValidationService {
+
+	private RSAKey key1;
+	private RSAKey key2;
+
+	private DefaultJWTSigningAndValidationService service;
+
+	@Before
+	public void prepare() throws Exception {
+		key1 = generateKey("key1");
+		key2 = generateKey("key2");
+
+		Map<String, JWK> keys = new HashMap<>();
+		keys.put(key1.getKeyID(), key1.toPublicJWK());
+		keys.put(key2.getKeyID(), key2.toPublicJWK());
+		service = new DefaultJWTSigningAndValidationService(keys);
+	}
+
+	@Test
+	public void validateSignature_byKeyId() throws Exception {
+		assertTrue(service.validateSignature(sign(key2, "key2", JWSAlgorithm.RS256)));
+	}
+
+	@Test
+	public void validateSignature_withoutKeyId() throws Exception {
+		assertTrue(service.validateSignature(sign(key2, null, JWSAlgorithm.RS256)));
+	}
+
+	@Test
+	public void validateSignature_wrongKeyId() throws Exception {
+		// signed by key2 but naming key1, so only key1 is tried
+		assertFalse(service.validateSignature(sign(key2, "key1", JWSAlgorithm.RS256)));
+	}
+
+	@Test
+	public void validateSignature_unknownKeyId() throws Exception {
+		// a key id we don't index falls back to every key for the algorithm
+		assertTrue(service.validateSignature(sign(key2, "other", JWSAlgorithm.RS256)));
+		assertFalse(service.validateSignature(sign(generateKey("other"), "other", JWSAlgorithm.RS256)));
+	}
+
+	@Test
+	public void validateSignature_unknownKeyIdSymmetric() throws Exception {
+		// built the same way as the client secret validators
+		String secret = "a-client-secret-that-is-at-least-256-bits-long";
+		OctetSequenceKey key = new OctetSequenceKey.Builder(Base64URL.encode(secret))
+				.keyUse(KeyUse.SIGNATURE)
+				.keyID("SYMMETRIC-KEY")
+				.build();
+		Map<String, JWK> keys = new HashMap<>();
+		keys.put(key.getKeyID(), key);
+		DefaultJWTSigningAndValidationService symmetricService = new DefaultJWTSigningAndValidationService(keys);
+
+		SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.HS256).keyID("client-kid").build(),
+				new JWTClaimsSet.Builder().subject("example_user").build());
+		jwt.sign(new MACSigner(secret));
+
+		assertTrue(symmetricService.validateSignature(jwt));
+	}
+
+	@Test
+	public void validateSignature_keyAlgorithm() throws Exception {
+		RSAKey restricted = new RSAKey.Builder(key1.toRSAPublicKey()).keyID("key1").algorithm(JWSAlgorithm.RS512).build();
+		Map<String, JWK> keys = new HashMap<>();
+		keys.put(restricted.getKeyID(), restricted);
+		DefaultJWTSigningAndValidationService restrictedService = new DefaultJWTSigningAndValidationService(keys);
+
+		assertTrue(restrictedService.validateSignature(sign(key1, "key1", JWSAlgorithm.RS512)));
+		assertFalse(restrictedService.validateSignature(sign(key1, "key1", JWSAlgorithm.RS256)));
+	}
+
+	private SignedJWT sign(RSAKey key, String kid, JWSAlgorithm alg) throws Exception {
+		SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(alg).keyID(kid).build(),
+				new JWTClaimsSet.Builder().subject("example_user").build());
+		jwt.sign(new RSASSASigner(key));
+		return jwt;
+	}
+
+	private static RSAKey generateKey(String kid) throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		KeyPair pair = generator.generateKeyPair();
+		return new RSAKey.Builder((RSAPublicKey) pair.getPublic())
+				.privateKey((RSAPrivateKey) pair.getPrivate())
+				.keyID(kid)
+				.build();
+	}
+}
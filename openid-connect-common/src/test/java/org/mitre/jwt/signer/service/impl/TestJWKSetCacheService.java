@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.jwt.signer.service.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TestJWKSetCacheService {
+
+	@Test
+	public void getTimeToLive_default() {
+		assertEquals(3600L, JWKSetCacheService.getTimeToLive(null));
+		assertEquals(3600L, JWKSetCacheService.getTimeToLive("public"));
+	}
+
+	@Test
+	public void getTimeToLive_maxAge() {
+		assertEquals(600L, JWKSetCacheService.getTimeToLive("public, max-age=600"));
+		assertEquals(7200L, JWKSetCacheService.getTimeToLive("max-age = 7200, must-revalidate"));
+	}
+
+	@Test
+	public void getTimeToLive_bounds() {
+		assertEquals(60L, JWKSetCacheService.getTimeToLive("max-age=0"));
+		assertEquals(60L, JWKSetCacheService.getTimeToLive("no-cache"));
+		assertEquals(86400L, JWKSetCacheService.getTimeToLive("max-age=31536000"));
+		assertEquals(3600L, JWKSetCacheService.getTimeToLive("max-age=99999999999999999999"));
+	}
+}
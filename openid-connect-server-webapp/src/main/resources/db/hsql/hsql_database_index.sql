@@ -2,11 +2,12 @@
 -- Indexes for HSQLDB
 -- 
 
-CREATE INDEX IF NOT EXISTS at_tv_idx ON access_token(token_value);
+CREATE UNIQUE INDEX IF NOT EXISTS at_th_idx ON access_token(host_uuid, token_hash);
 CREATE INDEX IF NOT EXISTS ts_atu_idx ON token_scope(access_token_uuid);
 CREATE INDEX IF NOT EXISTS at_exp_idx ON access_token(expiration);
+CREATE INDEX IF NOT EXISTS at_kind_idx ON access_token(host_uuid, client_uuid, token_kind);
 CREATE INDEX IF NOT EXISTS rf_ahu_idx ON refresh_token(auth_holder_uuid);
-CREATE INDEX IF NOT EXISTS rf_tv_idx ON refresh_token(token_value);
+CREATE UNIQUE INDEX IF NOT EXISTS rf_th_idx ON refresh_token(host_uuid, token_hash);
 CREATE INDEX IF NOT EXISTS cd_ci_idx ON client_details(client_id);
 CREATE INDEX IF NOT EXISTS at_ahu_idx ON access_token(auth_holder_uuid);
 CREATE INDEX IF NOT EXISTS aha_ahu_idx ON auth_holder_authority(auth_holder_uuid);
@@ -17,3 +18,5 @@ CREATE INDEX IF NOT EXISTS ahrt_ahu_idx ON auth_holder_resp_type(auth_holder_uui
 CREATE INDEX IF NOT EXISTS ahs_ahu_idx ON auth_holder_scope(auth_holder_uuid);
 CREATE INDEX IF NOT EXISTS ac_ahu_idx ON authorization_code(auth_holder_uuid);
 CREATE INDEX IF NOT EXISTS suaa_suau_idx ON saved_user_auth_authority(user_auth_uuid);
+CREATE INDEX IF NOT EXISTS rt_rev_idx ON revoked_token(revoked);
+CREATE INDEX IF NOT EXISTS rt_exp_idx ON revoked_token(expiration);
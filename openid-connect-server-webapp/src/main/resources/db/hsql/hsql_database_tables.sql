@@ -13,8 +13,10 @@ CREATE TABLE IF NOT EXISTS access_token (
 	uuid VARCHAR(64) PRIMARY KEY,
 	host_uuid VARCHAR(64) NOT NULL,
 	token_value VARCHAR(8192),
+	token_hash VARCHAR(64),
 	expiration TIMESTAMP,
 	token_type VARCHAR(256),
+	token_kind VARCHAR(32),
 	refresh_token_uuid VARCHAR(64),
 	client_uuid VARCHAR(64),
 	auth_holder_uuid VARCHAR(64),
@@ -172,6 +174,7 @@ CREATE TABLE IF NOT EXISTS client_details (
 	default_max_age BIGINT,
 	require_auth_time BOOLEAN,
 	created_at TIMESTAMP,
+	version BIGINT DEFAULT 0 NOT NULL,
 	initiate_login_uri VARCHAR(2048),
 	clear_access_tokens_on_refresh BOOLEAN DEFAULT true NOT NULL,
 	
@@ -236,6 +239,7 @@ CREATE TABLE IF NOT EXISTS refresh_token (
 	client_uuid VARCHAR(64),
 	auth_holder_uuid VARCHAR(64),
 	token_value VARCHAR(4096),
+	token_hash VARCHAR(64),
 	expiration TIMESTAMP
 );
 
@@ -409,3 +413,18 @@ CREATE TABLE IF NOT EXISTS device_code_request_parameter (
 	param VARCHAR(255),
 	val VARCHAR(2048)
 );
+
+CREATE TABLE IF NOT EXISTS revoked_token (
+	token_hash VARCHAR(64) PRIMARY KEY,
+	host_uuid VARCHAR(64) NOT NULL,
+	expiration TIMESTAMP,
+	revoked TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS maintenance_lease (
+	name VARCHAR(64) PRIMARY KEY,
+	owner VARCHAR(256),
+	lease_until TIMESTAMP,
+	last_run TIMESTAMP,
+	rows_purged BIGINT
+);
@@ -2,11 +2,12 @@
 -- Indexes for MySQL
 --
 
-CREATE INDEX at_tv_idx ON access_token(token_value(255));
+CREATE UNIQUE INDEX at_th_idx ON access_token(host_uuid, token_hash);
 CREATE INDEX ts_oi_idx ON token_scope(access_token_uuid);
 CREATE INDEX at_exp_idx ON access_token(expiration);
+CREATE INDEX at_kind_idx ON access_token(host_uuid, client_uuid, token_kind);
 CREATE INDEX rf_ahi_idx ON refresh_token(auth_holder_uuid);
-CREATE INDEX rf_tv_idx ON refresh_token(token_value(105));
+CREATE UNIQUE INDEX rf_th_idx ON refresh_token(host_uuid, token_hash);
 CREATE INDEX cd_ci_idx ON client_details(client_id);
 CREATE INDEX at_ahi_idx ON access_token(auth_holder_uuid);
 CREATE INDEX aha_oi_idx ON auth_holder_authority(auth_holder_uuid);
@@ -17,3 +18,5 @@ CREATE INDEX ahrt_oi_idx ON auth_holder_resp_type(auth_holder_uuid);
 CREATE INDEX ahs_oi_idx ON auth_holder_scope(auth_holder_uuid);
 CREATE INDEX ac_ahi_idx ON authorization_code(auth_holder_uuid);
 CREATE INDEX suaa_oi_idx ON saved_user_auth_authority(user_auth_uuid);
+CREATE INDEX rt_rev_idx ON revoked_token(revoked);
+CREATE INDEX rt_exp_idx ON revoked_token(expiration);
@@ -0,0 +1,6 @@
+--
+-- Adds the client version column to an existing MySQL database. Every save
+-- bumps it, so nodes can tell whether a client they have cached is still current.
+--
+
+ALTER TABLE client_details ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
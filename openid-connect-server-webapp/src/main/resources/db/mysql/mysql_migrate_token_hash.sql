@@ -0,0 +1,15 @@
+--
+-- Adds the hashed token lookup column to an existing MySQL database.
+-- Remove any duplicate token values before running, the new index is unique.
+--
+
+ALTER TABLE access_token ADD COLUMN token_hash VARCHAR(64);
+ALTER TABLE refresh_token ADD COLUMN token_hash VARCHAR(64);
+
+UPDATE access_token SET token_hash = SHA2(token_value, 256) WHERE token_hash IS NULL AND token_value IS NOT NULL;
+UPDATE refresh_token SET token_hash = SHA2(token_value, 256) WHERE token_hash IS NULL AND token_value IS NOT NULL;
+
+DROP INDEX at_tv_idx ON access_token;
+DROP INDEX rf_tv_idx ON refresh_token;
+CREATE UNIQUE INDEX at_th_idx ON access_token(host_uuid, token_hash);
+CREATE UNIQUE INDEX rf_th_idx ON refresh_token(host_uuid, token_hash);
@@ -2,8 +2,11 @@
 -- Indexes for Oracle
 --
 
+CREATE UNIQUE INDEX at_th_uuidx ON access_token(host_uuid, token_hash);
+CREATE UNIQUE INDEX rf_th_uuidx ON refresh_token(host_uuid, token_hash);
 CREATE INDEX ts_oi_uuidx ON token_scope(access_token_uuid);
 CREATE INDEX at_exp_uuidx ON access_token(expiration);
+CREATE INDEX at_kind_uuidx ON access_token(host_uuid, client_uuid, token_kind);
 CREATE INDEX rf_ahi_uuidx ON refresh_token(auth_holder_uuid);
 CREATE INDEX at_ahi_uuidx ON access_token(auth_holder_uuid);
 CREATE INDEX aha_oi_uuidx ON auth_holder_authority(auth_holder_uuid);
@@ -14,3 +17,5 @@ CREATE INDEX ahrt_oi_idx ON auth_holder_resp_type(auth_holder_uuid);
 CREATE INDEX ahs_oi_idx ON auth_holder_scope(auth_holder_uuid);
 CREATE INDEX ac_ahi_idx ON authorization_code(auth_holder_uuid);
 CREATE INDEX suaa_oi_idx ON saved_user_auth_authority(user_auth_uuid);
+CREATE INDEX rt_rev_idx ON revoked_token(revoked);
+CREATE INDEX rt_exp_idx ON revoked_token(expiration);
@@ -14,8 +14,10 @@ CREATE TABLE access_token (
   uuid VARCHAR2(64) NOT NULL PRIMARY KEY,
   host_uuid VARCHAR2(64),
   token_value CLOB,
+  token_hash VARCHAR2(64),
   expiration TIMESTAMP,
   token_type VARCHAR2(256),
+  token_kind VARCHAR2(32),
   refresh_token_uuid VARCHAR2(64),
   client_uuid VARCHAR2(64),
   auth_holder_uuid VARCHAR2(64),
@@ -178,6 +180,7 @@ CREATE TABLE client_details (
   default_max_age NUMBER(19),
   require_auth_time NUMBER(1),
   created_at TIMESTAMP,
+  version NUMBER(19) DEFAULT 0 NOT NULL,
   initiate_login_uri VARCHAR2(2048),
   clear_access_tokens_on_refresh NUMBER(1) DEFAULT 1 NOT NULL,
   
@@ -244,6 +247,7 @@ CREATE TABLE refresh_token (
   uuid VARCHAR2(64) NOT NULL PRIMARY KEY,
   host_uuid VARCHAR2(64),
   token_value CLOB,
+  token_hash VARCHAR2(64),
   expiration TIMESTAMP,
   auth_holder_uuid VARCHAR2(64),
   client_uuid VARCHAR2(64)
@@ -425,3 +429,18 @@ CREATE TABLE device_code_request_parameter (
   param VARCHAR2(256),
   val CLOB
 );
+
+CREATE TABLE revoked_token (
+  token_hash VARCHAR2(64) NOT NULL PRIMARY KEY,
+  host_uuid VARCHAR2(64),
+  expiration TIMESTAMP,
+  revoked TIMESTAMP
+);
+
+CREATE TABLE maintenance_lease (
+  name VARCHAR2(64) NOT NULL PRIMARY KEY,
+  owner VARCHAR2(256),
+  lease_until TIMESTAMP,
+  last_run TIMESTAMP,
+  rows_purged NUMBER(19)
+);
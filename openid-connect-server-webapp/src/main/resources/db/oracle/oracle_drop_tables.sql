@@ -27,6 +27,8 @@ DROP TABLE client_contact;
 DROP TABLE client_redirect_uri;
 DROP TABLE client_claims_redirect_uri;
 DROP TABLE refresh_token;
+DROP TABLE revoked_token;
+DROP TABLE maintenance_lease;
 DROP TABLE client_resource;
 DROP TABLE client_scope;
 DROP TABLE system_scope;
@@ -0,0 +1,8 @@
+--
+-- Adds the client version column to an existing Oracle database. Every save
+-- bumps it, so nodes can tell whether a client they have cached is still current.
+--
+
+ALTER TABLE client_details ADD version NUMBER(19) DEFAULT 0 NOT NULL;
+
+COMMIT;
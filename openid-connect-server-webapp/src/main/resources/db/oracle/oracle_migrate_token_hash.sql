@@ -0,0 +1,16 @@
+--
+-- Adds the hashed token lookup column to an existing Oracle database.
+-- The database user needs EXECUTE on DBMS_CRYPTO.
+-- Remove any duplicate token values before running, the new index is unique.
+--
+
+ALTER TABLE access_token ADD token_hash VARCHAR2(64);
+ALTER TABLE refresh_token ADD token_hash VARCHAR2(64);
+
+UPDATE access_token SET token_hash = LOWER(RAWTOHEX(DBMS_CRYPTO.HASH(token_value, 4))) WHERE token_hash IS NULL AND token_value IS NOT NULL;
+UPDATE refresh_token SET token_hash = LOWER(RAWTOHEX(DBMS_CRYPTO.HASH(token_value, 4))) WHERE token_hash IS NULL AND token_value IS NOT NULL;
+
+CREATE UNIQUE INDEX at_th_uuidx ON access_token(host_uuid, token_hash);
+CREATE UNIQUE INDEX rf_th_uuidx ON refresh_token(host_uuid, token_hash);
+
+COMMIT;
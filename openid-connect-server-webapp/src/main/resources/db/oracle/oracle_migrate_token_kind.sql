@@ -0,0 +1,16 @@
+--
+-- Adds the token kind column to an existing Oracle database, so registration
+-- and resource tokens can be found without reading all of a client's tokens.
+-- Other existing tokens keep an empty kind, which is read as an access token.
+--
+
+ALTER TABLE access_token ADD token_kind VARCHAR2(32);
+
+MERGE INTO access_token a
+	USING (SELECT access_token_uuid, MAX(scope) AS scope FROM token_scope GROUP BY access_token_uuid HAVING COUNT(*) = 1) s
+	ON (s.access_token_uuid = a.uuid AND s.scope IN ('registration-token', 'resource-token'))
+	WHEN MATCHED THEN UPDATE SET a.token_kind = CASE s.scope WHEN 'registration-token' THEN 'REGISTRATION' ELSE 'RESOURCE' END;
+
+CREATE INDEX at_kind_uuidx ON access_token(host_uuid, client_uuid, token_kind);
+
+COMMIT;
@@ -14,8 +14,10 @@ CREATE TABLE IF NOT EXISTS access_token (
 	uuid VARCHAR(64) PRIMARY KEY,
 	host_uuid VARCHAR(64),
 	token_value text,
+	token_hash VARCHAR(64),
 	expiration TIMESTAMP NULL,
 	token_type VARCHAR(255),
+	token_kind VARCHAR(32),
 	refresh_token_uuid VARCHAR(64),
 	client_uuid VARCHAR(64),
 	auth_holder_uuid VARCHAR(64),
@@ -172,6 +174,7 @@ CREATE TABLE IF NOT EXISTS client_details (
 	default_max_age BIGINT,
 	require_auth_time BOOLEAN,
 	created_at TIMESTAMP NULL,
+	version BIGINT DEFAULT 0 NOT NULL,
 	initiate_login_uri VARCHAR(512),
 	clear_access_tokens_on_refresh BOOLEAN DEFAULT true NOT NULL,
 	
@@ -233,6 +236,7 @@ CREATE TABLE IF NOT EXISTS refresh_token (
 	uuid VARCHAR(64) PRIMARY KEY,
 	host_uuid VARCHAR(64),		
 	token_value text,
+	token_hash VARCHAR(64),
 	expiration TIMESTAMP NULL,
 	auth_holder_uuid VARCHAR(64),
 	client_uuid VARCHAR(64)
@@ -408,3 +412,18 @@ CREATE TABLE IF NOT EXISTS device_code_request_parameter (
 	param VARCHAR(255),
 	val text
 );
+
+CREATE TABLE IF NOT EXISTS revoked_token (
+	token_hash VARCHAR(64) PRIMARY KEY,
+	host_uuid VARCHAR(64),
+	expiration TIMESTAMP NULL,
+	revoked TIMESTAMP NULL
+);
+
+CREATE TABLE IF NOT EXISTS maintenance_lease (
+	name VARCHAR(64) PRIMARY KEY,
+	owner VARCHAR(256),
+	lease_until TIMESTAMP NULL,
+	last_run TIMESTAMP NULL,
+	rows_purged BIGINT
+);
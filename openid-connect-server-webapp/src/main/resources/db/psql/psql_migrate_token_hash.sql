@@ -0,0 +1,18 @@
+--
+-- Adds the hashed token lookup column to an existing PostgreSQL database.
+-- Needs the pgcrypto extension for digest().
+-- Remove any duplicate token values before running, the new index is unique.
+--
+
+CREATE EXTENSION IF NOT EXISTS pgcrypto;
+
+ALTER TABLE access_token ADD COLUMN token_hash VARCHAR(64);
+ALTER TABLE refresh_token ADD COLUMN token_hash VARCHAR(64);
+
+UPDATE access_token SET token_hash = encode(digest(token_value, 'sha256'), 'hex') WHERE token_hash IS NULL AND token_value IS NOT NULL;
+UPDATE refresh_token SET token_hash = encode(digest(token_value, 'sha256'), 'hex') WHERE token_hash IS NULL AND token_value IS NOT NULL;
+
+DROP INDEX IF EXISTS at_tv_idx;
+DROP INDEX IF EXISTS rf_tv_idx;
+CREATE UNIQUE INDEX at_th_idx ON access_token(host_uuid, token_hash);
+CREATE UNIQUE INDEX rf_th_idx ON refresh_token(host_uuid, token_hash);
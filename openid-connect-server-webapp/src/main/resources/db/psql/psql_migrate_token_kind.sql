@@ -0,0 +1,13 @@
+--
+-- Adds the token kind column to an existing PostgreSQL database, so registration
+-- and resource tokens can be found without reading all of a client's tokens.
+-- Other existing tokens keep an empty kind, which is read as an access token.
+--
+
+ALTER TABLE access_token ADD COLUMN token_kind VARCHAR(32);
+
+UPDATE access_token a SET token_kind = CASE s.scope WHEN 'registration-token' THEN 'REGISTRATION' ELSE 'RESOURCE' END
+	FROM (SELECT access_token_uuid, MAX(scope) AS scope FROM token_scope GROUP BY access_token_uuid HAVING COUNT(*) = 1) s
+	WHERE s.access_token_uuid = a.uuid AND s.scope IN ('registration-token', 'resource-token');
+
+CREATE INDEX at_kind_idx ON access_token(host_uuid, client_uuid, token_kind);
@@ -21,8 +21,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.mitre.discovery.util.WebfingerURLNormalizer;
+import org.mitre.host.service.HostInfoService;
 import org.mitre.jwt.encryption.service.JWTEncryptionAndDecryptionService;
 import org.mitre.jwt.signer.service.JWTSigningAndValidationService;
 import org.mitre.oauth2.model.PKCEAlgorithm;
@@ -34,18 +36,21 @@ import org.mitre.openid.connect.config.ConfigurationPropertiesBean;
 import org.mitre.openid.connect.model.UserInfo;
 import org.mitre.openid.connect.service.UserInfoService;
 import org.mitre.openid.connect.view.HttpCodeView;
-import org.mitre.openid.connect.view.JsonEntityView;
 import org.mitre.openid.connect.web.DynamicClientRegistrationEndpoint;
 import org.mitre.openid.connect.web.EndSessionEndpoint;
 import org.mitre.openid.connect.web.JWKSetPublishingEndpoint;
+import org.mitre.openid.connect.web.RenderedJsonDocument;
 import org.mitre.openid.connect.web.UserInfoEndpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.util.UriComponents;
@@ -53,8 +58,12 @@ import org.springframework.web.util.UriComponentsBuilder;
 
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.nimbusds.jose.Algorithm;
 import com.nimbusds.jose.JWSAlgorithm;
 
@@ -92,6 +101,19 @@ public class DiscoveryEndpoint {
 	@Autowired
 	private UserInfoService userService;
 
+	@Autowired
+	private HostInfoService hostInfoService;
+
+	// clients refetch the configuration at least this often, in seconds
+	private static final long MAX_AGE = 3600;
+
+	private Gson gson = new GsonBuilder().serializeNulls().create();
+
+	// map of host uuid -> rendered configuration, replaced when the issuer or the scopes change
+	private Cache<String, ProviderConfiguration> configurations = CacheBuilder.newBuilder()
+			.maximumSize(1000)
+			.build();
+
 
 	// used to map JWA algorithms objects to strings
 	private Function<Algorithm, String> toAlgorithmName = new Function<Algorithm, String>() {
@@ -165,7 +187,23 @@ public class DiscoveryEndpoint {
 	}
 
 	@RequestMapping("/" + OPENID_CONFIGURATION_URL)
-	public String providerConfiguration(Model model) {
+	public ResponseEntity<byte[]> providerConfiguration(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+		// the issuer and the scopes are all that can change while the server runs
+		String issuer = config.getIssuer();
+		Set<String> scopes = scopeService.toStrings(scopeService.getUnrestricted());
+
+		String hostUuid = hostInfoService.getCurrentHostUuid();
+		ProviderConfiguration configuration = configurations.getIfPresent(hostUuid);
+		if (configuration == null || !configuration.issuer.equals(issuer) || !configuration.scopes.equals(scopes)) {
+			configuration = new ProviderConfiguration(issuer, scopes, renderProviderConfiguration(issuer, scopes));
+			configurations.put(hostUuid, configuration);
+		}
+
+		return configuration.document.toResponseEntity(ifNoneMatch, MAX_AGE);
+	}
+
+	private RenderedJsonDocument renderProviderConfiguration(String issuer, Set<String> scopes) {
 
 		/*
 		    issuer
@@ -286,7 +324,7 @@ public class DiscoveryEndpoint {
 		        OPTIONAL. URL that the OpenID Provider provides to the person registering the Client to read about OpenID Provider's terms of service.
 		        The registration process SHOULD display this URL to the person registering the Client if it is given.
 		 */
-		String baseUrl = config.getIssuer();
+		String baseUrl = issuer;
 
 		if (!baseUrl.endsWith("/")) {
 			logger.debug("Configured issuer doesn't end in /, adding for discovery: {}", baseUrl);
@@ -307,7 +345,7 @@ public class DiscoveryEndpoint {
 		ArrayList<String> grantTypes = Lists.newArrayList("authorization_code", "implicit", "urn:ietf:params:oauth:grant-type:jwt-bearer", "client_credentials", "urn:ietf:params:oauth:grant_type:redelegate", "urn:ietf:params:oauth:grant-type:device_code");
 
 		Map<String, Object> m = new HashMap<>();
-		m.put("issuer", config.getIssuer());
+		m.put("issuer", issuer);
 		m.put("authorization_endpoint", baseUrl + "authorize");
 		m.put("token_endpoint", baseUrl + "token");
 		m.put("userinfo_endpoint", baseUrl + UserInfoEndpoint.URL);
@@ -315,7 +353,7 @@ public class DiscoveryEndpoint {
 		m.put("end_session_endpoint", baseUrl + EndSessionEndpoint.URL);
 		m.put("jwks_uri", baseUrl + JWKSetPublishingEndpoint.URL);
 		m.put("registration_endpoint", baseUrl + DynamicClientRegistrationEndpoint.URL);
-		m.put("scopes_supported", scopeService.toStrings(scopeService.getUnrestricted())); // these are the scopes that you can dynamically register for, which is what matters for discovery
+		m.put("scopes_supported", scopes); // these are the scopes that you can dynamically register for, which is what matters for discovery
 		m.put("response_types_supported", Lists.newArrayList("code", "token")); // we don't support these yet: , "id_token", "id_token token"));
 		m.put("grant_types_supported", grantTypes);
 		//acr_values_supported
@@ -372,9 +410,22 @@ public class DiscoveryEndpoint {
 
 		m.put("device_authorization_endpoint", baseUrl + DeviceEndpoint.URL);
 
-		model.addAttribute(JsonEntityView.ENTITY, m);
+		return new RenderedJsonDocument(gson.toJson(m));
+	}
 
-		return JsonEntityView.VIEWNAME;
+	/**
+	 * The rendered configuration of a host and what it was rendered from.
+	 */
+	private static class ProviderConfiguration {
+		private final String issuer;
+		private final Set<String> scopes;
+		private final RenderedJsonDocument document;
+
+		private ProviderConfiguration(String issuer, Set<String> scopes, RenderedJsonDocument document) {
+			this.issuer = issuer;
+			this.scopes = scopes;
+			this.document = document;
+		}
 	}
 
 }
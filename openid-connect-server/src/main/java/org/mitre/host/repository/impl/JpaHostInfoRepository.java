@@ -1,5 +1,8 @@
 package org.mitre.host.repository.impl;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
@@ -31,4 +34,10 @@ public class JpaHostInfoRepository implements HostInfoRepository {
 		return query.getSingleResult();
 	}
 
+	@Override
+	public Collection<HostInfo> getAll() {
+		TypedQuery<DefaultHostInfo> query = manager.createNamedQuery(DefaultHostInfo.QUERY_ALL, DefaultHostInfo.class);
+		return new LinkedHashSet<HostInfo>(query.getResultList());
+	}
+
 }
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.host.repository.impl;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+
+import org.mitre.host.model.MaintenanceLease;
+import org.mitre.host.repository.MaintenanceLeaseRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * JPA MaintenanceLeaseRepository implementation. A lease is taken with a
+ * single conditional update, so of several nodes trying at once only one
+ * gets it.
+ *
+ */
+@Repository
+@Transactional(value="defaultTransactionManager")
+public class JpaMaintenanceLeaseRepository implements MaintenanceLeaseRepository {
+
+	@PersistenceContext(unitName="defaultPersistenceUnit")
+	private EntityManager manager;
+
+	@Override
+	public boolean acquire(String name, String owner, Date now, Date leaseUntil) {
+		int updated = manager.createNamedQuery(MaintenanceLease.UPDATE_ACQUIRE)
+				.setParameter(MaintenanceLease.PARAM_NAME, name)
+				.setParameter(MaintenanceLease.PARAM_OWNER, owner)
+				.setParameter(MaintenanceLease.PARAM_LEASE_UNTIL, leaseUntil)
+				.setParameter(MaintenanceLease.PARAM_DATE, now)
+				.executeUpdate();
+		if (updated > 0) {
+			return true;
+		}
+
+		if (manager.find(MaintenanceLease.class, name) != null) {
+			// held by another node
+			return false;
+		}
+
+		// first run of this job anywhere; if another node inserts it at the same
+		// time the primary key makes one of the two fail
+		manager.persist(new MaintenanceLease(name, owner, leaseUntil));
+		manager.flush();
+		return true;
+	}
+
+	@Override
+	public void recordRun(String name, String owner, Date lastRun, long rowsPurged) {
+		manager.createNamedQuery(MaintenanceLease.UPDATE_RECORD_RUN)
+				.setParameter(MaintenanceLease.PARAM_NAME, name)
+				.setParameter(MaintenanceLease.PARAM_OWNER, owner)
+				.setParameter(MaintenanceLease.PARAM_DATE, lastRun)
+				.setParameter(MaintenanceLease.PARAM_ROWS_PURGED, rowsPurged)
+				.executeUpdate();
+	}
+
+	@Override
+	public List<MaintenanceLease> getAll() {
+		TypedQuery<MaintenanceLease> query = manager.createNamedQuery(MaintenanceLease.QUERY_ALL, MaintenanceLease.class);
+		return query.getResultList();
+	}
+
+}
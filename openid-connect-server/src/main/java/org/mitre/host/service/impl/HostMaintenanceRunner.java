@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.host.service.impl;
+
+import java.lang.management.ManagementFactory;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.mitre.host.model.HostContext;
+import org.mitre.host.model.HostInfo;
+import org.mitre.host.model.MaintenanceLease;
+import org.mitre.host.repository.MaintenanceLeaseRepository;
+import org.mitre.host.service.HostInfoService;
+import org.mitre.host.util.HostUtils;
+import org.mitre.oauth2.service.DeviceCodeService;
+import org.mitre.oauth2.service.OAuth2TokenEntityService;
+import org.mitre.oauth2.service.impl.DefaultOAuth2AuthorizationCodeService;
+import org.mitre.openid.connect.config.ConfigurationPropertiesBean;
+import org.mitre.openid.connect.service.ApprovedSiteService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs the scheduled maintenance jobs once for every known host, with that
+ * host's context bound, so the jobs can use the same host-scoped queries as
+ * everything else.
+ *
+ * Before a job runs, its lease row is taken in the database, so that of all
+ * the nodes of a cluster only one runs each job. The node that holds a lease
+ * keeps taking it on each run; another node only takes it over once it has
+ * run out, which happens when the holder stops running the job. When the job
+ * finishes, the time and the number of rows purged are written to the lease
+ * row, see {@link #getJobs()}.
+ *
+ * The hosts are spread over one pool of poolSize threads, shared by all jobs
+ * and shut down with the bean. The jobs are scheduled in task-config.xml.
+ */
+@Service
+public class HostMaintenanceRunner {
+
+	/**
+	 * Logger for this class
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(HostMaintenanceRunner.class);
+
+	public static final String CLEAR_EXPIRED_TOKENS = "clearExpiredTokens";
+	public static final String CLEAR_EXPIRED_SITES = "clearExpiredSites";
+	public static final String CLEAR_EXPIRED_AUTHORIZATION_CODES = "clearExpiredAuthorizationCodes";
+	public static final String CLEAR_EXPIRED_DEVICE_CODES = "clearExpiredDeviceCodes";
+
+	@Autowired
+	private HostInfoService hostInfoService;
+
+	@Autowired
+	private MaintenanceLeaseRepository leaseRepository;
+
+	@Autowired
+	private OAuth2TokenEntityService tokenService;
+
+	@Autowired
+	private ApprovedSiteService approvedSiteService;
+
+	@Autowired
+	private DefaultOAuth2AuthorizationCodeService authorizationCodeService;
+
+	@Autowired
+	private DeviceCodeService deviceCodeService;
+
+	@Autowired
+	private ConfigurationPropertiesBean configBean;
+
+	private int poolSize = 4;
+
+	private ExecutorService executor;
+
+	// longer than a run takes, the paged sweeps give up after 4 minutes
+	private long leaseMillis = 270000L;
+
+	private String nodeId = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+
+	/**
+	 * Work done for one host, with its context bound.
+	 */
+	private interface HostTask {
+		/**
+		 * @return the number of rows purged
+		 */
+		int run();
+	}
+
+	@PostConstruct
+	public void start() {
+		executor = Executors.newFixedThreadPool(Math.max(1, poolSize),
+				new ThreadFactoryBuilder().setNameFormat("host-maintenance-%d").setDaemon(true).build());
+	}
+
+	@PreDestroy
+	public void stop() {
+		executor.shutdownNow();
+	}
+
+	public void clearExpiredTokens() {
+		long purged = runForEachHost(CLEAR_EXPIRED_TOKENS, new HostTask() {
+			@Override
+			public int run() {
+				return tokenService.clearExpiredTokens();
+			}
+		});
+		if (purged >= 0) {
+			// revocation records aren't kept per host
+			purged += tokenService.clearExpiredRevocations();
+			recordRun(CLEAR_EXPIRED_TOKENS, purged);
+		}
+	}
+
+	public void clearExpiredSites() {
+		recordRun(CLEAR_EXPIRED_SITES, runForEachHost(CLEAR_EXPIRED_SITES, new HostTask() {
+			@Override
+			public int run() {
+				return approvedSiteService.clearExpiredSites();
+			}
+		}));
+	}
+
+	public void clearExpiredAuthorizationCodes() {
+		recordRun(CLEAR_EXPIRED_AUTHORIZATION_CODES, runForEachHost(CLEAR_EXPIRED_AUTHORIZATION_CODES, new HostTask() {
+			@Override
+			public int run() {
+				return authorizationCodeService.clearExpiredAuthorizationCodes();
+			}
+		}));
+	}
+
+	public void clearExpiredDeviceCodes() {
+		recordRun(CLEAR_EXPIRED_DEVICE_CODES, runForEachHost(CLEAR_EXPIRED_DEVICE_CODES, new HostTask() {
+			@Override
+			public int run() {
+				return deviceCodeService.clearExpiredDeviceCodes();
+			}
+		}));
+	}
+
+	/**
+	 * @return the leases of all jobs, with when each last finished and how many rows it purged
+	 */
+	public List<MaintenanceLease> getJobs() {
+		return leaseRepository.getAll();
+	}
+
+	/**
+	 * Take the job's lease and run the task for every host.
+	 *
+	 * @return the number of rows purged over all hosts, or -1 if another node holds the lease
+	 */
+	private long runForEachHost(String job, final HostTask task) {
+		long start = System.currentTimeMillis();
+
+		if (!acquireLease(job, start)) {
+			logger.debug("[" + job + "] Lease held by another node, skipping");
+			return -1;
+		}
+
+		Collection<HostInfo> hosts = hostInfoService.getAllHosts();
+
+		Map<String, Future<Integer>> results = new LinkedHashMap<>();
+		for (HostInfo hostInfo : hosts) {
+			results.put(hostInfo.getId(), executor.submit(HostUtils.withHostContext(hostContext(hostInfo), new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					return task.run();
+				}
+			})));
+		}
+
+		long purged = 0;
+		int failed = 0;
+		for (Map.Entry<String, Future<Integer>> result : results.entrySet()) {
+			try {
+				purged += result.getValue().get();
+			} catch (ExecutionException e) {
+				failed++;
+				logger.warn("[" + job + "] Failed for host " + result.getKey(), e.getCause());
+			} catch (InterruptedException e) {
+				logger.warn("[" + job + "] Interrupted while waiting for host " + result.getKey());
+				for (Future<Integer> pending : results.values()) {
+					pending.cancel(true);
+				}
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		long elapsed = System.currentTimeMillis() - start;
+		if (purged > 0 || failed > 0) {
+			logger.info("[" + job + "] Purged " + purged + " rows for " + hosts.size() + " hosts in " + elapsed + "ms; " + failed + " hosts failed");
+		} else {
+			logger.debug("[" + job + "] Nothing to purge for " + hosts.size() + " hosts, " + elapsed + "ms");
+		}
+
+		return purged;
+	}
+
+	private boolean acquireLease(String job, long now) {
+		try {
+			return leaseRepository.acquire(job, nodeId, new Date(now), new Date(now + leaseMillis));
+		} catch (RuntimeException e) {
+			// most likely another node created the lease at the same moment
+			logger.debug("[" + job + "] Unable to take the lease: " + e.getMessage());
+			return false;
+		}
+	}
+
+	private void recordRun(String job, long purged) {
+		if (purged < 0) {
+			return;
+		}
+		try {
+			leaseRepository.recordRun(job, nodeId, new Date(), purged);
+		} catch (RuntimeException e) {
+			logger.warn("[" + job + "] Unable to record the run", e);
+		}
+	}
+
+	/**
+	 * @return a context for the given host, as a request to it would have bound, under the
+	 * configured scheme and context path
+	 */
+	private HostContext hostContext(HostInfo hostInfo) {
+		String contextPath = configBean.getContextPath();
+		try {
+			return new HostContext(new URL(configBean.getHostScheme(), hostInfo.getHost(), contextPath + "/"), contextPath, hostInfo);
+		} catch (MalformedURLException e) {
+			throw new IllegalStateException("Unable to build a URL for host " + hostInfo.getHost(), e);
+		}
+	}
+
+	/**
+	 * @return the maximum number of hosts a job runs for at once
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * @param poolSize the maximum number of hosts the jobs run for at once, read when the bean starts
+	 */
+	public void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	/**
+	 * @return how long in milliseconds a node keeps a job to itself after starting it
+	 */
+	public long getLeaseMillis() {
+		return leaseMillis;
+	}
+
+	/**
+	 * @param leaseMillis how long in milliseconds a node keeps a job to itself after starting it,
+	 * should be a bit less than the time between runs
+	 */
+	public void setLeaseMillis(long leaseMillis) {
+		this.leaseMillis = leaseMillis;
+	}
+
+	/**
+	 * @return the name this node takes leases under
+	 */
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	/**
+	 * @param nodeId the name this node takes leases under, unique within the cluster
+	 */
+	public void setNodeId(String nodeId) {
+		this.nodeId = nodeId;
+	}
+
+}
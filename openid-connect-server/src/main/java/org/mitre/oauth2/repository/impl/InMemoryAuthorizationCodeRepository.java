@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.oauth2.repository.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.mitre.data.PageCriteria;
+import org.mitre.host.service.HostInfoService;
+import org.mitre.oauth2.model.AuthorizationCodeEntity;
+import org.mitre.oauth2.repository.AuthorizationCodeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * AuthorizationCodeRepository that keeps the codes in memory instead of the
+ * database. Consuming a code is a single remove from a concurrent map, and
+ * neither the code nor its authentication holder is ever written, the token
+ * issued for it gets a holder of its own.
+ *
+ * Expired codes are dropped by a timing wheel: every code is put in the slot
+ * for the second it expires, and each save first empties the slots whose
+ * second has passed. So nothing has to be swept, and the expired code queries
+ * always come back empty.
+ *
+ * The codes are only known to the node that issued them, so this is for a
+ * single node, or a cluster that sends the token request to the node that
+ * handled the authorization request. Otherwise keep the JPA repository.
+ *
+ * This repository isn't picked up by the component scan, declare it as the
+ * primary AuthorizationCodeRepository bean to use it.
+ */
+public class InMemoryAuthorizationCodeRepository implements AuthorizationCodeRepository {
+
+	private static final long TICK_MILLIS = 1000L;
+
+	// one turn of the wheel is a bit over 8 minutes, longer than a code lives
+	private static final int WHEEL_SIZE = 512;
+
+	@Autowired
+	private HostInfoService hostInfoService;
+
+	private final ConcurrentMap<String, AuthorizationCodeEntity> codes = new ConcurrentHashMap<>();
+
+	private final List<Queue<String>> wheel = new ArrayList<>(WHEEL_SIZE);
+
+	private final ReentrantLock expiryLock = new ReentrantLock();
+
+	// the last tick whose slot was emptied, guarded by expiryLock
+	private volatile long lastTick = System.currentTimeMillis() / TICK_MILLIS;
+
+	public InMemoryAuthorizationCodeRepository() {
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			wheel.add(new ConcurrentLinkedQueue<String>());
+		}
+	}
+
+	@Override
+	public AuthorizationCodeEntity save(AuthorizationCodeEntity authorizationCode) {
+		long now = System.currentTimeMillis();
+		expire(now);
+
+		authorizationCode.setHostUuid(hostInfoService.getCurrentHostUuid());
+		String key = key(authorizationCode.getHostUuid(), authorizationCode.getCode());
+		codes.put(key, authorizationCode);
+
+		long expiration = authorizationCode.getExpiration() == null ? now : authorizationCode.getExpiration().getTime();
+		// the first tick that starts after the expiration; a slot that has already been
+		// emptied in this turn would only be looked at again next turn
+		long tick = Math.max(expiration / TICK_MILLIS + 1, lastTick + 1);
+		wheel.get(slot(tick)).add(key);
+
+		return authorizationCode;
+	}
+
+	@Override
+	public AuthorizationCodeEntity getByCode(String code) {
+		return codes.get(key(hostInfoService.getCurrentHostUuid(), code));
+	}
+
+	@Override
+	public AuthorizationCodeEntity consume(String code) {
+		return codes.remove(key(hostInfoService.getCurrentHostUuid(), code));
+	}
+
+	@Override
+	public void remove(AuthorizationCodeEntity authorizationCodeEntity) {
+		hostInfoService.validateHost(authorizationCodeEntity.getHostUuid());
+		codes.remove(key(authorizationCodeEntity.getHostUuid(), authorizationCodeEntity.getCode()), authorizationCodeEntity);
+	}
+
+	@Override
+	public Collection<AuthorizationCodeEntity> getExpiredCodes() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Collection<AuthorizationCodeEntity> getExpiredCodes(PageCriteria pageCriteria) {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public List<AuthorizationCodeEntity> getExpiredCodes(String lastId, int pageSize) {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * @return the number of codes held, including expired ones whose slot hasn't come up yet
+	 */
+	public int size() {
+		return codes.size();
+	}
+
+	/**
+	 * Empty the slots of every tick that has passed by the given time. Only one
+	 * thread does this at a time, the others go on without waiting.
+	 */
+	void expire(long now) {
+		if (!expiryLock.tryLock()) {
+			return;
+		}
+		try {
+			long currentTick = now / TICK_MILLIS;
+			// after a long pause, every slot once is enough
+			long from = Math.max(lastTick + 1, currentTick - WHEEL_SIZE + 1);
+			for (long tick = from; tick <= currentTick; tick++) {
+				Queue<String> slot = wheel.get(slot(tick));
+				// only what is in it now, codes put back below wait for a later turn
+				for (int i = slot.size(); i > 0; i--) {
+					String key = slot.poll();
+					if (key == null) {
+						break;
+					}
+					AuthorizationCodeEntity code = codes.get(key);
+					if (code == null) {
+						// already consumed
+						continue;
+					}
+					if (code.getExpiration() == null || code.getExpiration().getTime() <= now) {
+						codes.remove(key, code);
+					} else {
+						slot.add(key);
+					}
+				}
+			}
+			if (currentTick > lastTick) {
+				lastTick = currentTick;
+			}
+		} finally {
+			expiryLock.unlock();
+		}
+	}
+
+	private static int slot(long tick) {
+		return (int) (tick % WHEEL_SIZE);
+	}
+
+	private static String key(String hostUuid, String code) {
+		return hostUuid + " " + code;
+	}
+
+}
@@ -32,6 +32,7 @@ import org.mitre.oauth2.repository.AuthenticationHolderRepository;
 import org.mitre.util.jpa.JpaUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Repository
@@ -40,6 +41,15 @@ public class JpaAuthenticationHolderRepository implements AuthenticationHolderRe
 
 	private static final int MAXEXPIREDRESULTS = 1000;
 
+	private static final String[] HOLDER_COLLECTION_TABLES = {
+			"auth_holder_authority",
+			"auth_holder_resource_id",
+			"auth_holder_resp_type",
+			"auth_holder_extension",
+			"auth_holder_scope",
+			"auth_holder_request_parameter"
+	};
+
 	@PersistenceContext(unitName="defaultPersistenceUnit")
 	private EntityManager manager;
 	
@@ -53,6 +63,22 @@ public class JpaAuthenticationHolderRepository implements AuthenticationHolderRe
 		return query.getResultList();
 	}
 
+	/**
+	 * Read outside of any transaction, so that the page comes back detached and the
+	 * export doesn't hold on to every holder it has written.
+	 */
+	@Override
+	@Transactional(value="defaultTransactionManager", propagation=Propagation.NOT_SUPPORTED)
+	public List<AuthenticationHolderEntity> getAllAfterId(String lastId, int pageSize) {
+		TypedQuery<AuthenticationHolderEntity> query = manager.createNamedQuery(lastId == null ? AuthenticationHolderEntity.QUERY_ALL_FIRST_PAGE : AuthenticationHolderEntity.QUERY_ALL_AFTER_ID, AuthenticationHolderEntity.class);
+		query.setParameter(AuthenticationHolderEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+		if (lastId != null) {
+			query.setParameter(AuthenticationHolderEntity.PARAM_LAST_ID, lastId);
+		}
+		query.setMaxResults(pageSize);
+		return query.getResultList();
+	}
+
 	@Override
 	public AuthenticationHolderEntity getById(String uuid) {
 		AuthenticationHolderEntity entity = manager.find(AuthenticationHolderEntity.class, uuid);
@@ -77,6 +103,14 @@ public class JpaAuthenticationHolderRepository implements AuthenticationHolderRe
 		return JpaUtil.saveOrUpdate(a.getId(), manager, a);
 	}
 
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public AuthenticationHolderEntity persist(AuthenticationHolderEntity a) {
+		a.setHostUuid(hostInfoService.getCurrentHostUuid());
+		manager.persist(a);
+		return a;
+	}
+
 	@Override
 	@Transactional(value="defaultTransactionManager")
 	public List<AuthenticationHolderEntity> getOrphanedAuthenticationHolders() {
@@ -91,4 +125,26 @@ public class JpaAuthenticationHolderRepository implements AuthenticationHolderRe
 		return JpaUtil.getResultPage(query, pageCriteria);
 	}
 
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public int purgeOrphanedAuthenticationHolders(String hostUuid, int batchSize) {
+		TypedQuery<String> query = manager.createNamedQuery(AuthenticationHolderEntity.QUERY_UNUSED_IDS_BY_HOST, String.class);
+		query.setParameter(AuthenticationHolderEntity.PARAM_HOST_UUID, hostUuid);
+		query.setMaxResults(batchSize);
+		List<String> ids = query.getResultList();
+		if (ids.isEmpty()) {
+			return 0;
+		}
+
+		for (String table : HOLDER_COLLECTION_TABLES) {
+			JpaUtil.executeUpdateIn(manager, "DELETE FROM " + table + " WHERE auth_holder_uuid IN (%s)", ids);
+		}
+		JpaUtil.executeUpdateIn(manager, "DELETE FROM saved_user_auth_authority WHERE user_auth_uuid IN "
+				+ "(SELECT user_auth_uuid FROM authentication_holder WHERE uuid IN (%s))", ids);
+		JpaUtil.executeUpdateIn(manager, "DELETE FROM saved_user_auth WHERE uuid IN "
+				+ "(SELECT user_auth_uuid FROM authentication_holder WHERE uuid IN (%s))", ids);
+		JpaUtil.executeUpdateIn(manager, "DELETE FROM authentication_holder WHERE uuid IN (%s)", ids);
+		return ids.size();
+	}
+
 }
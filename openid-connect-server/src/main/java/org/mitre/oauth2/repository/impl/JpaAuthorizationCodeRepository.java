@@ -22,6 +22,7 @@ package org.mitre.oauth2.repository.impl;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -30,6 +31,7 @@ import javax.persistence.TypedQuery;
 import org.mitre.data.PageCriteria;
 import org.mitre.host.service.HostInfoService;
 import org.mitre.oauth2.model.AuthorizationCodeEntity;
+import org.mitre.oauth2.repository.AuthenticationHolderRepository;
 import org.mitre.oauth2.repository.AuthorizationCodeRepository;
 import org.mitre.util.jpa.JpaUtil;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -52,6 +54,9 @@ public class JpaAuthorizationCodeRepository implements AuthorizationCodeReposito
 	@Autowired
 	HostInfoService hostInfoService;
 
+	@Autowired
+	AuthenticationHolderRepository authenticationHolderRepository;
+
 	/* (non-Javadoc)
 	 * @see org.mitre.oauth2.repository.AuthorizationCodeRepository#save(org.mitre.oauth2.model.AuthorizationCodeEntity)
 	 */
@@ -60,7 +65,10 @@ public class JpaAuthorizationCodeRepository implements AuthorizationCodeReposito
 	public AuthorizationCodeEntity save(AuthorizationCodeEntity authorizationCode) {
 
 		authorizationCode.setHostUuid(hostInfoService.getCurrentHostUuid());
-		
+
+		// the code references its holder, so that has to be stored first
+		authorizationCode.setAuthenticationHolder(authenticationHolderRepository.save(authorizationCode.getAuthenticationHolder()));
+
 		return JpaUtil.saveOrUpdate(authorizationCode.getId(), manager, authorizationCode);
 
 	}
@@ -79,6 +87,25 @@ public class JpaAuthorizationCodeRepository implements AuthorizationCodeReposito
 		return result;
 	}
 
+	/* (non-Javadoc)
+	 * @see org.mitre.oauth2.repository.AuthorizationCodeRepository#consume(java.lang.String)
+	 */
+	@Override
+	public AuthorizationCodeEntity consume(String code) {
+		AuthorizationCodeEntity found = getByCode(code);
+		if (found == null) {
+			return null;
+		}
+
+		// concurrent redemptions can all find the code, but only one of their deletes removes the row
+		int removed = manager.createNamedQuery(AuthorizationCodeEntity.DELETE_BY_ID)
+				.setParameter(AuthorizationCodeEntity.PARAM_HOST_UUID, found.getHostUuid())
+				.setParameter(AuthorizationCodeEntity.PARAM_ID, found.getId())
+				.executeUpdate();
+
+		return removed == 1 ? found : null;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.mitre.oauth2.repository.AuthorizationCodeRepository#remove(org.mitre.oauth2.model.AuthorizationCodeEntity)
 	 */
@@ -109,6 +136,18 @@ public class JpaAuthorizationCodeRepository implements AuthorizationCodeReposito
 		return JpaUtil.getResultPage(query, pageCriteria);
 	}
 
+	@Override
+	public List<AuthorizationCodeEntity> getExpiredCodes(String lastId, int pageSize) {
+		TypedQuery<AuthorizationCodeEntity> query = manager.createNamedQuery(lastId == null ? AuthorizationCodeEntity.QUERY_EXPIRED_FIRST_PAGE : AuthorizationCodeEntity.QUERY_EXPIRED_AFTER_ID, AuthorizationCodeEntity.class);
+		query.setParameter(AuthorizationCodeEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+		query.setParameter(AuthorizationCodeEntity.PARAM_DATE, new Date());
+		if (lastId != null) {
+			query.setParameter(AuthorizationCodeEntity.PARAM_LAST_ID, lastId);
+		}
+		query.setMaxResults(pageSize);
+		return query.getResultList();
+	}
+
 
 
 }
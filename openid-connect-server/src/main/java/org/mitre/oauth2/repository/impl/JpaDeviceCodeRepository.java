@@ -23,6 +23,7 @@ import static org.mitre.util.jpa.JpaUtil.saveOrUpdate;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -113,4 +114,20 @@ public class JpaDeviceCodeRepository implements DeviceCodeRepository {
 		return query.getResultList();
 	}
 
+	/* (non-Javadoc)
+	 * @see org.mitre.oauth2.repository.impl.DeviceCodeRepository#getExpiredCodes(java.lang.String, int)
+	 */
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public List<DeviceCode> getExpiredCodes(String lastId, int pageSize) {
+		TypedQuery<DeviceCode> query = em.createNamedQuery(lastId == null ? DeviceCode.QUERY_EXPIRED_FIRST_PAGE : DeviceCode.QUERY_EXPIRED_AFTER_ID, DeviceCode.class);
+		query.setParameter(AuthorizationCodeEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+		query.setParameter(DeviceCode.PARAM_DATE, new Date());
+		if (lastId != null) {
+			query.setParameter(DeviceCode.PARAM_LAST_ID, lastId);
+		}
+		query.setMaxResults(pageSize);
+		return query.getResultList();
+	}
+
 }
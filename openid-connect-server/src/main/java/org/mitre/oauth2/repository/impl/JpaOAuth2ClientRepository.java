@@ -18,6 +18,7 @@
 package org.mitre.oauth2.repository.impl;
 
 import java.util.Collection;
+import java.util.List;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -29,6 +30,7 @@ import org.mitre.oauth2.repository.OAuth2ClientRepository;
 import org.mitre.util.jpa.JpaUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -74,12 +76,27 @@ public class JpaOAuth2ClientRepository implements OAuth2ClientRepository {
 		return JpaUtil.getSingleResult(query.getResultList());
 	}
 
+	@Override
+	@Transactional(value="defaultTransactionManager", propagation=Propagation.NOT_SUPPORTED)
+	public ClientDetailsEntity getDetachedClientByClientId(String clientId) {
+		return getClientByClientId(clientId);
+	}
+
+	@Override
+	public Long getClientVersion(String clientId) {
+		TypedQuery<Long> query = manager.createNamedQuery(ClientDetailsEntity.QUERY_VERSION_BY_CLIENT_ID, Long.class);
+		query.setParameter(ClientDetailsEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+		query.setParameter(ClientDetailsEntity.PARAM_CLIENT_ID, clientId);
+		return JpaUtil.getSingleResult(query.getResultList());
+	}
+
 	/* (non-Javadoc)
 	 * @see org.mitre.oauth2.repository.OAuth2ClientRepository#saveClient(org.mitre.oauth2.model.ClientDetailsEntity)
 	 */
 	@Override
 	public ClientDetailsEntity saveClient(ClientDetailsEntity client) {		
 		client.setHostUuid(hostInfoService.getCurrentHostUuid());
+		client.setVersion(client.getVersion() + 1);
 		return JpaUtil.saveOrUpdate(client.getId(), manager, client);
 	}
 
@@ -103,6 +120,10 @@ public class JpaOAuth2ClientRepository implements OAuth2ClientRepository {
 		
 		hostInfoService.validateHost(client.getHostUuid());
 
+		// the new client usually comes from outside, so take the version from the stored one
+		ClientDetailsEntity stored = manager.find(ClientDetailsEntity.class, uuid);
+		client.setVersion((stored != null ? stored.getVersion() : client.getVersion()) + 1);
+
 		return JpaUtil.saveOrUpdate(uuid, manager, client);
 	}
 
@@ -113,4 +134,20 @@ public class JpaOAuth2ClientRepository implements OAuth2ClientRepository {
 		return query.getResultList();
 	}
 
+	/**
+	 * Read outside of any transaction, so that the page comes back detached and the
+	 * export doesn't hold on to every client it has written.
+	 */
+	@Override
+	@Transactional(value="defaultTransactionManager", propagation=Propagation.NOT_SUPPORTED)
+	public List<ClientDetailsEntity> getClientsAfterId(String lastId, int pageSize) {
+		TypedQuery<ClientDetailsEntity> query = manager.createNamedQuery(lastId == null ? ClientDetailsEntity.QUERY_ALL_FIRST_PAGE : ClientDetailsEntity.QUERY_ALL_AFTER_ID, ClientDetailsEntity.class);
+		query.setParameter(ClientDetailsEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+		if (lastId != null) {
+			query.setParameter(ClientDetailsEntity.PARAM_LAST_ID, lastId);
+		}
+		query.setMaxResults(pageSize);
+		return query.getResultList();
+	}
+
 }
@@ -17,8 +17,8 @@
  *******************************************************************************/
 package org.mitre.oauth2.repository.impl;
 
-import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -36,13 +36,17 @@ import javax.persistence.criteria.Root;
 import org.mitre.data.DefaultPageCriteria;
 import org.mitre.data.PageCriteria;
 import org.mitre.host.service.HostInfoService;
+import org.mitre.oauth2.model.AuthenticationHolderEntity;
 import org.mitre.oauth2.model.AuthorizationCodeEntity;
 import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity.TokenKind;
 import org.mitre.oauth2.model.OAuth2RefreshTokenEntity;
 import org.mitre.oauth2.repository.OAuth2TokenRepository;
+import org.mitre.oauth2.repository.RevokedTokenRepository;
 import org.mitre.openid.connect.model.ApprovedSite;
 import org.mitre.uma.model.ResourceSet;
+import org.mitre.util.HashUtils;
 import org.mitre.util.jpa.JpaUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,14 +54,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.nimbusds.jwt.JWT;
-import com.nimbusds.jwt.JWTParser;
 
 @Repository
 public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 
 	private static final int MAXEXPIREDRESULTS = 1000;
 
+	private static final int MAX_IDS_PER_UPDATE = 1000;
+
+	private static final List<TokenKind> REGISTRATION_TOKEN_KINDS = ImmutableList.of(TokenKind.REGISTRATION, TokenKind.RESOURCE);
+
 	private static final Logger logger = LoggerFactory.getLogger(JpaOAuth2TokenRepository.class);
 
 	@PersistenceContext(unitName="defaultPersistenceUnit")
@@ -66,6 +75,9 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 	@Autowired
 	HostInfoService hostInfoService;
 
+	@Autowired
+	RevokedTokenRepository revokedTokenRepository;
+
 	@Override
 	public Set<OAuth2AccessTokenEntity> getAllAccessTokens() {
 		TypedQuery<OAuth2AccessTokenEntity> query = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_ALL, OAuth2AccessTokenEntity.class);
@@ -80,18 +92,35 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 		return new LinkedHashSet<>(query.getResultList());
 	}
 
+	@Override
+	public List<OAuth2AccessTokenEntity> getAccessTokensAfterId(String lastId, int pageSize) {
+		TypedQuery<OAuth2AccessTokenEntity> query = manager.createNamedQuery(lastId == null ? OAuth2AccessTokenEntity.QUERY_ALL_FIRST_PAGE : OAuth2AccessTokenEntity.QUERY_ALL_AFTER_ID, OAuth2AccessTokenEntity.class);
+		query.setParameter(OAuth2AccessTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+		if (lastId != null) {
+			query.setParameter(OAuth2AccessTokenEntity.PARAM_LAST_ID, lastId);
+		}
+		query.setMaxResults(pageSize);
+		return query.getResultList();
+	}
 
 	@Override
-	public OAuth2AccessTokenEntity getAccessTokenByValue(String accessTokenValue) {
-		try {
-			JWT jwt = JWTParser.parse(accessTokenValue);
-			TypedQuery<OAuth2AccessTokenEntity> query = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_BY_TOKEN_VALUE, OAuth2AccessTokenEntity.class);
-			query.setParameter(OAuth2AccessTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
-			query.setParameter(OAuth2AccessTokenEntity.PARAM_TOKEN_VALUE, jwt);
-			return JpaUtil.getSingleResult(query.getResultList());
-		} catch (ParseException e) {
-			return null;
+	public List<OAuth2RefreshTokenEntity> getRefreshTokensAfterId(String lastId, int pageSize) {
+		TypedQuery<OAuth2RefreshTokenEntity> query = manager.createNamedQuery(lastId == null ? OAuth2RefreshTokenEntity.QUERY_ALL_FIRST_PAGE : OAuth2RefreshTokenEntity.QUERY_ALL_AFTER_ID, OAuth2RefreshTokenEntity.class);
+		query.setParameter(OAuth2RefreshTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+		if (lastId != null) {
+			query.setParameter(OAuth2RefreshTokenEntity.PARAM_LAST_ID, lastId);
 		}
+		query.setMaxResults(pageSize);
+		return query.getResultList();
+	}
+
+
+	@Override
+	public OAuth2AccessTokenEntity getAccessTokenByValue(String accessTokenValue) {
+		TypedQuery<OAuth2AccessTokenEntity> query = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_BY_TOKEN_HASH, OAuth2AccessTokenEntity.class);
+		query.setParameter(OAuth2AccessTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+		query.setParameter(OAuth2AccessTokenEntity.PARAM_TOKEN_HASH, HashUtils.sha256(accessTokenValue));
+		return JpaUtil.getSingleResult(query.getResultList());
 	}
 
 	@Override
@@ -108,39 +137,45 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 	@Transactional(value="defaultTransactionManager")
 	public OAuth2AccessTokenEntity saveAccessToken(OAuth2AccessTokenEntity token) {
 		token.setHostUuid(hostInfoService.getCurrentHostUuid());
+		// the kind follows from the scope, whichever way the token was made
+		token.setKind(TokenKind.forScope(token.getScope()));
 		return JpaUtil.saveOrUpdate(token.getId(), manager, token);
 	}
 
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public OAuth2AccessTokenEntity persistAccessToken(OAuth2AccessTokenEntity token) {
+		token.setHostUuid(hostInfoService.getCurrentHostUuid());
+		token.setKind(TokenKind.forScope(token.getScope()));
+		manager.persist(token);
+		return token;
+	}
+
 	@Override
 	@Transactional(value="defaultTransactionManager")
 	public void removeAccessToken(OAuth2AccessTokenEntity accessToken) {
-		OAuth2AccessTokenEntity found = getAccessTokenById(accessToken.getId());		
+		OAuth2AccessTokenEntity found = getAccessTokenById(accessToken.getId());
+		revokedTokenRepository.save(found);
 		manager.remove(found);
 	}
 
 	@Override
 	@Transactional(value="defaultTransactionManager")
-	public void clearAccessTokensForRefreshToken(OAuth2RefreshTokenEntity refreshToken) {
-		TypedQuery<OAuth2AccessTokenEntity> query = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_BY_REFRESH_TOKEN, OAuth2AccessTokenEntity.class);
+	public int clearAccessTokensForRefreshToken(OAuth2RefreshTokenEntity refreshToken, Collection<String> revokedHashes) {
+		TypedQuery<String> query = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_IDS_BY_REFRESH_TOKEN, String.class);
 		query.setParameter(OAuth2AccessTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
 		query.setParameter(OAuth2AccessTokenEntity.PARAM_REFERSH_TOKEN, refreshToken);
-		List<OAuth2AccessTokenEntity> accessTokens = query.getResultList();
-		for (OAuth2AccessTokenEntity accessToken : accessTokens) {
-			removeAccessToken(accessToken);
-		}
+		int removed = revokeAccessTokens(query.getResultList(), revokedHashes);
+		manager.clear();
+		return removed;
 	}
 
 	@Override
 	public OAuth2RefreshTokenEntity getRefreshTokenByValue(String refreshTokenValue) {
-		try {
-			JWT jwt = JWTParser.parse(refreshTokenValue);
-			TypedQuery<OAuth2RefreshTokenEntity> query = manager.createNamedQuery(OAuth2RefreshTokenEntity.QUERY_BY_TOKEN_VALUE, OAuth2RefreshTokenEntity.class);
-			query.setParameter(OAuth2RefreshTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
-			query.setParameter(OAuth2RefreshTokenEntity.PARAM_TOKEN_VALUE, jwt);
-			return JpaUtil.getSingleResult(query.getResultList());
-		} catch (ParseException e) {
-			return null;
-		}
+		TypedQuery<OAuth2RefreshTokenEntity> query = manager.createNamedQuery(OAuth2RefreshTokenEntity.QUERY_BY_TOKEN_HASH, OAuth2RefreshTokenEntity.class);
+		query.setParameter(OAuth2RefreshTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+		query.setParameter(OAuth2RefreshTokenEntity.PARAM_TOKEN_HASH, HashUtils.sha256(refreshTokenValue));
+		return JpaUtil.getSingleResult(query.getResultList());
 	}
 
 	@Override
@@ -154,6 +189,13 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 		return JpaUtil.saveOrUpdate(refreshToken.getId(), manager, refreshToken);
 	}
 
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public OAuth2RefreshTokenEntity persistRefreshToken(OAuth2RefreshTokenEntity refreshToken) {
+		manager.persist(refreshToken);
+		return refreshToken;
+	}
+
 	@Override
 	@Transactional(value="defaultTransactionManager")
 	public void removeRefreshToken(OAuth2RefreshTokenEntity refreshToken) {
@@ -167,21 +209,19 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 
 	@Override
 	@Transactional(value="defaultTransactionManager")
-	public void clearTokensForClient(ClientDetailsEntity client) {
-		TypedQuery<OAuth2AccessTokenEntity> queryA = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_BY_CLIENT, OAuth2AccessTokenEntity.class);
+	public int clearTokensForClient(ClientDetailsEntity client, Collection<String> revokedHashes) {
+		TypedQuery<String> queryA = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_IDS_BY_CLIENT, String.class);
 		queryA.setParameter(OAuth2AccessTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
 		queryA.setParameter(OAuth2AccessTokenEntity.PARAM_CLIENT, client);
-		List<OAuth2AccessTokenEntity> accessTokens = queryA.getResultList();
-		for (OAuth2AccessTokenEntity accessToken : accessTokens) {
-			removeAccessToken(accessToken);
-		}
-		TypedQuery<OAuth2RefreshTokenEntity> queryR = manager.createNamedQuery(OAuth2RefreshTokenEntity.QUERY_BY_CLIENT, OAuth2RefreshTokenEntity.class);
+		int removed = revokeAccessTokens(queryA.getResultList(), revokedHashes);
+
+		TypedQuery<String> queryR = manager.createNamedQuery(OAuth2RefreshTokenEntity.QUERY_IDS_BY_CLIENT, String.class);
 		queryR.setParameter(OAuth2RefreshTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
 		queryR.setParameter(OAuth2RefreshTokenEntity.PARAM_CLIENT, client);
-		List<OAuth2RefreshTokenEntity> refreshTokens = queryR.getResultList();
-		for (OAuth2RefreshTokenEntity refreshToken : refreshTokens) {
-			removeRefreshToken(refreshToken);
-		}
+		manager.flush();
+		removed += deleteRefreshTokens(queryR.getResultList());
+		manager.clear();
+		return removed;
 	}
 
 	@Override
@@ -193,6 +233,17 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 		return accessTokens;
 	}
 
+	@Override
+	public OAuth2AccessTokenEntity getRegistrationAccessTokenForClient(ClientDetailsEntity client) {
+		TypedQuery<OAuth2AccessTokenEntity> query = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_BY_CLIENT_AND_KIND, OAuth2AccessTokenEntity.class);
+		query.setParameter(OAuth2AccessTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+		query.setParameter(OAuth2AccessTokenEntity.PARAM_CLIENT, client);
+		query.setParameter(OAuth2AccessTokenEntity.PARAM_KINDS, REGISTRATION_TOKEN_KINDS);
+		// there should only be one, but don't fail on a leftover
+		query.setMaxResults(1);
+		return JpaUtil.getSingleResult(query.getResultList());
+	}
+
 	@Override
 	public List<OAuth2RefreshTokenEntity> getRefreshTokensForClient(ClientDetailsEntity client) {
 		TypedQuery<OAuth2RefreshTokenEntity> queryR = manager.createNamedQuery(OAuth2RefreshTokenEntity.QUERY_BY_CLIENT, OAuth2RefreshTokenEntity.class);
@@ -254,6 +305,118 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 		return new LinkedHashSet<>(query.getResultList());
 	}
 
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public int clearAccessTokensForResourceSet(ResourceSet rs, Collection<String> revokedHashes) {
+		TypedQuery<String> query = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_IDS_BY_RESOURCE_SET, String.class);
+		query.setParameter(OAuth2AccessTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+		query.setParameter(OAuth2AccessTokenEntity.PARAM_RESOURCE_SET_ID, rs.getId());
+		int removed = revokeAccessTokens(query.getResultList(), revokedHashes);
+		manager.clear();
+		return removed;
+	}
+
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public int purgeExpiredAccessTokens(String hostUuid, Date date, int batchSize) {
+		TypedQuery<String> query = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_EXPIRED_IDS_BY_HOST, String.class);
+		query.setParameter(OAuth2AccessTokenEntity.PARAM_HOST_UUID, hostUuid);
+		query.setParameter(OAuth2AccessTokenEntity.PARAM_DATE, date);
+		query.setMaxResults(batchSize);
+		List<String> ids = query.getResultList();
+
+		deleteAccessTokens(ids);
+		return ids.size();
+	}
+
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public int purgeExpiredRefreshTokens(String hostUuid, Date date, int batchSize) {
+		TypedQuery<String> query = manager.createNamedQuery(OAuth2RefreshTokenEntity.QUERY_EXPIRED_IDS_BY_HOST, String.class);
+		query.setParameter(OAuth2RefreshTokenEntity.PARAM_HOST_UUID, hostUuid);
+		query.setParameter(OAuth2RefreshTokenEntity.PARAM_DATE, date);
+		query.setMaxResults(batchSize);
+		List<String> ids = query.getResultList();
+		if (ids.isEmpty()) {
+			return 0;
+		}
+
+		// expired access tokens are already gone by now, so whatever is still issued
+		// from these refresh tokens is live and has to be recorded as revoked
+		TypedQuery<String> queryA = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_IDS_BY_REFRESH_TOKEN_IDS, String.class);
+		queryA.setParameter(OAuth2AccessTokenEntity.PARAM_HOST_UUID, hostUuid);
+		queryA.setParameter(OAuth2AccessTokenEntity.PARAM_REFRESH_TOKEN_IDS, ids);
+		List<String> accessTokenIds = queryA.getResultList();
+		manager.flush();
+		manager.clear();
+
+		revokedTokenRepository.saveAll(accessTokenIds);
+		deleteAccessTokens(accessTokenIds);
+		deleteRefreshTokens(ids);
+		return ids.size();
+	}
+
+	/**
+	 * Record the given access tokens as revoked and delete them. Pending changes are
+	 * flushed first, so that the statements see them; the caller clears the
+	 * persistence context once its statements have run, since the managed copies of
+	 * the deleted rows are stale by then.
+	 *
+	 * @param revokedHashes collects the hashes of the live access tokens, the ones recorded as revoked
+	 * @return the number of access tokens removed
+	 */
+	private int revokeAccessTokens(Collection<String> ids, Collection<String> revokedHashes) {
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		manager.flush();
+
+		Date now = new Date();
+		for (List<String> chunk : Iterables.partition(ids, MAX_IDS_PER_UPDATE)) {
+			TypedQuery<String> query = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_LIVE_HASHES_BY_IDS, String.class);
+			query.setParameter(OAuth2AccessTokenEntity.PARAM_IDS, chunk);
+			query.setParameter(OAuth2AccessTokenEntity.PARAM_DATE, now);
+			revokedHashes.addAll(query.getResultList());
+		}
+
+		revokedTokenRepository.saveAll(ids);
+		return deleteAccessTokens(ids);
+	}
+
+	/**
+	 * Delete the given access tokens and their dependent rows, children first, a
+	 * bounded number of ids per statement.
+	 *
+	 * @return the number of access tokens removed
+	 */
+	private int deleteAccessTokens(Collection<String> ids) {
+		int deleted = 0;
+		for (List<String> chunk : Iterables.partition(ids, MAX_IDS_PER_UPDATE)) {
+			JpaUtil.executeUpdateIn(manager, "DELETE FROM permission_scope WHERE permission_uuid IN "
+					+ "(SELECT permission_uuid FROM access_token_permissions WHERE access_token_uuid IN (%s))", chunk);
+			JpaUtil.executeUpdateIn(manager, "DELETE FROM permission WHERE uuid IN "
+					+ "(SELECT permission_uuid FROM access_token_permissions WHERE access_token_uuid IN (%s))", chunk);
+			JpaUtil.executeUpdateIn(manager, "DELETE FROM access_token_permissions WHERE access_token_uuid IN (%s)", chunk);
+			JpaUtil.executeUpdateIn(manager, "DELETE FROM token_scope WHERE access_token_uuid IN (%s)", chunk);
+			deleted += JpaUtil.executeUpdateIn(manager, "DELETE FROM access_token WHERE uuid IN (%s)", chunk);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Delete the given refresh tokens, a bounded number of ids per statement. The
+	 * access tokens issued from them have to be gone already.
+	 *
+	 * @return the number of refresh tokens removed
+	 */
+	private int deleteRefreshTokens(Collection<String> ids) {
+		int deleted = 0;
+		for (List<String> chunk : Iterables.partition(ids, MAX_IDS_PER_UPDATE)) {
+			deleted += JpaUtil.executeUpdateIn(manager, "DELETE FROM refresh_token WHERE uuid IN (%s)", chunk);
+		}
+		return deleted;
+	}
+
 	@Override
 	@Transactional(value="defaultTransactionManager")
 	public void clearDuplicateAccessTokens() {
@@ -308,4 +471,85 @@ public class JpaOAuth2TokenRepository implements OAuth2TokenRepository {
 		return accessTokens;
 	}
 
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public int clearTokensForApprovedSite(ApprovedSite approvedSite, Collection<String> revokedHashes) {
+		TypedQuery<String> queryR = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_REFRESH_TOKEN_IDS_BY_APPROVED_SITE, String.class);
+		queryR.setParameter(OAuth2AccessTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+		queryR.setParameter(OAuth2AccessTokenEntity.PARAM_APPROVED_SITE, approvedSite);
+		List<String> refreshTokenIds = queryR.getResultList();
+
+		TypedQuery<String> queryA = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_IDS_BY_APPROVED_SITE, String.class);
+		queryA.setParameter(OAuth2AccessTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+		queryA.setParameter(OAuth2AccessTokenEntity.PARAM_APPROVED_SITE, approvedSite);
+		Set<String> accessTokenIds = new LinkedHashSet<>(queryA.getResultList());
+
+		// the refresh tokens can't go while other access tokens still point at them
+		for (List<String> chunk : Iterables.partition(refreshTokenIds, MAX_IDS_PER_UPDATE)) {
+			TypedQuery<String> query = manager.createNamedQuery(OAuth2AccessTokenEntity.QUERY_IDS_BY_REFRESH_TOKEN_IDS, String.class);
+			query.setParameter(OAuth2AccessTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+			query.setParameter(OAuth2AccessTokenEntity.PARAM_REFRESH_TOKEN_IDS, chunk);
+			accessTokenIds.addAll(query.getResultList());
+		}
+
+		int removed = revokeAccessTokens(accessTokenIds, revokedHashes);
+		manager.flush();
+		removed += deleteRefreshTokens(refreshTokenIds);
+		manager.clear();
+		return removed;
+	}
+
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public int setAccessTokensClient(Collection<String> accessTokenIds, ClientDetailsEntity client) {
+		return updateReference(OAuth2AccessTokenEntity.QUERY_SET_CLIENT, OAuth2AccessTokenEntity.PARAM_CLIENT, client, accessTokenIds);
+	}
+
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public int setAccessTokensAuthenticationHolder(Collection<String> accessTokenIds, AuthenticationHolderEntity authHolder) {
+		return updateReference(OAuth2AccessTokenEntity.QUERY_SET_AUTH_HOLDER, OAuth2AccessTokenEntity.PARAM_AUTH_HOLDER, authHolder, accessTokenIds);
+	}
+
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public int setAccessTokensRefreshToken(Collection<String> accessTokenIds, OAuth2RefreshTokenEntity refreshToken) {
+		return updateReference(OAuth2AccessTokenEntity.QUERY_SET_REFRESH_TOKEN, OAuth2AccessTokenEntity.PARAM_REFERSH_TOKEN, refreshToken, accessTokenIds);
+	}
+
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public int setAccessTokensApprovedSite(Collection<String> accessTokenIds, ApprovedSite approvedSite) {
+		return updateReference(OAuth2AccessTokenEntity.QUERY_SET_APPROVED_SITE, OAuth2AccessTokenEntity.PARAM_APPROVED_SITE, approvedSite, accessTokenIds);
+	}
+
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public int setRefreshTokensClient(Collection<String> refreshTokenIds, ClientDetailsEntity client) {
+		return updateReference(OAuth2RefreshTokenEntity.QUERY_SET_CLIENT, OAuth2RefreshTokenEntity.PARAM_CLIENT, client, refreshTokenIds);
+	}
+
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public int setRefreshTokensAuthenticationHolder(Collection<String> refreshTokenIds, AuthenticationHolderEntity authHolder) {
+		return updateReference(OAuth2RefreshTokenEntity.QUERY_SET_AUTH_HOLDER, OAuth2RefreshTokenEntity.PARAM_AUTH_HOLDER, authHolder, refreshTokenIds);
+	}
+
+	/**
+	 * Run one of the reference updates over the given token ids, a bounded number of ids per statement.
+	 */
+	private int updateReference(String queryName, String referenceParam, Object reference, Collection<String> ids) {
+		// the reference may have been persisted without a flush
+		manager.flush();
+		int updated = 0;
+		for (List<String> chunk : Iterables.partition(ids, MAX_IDS_PER_UPDATE)) {
+			Query query = manager.createNamedQuery(queryName);
+			query.setParameter(OAuth2AccessTokenEntity.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+			query.setParameter(referenceParam, reference);
+			query.setParameter(OAuth2AccessTokenEntity.PARAM_IDS, chunk);
+			updated += query.executeUpdate();
+		}
+		return updated;
+	}
+
 }
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Portions copyright 2011-2013 The MITRE Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.oauth2.repository.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.mitre.oauth2.model.RevokedTokenEntity;
+import org.mitre.oauth2.repository.RevokedTokenRepository;
+import org.mitre.util.jpa.JpaUtil;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * JPA RevokedTokenRepository implementation. Revocation records are read
+ * across all hosts, token hashes are unique on their own.
+ *
+ */
+@Repository
+@Transactional(value="defaultTransactionManager")
+public class JpaRevokedTokenRepository implements RevokedTokenRepository {
+
+	private static final int MAX_IDS_PER_INSERT = 1000;
+
+	@PersistenceContext(unitName="defaultPersistenceUnit")
+	private EntityManager manager;
+
+	@Override
+	public void save(OAuth2AccessTokenEntity token) {
+		if (token.getTokenHash() == null || token.isExpired()) {
+			// nothing to look up, or nothing left to revoke
+			return;
+		}
+		manager.merge(new RevokedTokenEntity(token));
+	}
+
+	@Override
+	public int saveAll(Collection<String> accessTokenIds) {
+		List<Object> parameters = Collections.<Object>singletonList(new Date());
+		int saved = 0;
+		for (List<String> chunk : Iterables.partition(accessTokenIds, MAX_IDS_PER_INSERT)) {
+			// a token revoked by someone else in the meantime is already recorded
+			saved += JpaUtil.executeUpdateIn(manager, "INSERT INTO revoked_token (token_hash, host_uuid, expiration, revoked) "
+					+ "SELECT a.token_hash, a.host_uuid, a.expiration, ?1 FROM access_token a "
+					+ "WHERE a.uuid IN (%s) AND a.token_hash IS NOT NULL AND (a.expiration IS NULL OR a.expiration > ?1) "
+					+ "AND NOT EXISTS (SELECT 1 FROM revoked_token r WHERE r.token_hash = a.token_hash)", parameters, chunk);
+		}
+		return saved;
+	}
+
+	@Override
+	public boolean isRevoked(String tokenHash) {
+		TypedQuery<RevokedTokenEntity> query = manager.createNamedQuery(RevokedTokenEntity.QUERY_BY_HASH, RevokedTokenEntity.class);
+		query.setParameter(RevokedTokenEntity.PARAM_TOKEN_HASH, tokenHash);
+		return !query.getResultList().isEmpty();
+	}
+
+	@Override
+	public List<String> getActiveTokenHashes() {
+		TypedQuery<String> query = manager.createNamedQuery(RevokedTokenEntity.QUERY_ACTIVE_HASHES, String.class);
+		query.setParameter(RevokedTokenEntity.PARAM_DATE, new Date());
+		return query.getResultList();
+	}
+
+	@Override
+	public List<String> getTokenHashesRevokedSince(Date date) {
+		TypedQuery<String> query = manager.createNamedQuery(RevokedTokenEntity.QUERY_HASHES_REVOKED_SINCE, String.class);
+		query.setParameter(RevokedTokenEntity.PARAM_DATE, date);
+		return query.getResultList();
+	}
+
+	@Override
+	public int clearExpired() {
+		return manager.createNamedQuery(RevokedTokenEntity.DELETE_EXPIRED_BY_DATE)
+				.setParameter(RevokedTokenEntity.PARAM_DATE, new Date())
+				.executeUpdate();
+	}
+
+}
@@ -16,25 +16,37 @@
 
 package org.mitre.oauth2.service.impl;
 
-import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
-import org.mitre.data.AbstractPageOperationTemplate;
+import org.mitre.data.AbstractKeysetPageOperationTemplate;
 import org.mitre.host.service.HostInfoService;
+import org.mitre.oauth2.exception.AuthorizationPendingException;
+import org.mitre.oauth2.exception.DeviceCodeExpiredException;
+import org.mitre.oauth2.exception.SlowDownException;
 import org.mitre.oauth2.model.AuthenticationHolderEntity;
 import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.oauth2.model.DeviceCode;
 import org.mitre.oauth2.repository.impl.DeviceCodeRepository;
 import org.mitre.oauth2.service.DeviceCodeService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
  * @author jricher
@@ -49,8 +61,76 @@ public class DefaultDeviceCodeService implements DeviceCodeService {
 	@Autowired
 	private HostInfoService hostInfoService;
 
+	@Autowired
+	@Qualifier("defaultTransactionManager")
+	private PlatformTransactionManager transactionManager;
+
 	private RandomValueStringGenerator randomGenerator = new RandomValueStringGenerator();
 
+	// leeway for polls that arrive a little early because of network delays
+	private static final long POLL_TOLERANCE_MILLIS = 500L;
+
+	// added to a code's interval on each slow_down, as RFC 8628 has the device do
+	private static final long SLOW_DOWN_INCREMENT_MILLIS = 5000L;
+
+	private int pollingInterval = 5; // seconds, the default in RFC 8628
+
+	private int pendingRecheckSeconds = 30;
+
+	/**
+	 * Polling state of the device codes being polled, by host and device code, so
+	 * that polls of a code that hasn't been approved don't read it every time.
+	 * Approvals made here update it right away, approvals made by other nodes are
+	 * seen within pendingRecheckSeconds. Devices that stop polling drop out.
+	 */
+	private final Cache<String, PollState> pollStates = CacheBuilder.newBuilder()
+			.expireAfterAccess(10, TimeUnit.MINUTES)
+			.maximumSize(100000)
+			.build();
+
+	private static class PollState {
+		private final String clientId;
+		private final Date expiration;
+		private volatile boolean approved;
+		private long intervalMillis;
+		private long lastPoll;
+		private long lastChecked;
+
+		private PollState(DeviceCode dc, long now, long intervalMillis) {
+			this.clientId = dc.getClientId();
+			this.expiration = dc.getExpiration();
+			this.approved = dc.isApproved();
+			this.intervalMillis = intervalMillis;
+			this.lastChecked = now;
+		}
+
+		/**
+		 * @return false if the previous poll was less than the interval ago, in which case
+		 * the interval for this code grows by 5 seconds
+		 */
+		private synchronized boolean poll(long now) {
+			boolean tooFast = lastPoll > 0 && now - lastPoll < intervalMillis - POLL_TOLERANCE_MILLIS;
+			lastPoll = now;
+			if (tooFast) {
+				intervalMillis += SLOW_DOWN_INCREMENT_MILLIS;
+				return false;
+			}
+			return true;
+		}
+
+		private synchronized boolean recheck(long now, long recheckMillis) {
+			if (now - lastChecked < recheckMillis) {
+				return false;
+			}
+			lastChecked = now;
+			return true;
+		}
+
+		private boolean isExpired(long now) {
+			return expiration != null && expiration.getTime() < now;
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.mitre.oauth2.service.DeviceCodeService#save(org.mitre.oauth2.model.DeviceCode)
 	 */
@@ -97,7 +177,14 @@ public class DefaultDeviceCodeService implements DeviceCodeService {
 
 		found.setAuthenticationHolder(authHolder);
 
-		return repository.save(found);
+		DeviceCode saved = repository.save(found);
+
+		PollState state = pollStates.getIfPresent(pollKey(saved.getDeviceCode()));
+		if (state != null) {
+			state.approved = true;
+		}
+
+		return saved;
 	}
 
 	/* (non-Javadoc)
@@ -128,27 +215,101 @@ public class DefaultDeviceCodeService implements DeviceCodeService {
 	 * @see org.mitre.oauth2.service.DeviceCodeService#clearExpiredDeviceCodes()
 	 */
 	@Override
-	@Transactional(value="defaultTransactionManager")
-	public void clearExpiredDeviceCodes() {
-	
-		new AbstractPageOperationTemplate<DeviceCode>("clearExpiredDeviceCodes"){
+	public int clearExpiredDeviceCodes() {
+
+		final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+		return new AbstractKeysetPageOperationTemplate<DeviceCode>("clearExpiredDeviceCodes"){
 			@Override
-			public Collection<DeviceCode> fetchPage() {
-				return repository.getExpiredCodes();
+			public List<DeviceCode> fetchPage(String lastKey, int pageSize) {
+				return repository.getExpiredCodes(lastKey, pageSize);
+			}
+
+			@Override
+			protected String getKey(DeviceCode item) {
+				return item.getId();
 			}
 
 			@Override
 			protected void doOperation(DeviceCode item) {
 				repository.remove(item);
 			}
+
+			@Override
+			protected void executePage(final Runnable page) {
+				transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+					@Override
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						page.run();
+					}
+				});
+			}
 		}.execute();
 	}
 
+	/* (non-Javadoc)
+	 * @see org.mitre.oauth2.service.DeviceCodeService#pollDeviceCode(java.lang.String, org.springframework.security.oauth2.provider.ClientDetails)
+	 */
+	@Override
+	public DeviceCode pollDeviceCode(String deviceCode, ClientDetails client) {
+		String key = pollKey(deviceCode);
+		long now = System.currentTimeMillis();
+
+		DeviceCode found = null;
+		PollState state = pollStates.getIfPresent(key);
+		if (state == null) {
+			found = findDeviceCode(deviceCode, client);
+			if (found == null) {
+				throw new InvalidGrantException("Invalid device code: " + deviceCode);
+			}
+			state = new PollState(found, now, pollingInterval * 1000L);
+			PollState existing = pollStates.asMap().putIfAbsent(key, state);
+			if (existing != null) {
+				state = existing;
+			}
+		} else if (!state.clientId.equals(client.getClientId())) {
+			// if the clients don't match, pretend the code wasn't found
+			throw new InvalidGrantException("Invalid device code: " + deviceCode);
+		}
+
+		if (!state.poll(now)) {
+			throw new SlowDownException("Polling too fast for code " + deviceCode);
+		}
+
+		if (state.isExpired(now)) {
+			clearDeviceCode(deviceCode, client);
+			throw new DeviceCodeExpiredException("Device code has expired " + deviceCode);
+		}
+
+		if (found == null) {
+			if (!state.approved && !state.recheck(now, pendingRecheckSeconds * 1000L)) {
+				// still waiting for approval
+				throw new AuthorizationPendingException("Authorization pending for code " + deviceCode);
+			}
+
+			found = findDeviceCode(deviceCode, client);
+			if (found == null) {
+				pollStates.invalidate(key);
+				throw new InvalidGrantException("Invalid device code: " + deviceCode);
+			}
+			state.approved = found.isApproved();
+		}
+
+		if (!found.isApproved()) {
+			// still waiting for approval
+			throw new AuthorizationPendingException("Authorization pending for code " + deviceCode);
+		}
+
+		return found;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.mitre.oauth2.service.DeviceCodeService#clearDeviceCode(java.lang.String, org.springframework.security.oauth2.provider.ClientDetails)
 	 */
 	@Override
 	public void clearDeviceCode(String deviceCode, ClientDetails client) {
+		pollStates.invalidate(pollKey(deviceCode));
+
 		DeviceCode found = findDeviceCode(deviceCode, client);
 		
 		if (found != null) {
@@ -158,4 +319,36 @@ public class DefaultDeviceCodeService implements DeviceCodeService {
 
 	}
 
+	private String pollKey(String deviceCode) {
+		return hostInfoService.getCurrentHostUuid() + " " + deviceCode;
+	}
+
+	@Override
+	public int getPollingInterval() {
+		return pollingInterval;
+	}
+
+	/**
+	 * @param pollingInterval the minimum number of seconds a device has to wait between polls
+	 */
+	public void setPollingInterval(int pollingInterval) {
+		this.pollingInterval = pollingInterval;
+	}
+
+	/**
+	 * @return how many seconds a code that is still pending is answered from memory
+	 * before it is read again, to pick up approvals made on other nodes
+	 */
+	public int getPendingRecheckSeconds() {
+		return pendingRecheckSeconds;
+	}
+
+	/**
+	 * @param pendingRecheckSeconds how many seconds a code that is still pending is answered
+	 * from memory before it is read again, to pick up approvals made on other nodes
+	 */
+	public void setPendingRecheckSeconds(int pendingRecheckSeconds) {
+		this.pendingRecheckSeconds = pendingRecheckSeconds;
+	}
+
 }
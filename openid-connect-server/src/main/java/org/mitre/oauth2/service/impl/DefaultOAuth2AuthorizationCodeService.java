@@ -20,27 +20,33 @@
  */
 package org.mitre.oauth2.service.impl;
 
-import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
-import org.mitre.data.AbstractPageOperationTemplate;
+import org.mitre.data.AbstractKeysetPageOperationTemplate;
 import org.mitre.host.service.HostInfoService;
 import org.mitre.oauth2.model.AuthenticationHolderEntity;
 import org.mitre.oauth2.model.AuthorizationCodeEntity;
-import org.mitre.oauth2.repository.AuthenticationHolderRepository;
 import org.mitre.oauth2.repository.AuthorizationCodeRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.code.AuthorizationCodeServices;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
- * Database-backed, random-value authorization code service implementation.
+ * Random-value authorization code service implementation, storing the codes
+ * in whichever AuthorizationCodeRepository is configured: the database by
+ * default, or {@link org.mitre.oauth2.repository.impl.InMemoryAuthorizationCodeRepository}.
  *
  * @author aanganes
  *
@@ -57,7 +63,8 @@ public class DefaultOAuth2AuthorizationCodeService implements AuthorizationCodeS
 	private AuthorizationCodeRepository repository;
 
 	@Autowired
-	private AuthenticationHolderRepository authenticationHolderRepository;
+	@Qualifier("defaultTransactionManager")
+	private PlatformTransactionManager transactionManager;
 
 	private int authCodeExpirationSeconds = 60 * 5; // expire in 5 minutes by default
 
@@ -76,10 +83,9 @@ public class DefaultOAuth2AuthorizationCodeService implements AuthorizationCodeS
 	public String createAuthorizationCode(OAuth2Authentication authentication) {
 		String code = generator.generate();
 
-		// attach the authorization so that we can look it up later
+		// attach the authorization so that we can look it up later, the repository stores it if it needs to
 		AuthenticationHolderEntity authHolder = new AuthenticationHolderEntity();
 		authHolder.setAuthentication(authentication, hostInfoService.getCurrentHostUuid());
-		authHolder = authenticationHolderRepository.save(authHolder);
 
 		// set the auth code to expire
 		Date expiration = new Date(System.currentTimeMillis() + (getAuthCodeExpirationSeconds() * 1000L));
@@ -92,46 +98,68 @@ public class DefaultOAuth2AuthorizationCodeService implements AuthorizationCodeS
 
 	/**
 	 * Consume a given authorization code.
-	 * Match the provided string to an AuthorizationCodeEntity. If one is found, return
-	 * the authentication associated with the code. If one is not found, throw an
-	 * InvalidGrantException.
+	 * Match the provided string to an AuthorizationCodeEntity and remove it in the same
+	 * step, so that a code can only be redeemed once. If one is found and it hasn't
+	 * expired, return the authentication associated with the code. Otherwise throw an
+	 * InvalidGrantException, which doesn't roll back the removal, so an expired code is
+	 * gone once someone tries to use it.
 	 *
 	 * @param code		the authorization code
 	 * @return			the authentication that made the original request
-	 * @throws 			InvalidGrantException, if an AuthorizationCodeEntity is not found with the given value
+	 * @throws 			InvalidGrantException, if an unexpired AuthorizationCodeEntity is not found with the given value
 	 */
 	@Override
+	@Transactional(value="defaultTransactionManager", noRollbackFor=InvalidGrantException.class)
 	public OAuth2Authentication consumeAuthorizationCode(String code) throws InvalidGrantException {
 
-		AuthorizationCodeEntity result = repository.getByCode(code);
+		AuthorizationCodeEntity result = repository.consume(code);
 
 		if (result == null) {
-			throw new InvalidGrantException("JpaAuthorizationCodeRepository: no authorization code found for value " + code);
+			throw new InvalidGrantException("No authorization code found for value " + code);
 		}
 
-		OAuth2Authentication auth = result.getAuthenticationHolder().getAuthentication();
-
-		repository.remove(result);
+		if (result.getExpiration() != null && result.getExpiration().before(new Date())) {
+			throw new InvalidGrantException("Authorization code expired: " + code);
+		}
 
-		return auth;
+		return result.getAuthenticationHolder().getAuthentication();
 	}
 
 	/**
-	 * Find and remove all expired auth codes.
+	 * Find and remove all expired auth codes of the current host, one
+	 * transaction per page.
+	 *
+	 * @return the number of codes removed
 	 */
-	@Transactional(value="defaultTransactionManager")
-	public void clearExpiredAuthorizationCodes() {
+	public int clearExpiredAuthorizationCodes() {
+
+		final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
 
-		new AbstractPageOperationTemplate<AuthorizationCodeEntity>("clearExpiredAuthorizationCodes"){
+		return new AbstractKeysetPageOperationTemplate<AuthorizationCodeEntity>("clearExpiredAuthorizationCodes"){
 			@Override
-			public Collection<AuthorizationCodeEntity> fetchPage() {
-				return repository.getExpiredCodes();
+			public List<AuthorizationCodeEntity> fetchPage(String lastKey, int pageSize) {
+				return repository.getExpiredCodes(lastKey, pageSize);
+			}
+
+			@Override
+			protected String getKey(AuthorizationCodeEntity item) {
+				return item.getId();
 			}
 
 			@Override
 			protected void doOperation(AuthorizationCodeEntity item) {
 				repository.remove(item);
 			}
+
+			@Override
+			protected void executePage(final Runnable page) {
+				transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+					@Override
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						page.run();
+					}
+				});
+			}
 		}.execute();
 	}
 
@@ -22,6 +22,7 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -30,7 +31,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.mitre.host.service.HostInfoService;
 import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.oauth2.model.ClientDetailsEntity.AuthMethod;
 import org.mitre.oauth2.model.SystemScope;
@@ -46,6 +47,7 @@ import org.mitre.openid.connect.service.StatsService;
 import org.mitre.openid.connect.service.WhitelistedSiteService;
 import org.mitre.uma.model.ResourceSet;
 import org.mitre.uma.service.ResourceSetService;
+import org.mitre.util.HttpClientPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -58,6 +60,7 @@ import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -100,11 +103,24 @@ public class DefaultOAuth2ClientDetailsEntityService implements ClientDetailsEnt
 	@Autowired
 	private ConfigurationPropertiesBean config;
 
+	@Autowired
+	private HostInfoService hostInfoService;
+
+	@Autowired
+	private RevokedTokenCacheService revokedTokenCacheService;
+
 	// map of sector URI -> list of redirect URIs
 	private LoadingCache<String, List<String>> sectorRedirects = CacheBuilder.newBuilder()
 			.expireAfterAccess(1, TimeUnit.HOURS)
 			.maximumSize(100)
-			.build(new SectorIdentifierLoader(HttpClientBuilder.create().useSystemProperties().build()));
+			.build(new SectorIdentifierLoader(HttpClientPool.getShared().getHttpClient()));
+
+	// map of host uuid + client ID -> detached client, checked against the stored version on
+	// every lookup so that a save through any path or on any node is seen right away
+	private Cache<String, ClientDetailsEntity> clients = CacheBuilder.newBuilder()
+			.expireAfterAccess(1, TimeUnit.HOURS)
+			.maximumSize(1000)
+			.build();
 
 	@Override
 	public ClientDetailsEntity saveNewClient(ClientDetailsEntity client) {
@@ -144,6 +160,8 @@ public class DefaultOAuth2ClientDetailsEntityService implements ClientDetailsEnt
 
 		ClientDetailsEntity c = clientRepository.saveClient(client);
 
+		evictClient(client.getClientId());
+
 		statsService.resetCache();
 
 		return c;
@@ -334,13 +352,21 @@ public class DefaultOAuth2ClientDetailsEntityService implements ClientDetailsEnt
 	@Override
 	public ClientDetailsEntity loadClientByClientId(String clientId) throws OAuth2Exception, InvalidClientException, IllegalArgumentException {
 		if (!Strings.isNullOrEmpty(clientId)) {
-			ClientDetailsEntity client = clientRepository.getClientByClientId(clientId);
-			if (client == null) {
+			String key = getCacheKey(clientId);
+			Long version = clientRepository.getClientVersion(clientId);
+			if (version == null) {
+				evictClient(clientId);
 				throw new InvalidClientException("Client with id " + clientId + " was not found");
 			}
-			else {
-				return client;
+			ClientDetailsEntity client = clients.getIfPresent(key);
+			if (client == null || client.getVersion() != version) {
+				client = clientRepository.getDetachedClientByClientId(clientId);
+				if (client == null) {
+					throw new InvalidClientException("Client with id " + clientId + " was not found");
+				}
+				clients.put(key, client);
 			}
+			return client;
 		}
 
 		throw new IllegalArgumentException("Client id must not be empty!");
@@ -357,7 +383,9 @@ public class DefaultOAuth2ClientDetailsEntityService implements ClientDetailsEnt
 		}
 
 		// clean out any tokens that this client had issued
-		tokenRepository.clearTokensForClient(client);
+		Set<String> revoked = new HashSet<>();
+		tokenRepository.clearTokensForClient(client, revoked);
+		revokedTokenCacheService.markRevoked(revoked);
 
 		// clean out any approved sites for this client
 		approvedSiteService.clearApprovedSitesForClient(client);
@@ -377,6 +405,8 @@ public class DefaultOAuth2ClientDetailsEntityService implements ClientDetailsEnt
 		// take care of the client itself
 		clientRepository.deleteClient(client);
 
+		evictClient(client.getClientId());
+
 		statsService.resetCache();
 
 	}
@@ -420,11 +450,26 @@ public class DefaultOAuth2ClientDetailsEntityService implements ClientDetailsEnt
 			// make sure a client doesn't get any special system scopes
 			ensureNoReservedScopes(newClient);
 
-			return clientRepository.updateClient(oldClient.getId(), newClient);
+			ClientDetailsEntity c = clientRepository.updateClient(oldClient.getId(), newClient);
+
+			evictClient(oldClient.getClientId());
+			evictClient(newClient.getClientId());
+
+			return c;
 		}
 		throw new IllegalArgumentException("Neither old client or new client can be null!");
 	}
 
+	private String getCacheKey(String clientId) {
+		return hostInfoService.getCurrentHostUuid() + " " + clientId;
+	}
+
+	private void evictClient(String clientId) {
+		if (!Strings.isNullOrEmpty(clientId)) {
+			clients.invalidate(getCacheKey(clientId));
+		}
+	}
+
 	/**
 	 * Get all clients in the system
 	 */
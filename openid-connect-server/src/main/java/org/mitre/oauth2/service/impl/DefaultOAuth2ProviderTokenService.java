@@ -24,37 +24,47 @@ import static org.mitre.openid.connect.request.ConnectRequestParameters.CODE_CHA
 import static org.mitre.openid.connect.request.ConnectRequestParameters.CODE_CHALLENGE_METHOD;
 import static org.mitre.openid.connect.request.ConnectRequestParameters.CODE_VERIFIER;
 
+import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Collection;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
-import org.mitre.data.AbstractPageOperationTemplate;
-import org.mitre.data.DefaultPageCriteria;
 import org.mitre.host.service.HostInfoService;
+import org.mitre.jwt.signer.service.JWTSigningAndValidationService;
 import org.mitre.oauth2.model.AuthenticationHolderEntity;
 import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
 import org.mitre.oauth2.model.OAuth2RefreshTokenEntity;
 import org.mitre.oauth2.model.PKCEAlgorithm;
+import org.mitre.oauth2.model.SavedUserAuthentication;
 import org.mitre.oauth2.model.SystemScope;
 import org.mitre.oauth2.repository.AuthenticationHolderRepository;
 import org.mitre.oauth2.repository.OAuth2TokenRepository;
+import org.mitre.oauth2.repository.RevokedTokenRepository;
 import org.mitre.oauth2.service.ClientDetailsEntityService;
 import org.mitre.oauth2.service.OAuth2TokenEntityService;
 import org.mitre.oauth2.service.SystemScopeService;
+import org.mitre.openid.connect.config.ConfigurationPropertiesBean;
 import org.mitre.openid.connect.model.ApprovedSite;
 import org.mitre.openid.connect.service.ApprovedSiteService;
+import org.mitre.util.HashUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.common.exceptions.InvalidClientException;
 import org.springframework.security.oauth2.common.exceptions.InvalidRequestException;
 import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
@@ -66,10 +76,14 @@ import org.springframework.security.oauth2.provider.token.TokenEnhancer;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.jwt.JWT;
 import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.JWTParser;
 import com.nimbusds.jwt.PlainJWT;
+import com.nimbusds.jwt.SignedJWT;
 
 
 /**
@@ -84,6 +98,9 @@ public class DefaultOAuth2ProviderTokenService implements OAuth2TokenEntityServi
 	 */
 	private static final Logger logger = LoggerFactory.getLogger(DefaultOAuth2ProviderTokenService.class);
 
+	// rows per purge statement, kept below the Oracle limit of 1000 IN list entries
+	private static final int PURGE_BATCH_SIZE = 500;
+
 	@Autowired
 	private HostInfoService hostInfoService;
 	
@@ -105,6 +122,18 @@ public class DefaultOAuth2ProviderTokenService implements OAuth2TokenEntityServi
 	@Autowired
 	private ApprovedSiteService approvedSiteService;
 
+	@Autowired
+	private ConfigurationPropertiesBean configBean;
+
+	@Autowired
+	private JWTSigningAndValidationService jwtService;
+
+	@Autowired
+	private RevokedTokenCacheService revokedTokenCacheService;
+
+	@Autowired
+	private RevokedTokenRepository revokedTokenRepository;
+
 	@Override
 	public Set<OAuth2AccessTokenEntity> getAllAccessTokensForUser(String userName) {
 		return tokenRepository.getAccessTokensByUserName(userName);
@@ -325,7 +354,9 @@ public class DefaultOAuth2ProviderTokenService implements OAuth2TokenEntityServi
 
 		// clear out any access tokens
 		if (client.isClearAccessTokensOnRefresh()) {
-			tokenRepository.clearAccessTokensForRefreshToken(refreshToken);
+			Set<String> revoked = new HashSet<>();
+			tokenRepository.clearAccessTokensForRefreshToken(refreshToken, revoked);
+			revokedTokenCacheService.markRevoked(revoked);
 		}
 
 		if (refreshToken.isExpired()) {
@@ -392,6 +423,13 @@ public class DefaultOAuth2ProviderTokenService implements OAuth2TokenEntityServi
 
 	@Override
 	public OAuth2Authentication loadAuthentication(String accessTokenValue) throws AuthenticationException {
+		if (configBean.isStatelessAccessTokens()) {
+			OAuth2Authentication authentication = loadAuthenticationFromClaims(accessTokenValue);
+			if (authentication != null) {
+				return authentication;
+			}
+		}
+
 		OAuth2AccessTokenEntity accessToken = clearExpiredAccessToken(tokenRepository.getAccessTokenByValue(accessTokenValue));
 
 		if (accessToken == null) {
@@ -402,6 +440,101 @@ public class DefaultOAuth2ProviderTokenService implements OAuth2TokenEntityServi
 	}
 
 
+	/**
+	 * Rebuild the authentication from the claims of a signed access token, checking its
+	 * signature, issuer, expiration and the revocation filter instead of loading it.
+	 * A token without an expiration is rejected.
+	 *
+	 * @return the authentication, or null if the token doesn't carry the claims needed
+	 * (such as tokens issued before stateless validation was turned on)
+	 */
+	private OAuth2Authentication loadAuthenticationFromClaims(String accessTokenValue) {
+		SignedJWT jwt;
+		JWTClaimsSet claims;
+		String clientId;
+		String scopeClaim;
+		List<String> clientAuthorityClaim;
+		List<String> userAuthorityClaim;
+		List<String> resourceIdClaim;
+		Boolean clientOnly;
+		try {
+			JWT parsed = JWTParser.parse(accessTokenValue);
+			if (!(parsed instanceof SignedJWT)) {
+				return null;
+			}
+			jwt = (SignedJWT) parsed;
+			claims = jwt.getJWTClaimsSet();
+			clientId = claims.getStringClaim("azp");
+			scopeClaim = claims.getStringClaim(OAuth2AccessTokenEntity.SCOPE_CLAIM);
+			clientAuthorityClaim = claims.getStringListClaim(OAuth2AccessTokenEntity.CLIENT_AUTHORITIES_CLAIM);
+			userAuthorityClaim = claims.getStringListClaim(OAuth2AccessTokenEntity.USER_AUTHORITIES_CLAIM);
+			resourceIdClaim = claims.getStringListClaim(OAuth2AccessTokenEntity.RESOURCE_IDS_CLAIM);
+			clientOnly = claims.getBooleanClaim(OAuth2AccessTokenEntity.CLIENT_ONLY_CLAIM);
+		} catch (ParseException e) {
+			return null;
+		}
+
+		if (clientAuthorityClaim == null || clientId == null) {
+			return null;
+		}
+
+		if (!jwtService.validateSignature(jwt) || !configBean.getIssuer().equals(claims.getIssuer())) {
+			throw new InvalidTokenException("Invalid access token: " + accessTokenValue);
+		}
+
+		// without an expiration a stateless token could never be retired, so it's not accepted
+		if (claims.getExpirationTime() == null) {
+			throw new InvalidTokenException("Access token has no expiration: " + accessTokenValue);
+		}
+
+		if (claims.getExpirationTime().before(new Date())) {
+			throw new InvalidTokenException("Expired access token: " + accessTokenValue);
+		}
+
+		if (revokedTokenCacheService.isRevoked(HashUtils.sha256(accessTokenValue))) {
+			throw new InvalidTokenException("Invalid access token: " + accessTokenValue);
+		}
+
+		Set<String> scope = new HashSet<>();
+		if (!Strings.isNullOrEmpty(scopeClaim)) {
+			scope.addAll(Splitter.on(' ').omitEmptyStrings().splitToList(scopeClaim));
+		}
+
+		Set<String> resourceIds = new HashSet<>();
+		if (resourceIdClaim != null) {
+			resourceIds.addAll(resourceIdClaim);
+		}
+
+		// the audience is kept as an extension, the way the token endpoint stores it
+		Map<String, Serializable> extensions = new HashMap<>();
+		if (claims.getAudience() != null && !claims.getAudience().isEmpty()) {
+			extensions.put("aud", claims.getAudience().get(0));
+		}
+
+		OAuth2Request request = new OAuth2Request(Collections.<String, String>emptyMap(), clientId, toAuthorities(clientAuthorityClaim), true, scope,
+				resourceIds, null, null, extensions);
+
+		SavedUserAuthentication userAuth = null;
+		if (clientOnly == null || !clientOnly) {
+			userAuth = new SavedUserAuthentication();
+			userAuth.setName(claims.getSubject());
+			userAuth.setAuthorities(toAuthorities(userAuthorityClaim));
+			userAuth.setAuthenticated(true);
+		}
+
+		return new OAuth2Authentication(request, userAuth);
+	}
+
+	private static List<GrantedAuthority> toAuthorities(List<String> values) {
+		List<GrantedAuthority> authorities = new ArrayList<>();
+		if (values != null) {
+			for (String value : values) {
+				authorities.add(new SimpleGrantedAuthority(value));
+			}
+		}
+		return authorities;
+	}
+
 	/**
 	 * Get an access token from its token value.
 	 */
@@ -444,7 +577,9 @@ public class DefaultOAuth2ProviderTokenService implements OAuth2TokenEntityServi
 	@Override
 	@Transactional(value="defaultTransactionManager")
 	public void revokeRefreshToken(OAuth2RefreshTokenEntity refreshToken) {
-		tokenRepository.clearAccessTokensForRefreshToken(refreshToken);
+		Set<String> revoked = new HashSet<>();
+		tokenRepository.clearAccessTokensForRefreshToken(refreshToken, revoked);
+		revokedTokenCacheService.markRevoked(revoked);
 		tokenRepository.removeRefreshToken(refreshToken);
 	}
 
@@ -455,6 +590,9 @@ public class DefaultOAuth2ProviderTokenService implements OAuth2TokenEntityServi
 	@Transactional(value="defaultTransactionManager")
 	public void revokeAccessToken(OAuth2AccessTokenEntity accessToken) {
 		tokenRepository.removeAccessToken(accessToken);
+		if (!accessToken.isExpired()) {
+			revokedTokenCacheService.markRevoked(accessToken.getTokenHash());
+		}
 	}
 
 	@Override
@@ -468,47 +606,51 @@ public class DefaultOAuth2ProviderTokenService implements OAuth2TokenEntityServi
 	}
 
 	/**
-	 * Clears out expired tokens and any abandoned authentication objects
+	 * Clears out the current host's expired tokens and any abandoned authentication
+	 * objects, in batches of set-based deletes so that nothing has to be loaded.
 	 */
 	@Override
-	public void clearExpiredTokens() {
-		logger.debug("Cleaning out all expired tokens");
-
-		new AbstractPageOperationTemplate<OAuth2AccessTokenEntity>("clearExpiredAccessTokens") {
-			@Override
-			public Collection<OAuth2AccessTokenEntity> fetchPage() {
-				return tokenRepository.getAllExpiredAccessTokens(new DefaultPageCriteria());
-			}
-
-			@Override
-			public void doOperation(OAuth2AccessTokenEntity item) {
-				revokeAccessToken(item);
-			}
-		}.execute();
-
-		new AbstractPageOperationTemplate<OAuth2RefreshTokenEntity>("clearExpiredRefreshTokens") {
-			@Override
-			public Collection<OAuth2RefreshTokenEntity> fetchPage() {
-				return tokenRepository.getAllExpiredRefreshTokens(new DefaultPageCriteria());
-			}
-
-			@Override
-			public void doOperation(OAuth2RefreshTokenEntity item) {
-				revokeRefreshToken(item);
-			}
-		}.execute();
+	public int clearExpiredTokens() {
+		String hostUuid = hostInfoService.getCurrentHostUuid();
+		logger.debug("Cleaning out all expired tokens for host {}", hostUuid);
+
+		Date now = new Date();
+
+		int accessTokens = 0;
+		int removed;
+		do {
+			removed = tokenRepository.purgeExpiredAccessTokens(hostUuid, now, PURGE_BATCH_SIZE);
+			logger.debug("Purged a batch of {} expired access tokens for host {}", removed, hostUuid);
+			accessTokens += removed;
+		} while (removed == PURGE_BATCH_SIZE);
+
+		int refreshTokens = 0;
+		do {
+			removed = tokenRepository.purgeExpiredRefreshTokens(hostUuid, now, PURGE_BATCH_SIZE);
+			logger.debug("Purged a batch of {} expired refresh tokens for host {}", removed, hostUuid);
+			refreshTokens += removed;
+		} while (removed == PURGE_BATCH_SIZE);
+
+		int authHolders = 0;
+		do {
+			removed = authenticationHolderRepository.purgeOrphanedAuthenticationHolders(hostUuid, PURGE_BATCH_SIZE);
+			logger.debug("Purged a batch of {} orphaned authentication holders for host {}", removed, hostUuid);
+			authHolders += removed;
+		} while (removed == PURGE_BATCH_SIZE);
+
+		if (accessTokens + refreshTokens + authHolders > 0) {
+			logger.info("Purged {} access tokens, {} refresh tokens and {} authentication holders for host {}",
+					accessTokens, refreshTokens, authHolders, hostUuid);
+		}
 
-		new AbstractPageOperationTemplate<AuthenticationHolderEntity>("clearExpiredAuthenticationHolders") {
-			@Override
-			public Collection<AuthenticationHolderEntity> fetchPage() {
-				return authenticationHolderRepository.getOrphanedAuthenticationHolders(new DefaultPageCriteria());
-			}
+		return accessTokens + refreshTokens + authHolders;
+	}
 
-			@Override
-			public void doOperation(AuthenticationHolderEntity item) {
-				authenticationHolderRepository.remove(item);
-			}
-		}.execute();
+	@Override
+	public int clearExpiredRevocations() {
+		int revocations = revokedTokenRepository.clearExpired();
+		logger.debug("Cleared {} expired token revocations", revocations);
+		return revocations;
 	}
 
 	/* (non-Javadoc)
@@ -552,16 +694,6 @@ public class DefaultOAuth2ProviderTokenService implements OAuth2TokenEntityServi
 
 	@Override
 	public OAuth2AccessTokenEntity getRegistrationAccessTokenForClient(ClientDetailsEntity client) {
-		List<OAuth2AccessTokenEntity> allTokens = getAccessTokensForClient(client);
-
-		for (OAuth2AccessTokenEntity token : allTokens) {
-			if ((token.getScope().contains(SystemScopeService.REGISTRATION_TOKEN_SCOPE) || token.getScope().contains(SystemScopeService.RESOURCE_TOKEN_SCOPE))
-					&& token.getScope().size() == 1) {
-				// if it only has the registration scope, then it's a registration token
-				return token;
-			}
-		}
-
-		return null;
+		return tokenRepository.getRegistrationAccessTokenForClient(client);
 	}
 }
@@ -22,7 +22,10 @@ package org.mitre.oauth2.service.impl;
 
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import org.mitre.host.service.HostInfoService;
 import org.mitre.oauth2.model.SystemScope;
 import org.mitre.oauth2.repository.SystemScopeRepository;
 import org.mitre.oauth2.service.SystemScopeService;
@@ -33,10 +36,21 @@ import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 /**
+ * Resolves scopes against an immutable per-host snapshot of the scope table,
+ * so that scope lookups don't go to the database. A host's snapshot is dropped
+ * whenever a scope is saved or removed through this service, and expires after
+ * a few minutes to pick up changes made elsewhere.
+ *
  * @author jricher
  *
  */
@@ -46,6 +60,20 @@ public class DefaultSystemScopeService implements SystemScopeService {
 	@Autowired
 	private SystemScopeRepository repository;
 
+	@Autowired
+	private HostInfoService hostInfoService;
+
+	// map of host uuid -> snapshot of that host's scopes
+	private LoadingCache<String, ScopeTable> scopeTables = CacheBuilder.newBuilder()
+			.expireAfterWrite(5, TimeUnit.MINUTES)
+			.build(new CacheLoader<String, ScopeTable>() {
+				@Override
+				public ScopeTable load(String hostUuid) throws Exception {
+					// the repository reads the scopes of the current host, which is the one we're keyed on
+					return new ScopeTable(repository.getAll());
+				}
+			});
+
 	private Predicate<SystemScope> isDefault = new Predicate<SystemScope>() {
 		@Override
 		public boolean apply(SystemScope input) {
@@ -101,7 +129,7 @@ public class DefaultSystemScopeService implements SystemScopeService {
 	 */
 	@Override
 	public Set<SystemScope> getAll() {
-		return repository.getAll();
+		return getScopeTable().all;
 	}
 
 	@Override
@@ -114,7 +142,7 @@ public class DefaultSystemScopeService implements SystemScopeService {
 	 */
 	@Override
 	public SystemScope getByValue(String value) {
-		return repository.getByValue(value);
+		return getScopeTable().byValue.get(value);
 	}
 
 	/* (non-Javadoc)
@@ -123,7 +151,7 @@ public class DefaultSystemScopeService implements SystemScopeService {
 	@Override
 	public void remove(SystemScope scope) {
 		repository.remove(scope);
-
+		scopeTables.invalidate(hostInfoService.getCurrentHostUuid());
 	}
 
 	/* (non-Javadoc)
@@ -132,7 +160,9 @@ public class DefaultSystemScopeService implements SystemScopeService {
 	@Override
 	public SystemScope save(SystemScope scope) {
 		if (!isReserved.apply(scope)) { // don't allow saving of reserved scopes
-			return repository.save(scope);
+			SystemScope saved = repository.save(scope);
+			scopeTables.invalidate(hostInfoService.getCurrentHostUuid());
+			return saved;
 		} else {
 			return null;
 		}
@@ -187,7 +217,7 @@ public class DefaultSystemScopeService implements SystemScopeService {
 
 	@Override
 	public Set<SystemScope> getDefaults() {
-		return Sets.filter(getAll(), isDefault);
+		return getScopeTable().defaults;
 	}
 
 
@@ -198,12 +228,12 @@ public class DefaultSystemScopeService implements SystemScopeService {
 
 	@Override
 	public Set<SystemScope> getRestricted() {
-		return Sets.filter(getAll(), isRestricted);
+		return getScopeTable().restricted;
 	}
 
 	@Override
 	public Set<SystemScope> getUnrestricted() {
-		return Sets.filter(getAll(), Predicates.not(isRestricted));
+		return getScopeTable().unrestricted;
 	}
 
 	@Override
@@ -216,4 +246,38 @@ public class DefaultSystemScopeService implements SystemScopeService {
 		return Sets.filter(scopes, Predicates.not(isReserved));
 	}
 
+	private ScopeTable getScopeTable() {
+		try {
+			return scopeTables.get(hostInfoService.getCurrentHostUuid());
+		} catch (UncheckedExecutionException | ExecutionException e) {
+			throw new IllegalStateException("Couldn't load system scopes", e.getCause());
+		}
+	}
+
+	/**
+	 * Immutable snapshot of one host's scopes, with the sets we hand out
+	 * computed up front.
+	 */
+	private class ScopeTable {
+		private final ImmutableMap<String, SystemScope> byValue;
+		private final ImmutableSet<SystemScope> all;
+		private final ImmutableSet<SystemScope> defaults;
+		private final ImmutableSet<SystemScope> restricted;
+		private final ImmutableSet<SystemScope> unrestricted;
+
+		private ScopeTable(Set<SystemScope> scopes) {
+			ImmutableMap.Builder<String, SystemScope> builder = ImmutableMap.builder();
+			for (SystemScope scope : scopes) {
+				if (scope.getValue() != null) {
+					builder.put(scope.getValue(), scope);
+				}
+			}
+			this.byValue = builder.build();
+			this.all = ImmutableSet.copyOf(scopes);
+			this.defaults = ImmutableSet.copyOf(Sets.filter(all, isDefault));
+			this.restricted = ImmutableSet.copyOf(Sets.filter(all, isRestricted));
+			this.unrestricted = ImmutableSet.copyOf(Sets.filter(all, Predicates.not(isRestricted)));
+		}
+	}
+
 }
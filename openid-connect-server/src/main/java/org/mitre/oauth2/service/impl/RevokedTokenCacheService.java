@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Portions copyright 2011-2013 The MITRE Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.oauth2.service.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mitre.oauth2.repository.RevokedTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * In-memory view of the revoked access tokens, keyed on the token hash, for
+ * validating access tokens without a database round trip.
+ *
+ * Holds a Bloom filter built from a snapshot of the revocation records plus an
+ * exact set of the hashes revoked since that snapshot was taken. A hash that is
+ * in neither is not revoked; a Bloom filter hit is confirmed against the
+ * database. The snapshot is taken on first use; after that {@link #refresh()}
+ * pulls revocations made on other nodes into the exact set and {@link #rebuild()}
+ * takes a new snapshot, both are scheduled in task-config.xml.
+ *
+ */
+@Service
+public class RevokedTokenCacheService {
+
+	/**
+	 * Logger for this class
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(RevokedTokenCacheService.class);
+
+	// how far back to look on each refresh, to cover clock skew and transactions that commit late
+	private static final long REFRESH_OVERLAP_MILLIS = 60 * 1000L;
+
+	private static final int MIN_EXPECTED_INSERTIONS = 1000;
+
+	private static final double FALSE_POSITIVE_PROBABILITY = 0.001;
+
+	@Autowired
+	private RevokedTokenRepository revokedTokenRepository;
+
+	// hashes revoked since the snapshot was taken
+	private final Set<String> recent = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private volatile BloomFilter<CharSequence> snapshot;
+
+	private volatile Date lastRefresh;
+
+	/**
+	 * @return true if the token with the given hash has been revoked
+	 */
+	public boolean isRevoked(String tokenHash) {
+		if (recent.contains(tokenHash)) {
+			return true;
+		}
+		BloomFilter<CharSequence> filter = snapshot;
+		if (filter == null) {
+			filter = initSnapshot();
+		}
+		if (!filter.mightContain(tokenHash)) {
+			return false;
+		}
+		// possible false positive, check with the database
+		return revokedTokenRepository.isRevoked(tokenHash);
+	}
+
+	/**
+	 * Mark a token revoked on this node without waiting for the next refresh. Inside a
+	 * transaction this happens once it commits, so a rollback leaves the token valid.
+	 */
+	public void markRevoked(String tokenHash) {
+		if (tokenHash != null) {
+			markRevoked(Collections.singleton(tokenHash));
+		}
+	}
+
+	/**
+	 * Mark tokens revoked on this node, such as the ones a cascade revoked, once the
+	 * current transaction commits or right away if there is none.
+	 */
+	public void markRevoked(Collection<String> tokenHashes) {
+		if (tokenHashes.isEmpty()) {
+			return;
+		}
+		final Set<String> hashes = new HashSet<>(tokenHashes);
+		hashes.remove(null);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					recent.addAll(hashes);
+				}
+			});
+		} else {
+			recent.addAll(hashes);
+		}
+	}
+
+	/**
+	 * Add the tokens revoked since the last refresh, on any node, to the exact set.
+	 */
+	public void refresh() {
+		Date since = lastRefresh;
+		if (since == null || snapshot == null) {
+			// not in use yet, the first lookup takes the snapshot
+			return;
+		}
+		Date now = new Date();
+		List<String> hashes = revokedTokenRepository.getTokenHashesRevokedSince(new Date(since.getTime() - REFRESH_OVERLAP_MILLIS));
+		recent.addAll(hashes);
+		lastRefresh = now;
+	}
+
+	/**
+	 * Take a new snapshot of all revoked tokens that have not expired yet and reset the exact set,
+	 * if the filter is in use.
+	 */
+	public void rebuild() {
+		if (snapshot != null) {
+			buildSnapshot();
+		}
+	}
+
+	/**
+	 * Take the first snapshot, unless a thread that held the lock before already did.
+	 */
+	private synchronized BloomFilter<CharSequence> initSnapshot() {
+		if (snapshot == null) {
+			buildSnapshot();
+		}
+		return snapshot;
+	}
+
+	private synchronized void buildSnapshot() {
+		Date now = new Date();
+		Set<String> carried = new HashSet<>(recent);
+		List<String> hashes = revokedTokenRepository.getActiveTokenHashes();
+
+		BloomFilter<CharSequence> filter = BloomFilter.create(Funnels.stringFunnel(UTF_8),
+				Math.max(MIN_EXPECTED_INSERTIONS, (hashes.size() + carried.size()) * 2), FALSE_POSITIVE_PROBABILITY);
+		for (String hash : hashes) {
+			filter.put(hash);
+		}
+		// marked locally but possibly not committed when the snapshot was read
+		for (String hash : carried) {
+			filter.put(hash);
+		}
+
+		snapshot = filter;
+		recent.removeAll(carried);
+		lastRefresh = now;
+
+		logger.debug("Rebuilt revoked token filter with {} entries", hashes.size());
+	}
+
+}
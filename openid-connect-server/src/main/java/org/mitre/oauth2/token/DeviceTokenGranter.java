@@ -16,15 +16,10 @@
 
 package org.mitre.oauth2.token;
 
-import java.util.Date;
-
-import org.mitre.oauth2.exception.AuthorizationPendingException;
-import org.mitre.oauth2.exception.DeviceCodeExpiredException;
 import org.mitre.oauth2.model.DeviceCode;
 import org.mitre.oauth2.service.DeviceCodeService;
 import org.mitre.oauth2.web.DeviceEndpoint;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
@@ -68,37 +63,17 @@ public class DeviceTokenGranter extends AbstractTokenGranter {
 
 		String deviceCode = tokenRequest.getRequestParameters().get("device_code");
 
-		// look up the device code and consume it
-		DeviceCode dc = deviceCodeService.findDeviceCode(deviceCode, client);
-
-		if (dc != null) {
-
-			// make sure the code hasn't expired yet
-			if (dc.getExpiration() != null && dc.getExpiration().before(new Date())) {
-				
-				deviceCodeService.clearDeviceCode(deviceCode, client);
-				
-				throw new DeviceCodeExpiredException("Device code has expired " + deviceCode);
-
-			} else if (!dc.isApproved()) {
-
-				// still waiting for approval
-				throw new AuthorizationPendingException("Authorization pending for code " + deviceCode);
+		// look up the device code, this throws unless it has been approved
+		DeviceCode dc = deviceCodeService.pollDeviceCode(deviceCode, client);
 
-			} else {
-				// inherit the (approved) scopes from the original request
-				tokenRequest.setScope(dc.getScope());
+		// inherit the (approved) scopes from the original request
+		tokenRequest.setScope(dc.getScope());
 
-				OAuth2Authentication auth = new OAuth2Authentication(getRequestFactory().createOAuth2Request(client, tokenRequest), dc.getAuthenticationHolder().getUserAuth());
+		OAuth2Authentication auth = new OAuth2Authentication(getRequestFactory().createOAuth2Request(client, tokenRequest), dc.getAuthenticationHolder().getUserAuth());
 
-				deviceCodeService.clearDeviceCode(deviceCode, client);
-				
-				return auth;
-			}
-		} else {
-			throw new InvalidGrantException("Invalid device code: " + deviceCode);
-		}
+		deviceCodeService.clearDeviceCode(deviceCode, client);
 
+		return auth;
 	}
 
 
@@ -143,6 +143,7 @@ public class DeviceEndpoint {
 			if (client.getDeviceCodeValiditySeconds() != null) {
 				response.put("expires_in", client.getDeviceCodeValiditySeconds());
 			}
+			response.put("interval", deviceCodeService.getPollingInterval());
 			
 			if (config.isAllowCompleteDeviceCodeUri()) {
 				URI verificationUriComplete  = new URIBuilder(config.getIssuer() + USER_URL)
@@ -8,6 +8,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.mitre.host.model.HostContext;
 import org.mitre.host.util.HostUtils;
 import org.mitre.util.HttpUtils;
 import org.springframework.stereotype.Component;
@@ -21,10 +22,13 @@ public class HostFilter extends OncePerRequestFilter {
 	public void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws IOException, ServletException {
 
 		URL url = HttpUtils.getHost(request);
-		
-		HostUtils.setCurrentContextPath(request.getContextPath());
-		HostUtils.setCurrentHost(url);
-		filterChain.doFilter(request, response);
+
+		HostUtils.setCurrentHostContext(new HostContext(url, request.getContextPath()));
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			HostUtils.clearCurrentHostContext();
+		}
 	}
 
 }
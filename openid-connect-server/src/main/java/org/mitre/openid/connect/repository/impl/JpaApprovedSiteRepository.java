@@ -20,9 +20,12 @@ package org.mitre.openid.connect.repository.impl;
 import static org.mitre.util.jpa.JpaUtil.saveOrUpdate;
 
 import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 
 import org.mitre.host.service.HostInfoService;
@@ -32,6 +35,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.collect.Iterables;
+
 /**
  * JPA ApprovedSite repository implementation
  *
@@ -41,6 +46,9 @@ import org.springframework.transaction.annotation.Transactional;
 @Repository
 public class JpaApprovedSiteRepository implements ApprovedSiteRepository {
 
+	// keeps the IN list within what every database accepts
+	private static final int MAX_IDS_PER_UPDATE = 1000;
+
 	@PersistenceContext(unitName="defaultPersistenceUnit")
 	private EntityManager manager;
 
@@ -118,4 +126,18 @@ public class JpaApprovedSiteRepository implements ApprovedSiteRepository {
 
 		return query.getResultList();
 	}
+
+	@Override
+	@Transactional(value="defaultTransactionManager")
+	public int setAccessDate(Collection<String> ids, Date accessDate) {
+		int updated = 0;
+		for (List<String> chunk : Iterables.partition(ids, MAX_IDS_PER_UPDATE)) {
+			Query query = manager.createNamedQuery(ApprovedSite.QUERY_SET_ACCESS_DATE);
+			query.setParameter(ApprovedSite.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+			query.setParameter(ApprovedSite.PARAM_ACCESS_DATE, accessDate);
+			query.setParameter(ApprovedSite.PARAM_IDS, chunk);
+			updated += query.executeUpdate();
+		}
+		return updated;
+	}
 }
@@ -59,6 +59,18 @@ public class JpaUserInfoRepository implements UserInfoRepository {
 		return entity;
 	}
 
+	/**
+	 * Get a single UserInfo object by the username of its user for a specific host
+	 */
+	@Override
+	public UserInfo getByUsername(String username) {
+		TypedQuery<DefaultUserInfo> query = manager.createNamedQuery(DefaultUserInfo.QUERY_BY_USERNAME, DefaultUserInfo.class);
+		query.setParameter(DefaultUserInfo.PARAM_HOST_UUID, hostInfoService.getCurrentHostUuid());
+		query.setParameter(DefaultUserInfo.PARAM_USERNAME, username);
+
+		return getSingleResult(query.getResultList());
+	}
+
 	/**
 	 * Get a single UserInfo object by its email address for a specific host
 	 */
@@ -17,13 +17,25 @@
  *******************************************************************************/
 package org.mitre.openid.connect.service.impl;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
+import org.mitre.host.model.HostContext;
+import org.mitre.host.service.HostInfoService;
+import org.mitre.host.util.HostUtils;
 import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
 import org.mitre.oauth2.repository.OAuth2TokenRepository;
+import org.mitre.oauth2.service.impl.RevokedTokenCacheService;
 import org.mitre.openid.connect.model.ApprovedSite;
 import org.mitre.openid.connect.repository.ApprovedSiteRepository;
 import org.mitre.openid.connect.service.ApprovedSiteService;
@@ -34,9 +46,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
 
 /**
  * Implementation of the ApprovedSiteService
@@ -61,6 +80,28 @@ public class DefaultApprovedSiteService implements ApprovedSiteService {
 	@Autowired
 	private StatsService statsService;
 
+	@Autowired
+	private HostInfoService hostInfoService;
+
+	@Autowired
+	private RevokedTokenCacheService revokedTokenCacheService;
+
+	/**
+	 * Sites marked as accessed since the last flush, with the host they belong to
+	 */
+	private final ConcurrentMap<String, HostContext> accessedSites = new ConcurrentHashMap<>();
+
+	/**
+	 * Sites by host, client and user, so the approval check of every authorization
+	 * request doesn't have to query them. Changes made here evict the entry when they
+	 * commit. Other nodes keep serving what they cached until it expires, so a site
+	 * revoked on one node can still be auto-approved on another for up to a minute.
+	 */
+	private final Cache<List<String>, Collection<ApprovedSite>> approvals = CacheBuilder.newBuilder()
+			.expireAfterWrite(1, TimeUnit.MINUTES)
+			.maximumSize(10000)
+			.build();
+
 	@Override
 	public Collection<ApprovedSite> getAll() {
 		return approvedSiteRepository.getAllByHostUuid();
@@ -70,6 +111,7 @@ public class DefaultApprovedSiteService implements ApprovedSiteService {
 	@Transactional(value="defaultTransactionManager")
 	public ApprovedSite save(ApprovedSite approvedSite) {
 		ApprovedSite a = approvedSiteRepository.save(approvedSite);
+		evictApprovals(a);
 		statsService.resetCache();
 		return a;
 	}
@@ -84,16 +126,13 @@ public class DefaultApprovedSiteService implements ApprovedSiteService {
 	public void remove(ApprovedSite approvedSite) {
 
 		//Remove any associated access and refresh tokens
-		List<OAuth2AccessTokenEntity> accessTokens = getApprovedAccessTokens(approvedSite);
-
-		for (OAuth2AccessTokenEntity token : accessTokens) {
-			if (token.getRefreshToken() != null) {
-				tokenRepository.removeRefreshToken(token.getRefreshToken());
-			}
-			tokenRepository.removeAccessToken(token);
-		}
+		Set<String> revoked = new HashSet<>();
+		tokenRepository.clearTokensForApprovedSite(approvedSite, revoked);
+		revokedTokenCacheService.markRevoked(revoked);
 
 		approvedSiteRepository.remove(approvedSite);
+		accessedSites.remove(approvedSite.getId());
+		evictApprovals(approvedSite);
 
 		statsService.resetCache();
 	}
@@ -119,8 +158,67 @@ public class DefaultApprovedSiteService implements ApprovedSiteService {
 	@Override
 	public Collection<ApprovedSite> getByClientIdAndUserId(String clientId, String userId) {
 
-		return approvedSiteRepository.getByClientIdAndUserId(clientId, userId);
+		List<String> key = approvalKey(clientId, userId);
+		Collection<ApprovedSite> sites = approvals.getIfPresent(key);
+		if (sites == null) {
+			Collection<ApprovedSite> found = approvedSiteRepository.getByClientIdAndUserId(clientId, userId);
+			sites = found == null ? ImmutableList.<ApprovedSite>of() : ImmutableList.copyOf(found);
+			approvals.put(key, sites);
+		}
+		return sites;
+
+	}
+
+	@Override
+	public void markAccessed(ApprovedSite approvedSite) {
+		// resolves the host into the current context, so the flush can run for it
+		String hostUuid = hostInfoService.getCurrentHostUuid();
+		HostContext hostContext = HostUtils.getCurrentHostContext();
+
+		if (approvedSite.getId() == null || hostUuid == null || hostContext == null) {
+			// not something we can write later, so write it now
+			approvedSite.setAccessDate(new Date());
+			save(approvedSite);
+			return;
+		}
 
+		accessedSites.put(approvedSite.getId(), hostContext);
+	}
+
+	@Override
+	public void flushAccessDates() {
+
+		if (accessedSites.isEmpty()) {
+			return;
+		}
+
+		// every site marked before now gets now as its access date
+		final Date now = new Date();
+
+		Map<String, HostContext> hostContexts = new HashMap<>();
+		ListMultimap<String, String> siteIdsByHost = ArrayListMultimap.create();
+		for (Iterator<Map.Entry<String, HostContext>> it = accessedSites.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, HostContext> entry = it.next();
+			it.remove();
+			String hostUuid = entry.getValue().getHostUuid();
+			hostContexts.put(hostUuid, entry.getValue());
+			siteIdsByHost.put(hostUuid, entry.getKey());
+		}
+
+		for (String hostUuid : siteIdsByHost.keySet()) {
+			final List<String> siteIds = siteIdsByHost.get(hostUuid);
+			try {
+				HostUtils.runWithHostContext(hostContexts.get(hostUuid), new Runnable() {
+					@Override
+					public void run() {
+						int updated = approvedSiteRepository.setAccessDate(siteIds, now);
+						logger.debug("Updated the access date of " + updated + " approved sites");
+					}
+				});
+			} catch (RuntimeException e) {
+				logger.warn("Unable to update the access date of " + siteIds.size() + " approved sites for host " + hostUuid, e);
+			}
+		}
 	}
 
 	/**
@@ -155,7 +253,7 @@ public class DefaultApprovedSiteService implements ApprovedSiteService {
 	}
 
 	@Override
-	public void clearExpiredSites() {
+	public int clearExpiredSites() {
 
 		logger.debug("Clearing expired approved sites");
 
@@ -163,12 +261,11 @@ public class DefaultApprovedSiteService implements ApprovedSiteService {
 		if (expiredSites.size() > 0) {
 			logger.info("Found " + expiredSites.size() + " expired approved sites.");
 		}
-		if (expiredSites != null) {
-			for (ApprovedSite expired : expiredSites) {
-				remove(expired);
-			}
+		for (ApprovedSite expired : expiredSites) {
+			remove(expired);
 		}
 
+		return expiredSites.size();
 	}
 
 	private Predicate<ApprovedSite> isExpired = new Predicate<ApprovedSite>() {
@@ -179,7 +276,30 @@ public class DefaultApprovedSiteService implements ApprovedSiteService {
 	};
 
 	private Collection<ApprovedSite> getExpired() {
-		return Collections2.filter(approvedSiteRepository.getAll(), isExpired);
+		return ImmutableList.copyOf(Collections2.filter(approvedSiteRepository.getAllByHostUuid(), isExpired));
+	}
+
+	/**
+	 * Drop the cached sites for this site's client and user once the current transaction
+	 * commits, or right away if there is none, so a lookup racing the write can't cache
+	 * the rows from before it.
+	 */
+	private void evictApprovals(ApprovedSite approvedSite) {
+		final List<String> key = approvalKey(approvedSite.getClientId(), approvedSite.getUserId());
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					approvals.invalidate(key);
+				}
+			});
+		} else {
+			approvals.invalidate(key);
+		}
+	}
+
+	private List<String> approvalKey(String clientId, String userId) {
+		return Arrays.asList(hostInfoService.getCurrentHostUuid(), clientId, userId);
 	}
 
 	@Override
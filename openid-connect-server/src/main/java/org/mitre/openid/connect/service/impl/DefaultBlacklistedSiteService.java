@@ -20,18 +20,45 @@
  */
 package org.mitre.openid.connect.service.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
-
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.mitre.host.service.HostInfoService;
 import org.mitre.openid.connect.model.BlacklistedSite;
 import org.mitre.openid.connect.repository.BlacklistedSiteRepository;
 import org.mitre.openid.connect.service.BlacklistedSiteService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 /**
+ * Checks URIs against the blacklist of the current host. The blacklist is
+ * compiled once per host into a matcher and rebuilt when an entry is added,
+ * changed or removed through this service.
+ *
+ * An entry that ends in {@value #PREFIX_WILDCARD} blocks every URI that
+ * starts with the rest of the entry, an entry that starts with
+ * {@value #REGEX_MARKER} is a regular expression, and any other entry
+ * blocks exactly that URI.
+ *
  * @author jricher
  *
  */
@@ -39,9 +66,31 @@ import com.google.common.base.Strings;
 @Transactional(value="defaultTransactionManager")
 public class DefaultBlacklistedSiteService implements BlacklistedSiteService {
 
+	/**
+	 * Logger for this class
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(DefaultBlacklistedSiteService.class);
+
+	public static final String PREFIX_WILDCARD = "*";
+	public static final String REGEX_MARKER = "^";
+
 	@Autowired
 	private BlacklistedSiteRepository repository;
 
+	@Autowired
+	private HostInfoService hostInfoService;
+
+	// map of host uuid -> compiled blacklist of that host
+	private LoadingCache<String, BlacklistMatcher> matchers = CacheBuilder.newBuilder()
+			.expireAfterWrite(5, TimeUnit.MINUTES)
+			.build(new CacheLoader<String, BlacklistMatcher>() {
+				@Override
+				public BlacklistMatcher load(String hostUuid) throws Exception {
+					// the repository reads the blacklist of the current host, which is the one we're keyed on
+					return new BlacklistMatcher(repository.getAll());
+				}
+			});
+
 	/* (non-Javadoc)
 	 * @see org.mitre.openid.connect.service.BlacklistedSiteService#getAll()
 	 */
@@ -64,6 +113,7 @@ public class DefaultBlacklistedSiteService implements BlacklistedSiteService {
 	@Override
 	public void remove(BlacklistedSite blacklistedSite) {
 		repository.remove(blacklistedSite);
+		matchers.invalidate(hostInfoService.getCurrentHostUuid());
 	}
 
 	/* (non-Javadoc)
@@ -71,7 +121,9 @@ public class DefaultBlacklistedSiteService implements BlacklistedSiteService {
 	 */
 	@Override
 	public BlacklistedSite saveNew(BlacklistedSite blacklistedSite) {
-		return repository.save(blacklistedSite);
+		BlacklistedSite saved = repository.save(blacklistedSite);
+		matchers.invalidate(hostInfoService.getCurrentHostUuid());
+		return saved;
 	}
 
 	/* (non-Javadoc)
@@ -79,7 +131,9 @@ public class DefaultBlacklistedSiteService implements BlacklistedSiteService {
 	 */
 	@Override
 	public BlacklistedSite update(BlacklistedSite oldBlacklistedSite, BlacklistedSite blacklistedSite) {
-		return repository.update(oldBlacklistedSite, blacklistedSite);
+		BlacklistedSite updated = repository.update(oldBlacklistedSite, blacklistedSite);
+		matchers.invalidate(hostInfoService.getCurrentHostUuid());
+		return updated;
 	}
 
 	/* (non-Javadoc)
@@ -92,17 +146,85 @@ public class DefaultBlacklistedSiteService implements BlacklistedSiteService {
 			return false; // can't be blacklisted if you don't exist
 		}
 
-		Collection<BlacklistedSite> sites = getAll();
+		try {
+			return matchers.get(hostInfoService.getCurrentHostUuid()).matches(uri);
+		} catch (UncheckedExecutionException | ExecutionException e) {
+			throw new IllegalStateException("Couldn't load blacklisted sites", e.getCause());
+		}
+	}
 
-		// TODO: rewrite this to do regex matching and use the Guava predicates collection
+	/**
+	 * Immutable, compiled form of one host's blacklist: a hash set of the
+	 * exact URIs, a trie of the prefixes and one pattern for all of the
+	 * regular expressions.
+	 */
+	private static class BlacklistMatcher {
+		private final Set<String> exact = new HashSet<>();
+		private final PrefixNode prefixes = new PrefixNode();
+		private final Pattern pattern;
+
+		private BlacklistMatcher(Collection<BlacklistedSite> sites) {
+			List<String> expressions = new ArrayList<>();
+			for (BlacklistedSite site : sites) {
+				String entry = Strings.nullToEmpty(site.getUri());
+				if (entry.startsWith(REGEX_MARKER)) {
+					try {
+						Pattern.compile(entry);
+						expressions.add("(?:" + entry + ")");
+					} catch (PatternSyntaxException e) {
+						// one bad entry shouldn't take the others down with it
+						logger.warn("Ignoring blacklist entry that isn't a valid regular expression: " + entry);
+					}
+				} else if (entry.endsWith(PREFIX_WILDCARD)) {
+					prefixes.add(entry.substring(0, entry.length() - PREFIX_WILDCARD.length()));
+				} else {
+					exact.add(entry);
+				}
+			}
+			pattern = expressions.isEmpty() ? null : Pattern.compile(Joiner.on('|').join(expressions));
+		}
 
-		for (BlacklistedSite blacklistedSite : sites) {
-			if (Strings.nullToEmpty(blacklistedSite.getUri()).equals(uri)) {
-				return true;
+		private boolean matches(String uri) {
+			return exact.contains(uri)
+					|| prefixes.matchesPrefixOf(uri)
+					|| (pattern != null && pattern.matcher(uri).find());
+		}
+	}
+
+	/**
+	 * Node of a character trie, marked terminal where a blacklisted prefix ends.
+	 */
+	private static class PrefixNode {
+		private final Map<Character, PrefixNode> children = new HashMap<>();
+		private boolean terminal;
+
+		private void add(String prefix) {
+			PrefixNode node = this;
+			for (int i = 0; i < prefix.length(); i++) {
+				Character c = prefix.charAt(i);
+				PrefixNode child = node.children.get(c);
+				if (child == null) {
+					child = new PrefixNode();
+					node.children.put(c, child);
+				}
+				node = child;
 			}
+			node.terminal = true;
 		}
 
-		return false;
+		private boolean matchesPrefixOf(String uri) {
+			PrefixNode node = this;
+			for (int i = 0; !node.terminal; i++) {
+				if (i == uri.length()) {
+					return false;
+				}
+				node = node.children.get(uri.charAt(i));
+				if (node == null) {
+					return false;
+				}
+			}
+			return true;
+		}
 	}
 
 }
@@ -245,7 +245,8 @@ public class DefaultOIDCTokenService implements OIDCTokenService {
 		if (oldToken != null) {
 			Set<String> scope = oldToken.getScope();
 			tokenService.revokeAccessToken(oldToken);
-			return createAssociatedToken(client, scope);
+			// the old token was just revoked, no need to look it up again
+			return buildAssociatedToken(client, scope);
 		} else {
 			return null;
 		}
@@ -260,6 +261,11 @@ public class DefaultOIDCTokenService implements OIDCTokenService {
 			tokenService.revokeAccessToken(oldToken);
 		}
 
+		return buildAssociatedToken(client, scope);
+	}
+
+	private OAuth2AccessTokenEntity buildAssociatedToken(ClientDetailsEntity client, Set<String> scope) {
+
 		// create a new token
 
 		Map<String, String> authorizationParameters = Maps.newHashMap();
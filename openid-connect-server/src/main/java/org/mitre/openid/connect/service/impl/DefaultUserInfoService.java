@@ -17,18 +17,24 @@
  *******************************************************************************/
 package org.mitre.openid.connect.service.impl;
 
+import java.util.concurrent.TimeUnit;
+
+import org.mitre.host.service.HostInfoService;
 import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.oauth2.model.ClientDetailsEntity.SubjectType;
 import org.mitre.oauth2.service.ClientDetailsEntityService;
-import org.mitre.openid.connect.model.DefaultUser;
+import org.mitre.openid.connect.model.DefaultUserInfo;
 import org.mitre.openid.connect.model.UserInfo;
 import org.mitre.openid.connect.repository.UserInfoRepository;
-import org.mitre.openid.connect.repository.UserRepository;
 import org.mitre.openid.connect.service.PairwiseIdentiferService;
 import org.mitre.openid.connect.service.UserInfoService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 /**
  * Implementation of the UserInfoService
  *
@@ -40,9 +46,6 @@ public class DefaultUserInfoService implements UserInfoService {
 
 	@Autowired
 	private UserInfoRepository userInfoRepository;
-	
-	@Autowired
-	private UserRepository userRepository;
 
 	@Autowired
 	private ClientDetailsEntityService clientService;
@@ -50,15 +53,31 @@ public class DefaultUserInfoService implements UserInfoService {
 	@Autowired
 	private PairwiseIdentiferService pairwiseIdentifierService;
 
+	@Autowired
+	private HostInfoService hostInfoService;
+
+	// map of host uuid + username -> user info. Nothing in the server writes user info,
+	// so entries are only expired, quickly enough that changes made directly in the
+	// database are seen within a minute
+	private Cache<String, UserInfo> userInfos = CacheBuilder.newBuilder()
+			.expireAfterWrite(1, TimeUnit.MINUTES)
+			.maximumSize(10000)
+			.build();
+
 	@Override
 	public UserInfo getByUsername(String username) {
-		DefaultUser user = userRepository.getUserByUsername(username);
-		if (user != null) {
-			UserInfo userInfo = userInfoRepository.getByUuid(user.getId());
-			return userInfo;
-		} else {
+		if (Strings.isNullOrEmpty(username)) {
 			return null;
 		}
+		String key = getCacheKey(username);
+		UserInfo userInfo = userInfos.getIfPresent(key);
+		if (userInfo == null) {
+			userInfo = userInfoRepository.getByUsername(username);
+			if (userInfo != null) {
+				userInfos.put(key, userInfo);
+			}
+		}
+		return userInfo;
 	}
 
 	@Override
@@ -66,16 +85,16 @@ public class DefaultUserInfoService implements UserInfoService {
 
 		ClientDetailsEntity client = clientService.loadClientByClientId(clientId);
 
-		DefaultUser user = userRepository.getUserByUsername(username);
-		
-		UserInfo userInfo = getByUsername(user.getUsername());
+		UserInfo userInfo = getByUsername(username);
 
 		if (client == null || userInfo == null) {
 			return null;
 		}
 
 		if (SubjectType.PAIRWISE.equals(client.getSubjectType())) {
+			// the cached user info is shared, so the pairwise sub goes on a copy
 			String pairwiseSub = pairwiseIdentifierService.getIdentifier(userInfo, client);
+			userInfo = new DefaultUserInfo(userInfo);
 			userInfo.setSub(pairwiseSub);
 		}
 
@@ -88,4 +107,8 @@ public class DefaultUserInfoService implements UserInfoService {
 		return userInfoRepository.getByEmailAddress(email);
 	}
 
+	private String getCacheKey(String username) {
+		return hostInfoService.getCurrentHostUuid() + " " + username;
+	}
+
 }
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.openid.connect.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.mitre.host.service.HostInfoService;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.openid.connect.model.PairwiseIdentifier;
+import org.mitre.openid.connect.model.UserInfo;
+import org.mitre.openid.connect.repository.PairwiseIdentifierRepository;
+import org.mitre.openid.connect.service.PairwiseIdentiferService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Iterables;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Calculates pairwise identifiers as an HMAC-SHA256 of the host, the sector
+ * identifier and the user's sub, so the same user always gets the same
+ * identifier for a sector without anything being stored or read.
+ *
+ * The secret has to stay the same for the identifiers to stay the same. Servers
+ * that already handed out identifiers from {@link UUIDPairwiseIdentiferService}
+ * can turn on honorStoredIdentifiers so those keep being returned, and only
+ * users without a stored identifier get a calculated one.
+ *
+ * This service isn't picked up by the component scan, declare it as the primary
+ * PairwiseIdentiferService bean to use it instead of the UUID one.
+ */
+public class HmacPairwiseIdentiferService implements PairwiseIdentiferService {
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private static final byte SEPARATOR = 0;
+
+	@Autowired
+	private HostInfoService hostInfoService;
+
+	@Autowired
+	private PairwiseIdentifierRepository pairwiseIdentifierRepository;
+
+	private SecretKeySpec secretKey;
+
+	private boolean honorStoredIdentifiers = false;
+
+	private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				Mac mac = Mac.getInstance(ALGORITHM);
+				mac.init(getSecretKey());
+				return mac;
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException("Unable to create " + ALGORITHM + " for pairwise identifiers", e);
+			}
+		}
+	};
+
+	/**
+	 * Sector hosts by the URI they are taken from, so the client's sector identifier
+	 * or redirect URI is only parsed once. Keyed by the URI rather than the client
+	 * so a client that changes it gets the new sector right away.
+	 */
+	private final LoadingCache<String, Optional<String>> sectorHosts = CacheBuilder.newBuilder()
+			.maximumSize(10000)
+			.expireAfterAccess(1, TimeUnit.HOURS)
+			.build(new CacheLoader<String, Optional<String>>() {
+				@Override
+				public Optional<String> load(String uri) throws Exception {
+					return Optional.ofNullable(UriComponentsBuilder.fromUriString(uri).build().getHost());
+				}
+			});
+
+	@Override
+	public String getIdentifier(UserInfo userInfo, ClientDetailsEntity client) {
+
+		String sectorIdentifier = getSectorIdentifier(client);
+
+		if (sectorIdentifier == null) {
+			return null;
+		}
+
+		if (honorStoredIdentifiers) {
+			PairwiseIdentifier pairwise = pairwiseIdentifierRepository.getBySectorIdentifier(userInfo.getSub(), sectorIdentifier);
+			if (pairwise != null) {
+				return pairwise.getIdentifier();
+			}
+		}
+
+		Mac mac = macs.get();
+		mac.update(hostInfoService.getCurrentHostUuid().getBytes(StandardCharsets.UTF_8));
+		mac.update(SEPARATOR);
+		mac.update(sectorIdentifier.getBytes(StandardCharsets.UTF_8));
+		mac.update(SEPARATOR);
+		mac.update(userInfo.getSub().getBytes(StandardCharsets.UTF_8));
+		return BaseEncoding.base64Url().omitPadding().encode(mac.doFinal());
+	}
+
+	/**
+	 * @return the host of the client's sector identifier URI, or of its only redirect URI
+	 * if it doesn't have one
+	 */
+	private String getSectorIdentifier(ClientDetailsEntity client) {
+		String uri;
+		if (!Strings.isNullOrEmpty(client.getSectorIdentifierUri())) {
+			uri = client.getSectorIdentifierUri();
+		} else {
+			Set<String> redirectUris = client.getRedirectUris();
+			uri = Iterables.getOnlyElement(redirectUris);
+		}
+
+		try {
+			return sectorHosts.get(uri).orElse(null);
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalArgumentException("Unable to parse sector identifier " + uri, e.getCause());
+		}
+	}
+
+	private SecretKeySpec getSecretKey() {
+		if (secretKey == null) {
+			throw new IllegalStateException("No secret set for pairwise identifiers");
+		}
+		return secretKey;
+	}
+
+	/**
+	 * @param secret the secret the identifiers are calculated with, at least 32 characters.
+	 * Changing it changes every identifier.
+	 */
+	public void setSecret(String secret) {
+		if (Strings.isNullOrEmpty(secret) || secret.length() < 32) {
+			throw new IllegalArgumentException("The pairwise identifier secret must be at least 32 characters");
+		}
+		this.secretKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+	}
+
+	/**
+	 * @return whether identifiers stored by an earlier service are returned when there is one
+	 */
+	public boolean isHonorStoredIdentifiers() {
+		return honorStoredIdentifiers;
+	}
+
+	/**
+	 * @param honorStoredIdentifiers whether identifiers stored by an earlier service are
+	 * returned when there is one. This costs a database read per identifier, but nothing
+	 * is ever written.
+	 */
+	public void setHonorStoredIdentifiers(boolean honorStoredIdentifiers) {
+		this.honorStoredIdentifiers = honorStoredIdentifiers;
+	}
+
+}
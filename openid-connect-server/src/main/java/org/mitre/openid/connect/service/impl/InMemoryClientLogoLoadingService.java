@@ -25,10 +25,10 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.openid.connect.model.CachedImage;
 import org.mitre.openid.connect.service.ClientLogoLoadingService;
+import org.mitre.util.HttpClientPool;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Strings;
@@ -47,7 +47,7 @@ public class InMemoryClientLogoLoadingService implements ClientLogoLoadingServic
 	private LoadingCache<ClientDetailsEntity, CachedImage> cache;
 
 	public InMemoryClientLogoLoadingService() {
-		this(HttpClientBuilder.create().useSystemProperties().build());
+		this(HttpClientPool.getShared().getHttpClient());
 	}
 
 	/**
@@ -87,7 +87,7 @@ public class InMemoryClientLogoLoadingService implements ClientLogoLoadingServic
 		private HttpClient httpClient;
 
 		public ClientLogoFetcher() {
-			this(HttpClientBuilder.create().useSystemProperties().build());
+			this(HttpClientPool.getShared().getHttpClient());
 		}
 
 		public ClientLogoFetcher(HttpClient httpClient) {
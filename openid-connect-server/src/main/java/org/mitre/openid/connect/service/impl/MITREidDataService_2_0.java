@@ -23,10 +23,13 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.sql.SQLIntegrityConstraintViolationException;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
@@ -34,6 +37,7 @@ import java.util.UUID;
 import javax.persistence.PersistenceException;
 
 import org.eclipse.persistence.exceptions.DatabaseException;
+import org.mitre.data.AbstractKeysetPageOperationTemplate;
 import org.mitre.oauth2.model.AuthenticationHolderEntity;
 import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.oauth2.model.ClientDetailsEntity.AppType;
@@ -60,10 +64,16 @@ import org.mitre.openid.connect.service.MITREidDataServiceMaps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
@@ -176,11 +186,29 @@ public class MITREidDataService_2_0 extends MITREidDataServiceSupport implements
 	private SystemScopeRepository sysScopeRepository;
 	@Autowired(required = false)
 	private List<MITREidDataServiceExtension> extensions = Collections.emptyList();
+	@Autowired
+	@Qualifier("defaultTransactionManager")
+	private PlatformTransactionManager transactionManager;
 
 	private static final String THIS_VERSION = MITREID_CONNECT_2_0;
 
+	/**
+	 * Number of clients, authentication holders and tokens read per query while exporting.
+	 * Each page is read outside of a transaction (the client and authentication holder
+	 * repositories suspend theirs for these reads), so its entities are detached and can
+	 * be collected once they have been written.
+	 */
+	private static final int EXPORT_PAGE_SIZE = 500;
+
+	/**
+	 * Number of authentication holders, tokens or grants saved per transaction while importing.
+	 */
+	private static final int IMPORT_BATCH_SIZE = 500;
+
 	private MITREidDataServiceMaps maps = new MITREidDataServiceMaps();
 
+	private PendingReferences pending = new PendingReferences();
+
 	@Override
 	public boolean supportsVersion(String version) {
 		return THIS_VERSION.equals(version);
@@ -252,18 +280,25 @@ public class MITREidDataService_2_0 extends MITREidDataServiceSupport implements
 	 * @param writer
 	 */
 	private void writeRefreshTokens(JsonWriter writer) throws IOException {
-		for (OAuth2RefreshTokenEntity token : tokenRepository.getAllRefreshTokens()) {
-			writer.beginObject();
-			writer.name(ID).value(token.getId());
-			writer.name(EXPIRATION).value(toUTCString(token.getExpiration()));
-			writer.name(CLIENT_ID)
-			.value((token.getClient() != null) ? token.getClient().getClientId() : null);
-			writer.name(AUTH_HOLDER_ID)
-			.value((token.getAuthenticationHolder() != null) ? token.getAuthenticationHolder().getId() : null);
-			writer.name(VALUE).value(token.getValue());
-			writer.endObject();
-			logger.debug("Wrote refresh token {}", token.getId());
-		}
+		String lastId = AbstractKeysetPageOperationTemplate.FIRST_KEY;
+		List<OAuth2RefreshTokenEntity> page;
+		do {
+			page = tokenRepository.getRefreshTokensAfterId(lastId, EXPORT_PAGE_SIZE);
+			for (OAuth2RefreshTokenEntity token : page) {
+				writer.beginObject();
+				writer.name(ID).value(token.getId());
+				writer.name(EXPIRATION).value(toUTCString(token.getExpiration()));
+				writer.name(CLIENT_ID)
+				.value((token.getClient() != null) ? token.getClient().getClientId() : null);
+				writer.name(AUTH_HOLDER_ID)
+				.value((token.getAuthenticationHolder() != null) ? token.getAuthenticationHolder().getId() : null);
+				writer.name(VALUE).value(token.getValue());
+				writer.endObject();
+				logger.debug("Wrote refresh token {}", token.getId());
+				lastId = token.getId();
+			}
+			writer.flush();
+		} while (page.size() == EXPORT_PAGE_SIZE);
 		logger.info("Done writing refresh tokens");
 	}
 
@@ -271,27 +306,34 @@ public class MITREidDataService_2_0 extends MITREidDataServiceSupport implements
 	 * @param writer
 	 */
 	private void writeAccessTokens(JsonWriter writer) throws IOException {
-		for (OAuth2AccessTokenEntity token : tokenRepository.getAllAccessTokens()) {
-			writer.beginObject();
-			writer.name(ID).value(token.getId());
-			writer.name(EXPIRATION).value(toUTCString(token.getExpiration()));
-			writer.name(CLIENT_ID)
-			.value((token.getClient() != null) ? token.getClient().getClientId() : null);
-			writer.name(AUTH_HOLDER_ID)
-			.value((token.getAuthenticationHolder() != null) ? token.getAuthenticationHolder().getId() : null);
-			writer.name(REFRESH_TOKEN_ID)
-			.value((token.getRefreshToken() != null) ? token.getRefreshToken().getId() : null);
-			writer.name(SCOPE);
-			writer.beginArray();
-			for (String s : token.getScope()) {
-				writer.value(s);
+		String lastId = AbstractKeysetPageOperationTemplate.FIRST_KEY;
+		List<OAuth2AccessTokenEntity> page;
+		do {
+			page = tokenRepository.getAccessTokensAfterId(lastId, EXPORT_PAGE_SIZE);
+			for (OAuth2AccessTokenEntity token : page) {
+				writer.beginObject();
+				writer.name(ID).value(token.getId());
+				writer.name(EXPIRATION).value(toUTCString(token.getExpiration()));
+				writer.name(CLIENT_ID)
+				.value((token.getClient() != null) ? token.getClient().getClientId() : null);
+				writer.name(AUTH_HOLDER_ID)
+				.value((token.getAuthenticationHolder() != null) ? token.getAuthenticationHolder().getId() : null);
+				writer.name(REFRESH_TOKEN_ID)
+				.value((token.getRefreshToken() != null) ? token.getRefreshToken().getId() : null);
+				writer.name(SCOPE);
+				writer.beginArray();
+				for (String s : token.getScope()) {
+					writer.value(s);
+				}
+				writer.endArray();
+				writer.name(TYPE).value(token.getTokenType());
+				writer.name(VALUE).value(token.getValue());
+				writer.endObject();
+				logger.debug("Wrote access token {}", token.getId());
+				lastId = token.getId();
 			}
-			writer.endArray();
-			writer.name(TYPE).value(token.getTokenType());
-			writer.name(VALUE).value(token.getValue());
-			writer.endObject();
-			logger.debug("Wrote access token {}", token.getId());
-		}
+			writer.flush();
+		} while (page.size() == EXPORT_PAGE_SIZE);
 		logger.info("Done writing access tokens");
 	}
 
@@ -299,80 +341,87 @@ public class MITREidDataService_2_0 extends MITREidDataServiceSupport implements
 	 * @param writer
 	 */
 	private void writeAuthenticationHolders(JsonWriter writer) throws IOException {
-		for (AuthenticationHolderEntity holder : authHolderRepository.getAll()) {
-			writer.beginObject();
-			writer.name(ID).value(holder.getId());
+		String lastId = AbstractKeysetPageOperationTemplate.FIRST_KEY;
+		List<AuthenticationHolderEntity> page;
+		do {
+			page = authHolderRepository.getAllAfterId(lastId, EXPORT_PAGE_SIZE);
+			for (AuthenticationHolderEntity holder : page) {
+				writer.beginObject();
+				writer.name(ID).value(holder.getId());
 
-			writer.name(REQUEST_PARAMETERS);
-			writer.beginObject();
-			for (Entry<String, String> entry : holder.getRequestParameters().entrySet()) {
-				writer.name(entry.getKey()).value(entry.getValue());
-			}
-			writer.endObject();
-			writer.name(CLIENT_ID).value(holder.getClientId());
-			Set<String> scope = holder.getScope();
-			writer.name(SCOPE);
-			writer.beginArray();
-			for (String s : scope) {
-				writer.value(s);
-			}
-			writer.endArray();
-			writer.name(RESOURCE_IDS);
-			writer.beginArray();
-			if (holder.getResourceIds() != null) {
-				for (String s : holder.getResourceIds()) {
+				writer.name(REQUEST_PARAMETERS);
+				writer.beginObject();
+				for (Entry<String, String> entry : holder.getRequestParameters().entrySet()) {
+					writer.name(entry.getKey()).value(entry.getValue());
+				}
+				writer.endObject();
+				writer.name(CLIENT_ID).value(holder.getClientId());
+				Set<String> scope = holder.getScope();
+				writer.name(SCOPE);
+				writer.beginArray();
+				for (String s : scope) {
 					writer.value(s);
 				}
-			}
-			writer.endArray();
-			writer.name(AUTHORITIES);
-			writer.beginArray();
-			for (GrantedAuthority authority : holder.getAuthorities()) {
-				writer.value(authority.getAuthority());
-			}
-			writer.endArray();
-			writer.name(APPROVED).value(holder.isApproved());
-			writer.name(REDIRECT_URI).value(holder.getRedirectUri());
-			writer.name(RESPONSE_TYPES);
-			writer.beginArray();
-			for (String s : holder.getResponseTypes()) {
-				writer.value(s);
-			}
-			writer.endArray();
-			writer.name(EXTENSIONS);
-			writer.beginObject();
-			for (Entry<String, Serializable> entry : holder.getExtensions().entrySet()) {
-				// while the extension map itself is Serializable, we enforce storage of Strings
-				if (entry.getValue() instanceof String) {
-					writer.name(entry.getKey()).value((String) entry.getValue());
-				} else {
-					logger.warn("Skipping non-string extension: " + entry);
+				writer.endArray();
+				writer.name(RESOURCE_IDS);
+				writer.beginArray();
+				if (holder.getResourceIds() != null) {
+					for (String s : holder.getResourceIds()) {
+						writer.value(s);
+					}
 				}
-			}
-			writer.endObject();
-
-			writer.name(SAVED_USER_AUTHENTICATION);
-			if (holder.getUserAuth() != null) {
-				writer.beginObject();
-				writer.name(NAME).value(holder.getUserAuth().getName());
-				writer.name(SOURCE_CLASS).value(holder.getUserAuth().getSourceClass());
-				writer.name(AUTHENTICATED).value(holder.getUserAuth().isAuthenticated());
+				writer.endArray();
 				writer.name(AUTHORITIES);
 				writer.beginArray();
-				for (GrantedAuthority authority : holder.getUserAuth().getAuthorities()) {
+				for (GrantedAuthority authority : holder.getAuthorities()) {
 					writer.value(authority.getAuthority());
 				}
 				writer.endArray();
-
+				writer.name(APPROVED).value(holder.isApproved());
+				writer.name(REDIRECT_URI).value(holder.getRedirectUri());
+				writer.name(RESPONSE_TYPES);
+				writer.beginArray();
+				for (String s : holder.getResponseTypes()) {
+					writer.value(s);
+				}
+				writer.endArray();
+				writer.name(EXTENSIONS);
+				writer.beginObject();
+				for (Entry<String, Serializable> entry : holder.getExtensions().entrySet()) {
+					// while the extension map itself is Serializable, we enforce storage of Strings
+					if (entry.getValue() instanceof String) {
+						writer.name(entry.getKey()).value((String) entry.getValue());
+					} else {
+						logger.warn("Skipping non-string extension: " + entry);
+					}
+				}
 				writer.endObject();
-			} else {
-				writer.nullValue();
-			}
 
+				writer.name(SAVED_USER_AUTHENTICATION);
+				if (holder.getUserAuth() != null) {
+					writer.beginObject();
+					writer.name(NAME).value(holder.getUserAuth().getName());
+					writer.name(SOURCE_CLASS).value(holder.getUserAuth().getSourceClass());
+					writer.name(AUTHENTICATED).value(holder.getUserAuth().isAuthenticated());
+					writer.name(AUTHORITIES);
+					writer.beginArray();
+					for (GrantedAuthority authority : holder.getUserAuth().getAuthorities()) {
+						writer.value(authority.getAuthority());
+					}
+					writer.endArray();
 
-			writer.endObject();
-			logger.debug("Wrote authentication holder {}", holder.getId());
-		}
+					writer.endObject();
+				} else {
+					writer.nullValue();
+				}
+
+
+				writer.endObject();
+				logger.debug("Wrote authentication holder {}", holder.getId());
+				lastId = holder.getId();
+			}
+			writer.flush();
+		} while (page.size() == EXPORT_PAGE_SIZE);
 		logger.info("Done writing authentication holders");
 	}
 
@@ -437,109 +486,116 @@ public class MITREidDataService_2_0 extends MITREidDataServiceSupport implements
 	/**
 	 * @param writer
 	 */
-	private void writeClients(JsonWriter writer) {
-		for (ClientDetailsEntity client : clientRepository.getAllClients()) {
-			try {
-				writer.beginObject();
-				writer.name(CLIENT_ID).value(client.getClientId());
-				writer.name(RESOURCE_IDS);
-				writeNullSafeArray(writer, client.getResourceIds());
+	private void writeClients(JsonWriter writer) throws IOException {
+		String lastId = AbstractKeysetPageOperationTemplate.FIRST_KEY;
+		List<ClientDetailsEntity> page;
+		do {
+			page = clientRepository.getClientsAfterId(lastId, EXPORT_PAGE_SIZE);
+			for (ClientDetailsEntity client : page) {
+				try {
+					writer.beginObject();
+					writer.name(CLIENT_ID).value(client.getClientId());
+					writer.name(RESOURCE_IDS);
+					writeNullSafeArray(writer, client.getResourceIds());
 
-				writer.name(SECRET).value(client.getClientSecret());
+					writer.name(SECRET).value(client.getClientSecret());
 
-				writer.name(SCOPE);
-				writeNullSafeArray(writer, client.getScope());
+					writer.name(SCOPE);
+					writeNullSafeArray(writer, client.getScope());
 
-				writer.name(AUTHORITIES);
-				writer.beginArray();
-				for (GrantedAuthority authority : client.getAuthorities()) {
-					writer.value(authority.getAuthority());
-				}
-				writer.endArray();
-				writer.name(ACCESS_TOKEN_VALIDITY_SECONDS).value(client.getAccessTokenValiditySeconds());
-				writer.name(REFRESH_TOKEN_VALIDITY_SECONDS).value(client.getRefreshTokenValiditySeconds());
-				writer.name(ID_TOKEN_VALIDITY_SECONDS).value(client.getIdTokenValiditySeconds());
-				writer.name(DEVICE_CODE_VALIDITY_SECONDS).value(client.getDeviceCodeValiditySeconds());
-				writer.name(REDIRECT_URIS);
-				writeNullSafeArray(writer, client.getRedirectUris());
-				writer.name(CLAIMS_REDIRECT_URIS);
-				writeNullSafeArray(writer, client.getClaimsRedirectUris());
-				writer.name(NAME).value(client.getClientName());
-				writer.name(URI).value(client.getClientUri());
-				writer.name(LOGO_URI).value(client.getLogoUri());
-				writer.name(CONTACTS);
-				writeNullSafeArray(writer, client.getContacts());
-				writer.name(TOS_URI).value(client.getTosUri());
-				writer.name(TOKEN_ENDPOINT_AUTH_METHOD)
-				.value((client.getTokenEndpointAuthMethod() != null) ? client.getTokenEndpointAuthMethod().getValue() : null);
-				writer.name(GRANT_TYPES);
-				writer.beginArray();
-				for (String s : client.getGrantTypes()) {
-					writer.value(s);
-				}
-				writer.endArray();
-				writer.name(RESPONSE_TYPES);
-				writer.beginArray();
-				for (String s : client.getResponseTypes()) {
-					writer.value(s);
-				}
-				writer.endArray();
-				writer.name(POLICY_URI).value(client.getPolicyUri());
-				writer.name(JWKS_URI).value(client.getJwksUri());
-				writer.name(JWKS).value((client.getJwks() != null) ? client.getJwks().toString() : null);
-				writer.name(APPLICATION_TYPE)
-				.value((client.getApplicationType() != null) ? client.getApplicationType().getValue() : null);
-				writer.name(SECTOR_IDENTIFIER_URI).value(client.getSectorIdentifierUri());
-				writer.name(SUBJECT_TYPE)
-				.value((client.getSubjectType() != null) ? client.getSubjectType().getValue() : null);
-				writer.name(REQUEST_OBJECT_SIGNING_ALG)
-				.value((client.getRequestObjectSigningAlg() != null) ? client.getRequestObjectSigningAlg().getName() : null);
-				writer.name(ID_TOKEN_SIGNED_RESPONSE_ALG)
-				.value((client.getIdTokenSignedResponseAlg() != null) ? client.getIdTokenSignedResponseAlg().getName() : null);
-				writer.name(ID_TOKEN_ENCRYPTED_RESPONSE_ALG)
-				.value((client.getIdTokenEncryptedResponseAlg() != null) ? client.getIdTokenEncryptedResponseAlg().getName() : null);
-				writer.name(ID_TOKEN_ENCRYPTED_RESPONSE_ENC)
-				.value((client.getIdTokenEncryptedResponseEnc() != null) ? client.getIdTokenEncryptedResponseEnc().getName() : null);
-				writer.name(USER_INFO_SIGNED_RESPONSE_ALG)
-				.value((client.getUserInfoSignedResponseAlg() != null) ? client.getUserInfoSignedResponseAlg().getName() : null);
-				writer.name(USER_INFO_ENCRYPTED_RESPONSE_ALG)
-				.value((client.getUserInfoEncryptedResponseAlg() != null) ? client.getUserInfoEncryptedResponseAlg().getName() : null);
-				writer.name(USER_INFO_ENCRYPTED_RESPONSE_ENC)
-				.value((client.getUserInfoEncryptedResponseEnc() != null) ? client.getUserInfoEncryptedResponseEnc().getName() : null);
-				writer.name(TOKEN_ENDPOINT_AUTH_SIGNING_ALG)
-				.value((client.getTokenEndpointAuthSigningAlg() != null) ? client.getTokenEndpointAuthSigningAlg().getName() : null);
-				writer.name(DEFAULT_MAX_AGE).value(client.getDefaultMaxAge());
-				Boolean requireAuthTime = null;
-				try {
-					requireAuthTime = client.getRequireAuthTime();
-				} catch (NullPointerException e) {
-				}
-				if (requireAuthTime != null) {
-					writer.name(REQUIRE_AUTH_TIME).value(requireAuthTime);
+					writer.name(AUTHORITIES);
+					writer.beginArray();
+					for (GrantedAuthority authority : client.getAuthorities()) {
+						writer.value(authority.getAuthority());
+					}
+					writer.endArray();
+					writer.name(ACCESS_TOKEN_VALIDITY_SECONDS).value(client.getAccessTokenValiditySeconds());
+					writer.name(REFRESH_TOKEN_VALIDITY_SECONDS).value(client.getRefreshTokenValiditySeconds());
+					writer.name(ID_TOKEN_VALIDITY_SECONDS).value(client.getIdTokenValiditySeconds());
+					writer.name(DEVICE_CODE_VALIDITY_SECONDS).value(client.getDeviceCodeValiditySeconds());
+					writer.name(REDIRECT_URIS);
+					writeNullSafeArray(writer, client.getRedirectUris());
+					writer.name(CLAIMS_REDIRECT_URIS);
+					writeNullSafeArray(writer, client.getClaimsRedirectUris());
+					writer.name(NAME).value(client.getClientName());
+					writer.name(URI).value(client.getClientUri());
+					writer.name(LOGO_URI).value(client.getLogoUri());
+					writer.name(CONTACTS);
+					writeNullSafeArray(writer, client.getContacts());
+					writer.name(TOS_URI).value(client.getTosUri());
+					writer.name(TOKEN_ENDPOINT_AUTH_METHOD)
+					.value((client.getTokenEndpointAuthMethod() != null) ? client.getTokenEndpointAuthMethod().getValue() : null);
+					writer.name(GRANT_TYPES);
+					writer.beginArray();
+					for (String s : client.getGrantTypes()) {
+						writer.value(s);
+					}
+					writer.endArray();
+					writer.name(RESPONSE_TYPES);
+					writer.beginArray();
+					for (String s : client.getResponseTypes()) {
+						writer.value(s);
+					}
+					writer.endArray();
+					writer.name(POLICY_URI).value(client.getPolicyUri());
+					writer.name(JWKS_URI).value(client.getJwksUri());
+					writer.name(JWKS).value((client.getJwks() != null) ? client.getJwks().toString() : null);
+					writer.name(APPLICATION_TYPE)
+					.value((client.getApplicationType() != null) ? client.getApplicationType().getValue() : null);
+					writer.name(SECTOR_IDENTIFIER_URI).value(client.getSectorIdentifierUri());
+					writer.name(SUBJECT_TYPE)
+					.value((client.getSubjectType() != null) ? client.getSubjectType().getValue() : null);
+					writer.name(REQUEST_OBJECT_SIGNING_ALG)
+					.value((client.getRequestObjectSigningAlg() != null) ? client.getRequestObjectSigningAlg().getName() : null);
+					writer.name(ID_TOKEN_SIGNED_RESPONSE_ALG)
+					.value((client.getIdTokenSignedResponseAlg() != null) ? client.getIdTokenSignedResponseAlg().getName() : null);
+					writer.name(ID_TOKEN_ENCRYPTED_RESPONSE_ALG)
+					.value((client.getIdTokenEncryptedResponseAlg() != null) ? client.getIdTokenEncryptedResponseAlg().getName() : null);
+					writer.name(ID_TOKEN_ENCRYPTED_RESPONSE_ENC)
+					.value((client.getIdTokenEncryptedResponseEnc() != null) ? client.getIdTokenEncryptedResponseEnc().getName() : null);
+					writer.name(USER_INFO_SIGNED_RESPONSE_ALG)
+					.value((client.getUserInfoSignedResponseAlg() != null) ? client.getUserInfoSignedResponseAlg().getName() : null);
+					writer.name(USER_INFO_ENCRYPTED_RESPONSE_ALG)
+					.value((client.getUserInfoEncryptedResponseAlg() != null) ? client.getUserInfoEncryptedResponseAlg().getName() : null);
+					writer.name(USER_INFO_ENCRYPTED_RESPONSE_ENC)
+					.value((client.getUserInfoEncryptedResponseEnc() != null) ? client.getUserInfoEncryptedResponseEnc().getName() : null);
+					writer.name(TOKEN_ENDPOINT_AUTH_SIGNING_ALG)
+					.value((client.getTokenEndpointAuthSigningAlg() != null) ? client.getTokenEndpointAuthSigningAlg().getName() : null);
+					writer.name(DEFAULT_MAX_AGE).value(client.getDefaultMaxAge());
+					Boolean requireAuthTime = null;
+					try {
+						requireAuthTime = client.getRequireAuthTime();
+					} catch (NullPointerException e) {
+					}
+					if (requireAuthTime != null) {
+						writer.name(REQUIRE_AUTH_TIME).value(requireAuthTime);
+					}
+					writer.name(DEFAULT_ACR_VALUES);
+					writeNullSafeArray(writer, client.getDefaultACRvalues());
+					writer.name(INTITATE_LOGIN_URI).value(client.getInitiateLoginUri());
+					writer.name(POST_LOGOUT_REDIRECT_URI);
+					writeNullSafeArray(writer, client.getPostLogoutRedirectUris());
+					writer.name(REQUEST_URIS);
+					writeNullSafeArray(writer, client.getRequestUris());
+					writer.name(DESCRIPTION).value(client.getClientDescription());
+					writer.name(ALLOW_INTROSPECTION).value(client.isAllowIntrospection());
+					writer.name(REUSE_REFRESH_TOKEN).value(client.isReuseRefreshToken());
+					writer.name(CLEAR_ACCESS_TOKENS_ON_REFRESH).value(client.isClearAccessTokensOnRefresh());
+					writer.name(DYNAMICALLY_REGISTERED).value(client.isDynamicallyRegistered());
+					writer.name(CODE_CHALLENGE_METHOD).value(client.getCodeChallengeMethod() != null ? client.getCodeChallengeMethod().getName() : null);
+					writer.name(SOFTWARE_ID).value(client.getSoftwareId());
+					writer.name(SOFTWARE_VERSION).value(client.getSoftwareVersion());
+					writer.name(SOFTWARE_STATEMENT).value(client.getSoftwareStatement() != null ? client.getSoftwareStatement().serialize() : null);
+					writer.name(CREATION_DATE).value(toUTCString(client.getCreatedAt()));
+					writer.endObject();
+					logger.debug("Wrote client {}", client.getId());
+				} catch (IOException ex) {
+					logger.error("Unable to write client {}", client.getId(), ex);
 				}
-				writer.name(DEFAULT_ACR_VALUES);
-				writeNullSafeArray(writer, client.getDefaultACRvalues());
-				writer.name(INTITATE_LOGIN_URI).value(client.getInitiateLoginUri());
-				writer.name(POST_LOGOUT_REDIRECT_URI);
-				writeNullSafeArray(writer, client.getPostLogoutRedirectUris());
-				writer.name(REQUEST_URIS);
-				writeNullSafeArray(writer, client.getRequestUris());
-				writer.name(DESCRIPTION).value(client.getClientDescription());
-				writer.name(ALLOW_INTROSPECTION).value(client.isAllowIntrospection());
-				writer.name(REUSE_REFRESH_TOKEN).value(client.isReuseRefreshToken());
-				writer.name(CLEAR_ACCESS_TOKENS_ON_REFRESH).value(client.isClearAccessTokensOnRefresh());
-				writer.name(DYNAMICALLY_REGISTERED).value(client.isDynamicallyRegistered());
-				writer.name(CODE_CHALLENGE_METHOD).value(client.getCodeChallengeMethod() != null ? client.getCodeChallengeMethod().getName() : null);
-				writer.name(SOFTWARE_ID).value(client.getSoftwareId());
-				writer.name(SOFTWARE_VERSION).value(client.getSoftwareVersion());
-				writer.name(SOFTWARE_STATEMENT).value(client.getSoftwareStatement() != null ? client.getSoftwareStatement().serialize() : null);
-				writer.name(CREATION_DATE).value(toUTCString(client.getCreatedAt()));
-				writer.endObject();
-				logger.debug("Wrote client {}", client.getId());
-			} catch (IOException ex) {
-				logger.error("Unable to write client {}", client.getId(), ex);
+				lastId = client.getId();
 			}
-		}
+			writer.flush();
+		} while (page.size() == EXPORT_PAGE_SIZE);
 		logger.info("Done writing clients");
 	}
 
@@ -626,7 +682,7 @@ public class MITREidDataService_2_0 extends MITREidDataServiceSupport implements
 					continue;
 			}
 		}
-		fixObjectReferences();
+		pending.logUnresolved();
 		for (MITREidDataServiceExtension extension : extensions) {
 			if (extension.supportsVersion(THIS_VERSION)) {
 				extension.fixExtensionObjectReferences(maps);
@@ -634,6 +690,7 @@ public class MITREidDataService_2_0 extends MITREidDataServiceSupport implements
 			}
 		}
 		maps.clearAll();
+		pending.clear();
 	}
 
 	/**
@@ -646,53 +703,78 @@ public class MITREidDataService_2_0 extends MITREidDataServiceSupport implements
 	 */
 	private void readRefreshTokens(JsonReader reader) throws IOException {
 		reader.beginArray();
-		while (reader.hasNext()) {
-			OAuth2RefreshTokenEntity token = new OAuth2RefreshTokenEntity();
-			reader.beginObject();
-			String currentId = null;
-			String clientId = null;
-			String authHolderId = null;
+		ImportBatch batch = new ImportBatch();
+		try {
 			while (reader.hasNext()) {
-				switch (reader.peek()) {
-					case END_OBJECT:
-						continue;
-					case NAME:
-						String name = reader.nextName();
-						if (reader.peek() == JsonToken.NULL) {
-							reader.skipValue();
-						} else if (name.equals(ID)) {
-							currentId = reader.nextString();
-						} else if (name.equals(EXPIRATION)) {
-							Date date = utcToDate(reader.nextString());
-							token.setExpiration(date);
-						} else if (name.equals(VALUE)) {
-							String value = reader.nextString();
-							try {
-								token.setJwt(JWTParser.parse(value));
-							} catch (ParseException ex) {
-								logger.error("Unable to set refresh token value to {}", value, ex);
+				OAuth2RefreshTokenEntity token = new OAuth2RefreshTokenEntity();
+				reader.beginObject();
+				String currentId = null;
+				String clientId = null;
+				String authHolderId = null;
+				while (reader.hasNext()) {
+					switch (reader.peek()) {
+						case END_OBJECT:
+							continue;
+						case NAME:
+							String name = reader.nextName();
+							if (reader.peek() == JsonToken.NULL) {
+								reader.skipValue();
+							} else if (name.equals(ID)) {
+								currentId = reader.nextString();
+							} else if (name.equals(EXPIRATION)) {
+								Date date = utcToDate(reader.nextString());
+								token.setExpiration(date);
+							} else if (name.equals(VALUE)) {
+								String value = reader.nextString();
+								try {
+									token.setJwt(JWTParser.parse(value));
+								} catch (ParseException ex) {
+									logger.error("Unable to set refresh token value to {}", value, ex);
+								}
+							} else if (name.equals(CLIENT_ID)) {
+								clientId = reader.nextString();
+							} else if (name.equals(AUTH_HOLDER_ID)) {
+								authHolderId = reader.nextString();
+							} else {
+								logger.debug("Found unexpected entry");
+								reader.skipValue();
 							}
-						} else if (name.equals(CLIENT_ID)) {
-							clientId = reader.nextString();
-						} else if (name.equals(AUTH_HOLDER_ID)) {
-							authHolderId = reader.nextString();
-						} else {
+							break;
+						default:
 							logger.debug("Found unexpected entry");
 							reader.skipValue();
+							continue;
+					}
+				}
+				reader.endObject();
+				ClientDetailsEntity client = findImportedClient(clientId);
+				token.setClient(client);
+				AuthenticationHolderEntity authHolder = findImportedAuthHolder(authHolderId);
+				token.setAuthenticationHolder(authHolder);
+				final OAuth2RefreshTokenEntity saved = tokenRepository.persistRefreshToken(token);
+				if (client == null && clientId != null) {
+					pending.refreshTokensByClient.put(clientId, saved.getId());
+				}
+				if (authHolder == null && authHolderId != null) {
+					pending.refreshTokensByAuthHolder.put(authHolderId, saved.getId());
+				}
+				maps.getRefreshTokenOldToNewIdMap().put(currentId, saved.getId());
+				// access tokens are exported first, so most of them are waiting for their refresh token
+				final List<String> accessTokenIds = pending.accessTokensByRefreshToken.removeAll(currentId);
+				if (!accessTokenIds.isEmpty()) {
+					batch.beforeCommit(new Runnable() {
+						@Override
+						public void run() {
+							tokenRepository.setAccessTokensRefreshToken(accessTokenIds, saved);
 						}
-						break;
-					default:
-						logger.debug("Found unexpected entry");
-						reader.skipValue();
-						continue;
+					});
 				}
+				logger.debug("Read refresh token {}", currentId);
+				batch.rowDone();
 			}
-			reader.endObject();
-			String newId = tokenRepository.saveRefreshToken(token).getId();
-			maps.getRefreshTokenToClientRefs().put(currentId, clientId);
-			maps.getRefreshTokenToAuthHolderRefs().put(currentId, authHolderId);
-			maps.getRefreshTokenOldToNewIdMap().put(currentId, newId);
-			logger.debug("Read refresh token {}", currentId);
+			batch.commit();
+		} finally {
+			batch.rollbackIfActive();
 		}
 		reader.endArray();
 		logger.info("Done reading refresh tokens");
@@ -707,65 +789,88 @@ public class MITREidDataService_2_0 extends MITREidDataServiceSupport implements
 	 */
 	private void readAccessTokens(JsonReader reader) throws IOException {
 		reader.beginArray();
-		while (reader.hasNext()) {
-			OAuth2AccessTokenEntity token = new OAuth2AccessTokenEntity();
-			reader.beginObject();
-			String currentId = null;
-			String clientId = null;
-			String authHolderId = null;
-			String refreshTokenId = null;
+		ImportBatch batch = new ImportBatch();
+		try {
 			while (reader.hasNext()) {
-				switch (reader.peek()) {
-					case END_OBJECT:
-						continue;
-					case NAME:
-						String name = reader.nextName();
-						if (reader.peek() == JsonToken.NULL) {
-							reader.skipValue();
-						} else if (name.equals(ID)) {
-							currentId = reader.nextString();
-						} else if (name.equals(EXPIRATION)) {
-							Date date = utcToDate(reader.nextString());
-							token.setExpiration(date);
-						} else if (name.equals(VALUE)) {
-							String value = reader.nextString();
-							try {
-								// all tokens are JWTs
-								token.setJwt(JWTParser.parse(value));
-							} catch (ParseException ex) {
-								logger.error("Unable to set refresh token value to {}", value, ex);
+				OAuth2AccessTokenEntity token = new OAuth2AccessTokenEntity();
+				reader.beginObject();
+				String currentId = null;
+				String clientId = null;
+				String authHolderId = null;
+				String refreshTokenId = null;
+				while (reader.hasNext()) {
+					switch (reader.peek()) {
+						case END_OBJECT:
+							continue;
+						case NAME:
+							String name = reader.nextName();
+							if (reader.peek() == JsonToken.NULL) {
+								reader.skipValue();
+							} else if (name.equals(ID)) {
+								currentId = reader.nextString();
+							} else if (name.equals(EXPIRATION)) {
+								Date date = utcToDate(reader.nextString());
+								token.setExpiration(date);
+							} else if (name.equals(VALUE)) {
+								String value = reader.nextString();
+								try {
+									// all tokens are JWTs
+									token.setJwt(JWTParser.parse(value));
+								} catch (ParseException ex) {
+									logger.error("Unable to set refresh token value to {}", value, ex);
+								}
+							} else if (name.equals(CLIENT_ID)) {
+								clientId = reader.nextString();
+							} else if (name.equals(AUTH_HOLDER_ID)) {
+								authHolderId = reader.nextString();
+							} else if (name.equals(REFRESH_TOKEN_ID)) {
+								refreshTokenId = reader.nextString();
+							} else if (name.equals(SCOPE)) {
+								Set<String> scope = readSet(reader);
+								token.setScope(scope);
+							} else if (name.equals(TYPE)) {
+								token.setTokenType(reader.nextString());
+							} else {
+								logger.debug("Found unexpected entry");
+								reader.skipValue();
 							}
-						} else if (name.equals(CLIENT_ID)) {
-							clientId = reader.nextString();
-						} else if (name.equals(AUTH_HOLDER_ID)) {
-							authHolderId = reader.nextString();
-						} else if (name.equals(REFRESH_TOKEN_ID)) {
-							refreshTokenId = reader.nextString();
-						} else if (name.equals(SCOPE)) {
-							Set<String> scope = readSet(reader);
-							token.setScope(scope);
-						} else if (name.equals(TYPE)) {
-							token.setTokenType(reader.nextString());
-						} else {
+							break;
+						default:
 							logger.debug("Found unexpected entry");
 							reader.skipValue();
-						}
-						break;
-					default:
-						logger.debug("Found unexpected entry");
-						reader.skipValue();
-						continue;
+							continue;
+					}
 				}
+				reader.endObject();
+				ClientDetailsEntity client = findImportedClient(clientId);
+				token.setClient(client);
+				AuthenticationHolderEntity authHolder = findImportedAuthHolder(authHolderId);
+				token.setAuthenticationHolder(authHolder);
+				String newRefreshTokenId = maps.getRefreshTokenOldToNewIdMap().get(refreshTokenId);
+				if (newRefreshTokenId != null) {
+					token.setRefreshToken(tokenRepository.getRefreshTokenById(newRefreshTokenId));
+				}
+				String newGrantId = pending.grantsByAccessToken.remove(currentId);
+				if (newGrantId != null) {
+					token.setApprovedSite(approvedSiteRepository.getById(newGrantId));
+				}
+				OAuth2AccessTokenEntity saved = tokenRepository.persistAccessToken(token);
+				if (client == null && clientId != null) {
+					pending.accessTokensByClient.put(clientId, saved.getId());
+				}
+				if (authHolder == null && authHolderId != null) {
+					pending.accessTokensByAuthHolder.put(authHolderId, saved.getId());
+				}
+				if (newRefreshTokenId == null && refreshTokenId != null) {
+					pending.accessTokensByRefreshToken.put(refreshTokenId, saved.getId());
+				}
+				maps.getAccessTokenOldToNewIdMap().put(currentId, saved.getId());
+				logger.debug("Read access token {}", currentId);
+				batch.rowDone();
 			}
-			reader.endObject();
-			String newId = tokenRepository.saveAccessToken(token).getId();
-			maps.getAccessTokenToClientRefs().put(currentId, clientId);
-			maps.getAccessTokenToAuthHolderRefs().put(currentId, authHolderId);
-			if (refreshTokenId != null) {
-				maps.getAccessTokenToRefreshTokenRefs().put(currentId, refreshTokenId);
-			}
-			maps.getAccessTokenOldToNewIdMap().put(currentId, newId);
-			logger.debug("Read access token {}", currentId);
+			batch.commit();
+		} finally {
+			batch.rollbackIfActive();
 		}
 		reader.endArray();
 		logger.info("Done reading access tokens");
@@ -776,61 +881,83 @@ public class MITREidDataService_2_0 extends MITREidDataServiceSupport implements
 	 */
 	private void readAuthenticationHolders(JsonReader reader) throws IOException {
 		reader.beginArray();
-		while (reader.hasNext()) {
-			AuthenticationHolderEntity ahe = new AuthenticationHolderEntity();
-			reader.beginObject();
-			String currentId = null;
+		ImportBatch batch = new ImportBatch();
+		try {
 			while (reader.hasNext()) {
-				switch (reader.peek()) {
-					case END_OBJECT:
-						continue;
-					case NAME:
-						String name = reader.nextName();
-						if (reader.peek() == JsonToken.NULL) {
-							reader.skipValue();
-						} else if (name.equals(ID)) {
-							currentId = reader.nextString();
-						} else if (name.equals(REQUEST_PARAMETERS)) {
-							ahe.setRequestParameters(readMap(reader));
-						} else if (name.equals(CLIENT_ID)) {
-							ahe.setClientId(reader.nextString());
-						} else if (name.equals(SCOPE)) {
-							ahe.setScope(readSet(reader));
-						} else if (name.equals(RESOURCE_IDS)) {
-							ahe.setResourceIds(readSet(reader));
-						} else if (name.equals(AUTHORITIES)) {
-							Set<String> authorityStrs = readSet(reader);
-							Set<GrantedAuthority> authorities = new HashSet<GrantedAuthority>();
-							for (String s : authorityStrs) {
-								GrantedAuthority ga = new SimpleGrantedAuthority(s);
-								authorities.add(ga);
+				AuthenticationHolderEntity ahe = new AuthenticationHolderEntity();
+				reader.beginObject();
+				String currentId = null;
+				while (reader.hasNext()) {
+					switch (reader.peek()) {
+						case END_OBJECT:
+							continue;
+						case NAME:
+							String name = reader.nextName();
+							if (reader.peek() == JsonToken.NULL) {
+								reader.skipValue();
+							} else if (name.equals(ID)) {
+								currentId = reader.nextString();
+							} else if (name.equals(REQUEST_PARAMETERS)) {
+								ahe.setRequestParameters(readMap(reader));
+							} else if (name.equals(CLIENT_ID)) {
+								ahe.setClientId(reader.nextString());
+							} else if (name.equals(SCOPE)) {
+								ahe.setScope(readSet(reader));
+							} else if (name.equals(RESOURCE_IDS)) {
+								ahe.setResourceIds(readSet(reader));
+							} else if (name.equals(AUTHORITIES)) {
+								Set<String> authorityStrs = readSet(reader);
+								Set<GrantedAuthority> authorities = new HashSet<GrantedAuthority>();
+								for (String s : authorityStrs) {
+									GrantedAuthority ga = new SimpleGrantedAuthority(s);
+									authorities.add(ga);
+								}
+								ahe.setAuthorities(authorities);
+							} else if (name.equals(APPROVED)) {
+								ahe.setApproved(reader.nextBoolean());
+							} else if (name.equals(REDIRECT_URI)) {
+								ahe.setRedirectUri(reader.nextString());
+							} else if (name.equals(RESPONSE_TYPES)) {
+								ahe.setResponseTypes(readSet(reader));
+							} else if (name.equals(EXTENSIONS)) {
+								ahe.setExtensions(readMap(reader));
+							} else if (name.equals(SAVED_USER_AUTHENTICATION)) {
+								ahe.setUserAuth(readSavedUserAuthentication(reader));
+							} else {
+								logger.debug("Found unexpected entry");
+								reader.skipValue();
 							}
-							ahe.setAuthorities(authorities);
-						} else if (name.equals(APPROVED)) {
-							ahe.setApproved(reader.nextBoolean());
-						} else if (name.equals(REDIRECT_URI)) {
-							ahe.setRedirectUri(reader.nextString());
-						} else if (name.equals(RESPONSE_TYPES)) {
-							ahe.setResponseTypes(readSet(reader));
-						} else if (name.equals(EXTENSIONS)) {
-							ahe.setExtensions(readMap(reader));
-						} else if (name.equals(SAVED_USER_AUTHENTICATION)) {
-							ahe.setUserAuth(readSavedUserAuthentication(reader));
-						} else {
+							break;
+						default:
 							logger.debug("Found unexpected entry");
 							reader.skipValue();
+							continue;
+					}
+				}
+				reader.endObject();
+				final AuthenticationHolderEntity saved = authHolderRepository.persist(ahe);
+				maps.getAuthHolderOldToNewIdMap().put(currentId, saved.getId());
+				final List<String> accessTokenIds = pending.accessTokensByAuthHolder.removeAll(currentId);
+				final List<String> refreshTokenIds = pending.refreshTokensByAuthHolder.removeAll(currentId);
+				if (!accessTokenIds.isEmpty() || !refreshTokenIds.isEmpty()) {
+					batch.beforeCommit(new Runnable() {
+						@Override
+						public void run() {
+							if (!accessTokenIds.isEmpty()) {
+								tokenRepository.setAccessTokensAuthenticationHolder(accessTokenIds, saved);
+							}
+							if (!refreshTokenIds.isEmpty()) {
+								tokenRepository.setRefreshTokensAuthenticationHolder(refreshTokenIds, saved);
+							}
 						}
-						break;
-					default:
-						logger.debug("Found unexpected entry");
-						reader.skipValue();
-						continue;
+					});
 				}
+				logger.debug("Read authentication holder {}", currentId);
+				batch.rowDone();
 			}
-			reader.endObject();
-			String newId = authHolderRepository.save(ahe).getId();
-			maps.getAuthHolderOldToNewIdMap().put(currentId, newId);
-			logger.debug("Read authentication holder {}", currentId);
+			batch.commit();
+		} finally {
+			batch.rollbackIfActive();
 		}
 		reader.endArray();
 		logger.info("Done reading authentication holders");
@@ -889,57 +1016,76 @@ public class MITREidDataService_2_0 extends MITREidDataServiceSupport implements
 	 */
 	private void readGrants(JsonReader reader) throws IOException {
 		reader.beginArray();
-		while (reader.hasNext()) {
-			ApprovedSite site = new ApprovedSite();
-			String currentId = null;
-			Set<String> tokenIds = null;
-			reader.beginObject();
+		ImportBatch batch = new ImportBatch();
+		try {
 			while (reader.hasNext()) {
-				switch (reader.peek()) {
-					case END_OBJECT:
-						continue;
-					case NAME:
-						String name = reader.nextName();
-						if (reader.peek() == JsonToken.NULL) {
-							reader.skipValue();
-						} else if (name.equals(ID)) {
-							currentId = reader.nextString();
-						} else if (name.equals(ACCESS_DATE)) {
-							Date date = utcToDate(reader.nextString());
-							site.setAccessDate(date);
-						} else if (name.equals(CLIENT_ID)) {
-							site.setClientId(reader.nextString());
-						} else if (name.equals(CREATION_DATE)) {
-							Date date = utcToDate(reader.nextString());
-							site.setCreationDate(date);
-						} else if (name.equals(TIMEOUT_DATE)) {
-							Date date = utcToDate(reader.nextString());
-							site.setTimeoutDate(date);
-						} else if (name.equals(USER_ID)) {
-							site.setUserId(reader.nextString());
-						} else if (name.equals(ALLOWED_SCOPES)) {
-							Set<String> allowedScopes = readSet(reader);
-							site.setAllowedScopes(allowedScopes);
-						} else if (name.equals(APPROVED_ACCESS_TOKENS)) {
-							tokenIds = readSet(reader);
-						} else {
+				ApprovedSite site = new ApprovedSite();
+				String currentId = null;
+				Set<String> tokenIds = null;
+				reader.beginObject();
+				while (reader.hasNext()) {
+					switch (reader.peek()) {
+						case END_OBJECT:
+							continue;
+						case NAME:
+							String name = reader.nextName();
+							if (reader.peek() == JsonToken.NULL) {
+								reader.skipValue();
+							} else if (name.equals(ID)) {
+								currentId = reader.nextString();
+							} else if (name.equals(ACCESS_DATE)) {
+								Date date = utcToDate(reader.nextString());
+								site.setAccessDate(date);
+							} else if (name.equals(CLIENT_ID)) {
+								site.setClientId(reader.nextString());
+							} else if (name.equals(CREATION_DATE)) {
+								Date date = utcToDate(reader.nextString());
+								site.setCreationDate(date);
+							} else if (name.equals(TIMEOUT_DATE)) {
+								Date date = utcToDate(reader.nextString());
+								site.setTimeoutDate(date);
+							} else if (name.equals(USER_ID)) {
+								site.setUserId(reader.nextString());
+							} else if (name.equals(ALLOWED_SCOPES)) {
+								Set<String> allowedScopes = readSet(reader);
+								site.setAllowedScopes(allowedScopes);
+							} else if (name.equals(APPROVED_ACCESS_TOKENS)) {
+								tokenIds = readSet(reader);
+							} else {
+								logger.debug("Found unexpected entry");
+								reader.skipValue();
+							}
+							break;
+						default:
 							logger.debug("Found unexpected entry");
 							reader.skipValue();
+							continue;
+					}
+				}
+				reader.endObject();
+				ApprovedSite saved = approvedSiteRepository.save(site);
+				maps.getGrantOldToNewIdMap().put(currentId, saved.getId());
+				if (tokenIds != null) {
+					List<String> importedTokenIds = new ArrayList<>();
+					for (String tokenId : tokenIds) {
+						String newTokenId = maps.getAccessTokenOldToNewIdMap().get(tokenId);
+						if (newTokenId != null) {
+							importedTokenIds.add(newTokenId);
+						} else {
+							// grants are exported before the tokens, which pick the grant up when they are read
+							pending.grantsByAccessToken.put(tokenId, saved.getId());
 						}
-						break;
-					default:
-						logger.debug("Found unexpected entry");
-						reader.skipValue();
-						continue;
+					}
+					if (!importedTokenIds.isEmpty()) {
+						tokenRepository.setAccessTokensApprovedSite(importedTokenIds, saved);
+					}
 				}
+				logger.debug("Read grant {}", currentId);
+				batch.rowDone();
 			}
-			reader.endObject();
-			String newId = approvedSiteRepository.save(site).getId();
-			maps.getGrantOldToNewIdMap().put(currentId, newId);
-			if (tokenIds != null) {
-				maps.getGrantToAccessTokensRefs().put(currentId, tokenIds);
-			}
-			logger.debug("Read grant {}", currentId);
+			batch.commit();
+		} finally {
+			batch.rollbackIfActive();
 		}
 		reader.endArray();
 		logger.info("Done reading grants");
@@ -1189,8 +1335,9 @@ public class MITREidDataService_2_0 extends MITREidDataServiceSupport implements
 				}
 			}
 			reader.endObject();
+			String clientId = client.getClientId();
 			try {
-				clientRepository.saveClient(client);
+				resolveClientReferences(clientId, clientRepository.saveClient(client));
 			} catch(PersistenceException ex) {
 				if(ex.getCause() instanceof DatabaseException 
 						&& ex.getCause().getCause() instanceof SQLIntegrityConstraintViolationException) {
@@ -1266,77 +1413,147 @@ public class MITREidDataService_2_0 extends MITREidDataServiceSupport implements
 		logger.info("Done reading system scopes");
 	}
 
-	private void fixObjectReferences() {
-		logger.info("Fixing object references...");
-		for (String oldRefreshTokenId : maps.getRefreshTokenToClientRefs().keySet()) {
-			String clientRef = maps.getRefreshTokenToClientRefs().get(oldRefreshTokenId);
-			ClientDetailsEntity client = clientRepository.getClientByClientId(clientRef);
-			String newRefreshTokenId = maps.getRefreshTokenOldToNewIdMap().get(oldRefreshTokenId);
-			OAuth2RefreshTokenEntity refreshToken = tokenRepository.getRefreshTokenById(newRefreshTokenId);
-			refreshToken.setClient(client);
-			tokenRepository.saveRefreshToken(refreshToken);
-		}
-		for (String oldRefreshTokenId : maps.getRefreshTokenToAuthHolderRefs().keySet()) {
-			String oldAuthHolderId = maps.getRefreshTokenToAuthHolderRefs().get(oldRefreshTokenId);
-			String newAuthHolderId = maps.getAuthHolderOldToNewIdMap().get(oldAuthHolderId);
-			AuthenticationHolderEntity authHolder = authHolderRepository.getById(newAuthHolderId);
-			String newRefreshTokenId = maps.getRefreshTokenOldToNewIdMap().get(oldRefreshTokenId);
-			OAuth2RefreshTokenEntity refreshToken = tokenRepository.getRefreshTokenById(newRefreshTokenId);
-			refreshToken.setAuthenticationHolder(authHolder);
-			tokenRepository.saveRefreshToken(refreshToken);
+	/**
+	 * Look up a client for the tokens being imported. Clients are exported before
+	 * the tokens, so they are normally found; lookups are remembered for the rest
+	 * of the batch since many tokens share a client, and dropped when it commits
+	 * so that tokens are never linked to a detached client.
+	 *
+	 * @return the client, or null if it hasn't been imported (yet)
+	 */
+	private ClientDetailsEntity findImportedClient(String clientId) {
+		if (clientId == null || pending.unknownClientIds.contains(clientId)) {
+			return null;
 		}
-		for (String oldAccessTokenId : maps.getAccessTokenToClientRefs().keySet()) {
-			String clientRef = maps.getAccessTokenToClientRefs().get(oldAccessTokenId);
-			ClientDetailsEntity client = clientRepository.getClientByClientId(clientRef);
-			String newAccessTokenId = maps.getAccessTokenOldToNewIdMap().get(oldAccessTokenId);
-			OAuth2AccessTokenEntity accessToken = tokenRepository.getAccessTokenById(newAccessTokenId);
-			accessToken.setClient(client);
-			tokenRepository.saveAccessToken(accessToken);
+		ClientDetailsEntity client = pending.clientsByClientId.get(clientId);
+		if (client == null) {
+			client = clientRepository.getClientByClientId(clientId);
+			if (client != null) {
+				pending.clientsByClientId.put(clientId, client);
+			} else {
+				pending.unknownClientIds.add(clientId);
+			}
 		}
-		for (String oldAccessTokenId : maps.getAccessTokenToAuthHolderRefs().keySet()) {
-			String oldAuthHolderId = maps.getAccessTokenToAuthHolderRefs().get(oldAccessTokenId);
-			String newAuthHolderId = maps.getAuthHolderOldToNewIdMap().get(oldAuthHolderId);
-			AuthenticationHolderEntity authHolder = authHolderRepository.getById(newAuthHolderId);
-			String newAccessTokenId = maps.getAccessTokenOldToNewIdMap().get(oldAccessTokenId);
-			OAuth2AccessTokenEntity accessToken = tokenRepository.getAccessTokenById(newAccessTokenId);
-			accessToken.setAuthenticationHolder(authHolder);
-			tokenRepository.saveAccessToken(accessToken);
+		return client;
+	}
+
+	/**
+	 * @return the imported authentication holder with the given id from the export,
+	 * or null if it hasn't been imported (yet)
+	 */
+	private AuthenticationHolderEntity findImportedAuthHolder(String oldAuthHolderId) {
+		String newAuthHolderId = maps.getAuthHolderOldToNewIdMap().get(oldAuthHolderId);
+		return newAuthHolderId != null ? authHolderRepository.getById(newAuthHolderId) : null;
+	}
+
+	/**
+	 * Point the tokens that were read before this client at it.
+	 */
+	private void resolveClientReferences(String clientId, ClientDetailsEntity client) {
+		pending.unknownClientIds.remove(clientId);
+		List<String> accessTokenIds = pending.accessTokensByClient.removeAll(clientId);
+		if (!accessTokenIds.isEmpty()) {
+			tokenRepository.setAccessTokensClient(accessTokenIds, client);
 		}
-		for (String oldAccessTokenId : maps.getAccessTokenToRefreshTokenRefs().keySet()) {
-			String oldRefreshTokenId = maps.getAccessTokenToRefreshTokenRefs().get(oldAccessTokenId);
-			String newRefreshTokenId = maps.getRefreshTokenOldToNewIdMap().get(oldRefreshTokenId);
-			OAuth2RefreshTokenEntity refreshToken = tokenRepository.getRefreshTokenById(newRefreshTokenId);
-			String newAccessTokenId = maps.getAccessTokenOldToNewIdMap().get(oldAccessTokenId);
-			OAuth2AccessTokenEntity accessToken = tokenRepository.getAccessTokenById(newAccessTokenId);
-			accessToken.setRefreshToken(refreshToken);
-			tokenRepository.saveAccessToken(accessToken);
+		List<String> refreshTokenIds = pending.refreshTokensByClient.removeAll(clientId);
+		if (!refreshTokenIds.isEmpty()) {
+			tokenRepository.setRefreshTokensClient(refreshTokenIds, client);
 		}
-		for (String oldGrantId : maps.getGrantToAccessTokensRefs().keySet()) {
-			Set<String> oldAccessTokenIds = maps.getGrantToAccessTokensRefs().get(oldGrantId);
+	}
+
+	/**
+	 * References read before the object they point to, keyed by the id of that
+	 * object in the export (or the client ID for clients) and holding the new ids
+	 * of the imported tokens. They are resolved with one update per object as soon
+	 * as it is imported.
+	 */
+	private static class PendingReferences {
+		private final ListMultimap<String, String> accessTokensByClient = ArrayListMultimap.create();
+		private final ListMultimap<String, String> accessTokensByAuthHolder = ArrayListMultimap.create();
+		private final ListMultimap<String, String> accessTokensByRefreshToken = ArrayListMultimap.create();
+		private final ListMultimap<String, String> refreshTokensByClient = ArrayListMultimap.create();
+		private final ListMultimap<String, String> refreshTokensByAuthHolder = ArrayListMultimap.create();
+		// new grant id by the id in the export of an access token that hasn't been read yet
+		private final Map<String, String> grantsByAccessToken = new HashMap<>();
 
-			String newGrantId = maps.getGrantOldToNewIdMap().get(oldGrantId);
-			ApprovedSite site = approvedSiteRepository.getById(newGrantId);
+		private final Map<String, ClientDetailsEntity> clientsByClientId = new HashMap<>();
+		private final Set<String> unknownClientIds = new HashSet<>();
 
-			for(String oldTokenId : oldAccessTokenIds) {
-				String newTokenId = maps.getAccessTokenOldToNewIdMap().get(oldTokenId);
-				OAuth2AccessTokenEntity token = tokenRepository.getAccessTokenById(newTokenId);
-				token.setApprovedSite(site);
-				tokenRepository.saveAccessToken(token);
+		private void logUnresolved() {
+			int unresolved = accessTokensByClient.size() + accessTokensByAuthHolder.size() + accessTokensByRefreshToken.size()
+					+ refreshTokensByClient.size() + refreshTokensByAuthHolder.size() + grantsByAccessToken.size();
+			if (unresolved > 0) {
+				logger.warn("{} references point to objects that were not part of the import and were left empty", unresolved);
 			}
+		}
 
-			approvedSiteRepository.save(site);
+		private void clear() {
+			accessTokensByClient.clear();
+			accessTokensByAuthHolder.clear();
+			accessTokensByRefreshToken.clear();
+			refreshTokensByClient.clear();
+			refreshTokensByAuthHolder.clear();
+			grantsByAccessToken.clear();
+			clientsByClientId.clear();
+			unknownClientIds.clear();
 		}
-		/*
-		refreshTokenToClientRefs.clear();
-		refreshTokenToAuthHolderRefs.clear();
-		accessTokenToClientRefs.clear();
-		accessTokenToAuthHolderRefs.clear();
-		accessTokenToRefreshTokenRefs.clear();
-		refreshTokenOldToNewIdMap.clear();
-		accessTokenOldToNewIdMap.clear();
-		grantOldToNewIdMap.clear();
+	}
+
+	/**
+	 * Transaction spanning up to IMPORT_BATCH_SIZE rows of one section of the import,
+	 * so the rows aren't committed one by one and the persistence context is cleared
+	 * between batches. Rows are persisted without a flush each, and the reference
+	 * updates that depend on them wait for the end of the batch, so the batch's
+	 * inserts are written together (as JDBC batches where batch writing is on).
+	 */
+	private class ImportBatch {
+		private TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+		private boolean active = true;
+		private int rows;
+		private final List<Runnable> beforeCommit = new ArrayList<>();
+
+		/**
+		 * Run this at the end of the current batch, once its rows have been written.
 		 */
-		logger.info("Done fixing object references.");
+		private void beforeCommit(Runnable update) {
+			beforeCommit.add(update);
+		}
+
+		private void rowDone() {
+			if (++rows % IMPORT_BATCH_SIZE == 0) {
+				runBeforeCommit();
+				transactionManager.commit(status);
+				batchCommitted();
+				status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+				logger.debug("Imported {} rows", rows);
+			}
+		}
+
+		private void commit() {
+			runBeforeCommit();
+			active = false;
+			transactionManager.commit(status);
+			batchCommitted();
+		}
+
+		private void runBeforeCommit() {
+			for (Runnable update : beforeCommit) {
+				update.run();
+			}
+			beforeCommit.clear();
+		}
+
+		private void batchCommitted() {
+			// the clients looked up for this batch are detached now
+			pending.clientsByClientId.clear();
+		}
+
+		private void rollbackIfActive() {
+			if (active) {
+				active = false;
+				transactionManager.rollback(status);
+			}
+		}
 	}
 
 }
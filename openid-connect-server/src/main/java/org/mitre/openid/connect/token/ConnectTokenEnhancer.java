@@ -17,7 +17,10 @@
  *******************************************************************************/
 package org.mitre.openid.connect.token;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
 import org.mitre.jwt.signer.service.JWTSigningAndValidationService;
@@ -32,12 +35,14 @@ import org.mitre.openid.connect.service.UserInfoService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2Request;
 import org.springframework.security.oauth2.provider.token.TokenEnhancer;
 import org.springframework.stereotype.Service;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.nimbusds.jose.JWSAlgorithm;
@@ -92,6 +97,10 @@ public class ConnectTokenEnhancer implements TokenEnhancer {
 			builder.audience(Lists.newArrayList(audience));
 		}
 
+		if (configBean.isStatelessAccessTokens()) {
+			addAuthenticationClaims(builder, token, authentication);
+		}
+
 		addCustomAccessTokenClaims(builder, token, authentication);
 
 		JWTClaimsSet claims = builder.build();
@@ -163,6 +172,41 @@ public class ConnectTokenEnhancer implements TokenEnhancer {
 	}
 
 
+	/**
+	 * Add what is needed to rebuild the authentication from the token alone: the scopes,
+	 * the client's and the user's authorities kept apart, the resource ids and whether
+	 * there is a user involved.
+	 */
+	private void addAuthenticationClaims(JWTClaimsSet.Builder builder, OAuth2AccessTokenEntity token,
+			OAuth2Authentication authentication) {
+		if (token.getScope() != null) {
+			builder.claim(OAuth2AccessTokenEntity.SCOPE_CLAIM, Joiner.on(' ').join(token.getScope()));
+		}
+
+		OAuth2Request request = authentication.getOAuth2Request();
+		builder.claim(OAuth2AccessTokenEntity.CLIENT_AUTHORITIES_CLAIM, toStrings(request.getAuthorities()));
+
+		if (request.getResourceIds() != null && !request.getResourceIds().isEmpty()) {
+			builder.claim(OAuth2AccessTokenEntity.RESOURCE_IDS_CLAIM, new ArrayList<>(request.getResourceIds()));
+		}
+
+		if (authentication.isClientOnly()) {
+			builder.claim(OAuth2AccessTokenEntity.CLIENT_ONLY_CLAIM, true);
+		} else {
+			builder.claim(OAuth2AccessTokenEntity.USER_AUTHORITIES_CLAIM, toStrings(authentication.getUserAuthentication().getAuthorities()));
+		}
+	}
+
+	private static List<String> toStrings(Collection<? extends GrantedAuthority> authorities) {
+		List<String> values = new ArrayList<>();
+		if (authorities != null) {
+			for (GrantedAuthority authority : authorities) {
+				values.add(authority.getAuthority());
+			}
+		}
+		return values;
+	}
+
 	/**
 	 * Hook for subclasses that allows adding custom claims to the JWT that will be used as access token.
 	 * @param builder the builder holding the current claims
@@ -145,9 +145,8 @@ public class TofuUserApprovalHandler implements UserApprovalHandler {
 					// if we find one that fits...
 					if (systemScopes.scopesMatch(ap.getAllowedScopes(), authorizationRequest.getScope())) {
 
-						//We have a match; update the access date on the AP entry and return true.
-						ap.setAccessDate(new Date());
-						approvedSiteService.save(ap);
+						//We have a match; mark the AP entry as accessed and return true.
+						approvedSiteService.markAccessed(ap);
 
 						String apId = ap.getId().toString();
 						authorizationRequest.getExtensions().put(APPROVED_SITE, apId);
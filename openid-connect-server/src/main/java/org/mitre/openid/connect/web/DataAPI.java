@@ -18,12 +18,17 @@
 package org.mitre.openid.connect.web;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.mitre.openid.connect.config.ConfigurationPropertiesBean;
@@ -32,6 +37,7 @@ import org.mitre.openid.connect.service.impl.MITREidDataService_2_0;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
@@ -39,6 +45,7 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
@@ -122,12 +129,22 @@ public class DataAPI {
 	}
 
 	@RequestMapping(method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-	public void exportData(HttpServletResponse resp, Principal prin) throws IOException {
+	public void exportData(HttpServletRequest req, HttpServletResponse resp, Principal prin) throws IOException {
 
 		resp.setContentType(MediaType.APPLICATION_JSON_VALUE);
-
-		// this writer puts things out onto the wire
-		JsonWriter writer = new JsonWriter(resp.getWriter());
+		resp.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		resp.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+		// this writer puts things out onto the wire as the service produces them,
+		// compressed if the client accepts it since exports of large hosts are big
+		Writer out;
+		if (acceptsGzip(req)) {
+			resp.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+			out = new OutputStreamWriter(new GZIPOutputStream(resp.getOutputStream(), true), StandardCharsets.UTF_8);
+		} else {
+			out = resp.getWriter();
+		}
+		JsonWriter writer = new JsonWriter(out);
 		writer.setIndent("  ");
 
 		try {
@@ -154,4 +171,43 @@ public class DataAPI {
 		}
 	}
 
+	/**
+	 * Does the Accept-Encoding header allow gzip? A q-value of 0 refuses a coding, and a
+	 * wildcard only counts when gzip isn't named itself.
+	 */
+	private boolean acceptsGzip(HttpServletRequest req) {
+		String acceptEncoding = req.getHeader(HttpHeaders.ACCEPT_ENCODING);
+		if (acceptEncoding == null) {
+			return false;
+		}
+
+		Double gzip = null;
+		Double wildcard = null;
+		for (String element : Splitter.on(',').trimResults().omitEmptyStrings().split(acceptEncoding)) {
+			List<String> parts = Splitter.on(';').trimResults().splitToList(element);
+			String coding = parts.get(0).toLowerCase();
+			double q = 1.0;
+			for (String param : parts.subList(1, parts.size())) {
+				if (param.toLowerCase().startsWith("q=")) {
+					try {
+						q = Double.parseDouble(param.substring(2).trim());
+					} catch (NumberFormatException e) {
+						q = 0.0;
+					}
+				}
+			}
+
+			if (coding.equals("gzip") || coding.equals("x-gzip")) {
+				gzip = q;
+			} else if (coding.equals("*")) {
+				wildcard = q;
+			}
+		}
+
+		if (gzip != null) {
+			return gzip > 0;
+		}
+		return wildcard != null && wildcard > 0;
+	}
+
 }
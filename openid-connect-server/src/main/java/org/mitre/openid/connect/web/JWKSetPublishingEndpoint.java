@@ -17,37 +17,50 @@
  *******************************************************************************/
 package org.mitre.openid.connect.web;
 
+import java.util.ArrayList;
 import java.util.Map;
 
 import org.mitre.jwt.signer.service.JWTSigningAndValidationService;
-import org.mitre.openid.connect.view.JWKSetView;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 
 import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
 
 @Controller
 public class JWKSetPublishingEndpoint {
 
 	public static final String URL = "jwk";
 
+	// clients refetch the keys at least this often, in seconds
+	private static final long MAX_AGE = 3600;
+
 	@Autowired
 	private JWTSigningAndValidationService jwtService;
 
+	// the keys are loaded when the signing service is created, so the set is rendered once per service
+	private volatile RenderedJsonDocument jwkSet;
+
 	@RequestMapping(value = "/" + URL, produces = MediaType.APPLICATION_JSON_VALUE)
-	public String getJwk(Model m) {
+	public ResponseEntity<byte[]> getJwk(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
-		// map from key id to key
-		Map<String, JWK> keys = jwtService.getAllPublicKeys();
+		RenderedJsonDocument document = jwkSet;
+		if (document == null) {
+			// map from key id to key
+			Map<String, JWK> keys = jwtService.getAllPublicKeys();
 
-		// TODO: check if keys are empty, return a 404 here or just an empty list?
+			// TODO: check if keys are empty, return a 404 here or just an empty list?
 
-		m.addAttribute("keys", keys);
+			document = new RenderedJsonDocument(new JWKSet(new ArrayList<>(keys.values())).toString());
+			jwkSet = document;
+		}
 
-		return JWKSetView.VIEWNAME;
+		return document.toResponseEntity(ifNoneMatch, MAX_AGE);
 	}
 
 	/**
@@ -58,10 +71,11 @@ public class JWKSetPublishingEndpoint {
 	}
 
 	/**
-	 * @param jwtService the jwtService to set
+	 * @param jwtService the jwtService to set, its keys are published from the next request on
 	 */
 	public void setJwtService(JWTSigningAndValidationService jwtService) {
 		this.jwtService = jwtService;
+		this.jwkSet = null;
 	}
 
 }
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.openid.connect.web;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * A JSON document that is published as is to everyone who asks, such as the
+ * discovery document or the JWK set. It is serialized once and served with a
+ * strong ETag taken from its content, so clients that poll it can revalidate
+ * with If-None-Match and get a 304 back.
+ *
+ */
+public class RenderedJsonDocument {
+
+	private final byte[] body;
+
+	private final String etag;
+
+	public RenderedJsonDocument(String json) {
+		this.body = json.getBytes(StandardCharsets.UTF_8);
+		this.etag = "\"" + BaseEncoding.base64Url().omitPadding().encode(Hashing.sha256().hashBytes(body).asBytes()) + "\"";
+	}
+
+	/**
+	 * @param ifNoneMatch the If-None-Match header of the request, may be null
+	 * @param maxAge the number of seconds the document may be cached
+	 * @return the document, or a 304 if the client already has it
+	 */
+	public ResponseEntity<byte[]> toResponseEntity(String ifNoneMatch, long maxAge) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setETag(etag);
+		headers.setCacheControl("public, max-age=" + maxAge);
+
+		if (isMatch(ifNoneMatch)) {
+			return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+		}
+
+		headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+		headers.setContentLength(body.length);
+		return new ResponseEntity<>(body, headers, HttpStatus.OK);
+	}
+
+	private boolean isMatch(String ifNoneMatch) {
+		if (Strings.isNullOrEmpty(ifNoneMatch)) {
+			return false;
+		}
+		for (String tag : Splitter.on(',').trimResults().omitEmptyStrings().split(ifNoneMatch)) {
+			// If-None-Match uses the weak comparison, so W/ is ignored
+			if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the serialized document
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * @return the quoted ETag of the document
+	 */
+	public String getEtag() {
+		return etag;
+	}
+
+}
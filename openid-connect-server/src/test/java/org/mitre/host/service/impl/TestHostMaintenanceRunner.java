@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.host.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+
+import java.util.Date;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.host.model.DefaultHostInfo;
+import org.mitre.host.model.HostInfo;
+import org.mitre.host.repository.MaintenanceLeaseRepository;
+import org.mitre.host.service.HostInfoService;
+import org.mitre.host.util.HostUtils;
+import org.mitre.oauth2.service.DeviceCodeService;
+import org.mitre.oauth2.service.OAuth2TokenEntityService;
+import org.mitre.oauth2.service.impl.DefaultOAuth2AuthorizationCodeService;
+import org.mitre.openid.connect.config.ConfigurationPropertiesBean;
+import org.mitre.openid.connect.service.ApprovedSiteService;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestHostMaintenanceRunner {
+
+	@Mock
+	private HostInfoService hostInfoService;
+
+	@Mock
+	private MaintenanceLeaseRepository leaseRepository;
+
+	@Mock
+	private OAuth2TokenEntityService tokenService;
+
+	@Mock
+	private ApprovedSiteService approvedSiteService;
+
+	@Mock
+	private DefaultOAuth2AuthorizationCodeService authorizationCodeService;
+
+	@Mock
+	private DeviceCodeService deviceCodeService;
+
+	@Spy
+	private ConfigurationPropertiesBean configBean = new ConfigurationPropertiesBean();
+
+	@InjectMocks
+	private HostMaintenanceRunner runner;
+
+	@Before
+	public void prepare() {
+		runner.setNodeId("node-1");
+		runner.start();
+		Mockito.when(hostInfoService.getAllHosts()).thenReturn(ImmutableList.of(host("host-1", "one.example.com"), host("host-2", "two.example.com")));
+
+		// a different count for each host, so the total shows each ran with its own context bound
+		Mockito.when(deviceCodeService.clearExpiredDeviceCodes()).thenAnswer(new Answer<Integer>() {
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				return HostUtils.getCurrentHostContext().getHostUuid().equals("host-1") ? 2 : 3;
+			}
+		});
+	}
+
+	@After
+	public void stop() {
+		runner.stop();
+	}
+
+	@Test
+	public void runForEachHost() {
+		Mockito.when(leaseRepository.acquire(eq(HostMaintenanceRunner.CLEAR_EXPIRED_DEVICE_CODES), eq("node-1"), any(Date.class), any(Date.class))).thenReturn(true);
+
+		runner.clearExpiredDeviceCodes();
+
+		Mockito.verify(deviceCodeService, Mockito.times(2)).clearExpiredDeviceCodes();
+		Mockito.verify(leaseRepository).recordRun(eq(HostMaintenanceRunner.CLEAR_EXPIRED_DEVICE_CODES), eq("node-1"), any(Date.class), eq(5L));
+	}
+
+	@Test
+	public void runForEachHost_leaseHeld() {
+		Mockito.when(leaseRepository.acquire(anyString(), anyString(), any(Date.class), any(Date.class))).thenReturn(false);
+
+		runner.clearExpiredDeviceCodes();
+		runner.clearExpiredTokens();
+
+		Mockito.verify(deviceCodeService, Mockito.never()).clearExpiredDeviceCodes();
+		Mockito.verify(tokenService, Mockito.never()).clearExpiredTokens();
+		Mockito.verify(tokenService, Mockito.never()).clearExpiredRevocations();
+		Mockito.verify(leaseRepository, Mockito.never()).recordRun(anyString(), anyString(), any(Date.class), anyLong());
+	}
+
+	@Test
+	public void runForEachHost_leaseFailed() {
+		Mockito.when(leaseRepository.acquire(anyString(), anyString(), any(Date.class), any(Date.class))).thenThrow(new IllegalStateException("duplicate key"));
+
+		runner.clearExpiredDeviceCodes();
+
+		Mockito.verify(deviceCodeService, Mockito.never()).clearExpiredDeviceCodes();
+	}
+
+	@Test
+	public void clearExpiredTokens() {
+		Mockito.when(leaseRepository.acquire(anyString(), anyString(), any(Date.class), any(Date.class))).thenReturn(true);
+		Mockito.when(tokenService.clearExpiredTokens()).thenReturn(4);
+		Mockito.when(tokenService.clearExpiredRevocations()).thenReturn(1);
+
+		runner.clearExpiredTokens();
+
+		Mockito.verify(tokenService, Mockito.times(2)).clearExpiredTokens();
+		Mockito.verify(tokenService, Mockito.times(1)).clearExpiredRevocations();
+		Mockito.verify(leaseRepository).recordRun(eq(HostMaintenanceRunner.CLEAR_EXPIRED_TOKENS), eq("node-1"), any(Date.class), eq(9L));
+	}
+
+	/**
+	 * Each host's issuer is built with the configured scheme and context path.
+	 */
+	@Test
+	public void hostContext() {
+		configBean.setHostScheme("http");
+		configBean.setContextPath("/openid-connect-server-webapp");
+		Mockito.when(leaseRepository.acquire(anyString(), anyString(), any(Date.class), any(Date.class))).thenReturn(true);
+		final Set<String> issuers = Sets.newConcurrentHashSet();
+		Mockito.when(approvedSiteService.clearExpiredSites()).thenAnswer(new Answer<Integer>() {
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				issuers.add(HostUtils.getCurrentRunningFullPath());
+				return 0;
+			}
+		});
+
+		runner.clearExpiredSites();
+
+		assertEquals(ImmutableSet.of("http://one.example.com/openid-connect-server-webapp/", "http://two.example.com/openid-connect-server-webapp/"), issuers);
+	}
+
+	private HostInfo host(String uuid, String host) {
+		DefaultHostInfo hostInfo = new DefaultHostInfo();
+		hostInfo.setId(uuid);
+		hostInfo.setHost(host);
+		return hostInfo;
+	}
+}
@@ -18,6 +18,7 @@ import org.mitre.host.repository.impl.JpaHostInfoRepository;
 import org.mitre.host.service.HostInfoService;
 import org.mitre.host.service.impl.DefaultHostInfoService;
 import org.mitre.host.util.HostUtils;
+import org.mitre.oauth2.repository.RevokedTokenRepository;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
@@ -66,6 +67,8 @@ public class TestDatabaseConfiguration {
 		jpaProperties.put("eclipselink.logging.level", "INFO");
 		jpaProperties.put("eclipselink.logging.level.sql", "INFO");
 		jpaProperties.put("eclipselink.cache.shared.default", "false");
+		jpaProperties.put("eclipselink.jdbc.batch-writing", "JDBC");
+		jpaProperties.put("eclipselink.jdbc.batch-writing.size", "100");
 		factory.setJpaPropertyMap(jpaProperties);
 
 		return factory;
@@ -98,13 +101,18 @@ public class TestDatabaseConfiguration {
 		return adapter;
 	}
 
-	@Bean
+	@Bean(name = { "transactionManager", "defaultTransactionManager" })
 	public PlatformTransactionManager transactionManager() {
 		JpaTransactionManager platformTransactionManager = new JpaTransactionManager();
 		platformTransactionManager.setEntityManagerFactory(entityManagerFactory);
 		return platformTransactionManager;
 	}
 	
+	@Bean
+	public RevokedTokenRepository revokedTokenRepository() {
+		return new JpaRevokedTokenRepository();
+	}
+
 	@Bean
 	public HostInfoRepository hostInfoRepository() {
 		return new JpaHostInfoRepository();
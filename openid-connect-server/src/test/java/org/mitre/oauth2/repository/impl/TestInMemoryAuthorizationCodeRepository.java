@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.oauth2.repository.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.host.service.HostInfoService;
+import org.mitre.oauth2.model.AuthenticationHolderEntity;
+import org.mitre.oauth2.model.AuthorizationCodeEntity;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestInMemoryAuthorizationCodeRepository {
+
+	private static final long LIFETIME = 5 * 60 * 1000L;
+
+	@Mock
+	private HostInfoService hostInfoService;
+
+	@InjectMocks
+	private InMemoryAuthorizationCodeRepository repository;
+
+	@Before
+	public void prepare() {
+		Mockito.when(hostInfoService.getCurrentHostUuid()).thenReturn("host-1");
+	}
+
+	@Test
+	public void consume_once() {
+		AuthorizationCodeEntity code = repository.save(code("abc", System.currentTimeMillis() + LIFETIME));
+
+		assertSame(code, repository.getByCode("abc"));
+		assertSame(code, repository.consume("abc"));
+		assertNull(repository.consume("abc"));
+		assertNull(repository.getByCode("abc"));
+	}
+
+	@Test
+	public void consume_otherHost() {
+		repository.save(code("abc", System.currentTimeMillis() + LIFETIME));
+
+		Mockito.when(hostInfoService.getCurrentHostUuid()).thenReturn("host-2");
+
+		assertNull(repository.consume("abc"));
+	}
+
+	@Test
+	public void expire() {
+		long now = System.currentTimeMillis();
+		repository.save(code("soon", now + 2000L));
+		repository.save(code("later", now + LIFETIME));
+		repository.save(code("consumed", now + 2000L));
+		repository.consume("consumed");
+
+		repository.expire(now + 10000L);
+
+		assertEquals(1, repository.size());
+		assertNull(repository.getByCode("soon"));
+
+		repository.expire(now + LIFETIME + 10000L);
+
+		assertEquals(0, repository.size());
+	}
+
+	private AuthorizationCodeEntity code(String code, long expiration) {
+		return new AuthorizationCodeEntity(code, new AuthenticationHolderEntity(), new Date(expiration));
+	}
+}
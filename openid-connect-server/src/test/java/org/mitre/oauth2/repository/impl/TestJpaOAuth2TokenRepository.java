@@ -1,7 +1,12 @@
 package org.mitre.oauth2.repository.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.Set;
 
 import javax.persistence.EntityManager;
@@ -14,14 +19,20 @@ import org.mitre.host.model.DefaultHostInfo;
 import org.mitre.host.service.HostInfoService;
 import org.mitre.host.util.HostUtils;
 import org.mitre.oauth2.model.AuthenticationHolderEntity;
+import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
+import org.mitre.oauth2.model.OAuth2AccessTokenEntity.TokenKind;
 import org.mitre.oauth2.model.OAuth2RefreshTokenEntity;
 import org.mitre.oauth2.model.SavedUserAuthentication;
+import org.mitre.oauth2.repository.RevokedTokenRepository;
+import org.mitre.oauth2.service.SystemScopeService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.collect.Sets;
+
 @RunWith(SpringRunner.class)
 @ContextConfiguration(classes = { TestDatabaseConfiguration.class })
 @Transactional
@@ -32,6 +43,9 @@ public class TestJpaOAuth2TokenRepository {
 	
 	@Autowired
 	private HostInfoService hostInfoService;
+
+	@Autowired
+	private RevokedTokenRepository revokedTokenRepository;
 	
 	@PersistenceContext
 	private EntityManager entityManager;
@@ -80,6 +94,106 @@ public class TestJpaOAuth2TokenRepository {
 		assertEquals(5, tokens.size());
 	}
 	
+	@Test
+	public void testPurgeExpiredAccessTokens() {
+		Date past = new Date(System.currentTimeMillis() - 60 * 1000L);
+		OAuth2AccessTokenEntity expired = createAccessToken("user3");
+		expired.setExpiration(past);
+		entityManager.merge(expired);
+		expired = createAccessToken("user3");
+		expired.setExpiration(past);
+		entityManager.merge(expired);
+		entityManager.flush();
+
+		String hostUuid = hostInfoService.getCurrentHostUuid();
+		assertEquals(1, repository.purgeExpiredAccessTokens(hostUuid, new Date(), 1));
+		assertEquals(1, repository.purgeExpiredAccessTokens(hostUuid, new Date(), 1));
+		assertEquals(0, repository.purgeExpiredAccessTokens(hostUuid, new Date(), 1));
+
+		assertEquals(4, repository.getAllAccessTokens().size());
+	}
+
+	@Test
+	public void testPurgeExpiredRefreshTokens() {
+		OAuth2RefreshTokenEntity expired = createRefreshToken("user3");
+		expired.setExpiration(new Date(System.currentTimeMillis() - 60 * 1000L));
+		entityManager.merge(expired);
+		entityManager.flush();
+
+		assertEquals(1, repository.purgeExpiredRefreshTokens(hostInfoService.getCurrentHostUuid(), new Date(), 100));
+		assertEquals(5, repository.getAllRefreshTokens().size());
+	}
+
+	@Test
+	public void testClearAccessTokensForRefreshToken() {
+		OAuth2RefreshTokenEntity refreshToken = createRefreshToken("user3");
+		OAuth2AccessTokenEntity live = createAccessToken("user3");
+		live.setRefreshToken(refreshToken);
+		live.setTokenHash("live-token-hash");
+		live.setExpiration(new Date(System.currentTimeMillis() + 60 * 1000L));
+		entityManager.merge(live);
+		OAuth2AccessTokenEntity expired = createAccessToken("user3");
+		expired.setRefreshToken(refreshToken);
+		expired.setTokenHash("expired-token-hash");
+		expired.setExpiration(new Date(System.currentTimeMillis() - 60 * 1000L));
+		entityManager.merge(expired);
+		entityManager.flush();
+
+		Set<String> revoked = new HashSet<>();
+		assertEquals(2, repository.clearAccessTokensForRefreshToken(refreshToken, revoked));
+		assertEquals(Collections.singleton("live-token-hash"), revoked);
+		assertEquals(4, repository.getAllAccessTokens().size());
+		assertTrue(revokedTokenRepository.isRevoked("live-token-hash"));
+		assertFalse(revokedTokenRepository.isRevoked("expired-token-hash"));
+	}
+
+	@Test
+	public void testGetRegistrationAccessTokenForClient() {
+		ClientDetailsEntity client = new ClientDetailsEntity();
+		client.setClientId("registered-client");
+		client.setHostUuid(hostInfoService.getCurrentHostUuid());
+		client = entityManager.merge(client);
+
+		OAuth2AccessTokenEntity access = createAccessToken("user3");
+		access.setClient(client);
+		access.setScope(Sets.newHashSet("openid"));
+		access = repository.saveAccessToken(access);
+		OAuth2AccessTokenEntity registration = createAccessToken("user3");
+		registration.setClient(client);
+		registration.setScope(Sets.newHashSet(SystemScopeService.REGISTRATION_TOKEN_SCOPE));
+		registration = repository.saveAccessToken(registration);
+
+		assertEquals(TokenKind.ACCESS, access.getKind());
+		assertEquals(TokenKind.REGISTRATION, registration.getKind());
+		assertEquals(registration.getId(), repository.getRegistrationAccessTokenForClient(client).getId());
+	}
+
+	@Test
+	public void testSetTokenReferences() {
+		ClientDetailsEntity client = new ClientDetailsEntity();
+		client.setClientId("imported-client");
+		client.setHostUuid(hostInfoService.getCurrentHostUuid());
+		client = entityManager.merge(client);
+
+		OAuth2RefreshTokenEntity refreshToken = createRefreshToken("user3");
+		AuthenticationHolderEntity authHolder = refreshToken.getAuthenticationHolder();
+		OAuth2AccessTokenEntity accessToken = createAccessToken("user4");
+		entityManager.flush();
+
+		assertEquals(1, repository.setAccessTokensClient(Collections.singletonList(accessToken.getId()), client));
+		assertEquals(1, repository.setAccessTokensAuthenticationHolder(Collections.singletonList(accessToken.getId()), authHolder));
+		assertEquals(1, repository.setAccessTokensRefreshToken(Collections.singletonList(accessToken.getId()), refreshToken));
+		assertEquals(1, repository.setRefreshTokensClient(Collections.singletonList(refreshToken.getId()), client));
+		// the bulk updates go around the persistence context
+		entityManager.clear();
+
+		OAuth2AccessTokenEntity updatedAccessToken = repository.getAccessTokenById(accessToken.getId());
+		assertEquals(client.getId(), updatedAccessToken.getClient().getId());
+		assertEquals(authHolder.getId(), updatedAccessToken.getAuthenticationHolder().getId());
+		assertEquals(refreshToken.getId(), updatedAccessToken.getRefreshToken().getId());
+		assertEquals(client.getId(), repository.getRefreshTokenById(refreshToken.getId()).getClient().getId());
+	}
+
 	private OAuth2AccessTokenEntity createAccessToken(String name) {
 		SavedUserAuthentication userAuth = new SavedUserAuthentication();
 		userAuth.setName(name);
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.oauth2.service.impl;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.host.service.HostInfoService;
+import org.mitre.oauth2.exception.AuthorizationPendingException;
+import org.mitre.oauth2.exception.SlowDownException;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.model.DeviceCode;
+import org.mitre.oauth2.repository.impl.DeviceCodeRepository;
+import org.mockito.InjectMocks;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestDefaultDeviceCodeService {
+
+	@Mock
+	private DeviceCodeRepository repository;
+
+	@Mock
+	private HostInfoService hostInfoService;
+
+	@InjectMocks
+	private DefaultDeviceCodeService service;
+
+	private ClientDetailsEntity client;
+
+	private DeviceCode deviceCode;
+
+	@Before
+	public void prepare() {
+		Mockito.when(hostInfoService.getCurrentHostUuid()).thenReturn("host-1");
+
+		client = new ClientDetailsEntity();
+		client.setClientId("device-client");
+
+		deviceCode = new DeviceCode("host-1", "device-code", "USERCODE", new HashSet<String>(), "device-client", new HashMap<String, String>());
+		deviceCode.setApproved(false);
+		Mockito.when(repository.getByDeviceCode("device-code")).thenReturn(deviceCode);
+		Mockito.when(repository.getById(deviceCode.getId())).thenReturn(deviceCode);
+		Mockito.when(repository.save(deviceCode)).thenReturn(deviceCode);
+	}
+
+	/**
+	 * Polls of a pending code are answered from memory after the first one.
+	 */
+	@Test
+	public void pollDeviceCode_pending() {
+		service.setPollingInterval(0);
+
+		assertPending();
+		assertPending();
+		assertPending();
+
+		Mockito.verify(repository, Mockito.times(1)).getByDeviceCode("device-code");
+	}
+
+	/**
+	 * An approval on this node is seen by the next poll, which reads the code again.
+	 */
+	@Test
+	public void pollDeviceCode_approved() {
+		service.setPollingInterval(0);
+
+		assertPending();
+
+		service.approveDeviceCode(deviceCode, new OAuth2Authentication(new OAuth2Request("device-client") { }, null));
+
+		assertSame(deviceCode, service.pollDeviceCode("device-code", client));
+		Mockito.verify(repository, Mockito.times(2)).getByDeviceCode("device-code");
+	}
+
+	@Test(expected = SlowDownException.class)
+	public void pollDeviceCode_slowDown() {
+		service.setPollingInterval(5);
+
+		assertPending();
+
+		service.pollDeviceCode("device-code", client);
+	}
+
+	/**
+	 * Each slow_down adds 5 seconds to the interval of the code, so a poll that would
+	 * have been in time before is still too fast.
+	 */
+	@Test
+	public void pollDeviceCode_slowDownIncreasesInterval() throws InterruptedException {
+		service.setPollingInterval(1);
+
+		assertPending();
+		assertSlowDown();
+
+		// past the original interval, less the tolerance, but not the increased one
+		Thread.sleep(600L);
+		assertSlowDown();
+	}
+
+	@Test(expected = InvalidGrantException.class)
+	public void pollDeviceCode_otherClient() {
+		service.setPollingInterval(0);
+
+		assertPending();
+
+		ClientDetailsEntity other = new ClientDetailsEntity();
+		other.setClientId("other-client");
+		service.pollDeviceCode("device-code", other);
+	}
+
+	@Test(expected = InvalidGrantException.class)
+	public void pollDeviceCode_unknown() {
+		Mockito.when(repository.getByDeviceCode(Matchers.anyString())).thenReturn(null);
+
+		service.pollDeviceCode("unknown", client);
+	}
+
+	private void assertSlowDown() {
+		try {
+			service.pollDeviceCode("device-code", client);
+			fail("Expected slow_down");
+		} catch (SlowDownException e) {
+			// expected
+		}
+	}
+
+	private void assertPending() {
+		try {
+			service.pollDeviceCode("device-code", client);
+			fail("Expected authorization_pending");
+		} catch (AuthorizationPendingException e) {
+			// expected
+		}
+	}
+}
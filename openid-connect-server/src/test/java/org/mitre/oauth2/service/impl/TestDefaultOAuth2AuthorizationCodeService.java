@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.oauth2.service.impl;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.host.model.DefaultHostInfo;
+import org.mitre.host.util.HostUtils;
+import org.mitre.oauth2.repository.AuthorizationCodeRepository;
+import org.mitre.oauth2.repository.impl.JpaAuthenticationHolderRepository;
+import org.mitre.oauth2.repository.impl.JpaAuthorizationCodeRepository;
+import org.mitre.oauth2.repository.impl.TestDatabaseConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs the code service against the database with real transactions, so that
+ * what a failed redemption commits can be checked.
+ */
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = { TestDefaultOAuth2AuthorizationCodeService.Config.class })
+public class TestDefaultOAuth2AuthorizationCodeService {
+
+	// proxy the class so the test can reach the service's own setters
+	@Configuration
+	@EnableTransactionManagement(proxyTargetClass = true)
+	@Import(TestDatabaseConfiguration.class)
+	static class Config {
+
+		@Bean
+		public JpaAuthenticationHolderRepository authenticationHolderRepository() {
+			return new JpaAuthenticationHolderRepository();
+		}
+
+		@Bean
+		public JpaAuthorizationCodeRepository authorizationCodeRepository() {
+			return new JpaAuthorizationCodeRepository();
+		}
+
+		@Bean
+		public DefaultOAuth2AuthorizationCodeService authorizationCodeService() {
+			return new DefaultOAuth2AuthorizationCodeService();
+		}
+	}
+
+	@Autowired
+	private DefaultOAuth2AuthorizationCodeService service;
+
+	@Autowired
+	private AuthorizationCodeRepository repository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private OAuth2Authentication authentication;
+
+	@Before
+	public void prepare() {
+		new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				if (entityManager.createNamedQuery(DefaultHostInfo.QUERY_ALL).getResultList().isEmpty()) {
+					DefaultHostInfo hostInfo = new DefaultHostInfo();
+					hostInfo.setHost(HostUtils.getCurrentHost().getHost());
+					entityManager.persist(hostInfo);
+				}
+			}
+		});
+
+		OAuth2Request request = new OAuth2Request(Collections.<String, String>emptyMap(), "client", null, true,
+				Collections.singleton("openid"), null, null, null, null);
+		authentication = new OAuth2Authentication(request, null);
+	}
+
+	@Test
+	public void consumeAuthorizationCode_expiredCodeIsRemoved() {
+		service.setAuthCodeExpirationSeconds(-60);
+		String code = service.createAuthorizationCode(authentication);
+		assertNotNull(repository.getByCode(code));
+
+		try {
+			service.consumeAuthorizationCode(code);
+			fail("Expected an InvalidGrantException for an expired code");
+		} catch (InvalidGrantException e) {
+			// the removal is committed all the same
+		}
+
+		assertNull(repository.getByCode(code));
+	}
+}
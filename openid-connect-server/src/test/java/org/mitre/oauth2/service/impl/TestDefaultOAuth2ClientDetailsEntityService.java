@@ -21,9 +21,11 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
@@ -31,6 +33,7 @@ import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mitre.host.service.HostInfoService;
 import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.oauth2.model.ClientDetailsEntity.AuthMethod;
 import org.mitre.oauth2.model.SystemScope;
@@ -91,6 +94,12 @@ public class TestDefaultOAuth2ClientDetailsEntityService {
 	@Mock
 	private ConfigurationPropertiesBean config;
 
+	@Mock
+	private HostInfoService hostInfoService;
+
+	@Mock
+	private RevokedTokenCacheService revokedTokenCacheService;
+
 	@InjectMocks
 	private DefaultOAuth2ClientDetailsEntityService service;
 
@@ -145,6 +154,8 @@ public class TestDefaultOAuth2ClientDetailsEntityService {
 
 		Mockito.when(config.isHeartMode()).thenReturn(false);
 
+		Mockito.when(hostInfoService.getCurrentHostUuid()).thenReturn("host1");
+
 	}
 
 	/**
@@ -229,7 +240,7 @@ public class TestDefaultOAuth2ClientDetailsEntityService {
 
 		// id not found
 		String clientId = "b00g3r";
-		Mockito.when(clientRepository.getClientByClientId(clientId)).thenReturn(null);
+		Mockito.when(clientRepository.getClientVersion(clientId)).thenReturn(null);
 		try {
 			service.loadClientByClientId(clientId);
 			fail("Client id not found. Expected an InvalidClientException.");
@@ -239,6 +250,55 @@ public class TestDefaultOAuth2ClientDetailsEntityService {
 
 	}
 
+	@Test
+	public void loadClientByClientId_cached() {
+
+		String clientId = "b00g3r";
+		ClientDetailsEntity client = new ClientDetailsEntity();
+		client.setId("12345");
+		client.setClientId(clientId);
+		client.setVersion(1L);
+		Mockito.when(clientRepository.getClientVersion(clientId)).thenReturn(1L);
+		Mockito.when(clientRepository.getDetachedClientByClientId(clientId)).thenReturn(client);
+
+		assertThat(service.loadClientByClientId(clientId), is(sameInstance(client)));
+		assertThat(service.loadClientByClientId(clientId), is(sameInstance(client)));
+		Mockito.verify(clientRepository, Mockito.times(2)).getClientVersion(clientId);
+		Mockito.verify(clientRepository, Mockito.times(1)).getDetachedClientByClientId(clientId);
+
+		// a save on any path bumps the stored version and the cached copy is reloaded
+		ClientDetailsEntity newClient = new ClientDetailsEntity();
+		newClient.setClientId(clientId);
+		newClient.setVersion(2L);
+		Mockito.when(clientRepository.getClientVersion(clientId)).thenReturn(2L);
+		Mockito.when(clientRepository.getDetachedClientByClientId(clientId)).thenReturn(newClient);
+
+		assertThat(service.loadClientByClientId(clientId), is(sameInstance(newClient)));
+		assertThat(service.loadClientByClientId(clientId), is(sameInstance(newClient)));
+		Mockito.verify(clientRepository, Mockito.times(2)).getDetachedClientByClientId(clientId);
+
+		// a deleted client is not served from the cache
+		Mockito.when(clientRepository.getClientVersion(clientId)).thenReturn(null);
+		try {
+			service.loadClientByClientId(clientId);
+			fail("Client id was deleted. Expected an InvalidClientException.");
+		} catch (InvalidClientException e) {
+			assertThat(e, is(notNullValue()));
+		}
+
+		// clients are cached per host
+		Mockito.when(clientRepository.getClientVersion(clientId)).thenReturn(2L);
+		assertThat(service.loadClientByClientId(clientId), is(sameInstance(newClient)));
+		Mockito.when(hostInfoService.getCurrentHostUuid()).thenReturn("host2");
+		Mockito.when(clientRepository.getDetachedClientByClientId(clientId)).thenReturn(null);
+		try {
+			service.loadClientByClientId(clientId);
+			fail("Client id not found on this host. Expected an InvalidClientException.");
+		} catch (InvalidClientException e) {
+			assertThat(e, is(notNullValue()));
+		}
+	}
+
 	@Test(expected = InvalidClientException.class)
 	public void deleteClient_badId() {
 
@@ -267,9 +327,19 @@ public class TestDefaultOAuth2ClientDetailsEntityService {
 
 		Mockito.when(resourceSetService.getAllForClient(client)).thenReturn(new HashSet<ResourceSet>());
 
+		Mockito.when(tokenRepository.clearTokensForClient(Matchers.eq(client), Matchers.anyCollectionOf(String.class))).thenAnswer(new Answer<Integer>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				((Collection<String>) invocation.getArguments()[1]).add("token-hash");
+				return 1;
+			}
+		});
+
 		service.deleteClient(client);
 
-		Mockito.verify(tokenRepository).clearTokensForClient(client);
+		Mockito.verify(tokenRepository).clearTokensForClient(Matchers.eq(client), Matchers.anyCollectionOf(String.class));
+		Mockito.verify(revokedTokenCacheService).markRevoked(Sets.newHashSet("token-hash"));
 		Mockito.verify(approvedSiteService).clearApprovedSitesForClient(client);
 		Mockito.verify(whitelistedSiteService).remove(site);
 		Mockito.verify(clientRepository).deleteClient(client);
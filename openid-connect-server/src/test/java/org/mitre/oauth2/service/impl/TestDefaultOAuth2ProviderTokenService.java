@@ -38,14 +38,19 @@ import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.Serializable;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mitre.host.service.HostInfoService;
+import org.mitre.jwt.signer.service.JWTSigningAndValidationService;
 import org.mitre.oauth2.model.AuthenticationHolderEntity;
 import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
@@ -55,6 +60,9 @@ import org.mitre.oauth2.repository.AuthenticationHolderRepository;
 import org.mitre.oauth2.repository.OAuth2TokenRepository;
 import org.mitre.oauth2.service.ClientDetailsEntityService;
 import org.mitre.oauth2.service.SystemScopeService;
+import org.mitre.openid.connect.config.ConfigurationPropertiesBean;
+import org.mitre.openid.connect.token.ConnectTokenEnhancer;
+import org.mitre.util.HashUtils;
 import org.mockito.InjectMocks;
 import org.mockito.Matchers;
 import org.mockito.Mock;
@@ -63,6 +71,8 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.oauth2.common.exceptions.InvalidClientException;
 import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
@@ -71,6 +81,10 @@ import org.springframework.security.oauth2.provider.OAuth2Request;
 import org.springframework.security.oauth2.provider.TokenRequest;
 import org.springframework.security.oauth2.provider.token.TokenEnhancer;
 
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.SignedJWT;
+
 /**
  * @author wkim
  *
@@ -120,6 +134,15 @@ public class TestDefaultOAuth2ProviderTokenService {
 	@Mock
 	private SystemScopeService scopeService;
 
+	@Mock
+	private ConfigurationPropertiesBean configBean;
+
+	@Mock
+	private JWTSigningAndValidationService jwtService;
+
+	@Mock
+	private RevokedTokenCacheService revokedTokenCacheService;
+
 	@InjectMocks
 	private DefaultOAuth2ProviderTokenService service;
 
@@ -392,7 +415,7 @@ public class TestDefaultOAuth2ProviderTokenService {
 	public void refreshAccessToken_verifyAcessToken() {
 		OAuth2AccessTokenEntity token = service.refreshAccessToken(refreshTokenValue, tokenRequest);
 
-		verify(tokenRepository).clearAccessTokensForRefreshToken(refreshToken);
+		verify(tokenRepository).clearAccessTokensForRefreshToken(Matchers.eq(refreshToken), Matchers.anyCollectionOf(String.class));
 
 		assertThat(token.getClient(), equalTo(client));
 		assertThat(token.getRefreshToken(), equalTo(refreshToken));
@@ -410,7 +433,7 @@ public class TestDefaultOAuth2ProviderTokenService {
 
 		OAuth2AccessTokenEntity token = service.refreshAccessToken(refreshTokenValue, tokenRequest);
 
-		verify(tokenRepository).clearAccessTokensForRefreshToken(refreshToken);
+		verify(tokenRepository).clearAccessTokensForRefreshToken(Matchers.eq(refreshToken), Matchers.anyCollectionOf(String.class));
 
 		assertThat(token.getClient(), equalTo(client));
 		assertThat(token.getRefreshToken(), not(equalTo(refreshToken)));
@@ -429,7 +452,7 @@ public class TestDefaultOAuth2ProviderTokenService {
 
 		OAuth2AccessTokenEntity token = service.refreshAccessToken(refreshTokenValue, tokenRequest);
 
-		verify(tokenRepository, never()).clearAccessTokensForRefreshToken(refreshToken);
+		verify(tokenRepository, never()).clearAccessTokensForRefreshToken(Matchers.eq(refreshToken), Matchers.anyCollectionOf(String.class));
 
 		assertThat(token.getClient(), equalTo(client));
 		assertThat(token.getRefreshToken(), equalTo(refreshToken));
@@ -551,4 +574,92 @@ public class TestDefaultOAuth2ProviderTokenService {
 		assertEquals(1, tokens.size());
 		assertTrue(tokens.contains(refreshToken));
 	}
+
+	/**
+	 * A stateless access token rebuilds the same authentication that was stored for it,
+	 * without looking the token up.
+	 */
+	@Test
+	public void loadAuthentication_stateless() throws Exception {
+		OAuth2Authentication stored = statelessAuthentication();
+		String tokenValue = issueStatelessToken(stored, new Date(System.currentTimeMillis() + 60000L));
+
+		OAuth2Authentication rebuilt = service.loadAuthentication(tokenValue);
+
+		OAuth2Request expected = stored.getOAuth2Request();
+		OAuth2Request actual = rebuilt.getOAuth2Request();
+		assertEquals(expected.getClientId(), actual.getClientId());
+		assertEquals(AuthorityUtils.authorityListToSet(expected.getAuthorities()), AuthorityUtils.authorityListToSet(actual.getAuthorities()));
+		assertEquals(expected.getScope(), actual.getScope());
+		assertEquals(expected.getResourceIds(), actual.getResourceIds());
+		assertEquals(expected.getExtensions().get("aud"), actual.getExtensions().get("aud"));
+		assertEquals(stored.isClientOnly(), rebuilt.isClientOnly());
+		assertEquals(stored.getName(), rebuilt.getName());
+		assertEquals(AuthorityUtils.authorityListToSet(stored.getUserAuthentication().getAuthorities()),
+				AuthorityUtils.authorityListToSet(rebuilt.getUserAuthentication().getAuthorities()));
+
+		verify(tokenRepository, never()).getAccessTokenByValue(anyString());
+	}
+
+	/**
+	 * A stateless access token that the revocation filter knows about is rejected.
+	 */
+	@Test(expected = InvalidTokenException.class)
+	public void loadAuthentication_statelessRevoked() throws Exception {
+		String tokenValue = issueStatelessToken(statelessAuthentication(), new Date(System.currentTimeMillis() + 60000L));
+		when(revokedTokenCacheService.isRevoked(HashUtils.sha256(tokenValue))).thenReturn(true);
+
+		service.loadAuthentication(tokenValue);
+	}
+
+	/**
+	 * A stateless access token without an expiration is rejected rather than accepted forever.
+	 */
+	@Test(expected = InvalidTokenException.class)
+	public void loadAuthentication_statelessWithoutExpiration() throws Exception {
+		String tokenValue = issueStatelessToken(statelessAuthentication(), null);
+
+		service.loadAuthentication(tokenValue);
+	}
+
+	private OAuth2Authentication statelessAuthentication() {
+		Map<String, Serializable> extensions = new HashMap<>();
+		extensions.put("aud", "https://api.example.org/");
+		OAuth2Request request = new OAuth2Request(Collections.<String, String>emptyMap(), clientId,
+				AuthorityUtils.createAuthorityList("ROLE_CLIENT"), true, newHashSet("profile"),
+				newHashSet("api"), null, null, extensions);
+		UsernamePasswordAuthenticationToken userAuth = new UsernamePasswordAuthenticationToken(userName, null,
+				AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN"));
+		AuthenticationHolderEntity holder = new AuthenticationHolderEntity();
+		holder.setAuthentication(new OAuth2Authentication(request, userAuth), MOCKED_HOST_UUID);
+		return holder.getAuthentication();
+	}
+
+	/**
+	 * Turn on stateless validation and issue a signed access token for the given authentication.
+	 */
+	private String issueStatelessToken(OAuth2Authentication stored, Date expiration) {
+		when(configBean.isStatelessAccessTokens()).thenReturn(true);
+		when(configBean.getIssuer()).thenReturn("https://issuer.example.org/");
+		when(jwtService.getDefaultSigningAlgorithm()).thenReturn(JWSAlgorithm.HS256);
+		when(jwtService.validateSignature(any(SignedJWT.class))).thenReturn(true);
+		Mockito.doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				((SignedJWT) invocation.getArguments()[0]).sign(new MACSigner("a-shared-secret-of-at-least-32-bytes"));
+				return null;
+			}
+		}).when(jwtService).signJwt(any(SignedJWT.class));
+
+		ConnectTokenEnhancer enhancer = new ConnectTokenEnhancer();
+		enhancer.setConfigBean(configBean);
+		enhancer.setJwtService(jwtService);
+		enhancer.setClientService(clientDetailsService);
+
+		OAuth2AccessTokenEntity token = new OAuth2AccessTokenEntity();
+		token.setScope(newHashSet("profile"));
+		token.setExpiration(expiration);
+		enhancer.enhance(token, stored);
+		return token.getValue();
+	}
 }
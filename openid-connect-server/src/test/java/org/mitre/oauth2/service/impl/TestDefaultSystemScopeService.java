@@ -27,6 +27,7 @@ import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mitre.host.service.HostInfoService;
 import org.mitre.oauth2.model.SystemScope;
 import org.mitre.oauth2.repository.SystemScopeRepository;
 import org.mockito.InjectMocks;
@@ -66,6 +67,9 @@ public class TestDefaultSystemScopeService {
 	@Mock
 	private SystemScopeRepository repository;
 
+	@Mock
+	private HostInfoService hostInfoService;
+
 	@InjectMocks
 	private DefaultSystemScopeService service;
 
@@ -113,6 +117,8 @@ public class TestDefaultSystemScopeService {
 		Mockito.when(repository.getByValue(restrictedScope1String)).thenReturn(restrictedScope1);
 
 		Mockito.when(repository.getAll()).thenReturn(allScopes);
+
+		Mockito.when(hostInfoService.getCurrentHostUuid()).thenReturn("host1");
 	}
 
 	@Test
@@ -17,10 +17,14 @@
  *******************************************************************************/
 package org.mitre.openid.connect.service.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 
+import java.net.URL;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -28,18 +32,26 @@ import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mitre.host.model.HostContext;
+import org.mitre.host.model.HostInfo;
+import org.mitre.host.service.HostInfoService;
+import org.mitre.host.util.HostUtils;
 import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
 import org.mitre.oauth2.repository.OAuth2TokenRepository;
+import org.mitre.oauth2.service.impl.RevokedTokenCacheService;
 import org.mitre.openid.connect.model.ApprovedSite;
 import org.mitre.openid.connect.repository.ApprovedSiteRepository;
 import org.mitre.openid.connect.service.ApprovedSiteService;
 import org.mitre.openid.connect.service.StatsService;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.test.annotation.Rollback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
@@ -63,6 +75,12 @@ public class TestDefaultApprovedSiteService {
 	@Mock
 	private StatsService statsService;
 
+	@Mock
+	private HostInfoService hostInfoService;
+
+	@Mock
+	private RevokedTokenCacheService revokedTokenCacheService;
+
 	@InjectMocks
 	private ApprovedSiteService service = new DefaultApprovedSiteService();
 
@@ -94,6 +112,8 @@ public class TestDefaultApprovedSiteService {
 
 		Mockito.reset(repository, statsService);
 
+		Mockito.when(hostInfoService.getCurrentHostUuid()).thenReturn("host-1");
+
 	}
 
 	/**
@@ -126,5 +146,80 @@ public class TestDefaultApprovedSiteService {
 		Mockito.verify(repository, never()).remove(any(ApprovedSite.class));
 	}
 
+	/**
+	 * Approved sites are read once for a client and user, until one of them changes.
+	 */
+	@Test
+	public void getByClientIdAndUserId_cached() {
+		Mockito.when(repository.getByClientIdAndUserId(clientId, "user1")).thenReturn(ImmutableList.of(site2));
+		Mockito.when(repository.save(site2)).thenReturn(site2);
+
+		Collection<ApprovedSite> first = service.getByClientIdAndUserId(clientId, "user1");
+		Collection<ApprovedSite> second = service.getByClientIdAndUserId(clientId, "user1");
+
+		assertEquals(ImmutableList.of(site2), ImmutableList.copyOf(first));
+		assertEquals(ImmutableList.copyOf(first), ImmutableList.copyOf(second));
+		Mockito.verify(repository, times(1)).getByClientIdAndUserId(clientId, "user1");
+
+		service.save(site2);
+		service.getByClientIdAndUserId(clientId, "user1");
+
+		Mockito.verify(repository, times(2)).getByClientIdAndUserId(clientId, "user1");
+	}
+
+	/**
+	 * Inside a transaction the cached sites are only dropped once it commits.
+	 */
+	@Test
+	public void getByClientIdAndUserId_evictedAfterCommit() {
+		Mockito.when(repository.getByClientIdAndUserId(clientId, "user1")).thenReturn(ImmutableList.of(site2));
+		Mockito.when(repository.save(site2)).thenReturn(site2);
+
+		service.getByClientIdAndUserId(clientId, "user1");
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			service.save(site2);
+			service.getByClientIdAndUserId(clientId, "user1");
+			Mockito.verify(repository, times(1)).getByClientIdAndUserId(clientId, "user1");
+
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCommit();
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		service.getByClientIdAndUserId(clientId, "user1");
+		Mockito.verify(repository, times(2)).getByClientIdAndUserId(clientId, "user1");
+	}
+
+	/**
+	 * Sites marked as accessed are written in one update by the next flush, and not saved one by one.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void flushAccessDates_coalesced() throws Exception {
+		HostInfo hostInfo = Mockito.mock(HostInfo.class);
+		Mockito.when(hostInfo.getId()).thenReturn("host-1");
+		HostContext hostContext = new HostContext(new URL("https://example.com"), "", hostInfo);
+
+		HostUtils.runWithHostContext(hostContext, new Runnable() {
+			@Override
+			public void run() {
+				service.markAccessed(site2);
+				service.markAccessed(site3);
+				service.markAccessed(site2);
+			}
+		});
+
+		service.flushAccessDates();
+		service.flushAccessDates();
+
+		ArgumentCaptor<Collection> ids = ArgumentCaptor.forClass(Collection.class);
+		Mockito.verify(repository, times(1)).setAccessDate(ids.capture(), any(Date.class));
+		assertEquals(Sets.newHashSet("2", "3"), Sets.newHashSet((Collection<String>) ids.getValue()));
+		Mockito.verify(repository, never()).save(any(ApprovedSite.class));
+	}
 
 }
@@ -26,6 +26,7 @@ import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mitre.host.service.HostInfoService;
 import org.mitre.openid.connect.model.BlacklistedSite;
 import org.mitre.openid.connect.repository.BlacklistedSiteRepository;
 import org.mockito.InjectMocks;
@@ -54,6 +55,9 @@ public class TestDefaultBlacklistedSiteService {
 	@Mock
 	private BlacklistedSiteRepository mockRepository;
 
+	@Mock
+	private HostInfoService hostInfoService;
+
 	@InjectMocks
 	private DefaultBlacklistedSiteService service = new DefaultBlacklistedSiteService();
 
@@ -70,6 +74,8 @@ public class TestDefaultBlacklistedSiteService {
 		site2.setUri(uri2);
 
 		blackListedSitesSet = Sets.newHashSet(site1, site2);
+
+		Mockito.when(hostInfoService.getCurrentHostUuid()).thenReturn("host1");
 	}
 
 	/**
@@ -83,7 +89,8 @@ public class TestDefaultBlacklistedSiteService {
 		assertTrue(service.isBlacklisted(uri1));
 		assertTrue(service.isBlacklisted(uri2));
 
-		Mockito.verify(mockRepository, times(2)).getAll();
+		// the blacklist is only read once
+		Mockito.verify(mockRepository, times(1)).getAll();
 	}
 
 	/**
@@ -99,4 +106,49 @@ public class TestDefaultBlacklistedSiteService {
 		Mockito.verify(mockRepository).getAll();
 	}
 
+	/**
+	 * Tests prefix and regular expression entries.
+	 */
+	@Test
+	public void isBlacklisted_patterns() {
+
+		BlacklistedSite prefix = new BlacklistedSite();
+		prefix.setUri("https://evil.example.com/*");
+		BlacklistedSite regex = new BlacklistedSite();
+		regex.setUri("^https?://([a-z]+\\.)*bad\\.example\\.org(/.*)?$");
+		BlacklistedSite broken = new BlacklistedSite();
+		broken.setUri("^https://(unclosed");
+
+		Mockito.when(mockRepository.getAll()).thenReturn(Sets.newHashSet(site1, prefix, regex, broken));
+
+		assertTrue(service.isBlacklisted(uri1));
+		assertTrue(service.isBlacklisted("https://evil.example.com/"));
+		assertTrue(service.isBlacklisted("https://evil.example.com/callback?x=1"));
+		assertTrue(service.isBlacklisted("http://bad.example.org"));
+		assertTrue(service.isBlacklisted("https://www.bad.example.org/cb"));
+
+		assertFalse(service.isBlacklisted("https://evil.example.com"));
+		assertFalse(service.isBlacklisted("https://evil.example.community/"));
+		assertFalse(service.isBlacklisted("https://notbad.example.org.good.com/"));
+		assertFalse(service.isBlacklisted("https://(unclosed"));
+	}
+
+	/**
+	 * Tests that changing the blacklist through the service rebuilds it.
+	 */
+	@Test
+	public void isBlacklisted_rebuiltOnChange() {
+
+		Mockito.when(mockRepository.getAll()).thenReturn(Sets.newHashSet(site1));
+
+		assertFalse(service.isBlacklisted(uri2));
+
+		Mockito.when(mockRepository.getAll()).thenReturn(blackListedSitesSet);
+		service.saveNew(site2);
+
+		assertTrue(service.isBlacklisted(uri2));
+
+		Mockito.verify(mockRepository, times(2)).getAll();
+	}
+
 }
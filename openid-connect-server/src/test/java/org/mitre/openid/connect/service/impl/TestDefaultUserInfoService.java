@@ -22,10 +22,12 @@ package org.mitre.openid.connect.service.impl;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mitre.host.service.HostInfoService;
 import org.mitre.oauth2.model.ClientDetailsEntity;
 import org.mitre.oauth2.model.ClientDetailsEntity.SubjectType;
 import org.mitre.oauth2.service.ClientDetailsEntityService;
@@ -33,7 +35,6 @@ import org.mitre.openid.connect.model.DefaultUser;
 import org.mitre.openid.connect.model.DefaultUserInfo;
 import org.mitre.openid.connect.model.UserInfo;
 import org.mitre.openid.connect.repository.UserInfoRepository;
-import org.mitre.openid.connect.repository.UserRepository;
 import org.mitre.openid.connect.service.PairwiseIdentiferService;
 import org.mockito.InjectMocks;
 import org.mockito.Matchers;
@@ -56,7 +57,7 @@ public class TestDefaultUserInfoService {
 	private UserInfoRepository userInfoRepository;
 	
 	@Mock
-	private UserRepository userRepository;
+	private HostInfoService hostInfoService;
 
 	@Mock
 	private ClientDetailsEntityService clientDetailsEntityService;
@@ -160,8 +161,7 @@ public class TestDefaultUserInfoService {
 	 */
 	@Test
 	public void loadByUsername_admin_success() {
-		Mockito.when(userInfoRepository.getByUuid(Mockito.eq(adminUsername))).thenReturn(userInfoAdmin);
-		Mockito.when(userRepository.getUserByUsername(Mockito.eq(adminUsername))).thenReturn(adminUser);
+		Mockito.when(userInfoRepository.getByUsername(Mockito.eq(adminUsername))).thenReturn(userInfoAdmin);
 		UserInfo user = service.getByUsername(adminUsername);
 		assertEquals(user.getSub(), adminSub);
 	}
@@ -173,8 +173,7 @@ public class TestDefaultUserInfoService {
 	@Test
 	public void loadByUsername_regular_success() {
 
-		Mockito.when(userInfoRepository.getByUuid(regularUsername)).thenReturn(userInfoRegular);
-		Mockito.when(userRepository.getUserByUsername(regularUsername)).thenReturn(regularUser);
+		Mockito.when(userInfoRepository.getByUsername(regularUsername)).thenReturn(userInfoRegular);
 		UserInfo user = service.getByUsername(regularUsername);
 		assertEquals(user.getSub(), regularSub);
 
@@ -186,7 +185,7 @@ public class TestDefaultUserInfoService {
 	@Test()
 	public void loadByUsername_nullUser() {
 
-		Mockito.when(userInfoRepository.getByUuid(adminUsername)).thenReturn(null);
+		Mockito.when(userInfoRepository.getByUsername(adminUsername)).thenReturn(null);
 		UserInfo user = service.getByUsername(adminUsername);
 
 		assertNull(user);
@@ -201,9 +200,7 @@ public class TestDefaultUserInfoService {
 		Mockito.when(clientDetailsEntityService.loadClientByClientId(publicClientId1)).thenReturn(publicClient1);
 		Mockito.when(clientDetailsEntityService.loadClientByClientId(publicClientId2)).thenReturn(publicClient2);
 
-		Mockito.when(userInfoRepository.getByUuid(regularUsername)).thenReturn(userInfoRegular);
-		
-		Mockito.when(userRepository.getUserByUsername(regularUsername)).thenReturn(regularUser);
+		Mockito.when(userInfoRepository.getByUsername(regularUsername)).thenReturn(userInfoRegular);
 
 		Mockito.verify(pairwiseIdentiferService, Mockito.never()).getIdentifier(Matchers.any(UserInfo.class), Matchers.any(ClientDetailsEntity.class));
 
@@ -225,9 +222,7 @@ public class TestDefaultUserInfoService {
 		Mockito.when(clientDetailsEntityService.loadClientByClientId(pairwiseClientId3)).thenReturn(pairwiseClient3);
 		Mockito.when(clientDetailsEntityService.loadClientByClientId(pairwiseClientId4)).thenReturn(pairwiseClient4);
 
-		Mockito.when(userRepository.getUserByUsername(regularUsername)).thenReturn(regularUser);
-		
-		Mockito.when(userInfoRepository.getByUuid(regularUsername)).thenAnswer(new Answer<UserInfo>() {
+		Mockito.when(userInfoRepository.getByUsername(regularUsername)).thenAnswer(new Answer<UserInfo>() {
 			@Override
 			public UserInfo answer(InvocationOnMock invocation) throws Throwable {
 				UserInfo userInfo = new DefaultUserInfo(regularUsername);
@@ -255,5 +250,24 @@ public class TestDefaultUserInfoService {
 	}
 
 
+	/**
+	 * The user info is read once and shared, pairwise subs don't change the shared copy
+	 */
+	@Test
+	public void getByUsername_cached() {
+
+		Mockito.when(clientDetailsEntityService.loadClientByClientId(pairwiseClientId1)).thenReturn(pairwiseClient1);
+		Mockito.when(userInfoRepository.getByUsername(regularUsername)).thenReturn(userInfoRegular);
+		Mockito.when(pairwiseIdentiferService.getIdentifier(Mockito.any(UserInfo.class), Mockito.eq(pairwiseClient1))).thenReturn(pairwiseSub12);
+
+		UserInfo user1 = service.getByUsername(regularUsername);
+		UserInfo pairwise = service.getByUsernameAndClientId(regularUsername, pairwiseClientId1);
+		UserInfo user2 = service.getByUsername(regularUsername);
+
+		assertSame(user1, user2);
+		assertEquals(regularSub, user2.getSub());
+		assertEquals(pairwiseSub12, pairwise.getSub());
+		Mockito.verify(userInfoRepository, Mockito.times(1)).getByUsername(regularUsername);
+	}
 
 }
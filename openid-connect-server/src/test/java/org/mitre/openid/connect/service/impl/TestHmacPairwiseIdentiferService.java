@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.openid.connect.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mitre.host.service.HostInfoService;
+import org.mitre.oauth2.model.ClientDetailsEntity;
+import org.mitre.oauth2.model.ClientDetailsEntity.SubjectType;
+import org.mitre.openid.connect.model.DefaultUserInfo;
+import org.mitre.openid.connect.model.PairwiseIdentifier;
+import org.mitre.openid.connect.model.UserInfo;
+import org.mitre.openid.connect.repository.PairwiseIdentifierRepository;
+import org.mockito.InjectMocks;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.google.common.collect.ImmutableSet;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestHmacPairwiseIdentiferService {
+
+	private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+	@Mock
+	private HostInfoService hostInfoService;
+
+	@Mock
+	private PairwiseIdentifierRepository pairwiseIdentifierRepository;
+
+	@InjectMocks
+	private HmacPairwiseIdentiferService service;
+
+	@InjectMocks
+	private HmacPairwiseIdentiferService otherService;
+
+	private UserInfo userInfo;
+
+	private ClientDetailsEntity sectorClient1;
+	private ClientDetailsEntity sectorClient2;
+	private ClientDetailsEntity redirectClient;
+	private ClientDetailsEntity multipleRedirectClient;
+
+	@Before
+	public void prepare() {
+		service.setSecret(SECRET);
+		Mockito.when(hostInfoService.getCurrentHostUuid()).thenReturn("host-1");
+
+		userInfo = new DefaultUserInfo("regular");
+		userInfo.setSub("regularSub652ha23b");
+
+		sectorClient1 = pairwiseClient("https://sector-identifier-12/url");
+		sectorClient2 = pairwiseClient("https://sector-identifier-12/url2");
+
+		redirectClient = pairwiseClient(null);
+		redirectClient.setRedirectUris(ImmutableSet.of("https://client-redirect-4/oauth"));
+
+		multipleRedirectClient = pairwiseClient(null);
+		multipleRedirectClient.setRedirectUris(ImmutableSet.of("https://client-redirect-5/oauth", "https://client-redirect-5/other"));
+	}
+
+	@Test
+	public void getIdentifier_sameSector() {
+		assertEquals(service.getIdentifier(userInfo, sectorClient1), service.getIdentifier(userInfo, sectorClient2));
+
+		Mockito.verify(pairwiseIdentifierRepository, Mockito.never()).getBySectorIdentifier(Matchers.anyString(), Matchers.anyString());
+		Mockito.verify(pairwiseIdentifierRepository, Mockito.never()).save(Matchers.any(PairwiseIdentifier.class));
+	}
+
+	@Test
+	public void getIdentifier_deterministic() {
+		otherService.setSecret(SECRET);
+
+		assertEquals(service.getIdentifier(userInfo, sectorClient1), otherService.getIdentifier(userInfo, sectorClient1));
+	}
+
+	@Test
+	public void getIdentifier_unique() {
+		String sector = service.getIdentifier(userInfo, sectorClient1);
+		String redirect = service.getIdentifier(userInfo, redirectClient);
+
+		UserInfo otherUser = new DefaultUserInfo("other");
+		otherUser.setSub("otherSub");
+		String otherUserSector = service.getIdentifier(otherUser, sectorClient1);
+
+		Mockito.when(hostInfoService.getCurrentHostUuid()).thenReturn("host-2");
+		String otherHostSector = service.getIdentifier(userInfo, sectorClient1);
+
+		assertNotEquals(sector, redirect);
+		assertNotEquals(sector, otherUserSector);
+		assertNotEquals(sector, otherHostSector);
+	}
+
+	@Test
+	public void getIdentifier_honorStored() {
+		PairwiseIdentifier stored = new PairwiseIdentifier();
+		stored.setIdentifier("stored-identifier");
+		Mockito.when(pairwiseIdentifierRepository.getBySectorIdentifier("regularSub652ha23b", "sector-identifier-12")).thenReturn(stored);
+
+		String calculated = service.getIdentifier(userInfo, redirectClient);
+
+		service.setHonorStoredIdentifiers(true);
+		assertEquals("stored-identifier", service.getIdentifier(userInfo, sectorClient1));
+		// nothing stored for this sector, so it's still calculated
+		assertEquals(calculated, service.getIdentifier(userInfo, redirectClient));
+
+		Mockito.verify(pairwiseIdentifierRepository, Mockito.never()).save(Matchers.any(PairwiseIdentifier.class));
+	}
+
+	@Test
+	public void getIdentifier_noHost() {
+		ClientDetailsEntity client = pairwiseClient("urn:example:sector");
+		assertNull(service.getIdentifier(userInfo, client));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void getIdentifier_multipleRedirectError() {
+		service.getIdentifier(userInfo, multipleRedirectClient);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void setSecret_tooShort() {
+		service.setSecret("short");
+	}
+
+	private ClientDetailsEntity pairwiseClient(String sectorIdentifierUri) {
+		ClientDetailsEntity client = new ClientDetailsEntity();
+		client.setSubjectType(SubjectType.PAIRWISE);
+		client.setSectorIdentifierUri(sectorIdentifierUri);
+		return client;
+	}
+}
@@ -21,10 +21,14 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -84,6 +88,7 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -119,6 +124,8 @@ public class TestMITREidDataService_2_0 {
 	private OAuth2TokenRepository tokenRepository;
 	@Mock
 	private SystemScopeRepository sysScopeRepository;
+	@Mock
+	private PlatformTransactionManager transactionManager;
 
 	@Captor
 	private ArgumentCaptor<OAuth2RefreshTokenEntity> capturedRefreshTokens;
@@ -184,15 +191,15 @@ public class TestMITREidDataService_2_0 {
 		token2.setJwt(JWTParser.parse("eyJhbGciOiJub25lIn0.eyJqdGkiOiJlYmEyYjc3My0xNjAzLTRmNDAtOWQ3MS1hMGIxZDg1OWE2MDAifQ."));
 		token2.setAuthenticationHolder(mockedAuthHolder2);
 
-		Set<OAuth2RefreshTokenEntity> allRefreshTokens = ImmutableSet.of(token1, token2);
+		List<OAuth2RefreshTokenEntity> allRefreshTokens = ImmutableList.of(token1, token2);
 
-		Mockito.when(clientRepository.getAllClients()).thenReturn(new HashSet<ClientDetailsEntity>());
+		Mockito.when(clientRepository.getClientsAfterId(anyString(), anyInt())).thenReturn(new ArrayList<ClientDetailsEntity>());
 		Mockito.when(approvedSiteRepository.getAll()).thenReturn(new HashSet<ApprovedSite>());
 		Mockito.when(wlSiteRepository.getAll()).thenReturn(new HashSet<WhitelistedSite>());
 		Mockito.when(blSiteRepository.getAll()).thenReturn(new HashSet<BlacklistedSite>());
-		Mockito.when(authHolderRepository.getAll()).thenReturn(new ArrayList<AuthenticationHolderEntity>());
-		Mockito.when(tokenRepository.getAllAccessTokens()).thenReturn(new HashSet<OAuth2AccessTokenEntity>());
-		Mockito.when(tokenRepository.getAllRefreshTokens()).thenReturn(allRefreshTokens);
+		Mockito.when(authHolderRepository.getAllAfterId(anyString(), anyInt())).thenReturn(new ArrayList<AuthenticationHolderEntity>());
+		Mockito.when(tokenRepository.getAccessTokensAfterId(anyString(), anyInt())).thenReturn(new ArrayList<OAuth2AccessTokenEntity>());
+		Mockito.when(tokenRepository.getRefreshTokensAfterId(anyString(), anyInt())).thenReturn(allRefreshTokens);
 		Mockito.when(sysScopeRepository.getAll()).thenReturn(new HashSet<SystemScope>());
 
 		// do the data export
@@ -329,7 +336,7 @@ public class TestMITREidDataService_2_0 {
 		JsonReader reader = new JsonReader(new StringReader(configJson));
 
 		final Map<String, OAuth2RefreshTokenEntity> fakeDb = new HashMap<>();
-		when(tokenRepository.saveRefreshToken(isA(OAuth2RefreshTokenEntity.class))).thenAnswer(new Answer<OAuth2RefreshTokenEntity>() {
+		when(tokenRepository.persistRefreshToken(isA(OAuth2RefreshTokenEntity.class))).thenAnswer(new Answer<OAuth2RefreshTokenEntity>() {
 			Long id = 332L;
 			@Override
 			public OAuth2RefreshTokenEntity answer(InvocationOnMock invocation) throws Throwable {
@@ -368,8 +375,8 @@ public class TestMITREidDataService_2_0 {
 			}
 		});
 		dataService.importData(reader);
-		//2 times for token, 2 times to update client, 2 times to update authHolder
-		verify(tokenRepository, times(6)).saveRefreshToken(capturedRefreshTokens.capture());
+		// references are set before the save or by bulk update, so each token is saved once
+		verify(tokenRepository, times(2)).persistRefreshToken(capturedRefreshTokens.capture());
 
 		List<OAuth2RefreshTokenEntity> savedRefreshTokens = new ArrayList(fakeDb.values()); //capturedRefreshTokens.getAllValues();
 		Collections.sort(savedRefreshTokens, new refreshTokenIdComparator());
@@ -431,15 +438,15 @@ public class TestMITREidDataService_2_0 {
 		token2.setScope(ImmutableSet.of("openid", "offline_access", "email", "profile"));
 		token2.setTokenType("Bearer");
 
-		Set<OAuth2AccessTokenEntity> allAccessTokens = ImmutableSet.of(token1, token2);
+		List<OAuth2AccessTokenEntity> allAccessTokens = ImmutableList.of(token1, token2);
 
-		Mockito.when(clientRepository.getAllClients()).thenReturn(new HashSet<ClientDetailsEntity>());
+		Mockito.when(clientRepository.getClientsAfterId(anyString(), anyInt())).thenReturn(new ArrayList<ClientDetailsEntity>());
 		Mockito.when(approvedSiteRepository.getAll()).thenReturn(new HashSet<ApprovedSite>());
 		Mockito.when(wlSiteRepository.getAll()).thenReturn(new HashSet<WhitelistedSite>());
 		Mockito.when(blSiteRepository.getAll()).thenReturn(new HashSet<BlacklistedSite>());
-		Mockito.when(authHolderRepository.getAll()).thenReturn(new ArrayList<AuthenticationHolderEntity>());
-		Mockito.when(tokenRepository.getAllRefreshTokens()).thenReturn(new HashSet<OAuth2RefreshTokenEntity>());
-		Mockito.when(tokenRepository.getAllAccessTokens()).thenReturn(allAccessTokens);
+		Mockito.when(authHolderRepository.getAllAfterId(anyString(), anyInt())).thenReturn(new ArrayList<AuthenticationHolderEntity>());
+		Mockito.when(tokenRepository.getRefreshTokensAfterId(anyString(), anyInt())).thenReturn(new ArrayList<OAuth2RefreshTokenEntity>());
+		Mockito.when(tokenRepository.getAccessTokensAfterId(anyString(), anyInt())).thenReturn(allAccessTokens);
 		Mockito.when(sysScopeRepository.getAll()).thenReturn(new HashSet<SystemScope>());
 
 		// do the data export
@@ -595,7 +602,7 @@ public class TestMITREidDataService_2_0 {
 		JsonReader reader = new JsonReader(new StringReader(configJson));
 
 		final Map<String, OAuth2AccessTokenEntity> fakeDb = new HashMap<>();
-		when(tokenRepository.saveAccessToken(isA(OAuth2AccessTokenEntity.class))).thenAnswer(new Answer<OAuth2AccessTokenEntity>() {
+		when(tokenRepository.persistAccessToken(isA(OAuth2AccessTokenEntity.class))).thenAnswer(new Answer<OAuth2AccessTokenEntity>() {
 			Long id = 324L;
 			@Override
 			public OAuth2AccessTokenEntity answer(InvocationOnMock invocation) throws Throwable {
@@ -634,8 +641,8 @@ public class TestMITREidDataService_2_0 {
 			}
 		});
 		dataService.importData(reader);
-		//2 times for token, 2 times to update client, 2 times to update authHolder, 1 times to update refresh token
-		verify(tokenRepository, times(7)).saveAccessToken(capturedAccessTokens.capture());
+		// references are set before the save or by bulk update, so each token is saved once
+		verify(tokenRepository, times(2)).persistAccessToken(capturedAccessTokens.capture());
 
 		List<OAuth2AccessTokenEntity> savedAccessTokens = new ArrayList(fakeDb.values()); //capturedAccessTokens.getAllValues();
 		Collections.sort(savedAccessTokens, new accessTokenIdComparator());
@@ -678,15 +685,15 @@ public class TestMITREidDataService_2_0 {
 		client2.setAllowIntrospection(false);
 		client2.setCodeChallengeMethod(PKCEAlgorithm.S256);
 
-		Set<ClientDetailsEntity> allClients = ImmutableSet.of(client1, client2);
+		List<ClientDetailsEntity> allClients = ImmutableList.of(client1, client2);
 
-		Mockito.when(clientRepository.getAllClients()).thenReturn(allClients);
+		Mockito.when(clientRepository.getClientsAfterId(anyString(), anyInt())).thenReturn(allClients);
 		Mockito.when(approvedSiteRepository.getAll()).thenReturn(new HashSet<ApprovedSite>());
 		Mockito.when(wlSiteRepository.getAll()).thenReturn(new HashSet<WhitelistedSite>());
 		Mockito.when(blSiteRepository.getAll()).thenReturn(new HashSet<BlacklistedSite>());
-		Mockito.when(authHolderRepository.getAll()).thenReturn(new ArrayList<AuthenticationHolderEntity>());
-		Mockito.when(tokenRepository.getAllAccessTokens()).thenReturn(new HashSet<OAuth2AccessTokenEntity>());
-		Mockito.when(tokenRepository.getAllRefreshTokens()).thenReturn(new HashSet<OAuth2RefreshTokenEntity>());
+		Mockito.when(authHolderRepository.getAllAfterId(anyString(), anyInt())).thenReturn(new ArrayList<AuthenticationHolderEntity>());
+		Mockito.when(tokenRepository.getAccessTokensAfterId(anyString(), anyInt())).thenReturn(new ArrayList<OAuth2AccessTokenEntity>());
+		Mockito.when(tokenRepository.getRefreshTokensAfterId(anyString(), anyInt())).thenReturn(new ArrayList<OAuth2RefreshTokenEntity>());
 		Mockito.when(sysScopeRepository.getAll()).thenReturn(new HashSet<SystemScope>());
 
 		// do the data export
@@ -852,13 +859,13 @@ public class TestMITREidDataService_2_0 {
 
 		Set<BlacklistedSite> allBlacklistedSites = ImmutableSet.of(site1, site2, site3);
 
-		Mockito.when(clientRepository.getAllClients()).thenReturn(new HashSet<ClientDetailsEntity>());
+		Mockito.when(clientRepository.getClientsAfterId(anyString(), anyInt())).thenReturn(new ArrayList<ClientDetailsEntity>());
 		Mockito.when(approvedSiteRepository.getAll()).thenReturn(new HashSet<ApprovedSite>());
 		Mockito.when(wlSiteRepository.getAll()).thenReturn(new HashSet<WhitelistedSite>());
 		Mockito.when(blSiteRepository.getAll()).thenReturn(allBlacklistedSites);
-		Mockito.when(authHolderRepository.getAll()).thenReturn(new ArrayList<AuthenticationHolderEntity>());
-		Mockito.when(tokenRepository.getAllAccessTokens()).thenReturn(new HashSet<OAuth2AccessTokenEntity>());
-		Mockito.when(tokenRepository.getAllRefreshTokens()).thenReturn(new HashSet<OAuth2RefreshTokenEntity>());
+		Mockito.when(authHolderRepository.getAllAfterId(anyString(), anyInt())).thenReturn(new ArrayList<AuthenticationHolderEntity>());
+		Mockito.when(tokenRepository.getAccessTokensAfterId(anyString(), anyInt())).thenReturn(new ArrayList<OAuth2AccessTokenEntity>());
+		Mockito.when(tokenRepository.getRefreshTokensAfterId(anyString(), anyInt())).thenReturn(new ArrayList<OAuth2RefreshTokenEntity>());
 		Mockito.when(sysScopeRepository.getAll()).thenReturn(new HashSet<SystemScope>());
 
 		// do the data export
@@ -993,13 +1000,13 @@ public class TestMITREidDataService_2_0 {
 
 		Set<WhitelistedSite> allWhitelistedSites = ImmutableSet.of(site1, site2, site3);
 
-		Mockito.when(clientRepository.getAllClients()).thenReturn(new HashSet<ClientDetailsEntity>());
+		Mockito.when(clientRepository.getClientsAfterId(anyString(), anyInt())).thenReturn(new ArrayList<ClientDetailsEntity>());
 		Mockito.when(approvedSiteRepository.getAll()).thenReturn(new HashSet<ApprovedSite>());
 		Mockito.when(blSiteRepository.getAll()).thenReturn(new HashSet<BlacklistedSite>());
 		Mockito.when(wlSiteRepository.getAll()).thenReturn(allWhitelistedSites);
-		Mockito.when(authHolderRepository.getAll()).thenReturn(new ArrayList<AuthenticationHolderEntity>());
-		Mockito.when(tokenRepository.getAllAccessTokens()).thenReturn(new HashSet<OAuth2AccessTokenEntity>());
-		Mockito.when(tokenRepository.getAllRefreshTokens()).thenReturn(new HashSet<OAuth2RefreshTokenEntity>());
+		Mockito.when(authHolderRepository.getAllAfterId(anyString(), anyInt())).thenReturn(new ArrayList<AuthenticationHolderEntity>());
+		Mockito.when(tokenRepository.getAccessTokensAfterId(anyString(), anyInt())).thenReturn(new ArrayList<OAuth2AccessTokenEntity>());
+		Mockito.when(tokenRepository.getRefreshTokensAfterId(anyString(), anyInt())).thenReturn(new ArrayList<OAuth2RefreshTokenEntity>());
 		Mockito.when(sysScopeRepository.getAll()).thenReturn(new HashSet<SystemScope>());
 
 		// do the data export
@@ -1171,13 +1178,13 @@ public class TestMITREidDataService_2_0 {
 
 		Set<ApprovedSite> allApprovedSites = ImmutableSet.of(site1, site2);
 
-		Mockito.when(clientRepository.getAllClients()).thenReturn(new HashSet<ClientDetailsEntity>());
+		Mockito.when(clientRepository.getClientsAfterId(anyString(), anyInt())).thenReturn(new ArrayList<ClientDetailsEntity>());
 		Mockito.when(approvedSiteRepository.getAllByHostUuid()).thenReturn(allApprovedSites);
 		Mockito.when(blSiteRepository.getAll()).thenReturn(new HashSet<BlacklistedSite>());
 		Mockito.when(wlSiteRepository.getAll()).thenReturn(new HashSet<WhitelistedSite>());
-		Mockito.when(authHolderRepository.getAll()).thenReturn(new ArrayList<AuthenticationHolderEntity>());
-		Mockito.when(tokenRepository.getAllAccessTokens()).thenReturn(new HashSet<OAuth2AccessTokenEntity>());
-		Mockito.when(tokenRepository.getAllRefreshTokens()).thenReturn(new HashSet<OAuth2RefreshTokenEntity>());
+		Mockito.when(authHolderRepository.getAllAfterId(anyString(), anyInt())).thenReturn(new ArrayList<AuthenticationHolderEntity>());
+		Mockito.when(tokenRepository.getAccessTokensAfterId(anyString(), anyInt())).thenReturn(new ArrayList<OAuth2AccessTokenEntity>());
+		Mockito.when(tokenRepository.getRefreshTokensAfterId(anyString(), anyInt())).thenReturn(new ArrayList<OAuth2RefreshTokenEntity>());
 		Mockito.when(sysScopeRepository.getAll()).thenReturn(new HashSet<SystemScope>());
 
 		// do the data export
@@ -1348,8 +1355,8 @@ public class TestMITREidDataService_2_0 {
 		});
 
 		dataService.importData(reader);
-		//2 for sites, 1 for updating access token ref on #1
-		verify(approvedSiteRepository, times(3)).save(capturedApprovedSites.capture());
+		// the access token of #1 is pointed at its site by bulk update, not by saving the site again
+		verify(approvedSiteRepository, times(2)).save(capturedApprovedSites.capture());
 
 		List<ApprovedSite> savedSites = new ArrayList(fakeDb.values());
 		
@@ -1405,13 +1412,13 @@ public class TestMITREidDataService_2_0 {
 
 		List<AuthenticationHolderEntity> allAuthHolders = ImmutableList.of(holder1, holder2);
 
-		when(clientRepository.getAllClients()).thenReturn(new HashSet<ClientDetailsEntity>());
+		when(clientRepository.getClientsAfterId(anyString(), anyInt())).thenReturn(new ArrayList<ClientDetailsEntity>());
 		when(approvedSiteRepository.getAll()).thenReturn(new HashSet<ApprovedSite>());
 		when(wlSiteRepository.getAll()).thenReturn(new HashSet<WhitelistedSite>());
 		when(blSiteRepository.getAll()).thenReturn(new HashSet<BlacklistedSite>());
-		when(authHolderRepository.getAll()).thenReturn(allAuthHolders);
-		when(tokenRepository.getAllAccessTokens()).thenReturn(new HashSet<OAuth2AccessTokenEntity>());
-		when(tokenRepository.getAllRefreshTokens()).thenReturn(new HashSet<OAuth2RefreshTokenEntity>());
+		when(authHolderRepository.getAllAfterId(anyString(), anyInt())).thenReturn(allAuthHolders);
+		when(tokenRepository.getAccessTokensAfterId(anyString(), anyInt())).thenReturn(new ArrayList<OAuth2AccessTokenEntity>());
+		when(tokenRepository.getRefreshTokensAfterId(anyString(), anyInt())).thenReturn(new ArrayList<OAuth2RefreshTokenEntity>());
 		when(sysScopeRepository.getAll()).thenReturn(new HashSet<SystemScope>());
 
 		// do the data export
@@ -1533,7 +1540,7 @@ public class TestMITREidDataService_2_0 {
 		JsonReader reader = new JsonReader(new StringReader(configJson));
 
 		final Map<String, AuthenticationHolderEntity> fakeDb = new HashMap<>();
-		when(authHolderRepository.save(isA(AuthenticationHolderEntity.class))).thenAnswer(new Answer<AuthenticationHolderEntity>() {
+		when(authHolderRepository.persist(isA(AuthenticationHolderEntity.class))).thenAnswer(new Answer<AuthenticationHolderEntity>() {
 			Long id = 243L;
 			@Override
 			public AuthenticationHolderEntity answer(InvocationOnMock invocation) throws Throwable {
@@ -1547,7 +1554,7 @@ public class TestMITREidDataService_2_0 {
 		});
 
 		dataService.importData(reader);
-		verify(authHolderRepository, times(2)).save(capturedAuthHolders.capture());
+		verify(authHolderRepository, times(2)).persist(capturedAuthHolders.capture());
 
 		List<AuthenticationHolderEntity> savedAuthHolders = capturedAuthHolders.getAllValues();
 
@@ -1584,13 +1591,13 @@ public class TestMITREidDataService_2_0 {
 
 		Set<SystemScope> allScopes = ImmutableSet.of(scope1, scope2, scope3);
 
-		Mockito.when(clientRepository.getAllClients()).thenReturn(new HashSet<ClientDetailsEntity>());
+		Mockito.when(clientRepository.getClientsAfterId(anyString(), anyInt())).thenReturn(new ArrayList<ClientDetailsEntity>());
 		Mockito.when(approvedSiteRepository.getAll()).thenReturn(new HashSet<ApprovedSite>());
 		Mockito.when(wlSiteRepository.getAll()).thenReturn(new HashSet<WhitelistedSite>());
 		Mockito.when(blSiteRepository.getAll()).thenReturn(new HashSet<BlacklistedSite>());
-		Mockito.when(authHolderRepository.getAll()).thenReturn(new ArrayList<AuthenticationHolderEntity>());
-		Mockito.when(tokenRepository.getAllAccessTokens()).thenReturn(new HashSet<OAuth2AccessTokenEntity>());
-		Mockito.when(tokenRepository.getAllRefreshTokens()).thenReturn(new HashSet<OAuth2RefreshTokenEntity>());
+		Mockito.when(authHolderRepository.getAllAfterId(anyString(), anyInt())).thenReturn(new ArrayList<AuthenticationHolderEntity>());
+		Mockito.when(tokenRepository.getAccessTokensAfterId(anyString(), anyInt())).thenReturn(new ArrayList<OAuth2AccessTokenEntity>());
+		Mockito.when(tokenRepository.getRefreshTokensAfterId(anyString(), anyInt())).thenReturn(new ArrayList<OAuth2RefreshTokenEntity>());
 		Mockito.when(sysScopeRepository.getAll()).thenReturn(allScopes);
 
 		// do the data export
@@ -1815,7 +1822,7 @@ public class TestMITREidDataService_2_0 {
 		JsonReader reader = new JsonReader(new StringReader(configJson));
 		final Map<String, OAuth2RefreshTokenEntity> fakeRefreshTokenTable = new HashMap<>();
 		final Map<String, AuthenticationHolderEntity> fakeAuthHolderTable = new HashMap<>();
-		when(tokenRepository.saveRefreshToken(isA(OAuth2RefreshTokenEntity.class))).thenAnswer(new Answer<OAuth2RefreshTokenEntity>() {
+		when(tokenRepository.persistRefreshToken(isA(OAuth2RefreshTokenEntity.class))).thenAnswer(new Answer<OAuth2RefreshTokenEntity>() {
 			Long id = 343L;
 			@Override
 			public OAuth2RefreshTokenEntity answer(InvocationOnMock invocation) throws Throwable {
@@ -1843,7 +1850,7 @@ public class TestMITREidDataService_2_0 {
 				return _client;
 			}
 		});
-		when(authHolderRepository.save(isA(AuthenticationHolderEntity.class))).thenAnswer(new Answer<AuthenticationHolderEntity>() {
+		when(authHolderRepository.persist(isA(AuthenticationHolderEntity.class))).thenAnswer(new Answer<AuthenticationHolderEntity>() {
 			Long id = 356L;
 			@Override
 			public AuthenticationHolderEntity answer(InvocationOnMock invocation) throws Throwable {
@@ -1876,6 +1883,120 @@ public class TestMITREidDataService_2_0 {
 		assertThat(savedRefreshTokens.get(savedRefreshToken2Index).getAuthenticationHolder().getId(), equalTo("357"));
 	}
 
+	/**
+	 * Tokens read before their client, authentication holder or refresh token are pointed at
+	 * them with the bulk updates once those are imported.
+	 */
+	@Test
+	public void testFixTokenReferencesOnImport() throws IOException {
+		String configJson = "{" +
+				"\"" + MITREidDataService.SYSTEMSCOPES + "\": [], " +
+				"\"" + MITREidDataService.GRANTS + "\": [], " +
+				"\"" + MITREidDataService.WHITELISTEDSITES + "\": [], " +
+				"\"" + MITREidDataService.BLACKLISTEDSITES + "\": [], " +
+				"\"" + MITREidDataService.ACCESSTOKENS + "\": [" +
+
+				"{\"id\":\"1\",\"clientId\":\"client1\",\"expiration\":\"2014-09-10T22:49:44.090+0000\","
+				+ "\"refreshTokenId\":\"1\",\"scope\":[\"openid\"],\"type\":\"Bearer\",\"authenticationHolderId\":\"1\","
+				+ "\"value\":\"eyJhbGciOiJub25lIn0.eyJqdGkiOiI3NmM0YjQ4Ni1mMDFhLTQ1ZjctODJkOC03YzgyMzBiMWIxNjQifQ.\"}," +
+				"{\"id\":\"2\",\"clientId\":\"client2\",\"expiration\":\"2015-01-07T18:31:50.079+0000\","
+				+ "\"scope\":[\"openid\"],\"type\":\"Bearer\",\"authenticationHolderId\":\"2\","
+				+ "\"value\":\"eyJhbGciOiJub25lIn0.eyJqdGkiOiJmNDVkYjNiNi1hNjMzLTQ0ZmYtOGRjMy1lNTU4NmJiMjExNjAifQ.\"}" +
+
+				"  ]," +
+				"\"" + MITREidDataService.REFRESHTOKENS + "\": [" +
+
+				"{\"id\":\"1\",\"clientId\":\"client1\",\"expiration\":\"2014-09-10T22:49:44.090+0000\","
+				+ "\"authenticationHolderId\":\"1\",\"value\":\"eyJhbGciOiJub25lIn0.eyJqdGkiOiJmOTg4OWQyOS0xMTk1LTQ4ODEtODgwZC1lZjVlYzAwY2Y4NDIifQ.\"}" +
+
+				"  ]," +
+				"\"" + MITREidDataService.CLIENTS + "\": [" +
+
+				"{\"id\":\"1\",\"clientId\":\"client1\"}," +
+				"{\"id\":\"2\",\"clientId\":\"client2\"}" +
+
+				"  ]," +
+				"\"" + MITREidDataService.AUTHENTICATIONHOLDERS + "\": [" +
+
+				"{\"id\":\"1\",\"clientId\":\"client1\"}," +
+				"{\"id\":\"2\",\"clientId\":\"client2\"}" +
+
+				"  ]" +
+				"}";
+		logger.debug(configJson);
+
+		JsonReader reader = new JsonReader(new StringReader(configJson));
+
+		when(tokenRepository.persistAccessToken(isA(OAuth2AccessTokenEntity.class))).thenAnswer(new Answer<OAuth2AccessTokenEntity>() {
+			Long id = 324L;
+			@Override
+			public OAuth2AccessTokenEntity answer(InvocationOnMock invocation) throws Throwable {
+				OAuth2AccessTokenEntity _token = (OAuth2AccessTokenEntity) invocation.getArguments()[0];
+				_token.setId(id++ + "");
+				return _token;
+			}
+		});
+		when(tokenRepository.persistRefreshToken(isA(OAuth2RefreshTokenEntity.class))).thenAnswer(new Answer<OAuth2RefreshTokenEntity>() {
+			Long id = 343L;
+			@Override
+			public OAuth2RefreshTokenEntity answer(InvocationOnMock invocation) throws Throwable {
+				OAuth2RefreshTokenEntity _token = (OAuth2RefreshTokenEntity) invocation.getArguments()[0];
+				_token.setId(id++ + "");
+				return _token;
+			}
+		});
+		// the clients aren't there until they are read
+		when(clientRepository.saveClient(isA(ClientDetailsEntity.class))).thenAnswer(new Answer<ClientDetailsEntity>() {
+			Long id = 422L;
+			@Override
+			public ClientDetailsEntity answer(InvocationOnMock invocation) throws Throwable {
+				ClientDetailsEntity _client = (ClientDetailsEntity) invocation.getArguments()[0];
+				_client.setId(id++ + "");
+				return _client;
+			}
+		});
+		when(authHolderRepository.persist(isA(AuthenticationHolderEntity.class))).thenAnswer(new Answer<AuthenticationHolderEntity>() {
+			Long id = 356L;
+			@Override
+			public AuthenticationHolderEntity answer(InvocationOnMock invocation) throws Throwable {
+				AuthenticationHolderEntity _holder = (AuthenticationHolderEntity) invocation.getArguments()[0];
+				_holder.setId(id++ + "");
+				return _holder;
+			}
+		});
+
+		dataService.importData(reader);
+
+		ArgumentCaptor<OAuth2RefreshTokenEntity> refreshToken = ArgumentCaptor.forClass(OAuth2RefreshTokenEntity.class);
+		verify(tokenRepository).setAccessTokensRefreshToken(eq(ImmutableList.of("324")), refreshToken.capture());
+		assertThat(refreshToken.getValue().getId(), equalTo("343"));
+
+		ArgumentCaptor<ClientDetailsEntity> client1 = ArgumentCaptor.forClass(ClientDetailsEntity.class);
+		verify(tokenRepository).setAccessTokensClient(eq(ImmutableList.of("324")), client1.capture());
+		assertThat(client1.getValue().getClientId(), equalTo("client1"));
+		ArgumentCaptor<ClientDetailsEntity> client2 = ArgumentCaptor.forClass(ClientDetailsEntity.class);
+		verify(tokenRepository).setAccessTokensClient(eq(ImmutableList.of("325")), client2.capture());
+		assertThat(client2.getValue().getClientId(), equalTo("client2"));
+		ArgumentCaptor<ClientDetailsEntity> refreshTokenClient = ArgumentCaptor.forClass(ClientDetailsEntity.class);
+		verify(tokenRepository).setRefreshTokensClient(eq(ImmutableList.of("343")), refreshTokenClient.capture());
+		assertThat(refreshTokenClient.getValue().getClientId(), equalTo("client1"));
+
+		ArgumentCaptor<AuthenticationHolderEntity> holder1 = ArgumentCaptor.forClass(AuthenticationHolderEntity.class);
+		verify(tokenRepository).setAccessTokensAuthenticationHolder(eq(ImmutableList.of("324")), holder1.capture());
+		assertThat(holder1.getValue().getId(), equalTo("356"));
+		ArgumentCaptor<AuthenticationHolderEntity> holder2 = ArgumentCaptor.forClass(AuthenticationHolderEntity.class);
+		verify(tokenRepository).setAccessTokensAuthenticationHolder(eq(ImmutableList.of("325")), holder2.capture());
+		assertThat(holder2.getValue().getId(), equalTo("357"));
+		ArgumentCaptor<AuthenticationHolderEntity> refreshTokenHolder = ArgumentCaptor.forClass(AuthenticationHolderEntity.class);
+		verify(tokenRepository).setRefreshTokensAuthenticationHolder(eq(ImmutableList.of("343")), refreshTokenHolder.capture());
+		assertThat(refreshTokenHolder.getValue().getId(), equalTo("356"));
+
+		// each token is written once, the references are never fixed by saving it again
+		verify(tokenRepository, times(2)).persistAccessToken(isA(OAuth2AccessTokenEntity.class));
+		verify(tokenRepository, times(1)).persistRefreshToken(isA(OAuth2RefreshTokenEntity.class));
+		verify(tokenRepository, never()).setAccessTokensApprovedSite(anyCollection(), isA(ApprovedSite.class));
+	}
+
 	private Set<String> jsonArrayToStringSet(JsonArray a) {
 		Set<String> s = new HashSet<>();
 		for (JsonElement jsonElement : a) {
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright 2018 The MIT Internet Trust Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.mitre.openid.connect.web;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+public class TestRenderedJsonDocument {
+
+	private RenderedJsonDocument document = new RenderedJsonDocument("{\"issuer\":\"https://example.com/\"}");
+
+	@Test
+	public void toResponseEntity_noMatch() {
+		ResponseEntity<byte[]> response = document.toResponseEntity(null, 3600);
+
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertArrayEquals("{\"issuer\":\"https://example.com/\"}".getBytes(StandardCharsets.UTF_8), response.getBody());
+		assertEquals(document.getEtag(), response.getHeaders().getETag());
+		assertEquals("public, max-age=3600", response.getHeaders().getCacheControl());
+
+		assertEquals(HttpStatus.OK, document.toResponseEntity("\"other\"", 3600).getStatusCode());
+	}
+
+	@Test
+	public void toResponseEntity_match() {
+		assertNotModified(document.toResponseEntity(document.getEtag(), 3600));
+		assertNotModified(document.toResponseEntity("\"other\", W/" + document.getEtag(), 3600));
+		assertNotModified(document.toResponseEntity("*", 3600));
+	}
+
+	@Test
+	public void etag_content() {
+		assertEquals(document.getEtag(), new RenderedJsonDocument("{\"issuer\":\"https://example.com/\"}").getEtag());
+		assertNotEquals(document.getEtag(), new RenderedJsonDocument("{\"issuer\":\"https://example.org/\"}").getEtag());
+	}
+
+	private void assertNotModified(ResponseEntity<byte[]> response) {
+		assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+		assertNull(response.getBody());
+		assertEquals(document.getEtag(), response.getHeaders().getETag());
+	}
+}
@@ -17,10 +17,12 @@
 package org.mitre.uma.service.impl;
 
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.mitre.oauth2.model.ClientDetailsEntity;
-import org.mitre.oauth2.model.OAuth2AccessTokenEntity;
 import org.mitre.oauth2.repository.OAuth2TokenRepository;
+import org.mitre.oauth2.service.impl.RevokedTokenCacheService;
 import org.mitre.uma.model.PermissionTicket;
 import org.mitre.uma.model.Policy;
 import org.mitre.uma.model.ResourceSet;
@@ -52,6 +54,9 @@ public class DefaultResourceSetService implements ResourceSetService {
 	@Autowired
 	private PermissionRepository ticketRepository;
 
+	@Autowired
+	private RevokedTokenCacheService revokedTokenCacheService;
+
 	@Override
 	public ResourceSet saveNew(ResourceSet rs) {
 
@@ -96,10 +101,9 @@ public class DefaultResourceSetService implements ResourceSetService {
 	@Override
 	public void remove(ResourceSet rs) {
 		// find all the access tokens issued against this resource set and revoke them
-		Collection<OAuth2AccessTokenEntity> tokens = tokenRepository.getAccessTokensForResourceSet(rs);
-		for (OAuth2AccessTokenEntity token : tokens) {
-			tokenRepository.removeAccessToken(token);
-		}
+		Set<String> revoked = new HashSet<>();
+		tokenRepository.clearAccessTokensForResourceSet(rs, revoked);
+		revokedTokenCacheService.markRevoked(revoked);
 
 		// find all outstanding tickets issued against this resource set and revoke them too
 		Collection<PermissionTicket> tickets = ticketRepository.getPermissionTicketsForResourceSet(rs);